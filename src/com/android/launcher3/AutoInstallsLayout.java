@@ -38,6 +38,7 @@ import com.android.launcher3.LauncherProvider.SqlArguments;
 import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.model.CompiledLayout;
 import com.android.launcher3.util.Thunk;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -165,6 +166,9 @@ public class AutoInstallsLayout {
 
     protected SQLiteDatabase mDb;
 
+    // Packages and intents which the parsed result depends on, other than the layout itself.
+    protected final CompiledLayout.Dependencies mDependencies = new CompiledLayout.Dependencies();
+
     public AutoInstallsLayout(Context context, AppWidgetHost appWidgetHost,
             LayoutParserCallback callback, Resources res,
             int layoutId, String rootTag) {
@@ -197,6 +201,24 @@ public class AutoInstallsLayout {
         }
     }
 
+    /**
+     * Returns the package which defines the layout resource.
+     */
+    public String getLayoutPackage() {
+        return mSourceRes.getResourcePackageName(mLayoutId);
+    }
+
+    /**
+     * Returns a key identifying the layout resource and the parser used to read it.
+     */
+    public String getLayoutKey() {
+        return getClass().getName() + ":" + getLayoutPackage() + "/" + mLayoutId;
+    }
+
+    public CompiledLayout.Dependencies getDependencies() {
+        return mDependencies;
+    }
+
     /**
      * Parses the layout and returns the number of elements added on the homescreen.
      */
@@ -342,11 +364,13 @@ public class AutoInstallsLayout {
                 try {
                     ComponentName cn;
                     try {
+                        mDependencies.addPackage(packageName);
                         cn = new ComponentName(packageName, className);
                         info = mPackageManager.getActivityInfo(cn, 0);
                     } catch (PackageManager.NameNotFoundException nnfe) {
                         String[] packages = mPackageManager.currentToCanonicalPackageNames(
                                 new String[] { packageName });
+                        mDependencies.addPackage(packages[0]);
                         cn = new ComponentName(packages[0], className);
                         info = mPackageManager.getActivityInfo(cn, 0);
                     }
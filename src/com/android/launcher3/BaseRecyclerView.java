@@ -38,6 +38,7 @@ public abstract class BaseRecyclerView extends RecyclerView
         implements RecyclerView.OnItemTouchListener {
 
     protected RecyclerViewFastScroller mScrollbar;
+    protected final RecyclerViewPrefetcher mPrefetcher;
 
     public BaseRecyclerView(Context context) {
         this(context, null);
@@ -49,6 +50,17 @@ public abstract class BaseRecyclerView extends RecyclerView
 
     public BaseRecyclerView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        mPrefetcher = new RecyclerViewPrefetcher(this);
+    }
+
+    @Override
+    public void setAdapter(Adapter adapter) {
+        super.setAdapter(adapter);
+        mPrefetcher.onAdapterChanged(adapter);
+    }
+
+    public RecyclerViewPrefetcher getPrefetcher() {
+        return mPrefetcher;
     }
 
     @Override
@@ -189,5 +201,7 @@ public abstract class BaseRecyclerView extends RecyclerView
     /**
      * <p>Override in each subclass of this base class.
      */
-    public void onFastScrollCompleted() {}
+    public void onFastScrollCompleted() {
+        mPrefetcher.onFastScrollCompleted();
+    }
 }
\ No newline at end of file
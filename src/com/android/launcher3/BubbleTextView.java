@@ -41,7 +41,6 @@ import android.view.ViewDebug;
 import android.view.ViewParent;
 import android.widget.TextView;
 
-import com.android.launcher3.IconCache.IconLoadRequest;
 import com.android.launcher3.IconCache.ItemInfoUpdateReceiver;
 import com.android.launcher3.badge.BadgeInfo;
 import com.android.launcher3.badge.BadgeRenderer;
@@ -129,8 +128,6 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
     @ViewDebug.ExportedProperty(category = "launcher")
     private boolean mDisableRelayout = false;
 
-    private IconLoadRequest mIconLoadRequest;
-
     public BubbleTextView(Context context) {
         this(context, null, 0);
     }
@@ -432,6 +429,19 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
         outBounds.set(left, top, right, bottom);
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // The request is cancelled while detached.
+        verifyHighRes();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mLauncher.getIconUpgradeScheduler().cancel(this);
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         if (mCenterVertically) {
@@ -607,7 +617,6 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
     @Override
     public void reapplyItemInfo(ItemInfoWithIcon info) {
         if (getTag() == info) {
-            mIconLoadRequest = null;
             mDisableRelayout = true;
 
             // Optimization: Starting in N, pre-uploads the bitmap to RenderThread.
@@ -635,18 +644,16 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
     }
 
     /**
-     * Verifies that the current icon is high-res otherwise posts a request to load the icon.
+     * Verifies that the current icon is high-res otherwise requests the icon to be loaded, once
+     * the view is attached.
      */
     public void verifyHighRes() {
-        if (mIconLoadRequest != null) {
-            mIconLoadRequest.cancel();
-            mIconLoadRequest = null;
-        }
-        if (getTag() instanceof ItemInfoWithIcon) {
+        IconUpgradeScheduler scheduler = mLauncher.getIconUpgradeScheduler();
+        scheduler.cancel(this);
+        if (getTag() instanceof ItemInfoWithIcon && isAttachedToWindow()) {
             ItemInfoWithIcon info = (ItemInfoWithIcon) getTag();
             if (info.usingLowResIcon) {
-                mIconLoadRequest = LauncherAppState.getInstance(getContext()).getIconCache()
-                        .updateIconInBackground(BubbleTextView.this, info);
+                scheduler.request(this, info);
             }
         }
     }
@@ -64,7 +64,6 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Stack;
 
@@ -176,6 +175,23 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
     private final Rect mTempRect = new Rect();
 
+    // Scratch objects for the searches run on every drag move and reorder, so that they don't
+    // allocate. They are only used on the UI thread, and never across nested calls.
+    private final Rect mTempBestRect = new Rect();
+    private final Stack<Rect> mTempValidRegions = new Stack<>();
+    private final Rect mTempRegionRect = new Rect();
+    private final Rect mTempChildRect = new Rect();
+    private final Rect mTempBoundingRect = new Rect();
+    private final int[] mTempReorderCell = new int[2];
+    private final int[] mTempNoShuffleCell = new int[2];
+    private final int[] mTempNoShuffleSpan = new int[2];
+    private final int[] mTempTargetCell = new int[2];
+    private final int[] mTempResultSpan = new int[2];
+    private final ItemConfiguration mTempSwapSolution = new ItemConfiguration();
+    private final ItemConfiguration mTempNoShuffleSolution = new ItemConfiguration();
+    private GridOccupancy mTempBlockOccupied;
+    private ViewCluster mViewCluster;
+
     private final static Paint sPaint = new Paint();
 
     // Related to accessible drag and drop
@@ -211,6 +227,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         mCountY = grid.inv.numRows;
         mOccupied =  new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mTempBlockOccupied = new GridOccupancy(mCountX, mCountY);
 
         mPreviousReorderDirection[0] = INVALID_DIRECTION;
         mPreviousReorderDirection[1] = INVALID_DIRECTION;
@@ -372,7 +389,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         mCountY = y;
         mOccupied = new GridOccupancy(mCountX, mCountY);
         mTmpOccupied = new GridOccupancy(mCountX, mCountY);
+        mTempBlockOccupied = new GridOccupancy(mCountX, mCountY);
         mTempRectStack.clear();
+        mViewCluster = null;
         mShortcutsAndWidgets.setCellDimensions(mCellWidth, mCellHeight, mCountX, mCountY);
         requestLayout();
     }
@@ -1141,8 +1160,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         double bestDistance = Double.MAX_VALUE;
-        final Rect bestRect = new Rect(-1, -1, -1, -1);
-        final Stack<Rect> validRegions = new Stack<>();
+        final Rect bestRect = mTempBestRect;
+        bestRect.set(-1, -1, -1, -1);
+        final Stack<Rect> validRegions = mTempValidRegions;
 
         final int countX = mCountX;
         final int countY = mCountY;
@@ -1214,8 +1234,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
                 Rect currentRect = mTempRectStack.pop();
                 currentRect.set(x, y, x + xSize, y + ySize);
                 boolean contained = false;
-                for (Rect r : validRegions) {
-                    if (r.contains(currentRect)) {
+                for (int i = validRegions.size() - 1; i >= 0; i--) {
+                    if (validRegions.get(i).contains(currentRect)) {
                         contained = true;
                         break;
                     }
@@ -1337,6 +1357,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
      * of the cluster and determining how those edges interact with other views. The edges
      * essentially define a fine-grained boundary around the cluster of views -- like a more
      * precise version of a bounding box.
+     *
+     * A single instance is reused for every push, see {@link #reset}.
      */
     private class ViewCluster {
         final static int LEFT = 1 << 0;
@@ -1344,8 +1366,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         final static int RIGHT = 1 << 2;
         final static int BOTTOM = 1 << 3;
 
-        final ArrayList<View> views;
-        final ItemConfiguration config;
+        final ArrayList<View> views = new ArrayList<>();
+        ItemConfiguration config;
         final Rect boundingRect = new Rect();
 
         final int[] leftEdge = new int[mCountY];
@@ -1355,9 +1377,11 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         int dirtyEdges;
         boolean boundingRectDirty;
 
-        @SuppressWarnings("unchecked")
-        public ViewCluster(ArrayList<View> views, ItemConfiguration config) {
-            this.views = (ArrayList<View>) views.clone();
+        void reset(ArrayList<View> views, ItemConfiguration config) {
+            this.views.clear();
+            for (int i = 0; i < views.size(); i++) {
+                this.views.add(views.get(i));
+            }
             this.config = config;
             resetEdges();
         }
@@ -1458,8 +1482,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
 
         void shift(int whichEdge, int delta) {
-            for (View v: views) {
-                CellAndSpan c = config.map.get(v);
+            int count = views.size();
+            for (int i = 0; i < count; i++) {
+                CellAndSpan c = config.map.get(views.get(i));
                 switch (whichEdge) {
                     case LEFT:
                         c.cellX -= delta;
@@ -1513,14 +1538,29 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
         public void sortConfigurationForEdgePush(int edge) {
             comparator.whichEdge = edge;
-            Collections.sort(config.sortedViews, comparator);
+            // A stable insertion sort, as the list is short and this sorts it in place, unlike
+            // Collections.sort which copies it to an array on older platforms.
+            ArrayList<View> sortedViews = config.sortedViews;
+            for (int i = 1; i < sortedViews.size(); i++) {
+                View v = sortedViews.get(i);
+                int j = i - 1;
+                while (j >= 0 && comparator.compare(sortedViews.get(j), v) > 0) {
+                    sortedViews.set(j + 1, sortedViews.get(j));
+                    j--;
+                }
+                sortedViews.set(j + 1, v);
+            }
         }
     }
 
     private boolean pushViewsToTempLocation(ArrayList<View> views, Rect rectOccupiedByPotentialDrop,
             int[] direction, View dragView, ItemConfiguration currentState) {
 
-        ViewCluster cluster = new ViewCluster(views, currentState);
+        if (mViewCluster == null) {
+            mViewCluster = new ViewCluster();
+        }
+        ViewCluster cluster = mViewCluster;
+        cluster.reset(views, currentState);
         Rect clusterRect = cluster.getBoundingRect();
         int whichEdge;
         int pushDistance;
@@ -1548,8 +1588,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
 
         // Mark the occupied state as false for the group of views we want to move.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
+        for (int i = 0; i < views.size(); i++) {
+            CellAndSpan c = currentState.map.get(views.get(i));
             mTmpOccupied.markCells(c, false);
         }
 
@@ -1563,8 +1603,10 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         // left edge, we consider sort the views by their right edge, from right to left.
         cluster.sortConfigurationForEdgePush(whichEdge);
 
+        ArrayList<View> sortedViews = currentState.sortedViews;
         while (pushDistance > 0 && !fail) {
-            for (View v: currentState.sortedViews) {
+            for (int i = 0; i < sortedViews.size(); i++) {
+                View v = sortedViews.get(i);
                 // For each view that isn't in the cluster, we see if the leading edge of the
                 // cluster is contacting the edge of that view. If so, we add that view to the
                 // cluster.
@@ -1604,8 +1646,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
 
         // In either case, we set the occupied array as marked for the location of the views
-        for (View v: cluster.views) {
-            CellAndSpan c = currentState.map.get(v);
+        for (int i = 0; i < cluster.views.size(); i++) {
+            CellAndSpan c = currentState.map.get(cluster.views.get(i));
             mTmpOccupied.markCells(c, true);
         }
 
@@ -1617,23 +1659,27 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         if (views.size() == 0) return true;
 
         boolean success = false;
-        Rect boundingRect = new Rect();
+        Rect boundingRect = mTempBoundingRect;
         // We construct a rect which represents the entire group of views passed in
         currentState.getBoundingRectForViews(views, boundingRect);
 
         // Mark the occupied state as false for the group of views we want to move.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
+        int count = views.size();
+        for (int i = 0; i < count; i++) {
+            CellAndSpan c = currentState.map.get(views.get(i));
             mTmpOccupied.markCells(c, false);
         }
 
-        GridOccupancy blockOccupied = new GridOccupancy(boundingRect.width(), boundingRect.height());
+        // The block is at most the size of the grid, so the same occupancy is reused with only
+        // its top-left part used.
+        GridOccupancy blockOccupied = mTempBlockOccupied;
+        blockOccupied.clear();
         int top = boundingRect.top;
         int left = boundingRect.left;
         // We mark more precisely which parts of the bounding rect are truly occupied, allowing
         // for interlocking.
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
+        for (int i = 0; i < count; i++) {
+            CellAndSpan c = currentState.map.get(views.get(i));
             blockOccupied.markCells(c.cellX - left, c.cellY - top, c.spanX, c.spanY, true);
         }
 
@@ -1647,8 +1693,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
             int deltaX = mTempLocation[0] - boundingRect.left;
             int deltaY = mTempLocation[1] - boundingRect.top;
-            for (View v: views) {
-                CellAndSpan c = currentState.map.get(v);
+            for (int i = 0; i < count; i++) {
+                CellAndSpan c = currentState.map.get(views.get(i));
                 c.cellX += deltaX;
                 c.cellY += deltaY;
             }
@@ -1656,8 +1702,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
 
         // In either case, we set the occupied array as marked for the location of the views
-        for (View v: views) {
-            CellAndSpan c = currentState.map.get(v);
+        for (int i = 0; i < count; i++) {
+            CellAndSpan c = currentState.map.get(views.get(i));
             mTmpOccupied.markCells(c, true);
         }
         return success;
@@ -1776,11 +1822,13 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
                 c.cellY = cellY;
             }
         }
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
-        for (View child: solution.map.keySet()) {
+        Rect r0 = mTempRegionRect;
+        r0.set(cellX, cellY, cellX + spanX, cellY + spanY);
+        Rect r1 = mTempChildRect;
+        for (int i = 0; i < solution.map.size(); i++) {
+            View child = solution.map.keyAt(i);
             if (child == ignoreView) continue;
-            CellAndSpan c = solution.map.get(child);
+            CellAndSpan c = solution.map.valueAt(i);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
             r1.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
             if (Rect.intersects(r0, r1)) {
@@ -1791,7 +1839,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
             }
         }
 
-        solution.intersectingViews = new ArrayList<>(mIntersectingViews);
+        solution.setIntersectingViews(mIntersectingViews);
 
         // First we try to find a solution which respects the push mechanic. That is,
         // we try to find a solution such that no displaced item travels through another item
@@ -1808,8 +1856,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
 
         // Ok, they couldn't move as a block, let's move them individually
-        for (View v : mIntersectingViews) {
-            if (!addViewToTempLocation(v, mOccupiedRect, direction, solution)) {
+        for (int i = 0; i < mIntersectingViews.size(); i++) {
+            if (!addViewToTempLocation(mIntersectingViews.get(i), mOccupiedRect, direction,
+                    solution)) {
                 return false;
             }
         }
@@ -1844,8 +1893,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
         // We find the nearest cell into which we would place the dragged item, assuming there's
         // nothing in its way.
-        int result[] = new int[2];
-        result = findNearestArea(pixelX, pixelY, spanX, spanY, result);
+        int[] result = findNearestArea(pixelX, pixelY, spanX, spanY, mTempReorderCell);
 
         boolean success;
         // First we try the exact nearest position of the item being dragged,
@@ -1875,17 +1923,22 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     }
 
     private void copyCurrentStateToSolution(ItemConfiguration solution, boolean temp) {
+        solution.reset();
+        // Solutions are reused, drop the views which were removed since the last one.
+        for (int i = solution.map.size() - 1; i >= 0; i--) {
+            if (solution.map.keyAt(i).getParent() != mShortcutsAndWidgets) {
+                solution.removeAt(i);
+            }
+        }
         int childCount = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             LayoutParams lp = (LayoutParams) child.getLayoutParams();
-            CellAndSpan c;
             if (temp) {
-                c = new CellAndSpan(lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan);
+                solution.add(child, lp.tmpCellX, lp.tmpCellY, lp.cellHSpan, lp.cellVSpan);
             } else {
-                c = new CellAndSpan(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
+                solution.add(child, lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
             }
-            solution.add(child, c);
         }
     }
 
@@ -2058,7 +2111,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
             va.addUpdateListener(new AnimatorUpdateListener() {
                 @Override
                 public void onAnimationUpdate(ValueAnimator animation) {
-                    float r = (Float) animation.getAnimatedValue();
+                    // The animator goes from 0 to 1, so this is the same as its animated value,
+                    // without boxing it on every frame.
+                    float r = animation.getAnimatedFraction();
                     float r1 = (mode == MODE_HINT && repeating) ? 1.0f : r;
                     float x = r1 * finalDeltaX + (1 - r1) * initDeltaX;
                     float y = r1 * finalDeltaY + (1 - r1) * initDeltaY;
@@ -2105,8 +2160,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     }
 
     private void completeAndClearReorderPreviewAnimations() {
-        for (ReorderPreviewAnimation a: mShakeAnimators.values()) {
-            a.completeAnimationImmediately();
+        for (int i = 0; i < mShakeAnimators.size(); i++) {
+            mShakeAnimators.valueAt(i).completeAnimationImmediately();
         }
         mShakeAnimators.clear();
     }
@@ -2157,8 +2212,8 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
     private ItemConfiguration findConfigurationNoShuffle(int pixelX, int pixelY, int minSpanX, int minSpanY,
             int spanX, int spanY, View dragView, ItemConfiguration solution) {
-        int[] result = new int[2];
-        int[] resultSpan = new int[2];
+        int[] result = mTempNoShuffleCell;
+        int[] resultSpan = mTempNoShuffleSpan;
         findNearestVacantArea(pixelX, pixelY, minSpanX, minSpanY, spanX, spanY, result,
                 resultSpan);
         if (result[0] >= 0 && result[1] >= 0) {
@@ -2169,7 +2224,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
             solution.spanY = resultSpan[1];
             solution.isSolution = true;
         } else {
-            solution.isSolution = false;
+            solution.reset();
         }
         return solution;
     }
@@ -2184,14 +2239,11 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
     */
     private void getDirectionVectorForDrop(int dragViewCenterX, int dragViewCenterY, int spanX,
             int spanY, View dragView, int[] resultDirection) {
-        int[] targetDestination = new int[2];
+        int[] targetDestination = mTempTargetCell;
 
         findNearestArea(dragViewCenterX, dragViewCenterY, spanX, spanY, targetDestination);
-        Rect dragRect = new Rect();
-        regionToRect(targetDestination[0], targetDestination[1], spanX, spanY, dragRect);
-        dragRect.offset(dragViewCenterX - dragRect.centerX(), dragViewCenterY - dragRect.centerY());
 
-        Rect dropRegionRect = new Rect();
+        Rect dropRegionRect = mTempBoundingRect;
         getViewsIntersectingRegion(targetDestination[0], targetDestination[1], spanX, spanY,
                 dragView, dropRegionRect, mIntersectingViews);
 
@@ -2227,8 +2279,9 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
             boundingRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
         }
         intersectingViews.clear();
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
+        Rect r0 = mTempRegionRect;
+        r0.set(cellX, cellY, cellX + spanX, cellY + spanY);
+        Rect r1 = mTempChildRect;
         final int count = mShortcutsAndWidgets.getChildCount();
         for (int i = 0; i < count; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
@@ -2272,12 +2325,12 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
     boolean createAreaForResize(int cellX, int cellY, int spanX, int spanY,
             View dragView, int[] direction, boolean commit) {
-        int[] pixelXY = new int[2];
+        int[] pixelXY = mTempTargetCell;
         regionToCenterPoint(cellX, cellY, spanX, spanY, pixelXY);
 
         // First we determine if things have moved enough to cause a different layout
         ItemConfiguration swapSolution = findReorderSolution(pixelXY[0], pixelXY[1], spanX, spanY,
-                 spanX,  spanY, direction, dragView,  true,  new ItemConfiguration());
+                 spanX,  spanY, direction, dragView,  true,  mTempSwapSolution);
 
         setUseTempCoords(true);
         if (swapSolution != null && swapSolution.isSolution) {
@@ -2307,7 +2360,7 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         result = findNearestArea(pixelX, pixelY, spanX, spanY, result);
 
         if (resultSpan == null) {
-            resultSpan = new int[2];
+            resultSpan = mTempResultSpan;
         }
 
         // When we are checking drop validity or actually dropping, we don't recompute the
@@ -2330,11 +2383,11 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
 
         // Find a solution involving pushing / displacing any items in the way
         ItemConfiguration swapSolution = findReorderSolution(pixelX, pixelY, minSpanX, minSpanY,
-                 spanX,  spanY, mDirectionVector, dragView,  true,  new ItemConfiguration());
+                 spanX,  spanY, mDirectionVector, dragView,  true,  mTempSwapSolution);
 
         // We attempt the approach which doesn't shuffle views at all
         ItemConfiguration noShuffleSolution = findConfigurationNoShuffle(pixelX, pixelY, minSpanX,
-                minSpanY, spanX, spanY, dragView, new ItemConfiguration());
+                minSpanY, spanX, spanY, dragView, mTempNoShuffleSolution);
 
         ItemConfiguration finalSolution = null;
 
@@ -2411,44 +2464,79 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         return mItemPlacementDirty;
     }
 
+    /**
+     * A configuration of the views of the layout. The instances are reused for every reorder, so
+     * the positions of the views are updated in place when copying the current state again.
+     */
     private static class ItemConfiguration extends CellAndSpan {
         final ArrayMap<View, CellAndSpan> map = new ArrayMap<>();
         private final ArrayMap<View, CellAndSpan> savedMap = new ArrayMap<>();
         final ArrayList<View> sortedViews = new ArrayList<>();
         ArrayList<View> intersectingViews;
+        private final ArrayList<View> mIntersectingViews = new ArrayList<>();
         boolean isSolution = false;
 
+        /**
+         * Resets the result of the previous search, keeping the views and their positions.
+         */
+        void reset() {
+            cellX = cellY = -1;
+            spanX = spanY = 1;
+            isSolution = false;
+            intersectingViews = null;
+            sortedViews.clear();
+        }
+
         void save() {
             // Copy current state into savedMap
-            for (View v: map.keySet()) {
-                savedMap.get(v).copyFrom(map.get(v));
+            for (int i = 0; i < map.size(); i++) {
+                savedMap.get(map.keyAt(i)).copyFrom(map.valueAt(i));
             }
         }
 
         void restore() {
             // Restore current state from savedMap
-            for (View v: savedMap.keySet()) {
-                map.get(v).copyFrom(savedMap.get(v));
+            for (int i = 0; i < savedMap.size(); i++) {
+                map.get(savedMap.keyAt(i)).copyFrom(savedMap.valueAt(i));
             }
         }
 
-        void add(View v, CellAndSpan cs) {
-            map.put(v, cs);
-            savedMap.put(v, new CellAndSpan());
+        void add(View v, int cellX, int cellY, int spanX, int spanY) {
+            CellAndSpan c = map.get(v);
+            if (c == null) {
+                c = new CellAndSpan();
+                map.put(v, c);
+                savedMap.put(v, new CellAndSpan());
+            }
+            c.cellX = cellX;
+            c.cellY = cellY;
+            c.spanX = spanX;
+            c.spanY = spanY;
             sortedViews.add(v);
         }
 
+        void removeAt(int index) {
+            savedMap.remove(map.keyAt(index));
+            map.removeAt(index);
+        }
+
+        void setIntersectingViews(ArrayList<View> views) {
+            mIntersectingViews.clear();
+            for (int i = 0; i < views.size(); i++) {
+                mIntersectingViews.add(views.get(i));
+            }
+            intersectingViews = mIntersectingViews;
+        }
+
         int area() {
             return spanX * spanY;
         }
 
         void getBoundingRectForViews(ArrayList<View> views, Rect outRect) {
-            boolean first = true;
-            for (View v: views) {
-                CellAndSpan c = map.get(v);
-                if (first) {
+            for (int i = 0; i < views.size(); i++) {
+                CellAndSpan c = map.get(views.get(i));
+                if (i == 0) {
                     outRect.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
-                    first = false;
                 } else {
                     outRect.union(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
                 }
@@ -2801,14 +2889,14 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
      * if necessary).
      */
     public boolean hasReorderSolution(ItemInfo itemInfo) {
-        int[] cellPoint = new int[2];
+        int[] cellPoint = mTempTargetCell;
         // Check for a solution starting at every cell.
         for (int cellX = 0; cellX < getCountX(); cellX++) {
             for (int cellY = 0; cellY < getCountY(); cellY++) {
                 cellToPoint(cellX, cellY, cellPoint);
                 if (findReorderSolution(cellPoint[0], cellPoint[1], itemInfo.minSpanX,
                         itemInfo.minSpanY, itemInfo.spanX, itemInfo.spanY, mDirectionVector, null,
-                        true, new ItemConfiguration()).isSolution) {
+                        true, mTempSwapSolution).isSolution) {
                     return true;
                 }
             }
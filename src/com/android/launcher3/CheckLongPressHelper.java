@@ -24,11 +24,16 @@ public class CheckLongPressHelper {
 
     public static final int DEFAULT_LONG_PRESS_TIMEOUT = 300;
 
+    // Part of the long press timeout after which the popup is prefetched. Touches which start a
+    // scroll or a swipe usually leave the touch slop, and cancel the prefetch, before that.
+    private static final float PREFETCH_DELAY_FACTOR = 0.5f;
+
     @Thunk View mView;
     @Thunk View.OnLongClickListener mListener;
     @Thunk boolean mHasPerformedLongPress;
     private int mLongPressTimeout = DEFAULT_LONG_PRESS_TIMEOUT;
     private CheckForLongPress mPendingCheckForLongPress;
+    private Runnable mPendingPrefetch;
 
     class CheckForLongPress implements Runnable {
         public void run() {
@@ -67,6 +72,22 @@ public class CheckLongPressHelper {
     public void postCheckForLongPress() {
         mHasPerformedLongPress = false;
 
+        if (mView instanceof BubbleTextView) {
+            // Start loading the popup shown on long-press while the touch is held.
+            if (mPendingPrefetch == null) {
+                mPendingPrefetch = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mView.getTag() instanceof ItemInfo) {
+                            Launcher.getLauncher(mView.getContext()).getPopupDataProvider()
+                                    .getPrefetcher().prefetch((ItemInfo) mView.getTag());
+                        }
+                    }
+                };
+            }
+            mView.postDelayed(mPendingPrefetch, (long) (mLongPressTimeout * PREFETCH_DELAY_FACTOR));
+        }
+
         if (mPendingCheckForLongPress == null) {
             mPendingCheckForLongPress = new CheckForLongPress();
         }
@@ -74,6 +95,12 @@ public class CheckLongPressHelper {
     }
 
     public void cancelLongPress() {
+        if (!mHasPerformedLongPress && mPendingCheckForLongPress != null
+                && mView instanceof BubbleTextView) {
+            mView.removeCallbacks(mPendingPrefetch);
+            Launcher.getLauncher(mView.getContext()).getPopupDataProvider().getPrefetcher()
+                    .cancel();
+        }
         mHasPerformedLongPress = false;
         if (mPendingCheckForLongPress != null) {
             mView.removeCallbacks(mPendingCheckForLongPress);
@@ -110,6 +110,7 @@ public class DefaultLayoutParser extends AutoInstallsLayout {
                     PackageManager.MATCH_DEFAULT_ONLY);
             final List<ResolveInfo> appList = mPackageManager.queryIntentActivities(
                     metaIntent, PackageManager.MATCH_DEFAULT_ONLY);
+            mDependencies.addMetaIntent(metaIntent, resolved, appList);
 
             // Verify that the result is an app and not just the resolver dialog asking which
             // app to use.
@@ -238,6 +239,7 @@ public class DefaultLayoutParser extends AutoInstallsLayout {
             // Folder contents come from an external XML resource
             final Partner partner = Partner.get(mPackageManager);
             if (partner != null) {
+                mDependencies.addPackage(partner.getPackageName());
                 final Resources partnerRes = partner.getResources();
                 final int resId = partnerRes.getIdentifier(Partner.RES_FOLDER,
                         "xml", partner.getPackageName());
@@ -278,11 +280,17 @@ public class DefaultLayoutParser extends AutoInstallsLayout {
 
         @Override
         protected long verifyAndInsert(ComponentName cn, Bundle extras) {
+            if (!extras.isEmpty()) {
+                // The configure broadcast can not be replayed from a compiled layout.
+                mDependencies.markNotCacheable();
+            }
             try {
+                mDependencies.addPackage(cn.getPackageName());
                 mPackageManager.getReceiverInfo(cn, 0);
             } catch (Exception e) {
                 String[] packages = mPackageManager.currentToCanonicalPackageNames(
                         new String[] { cn.getPackageName() });
+                mDependencies.addPackage(packages[0]);
                 cn = new ComponentName(packages[0], cn.getClassName());
                 try {
                     mPackageManager.getReceiverInfo(cn, 0);
@@ -34,6 +34,7 @@ import android.util.Property;
 import android.util.SparseArray;
 
 import com.android.launcher3.graphics.IconPalette;
+import com.android.launcher3.graphics.IconStorage;
 
 public class FastBitmapDrawable extends Drawable {
 
@@ -106,7 +107,17 @@ public class FastBitmapDrawable extends Drawable {
 
     @Override
     public void draw(Canvas canvas) {
-        canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+        if (canvas.isHardwareAccelerated()) {
+            canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+            return;
+        }
+        // Hardware bitmaps can't be drawn on a software canvas, as when creating drag previews.
+        // The copy is only kept for this draw, so that the icon isn't held in the Java heap.
+        Bitmap bitmap = IconStorage.toSoftware(mBitmap);
+        canvas.drawBitmap(bitmap, null, getBounds(), mPaint);
+        if (bitmap != mBitmap) {
+            bitmap.recycle();
+        }
     }
 
     public IconPalette getIconPalette() {
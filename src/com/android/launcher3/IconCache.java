@@ -39,12 +39,15 @@ import android.os.Process;
 import android.os.SystemClock;
 import android.os.UserHandle;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.graphics.IconStorage;
 import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.InstantAppResolver;
@@ -52,9 +55,11 @@ import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.Provider;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
+import java.io.PrintWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
@@ -76,6 +81,9 @@ public class IconCache {
 
     private static final int LOW_RES_SCALE_FACTOR = 5;
 
+    // Class name of the entries of the icons shared by several components of a package.
+    private static final String SHARED_ICON_CLASS_PREFIX = "#icon:";
+
     @Thunk static final Object ICON_UPDATE_TOKEN = new Object();
 
     public static class CacheEntry {
@@ -83,6 +91,18 @@ public class IconCache {
         public CharSequence title = "";
         public CharSequence contentDescription = "";
         public boolean isLowResIcon;
+        // The key of the shared icon, if the icon is shared with other components.
+        ComponentKey sharedIconKey;
+    }
+
+    /**
+     * A badged icon generated once for the components of a package using the same icon resource.
+     */
+    private static class SharedIcon {
+        Bitmap icon;
+        boolean isLowResIcon;
+        // Whether the icon was written to the DB, along with its low-res version.
+        boolean persisted;
     }
 
     private final HashMap<UserHandle, Bitmap> mDefaultIcons = new HashMap<>();
@@ -95,12 +115,16 @@ public class IconCache {
     private final LauncherAppsCompat mLauncherApps;
     private final HashMap<ComponentKey, CacheEntry> mCache =
             new HashMap<>(INITIAL_ICON_CACHE_CAPACITY);
+    private final HashMap<ComponentKey, SharedIcon> mSharedIcons = new HashMap<>();
+    // Number of launcher activities of each package, keyed by its package key.
+    private final HashMap<ComponentKey, Integer> mLauncherActivityCounts = new HashMap<>();
     private final InstantAppResolver mInstantAppResolver;
     private final int mIconDpi;
     @Thunk final IconDB mIconDb;
 
     @Thunk final Handler mWorkerHandler;
 
+    private final BitmapFactory.Options mHighResOptions;
     private final BitmapFactory.Options mLowResOptions;
 
     public IconCache(Context context, InvariantDeviceProfile inv) {
@@ -116,10 +140,10 @@ public class IconCache {
                 IconProvider.class, context, R.string.icon_provider_class);
         mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
 
-        mLowResOptions = new BitmapFactory.Options();
-        // Always prefer RGB_565 config for low res. If the bitmap has transparency, it will
+        mHighResOptions = IconStorage.newDecodeOptions(Bitmap.Config.ARGB_8888);
+        // Prefer RGB_565 config for low res in the heap. If the bitmap has transparency, it will
         // automatically be loaded as ALPHA_8888.
-        mLowResOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+        mLowResOptions = IconStorage.newDecodeOptions(Bitmap.Config.RGB_565);
     }
 
     private Drawable getFullResDefaultActivityIcon() {
@@ -188,7 +212,9 @@ public class IconCache {
      * Remove any records for the supplied ComponentName.
      */
     public synchronized void remove(ComponentName componentName, UserHandle user) {
-        mCache.remove(new ComponentKey(componentName, user));
+        ComponentKey key = new ComponentKey(componentName, user);
+        mCache.remove(key);
+        mSharedIcons.remove(key);
     }
 
     /**
@@ -205,18 +231,38 @@ public class IconCache {
         for (ComponentKey condemned: forDeletion) {
             mCache.remove(condemned);
         }
+        mLauncherActivityCounts.remove(getPackageKey(packageName, user));
+
+        Iterator<ComponentKey> sharedKeys = mSharedIcons.keySet().iterator();
+        while (sharedKeys.hasNext()) {
+            ComponentKey key = sharedKeys.next();
+            if (key.componentName.getPackageName().equals(packageName)
+                    && key.user.equals(user)) {
+                sharedKeys.remove();
+            }
+        }
     }
 
     /**
      * Updates the entries related to the given package in memory and persistent DB.
      */
     public synchronized void updateIconsForPkg(String packageName, UserHandle user) {
+        updateIconsForPkg(packageName, user, mLauncherApps.getActivityList(packageName, user));
+    }
+
+    /**
+     * Updates the entries of the given package, which has the launcher activities {@param apps}.
+     */
+    @VisibleForTesting
+    synchronized void updateIconsForPkg(String packageName, UserHandle user,
+            List<LauncherActivityInfo> apps) {
         removeIconsForPkg(packageName, user);
         try {
             PackageInfo info = mPackageManager.getPackageInfo(packageName,
                     PackageManager.GET_UNINSTALLED_PACKAGES);
             long userSerial = mUserManager.getSerialNumberForUser(user);
-            for (LauncherActivityInfo app : mLauncherApps.getActivityList(packageName, user)) {
+            mLauncherActivityCounts.put(getPackageKey(packageName, user), apps.size());
+            for (LauncherActivityInfo app : apps) {
                 addIconToDBAndMemCache(app, info, userSerial, false /*replace existing*/);
             }
         } catch (NameNotFoundException e) {
@@ -274,6 +320,7 @@ public class IconCache {
         for (LauncherActivityInfo app : apps) {
             componentMap.put(app.getComponentName(), app);
         }
+        setLauncherActivityCounts(user, apps);
 
         HashSet<Integer> itemsToRemove = new HashSet<>();
         Stack<LauncherActivityInfo> appsToUpdate = new Stack<>();
@@ -365,17 +412,142 @@ public class IconCache {
         }
         if (entry == null) {
             entry = new CacheEntry();
-            entry.icon = LauncherIcons.createBadgedIconBitmap(getFullResIcon(app), app.getUser(),
-                    mContext,  app.getApplicationInfo().targetSdkVersion);
+            createBadgedIconLocked(app, entry);
         }
         entry.title = app.getLabel();
         entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, app.getUser());
         mCache.put(key, entry);
 
-        Bitmap lowResIcon = generateLowResIcon(entry.icon);
-        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.title.toString(),
-                app.getApplicationInfo().packageName);
+        String packageName = app.getApplicationInfo().packageName;
+        SharedIcon sharedIcon = entry.sharedIconKey == null
+                ? null : mSharedIcons.get(entry.sharedIconKey);
+        ContentValues values;
+        if (sharedIcon != null && !sharedIcon.isLowResIcon) {
+            if (!sharedIcon.persisted) {
+                Bitmap icon = IconStorage.toSoftware(sharedIcon.icon);
+                addIconToDB(newContentValues(icon, generateLowResIcon(icon), null, packageName),
+                        entry.sharedIconKey.componentName, info, userSerial);
+                sharedIcon.persisted = true;
+            }
+            // The component row only references the icon row.
+            values = newContentValues(null, null, entry.title.toString(), packageName);
+            values.put(IconDB.COLUMN_SHARED_ICON,
+                    entry.sharedIconKey.componentName.getClassName());
+        } else {
+            Bitmap icon = IconStorage.toSoftware(entry.icon);
+            values = newContentValues(icon, generateLowResIcon(icon), entry.title.toString(),
+                    packageName);
+        }
         addIconToDB(values, app.getComponentName(), info, userSerial);
+        moveToStorageLocked(entry);
+    }
+
+    /**
+     * Moves the icon of {@param entry}, and the shared icon it uses, out of the Java heap if
+     * enabled. Called once the icon was written to the DB.
+     * This method is not thread safe, it must be called from a synchronized method.
+     */
+    private void moveToStorageLocked(CacheEntry entry) {
+        if (!IconStorage.USE_HARDWARE_BITMAPS) {
+            return;
+        }
+        SharedIcon sharedIcon = entry.sharedIconKey == null
+                ? null : mSharedIcons.get(entry.sharedIconKey);
+        if (sharedIcon != null && sharedIcon.icon == entry.icon) {
+            sharedIcon.icon = IconStorage.toStorage(sharedIcon.icon);
+            entry.icon = sharedIcon.icon;
+        } else {
+            entry.icon = IconStorage.toStorage(entry.icon);
+        }
+    }
+
+    /**
+     * Sets the badged icon of {@param app} in {@param entry}. Components of a package using the
+     * same icon resource share a single bitmap, which is only generated for the first of them.
+     * This method is not thread safe, it must be called from a synchronized method.
+     */
+    private void createBadgedIconLocked(LauncherActivityInfo app, CacheEntry entry) {
+        ComponentKey sharedIconKey = getSharedIconKey(app);
+        SharedIcon sharedIcon = sharedIconKey == null ? null : mSharedIcons.get(sharedIconKey);
+        if (sharedIcon != null && !sharedIcon.isLowResIcon) {
+            entry.icon = sharedIcon.icon;
+            entry.sharedIconKey = sharedIconKey;
+            return;
+        }
+
+        entry.icon = LauncherIcons.createBadgedIconBitmap(getFullResIcon(app), app.getUser(),
+                mContext, app.getApplicationInfo().targetSdkVersion);
+        StartupTimeline.increment(StartupTimeline.COUNTER_ICONS_GENERATED, 1);
+        if (sharedIconKey != null) {
+            sharedIcon = new SharedIcon();
+            sharedIcon.icon = entry.icon;
+            mSharedIcons.put(sharedIconKey, sharedIcon);
+            entry.sharedIconKey = sharedIconKey;
+        }
+    }
+
+    /**
+     * Records the number of launcher activities of each package of {@param user}, from the
+     * list of all its launcher activities.
+     */
+    private synchronized void setLauncherActivityCounts(UserHandle user,
+            List<LauncherActivityInfo> apps) {
+        HashMap<ComponentKey, Integer> counts = new HashMap<>();
+        for (LauncherActivityInfo app : apps) {
+            ComponentKey key = getPackageKey(app.getComponentName().getPackageName(), user);
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+        Iterator<ComponentKey> keys = mLauncherActivityCounts.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().user.equals(user)) {
+                keys.remove();
+            }
+        }
+        mLauncherActivityCounts.putAll(counts);
+    }
+
+    /**
+     * Returns the number of launcher activities of the package of {@param app}.
+     * This method is not thread safe, it must be called from a synchronized method.
+     */
+    private int getLauncherActivityCountLocked(LauncherActivityInfo app) {
+        String packageName = app.getComponentName().getPackageName();
+        ComponentKey key = getPackageKey(packageName, app.getUser());
+        Integer count = mLauncherActivityCounts.get(key);
+        if (count == null) {
+            count = mLauncherApps.getActivityList(packageName, app.getUser()).size();
+            mLauncherActivityCounts.put(key, count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the key of the icon of {@param app}, made from its package, icon resource, density
+     * and user, or null if its icon can't be shared with other components.
+     * This method is not thread safe, it must be called from a synchronized method.
+     */
+    private ComponentKey getSharedIconKey(LauncherActivityInfo app) {
+        // The icon resource is only looked up when another component may share it.
+        if (!mIconProvider.isIconFromResource(app) || getLauncherActivityCountLocked(app) < 2) {
+            return null;
+        }
+        UserHandle user = app.getUser();
+        int flags = Process.myUserHandle().equals(user) ? 0 :
+                PackageManager.GET_UNINSTALLED_PACKAGES;
+        int iconRes;
+        try {
+            iconRes = mPackageManager.getActivityInfo(app.getComponentName(), flags)
+                    .getIconResource();
+        } catch (NameNotFoundException e) {
+            return null;
+        }
+        if (iconRes == 0) {
+            return null;
+        }
+        String packageName = app.getComponentName().getPackageName();
+        return new ComponentKey(new ComponentName(packageName,
+                SHARED_ICON_CLASS_PREFIX + iconRes + ":" + mIconDpi), user);
     }
 
     /**
@@ -401,11 +573,7 @@ public class IconCache {
 
             @Override
             public void run() {
-                if (info instanceof AppInfo || info instanceof ShortcutInfo) {
-                    getTitleAndIcon(info, false);
-                } else if (info instanceof PackageItemInfo) {
-                    getTitleAndIconForApp((PackageItemInfo) info, false);
-                }
+                updateToHighResIcon(info);
                 mMainThreadExecutor.execute(new Runnable() {
 
                     @Override
@@ -419,6 +587,17 @@ public class IconCache {
         return new IconLoadRequest(request, mWorkerHandler);
     }
 
+    /**
+     * Fills in {@param info} with its high-res icon. Must be called on the worker thread.
+     */
+    public void updateToHighResIcon(ItemInfoWithIcon info) {
+        if (info instanceof AppInfo || info instanceof ShortcutInfo) {
+            getTitleAndIcon(info, false);
+        } else if (info instanceof PackageItemInfo) {
+            getTitleAndIconForApp((PackageItemInfo) info, false);
+        }
+    }
+
     /**
      * Updates {@param application} only if a valid entry is found.
      */
@@ -522,9 +701,8 @@ public class IconCache {
                 providerFetchedOnce = true;
 
                 if (info != null) {
-                    entry.icon = LauncherIcons.createBadgedIconBitmap(
-                            getFullResIcon(info), info.getUser(), mContext,
-                            infoProvider.get().getApplicationInfo().targetSdkVersion);
+                    createBadgedIconLocked(info, entry);
+                    moveToStorageLocked(entry);
                 } else {
                     if (usePackageIcon) {
                         CacheEntry packageEntry = getEntryForPackageLocked(
@@ -583,7 +761,7 @@ public class IconCache {
             entry.title = title;
         }
         if (icon != null) {
-            entry.icon = LauncherIcons.createIconBitmap(icon, mContext);
+            entry.icon = IconStorage.toStorage(LauncherIcons.createIconBitmap(icon, mContext));
         }
         if (!TextUtils.isEmpty(title) && entry.icon != null) {
             mCache.put(cacheKey, entry);
@@ -624,6 +802,7 @@ public class IconCache {
                     // only keep the low resolution icon instead of the larger full-sized icon
                     Bitmap icon = LauncherIcons.createBadgedIconBitmap(
                             appInfo.loadIcon(mPackageManager), user, mContext, appInfo.targetSdkVersion);
+                    StartupTimeline.increment(StartupTimeline.COUNTER_ICONS_GENERATED, 1);
                     if (mInstantAppResolver.isInstantApp(appInfo)) {
                         icon = LauncherIcons.badgeWithDrawable(icon,
                                 mContext.getDrawable(R.drawable.ic_instant_app_badge), mContext);
@@ -631,7 +810,7 @@ public class IconCache {
                     Bitmap lowResIcon =  generateLowResIcon(icon);
                     entry.title = appInfo.loadLabel(mPackageManager);
                     entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
-                    entry.icon = useLowResIcon ? lowResIcon : icon;
+                    entry.icon = IconStorage.toStorage(useLowResIcon ? lowResIcon : icon);
                     entry.isLowResIcon = useLowResIcon;
 
                     // Add the icon in the DB here, since these do not get written during
@@ -660,13 +839,30 @@ public class IconCache {
         try {
             c = mIconDb.query(
                 new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON,
-                        IconDB.COLUMN_LABEL},
+                        IconDB.COLUMN_LABEL, IconDB.COLUMN_SHARED_ICON},
                 IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{cacheKey.componentName.flattenToString(),
                         Long.toString(mUserManager.getSerialNumberForUser(cacheKey.user))});
             if (c.moveToNext()) {
-                entry.icon = loadIconNoResize(c, 0, lowRes ? mLowResOptions : null);
-                entry.isLowResIcon = lowRes;
+                String sharedIconClass = c.getString(2);
+                if (sharedIconClass == null) {
+                    entry.icon = loadIconNoResize(c, 0,
+                            lowRes ? mLowResOptions : mHighResOptions);
+                    entry.isLowResIcon = lowRes;
+                    entry.sharedIconKey = null;
+                    StartupTimeline.increment(StartupTimeline.COUNTER_ICONS_FROM_DB, 1);
+                } else {
+                    ComponentKey sharedIconKey = new ComponentKey(new ComponentName(
+                            cacheKey.componentName.getPackageName(), sharedIconClass),
+                            cacheKey.user);
+                    SharedIcon sharedIcon = getSharedIconFromDB(sharedIconKey, lowRes);
+                    if (sharedIcon == null) {
+                        return false;
+                    }
+                    entry.icon = sharedIcon.icon;
+                    entry.isLowResIcon = sharedIcon.isLowResIcon;
+                    entry.sharedIconKey = sharedIconKey;
+                }
                 entry.title = c.getString(1);
                 if (entry.title == null) {
                     entry.title = "";
@@ -687,6 +883,66 @@ public class IconCache {
         return false;
     }
 
+    /**
+     * Returns the shared icon for {@param key}, loading it from the DB if it is not in memory,
+     * or null if it is not found. A high-res icon already in memory is returned even when a
+     * low-res one is requested.
+     */
+    private SharedIcon getSharedIconFromDB(ComponentKey key, boolean lowRes) {
+        SharedIcon sharedIcon = mSharedIcons.get(key);
+        if (sharedIcon != null && (lowRes || !sharedIcon.isLowResIcon)) {
+            return sharedIcon;
+        }
+
+        Cursor c = null;
+        try {
+            c = mIconDb.query(
+                    new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON},
+                    IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
+                    new String[]{key.componentName.flattenToString(),
+                            Long.toString(mUserManager.getSerialNumberForUser(key.user))});
+            if (c.moveToNext()) {
+                Bitmap icon = loadIconNoResize(c, 0, lowRes ? mLowResOptions : mHighResOptions);
+                if (icon == null) {
+                    return null;
+                }
+                StartupTimeline.increment(StartupTimeline.COUNTER_ICONS_FROM_DB, 1);
+                sharedIcon = new SharedIcon();
+                sharedIcon.icon = icon;
+                sharedIcon.isLowResIcon = lowRes;
+                sharedIcon.persisted = true;
+                mSharedIcons.put(key, sharedIcon);
+                return sharedIcon;
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon cache", e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reports the memory used by the cached icons, by storage type.
+     */
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        IconStorage.Usage usage = new IconStorage.Usage();
+        for (CacheEntry entry : mCache.values()) {
+            usage.add(entry.icon);
+        }
+        for (SharedIcon sharedIcon : mSharedIcons.values()) {
+            usage.add(sharedIcon.icon);
+        }
+        for (Bitmap icon : mDefaultIcons.values()) {
+            usage.add(icon);
+        }
+        writer.println(prefix + "Icon cache: entries=" + mCache.size()
+                + " hardwareBitmaps=" + IconStorage.USE_HARDWARE_BITMAPS);
+        usage.dump(prefix + "\t", writer);
+    }
+
     public static class IconLoadRequest {
         private final Runnable mRunnable;
         private final Handler mHandler;
@@ -760,7 +1016,7 @@ public class IconCache {
     }
 
     private static final class IconDB extends SQLiteCacheHelper {
-        private final static int DB_VERSION = 17;
+        private final static int DB_VERSION = 18;
 
         private final static int RELEASE_VERSION = DB_VERSION +
                 (FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION ? 0 : 1);
@@ -775,6 +1031,8 @@ public class IconCache {
         private final static String COLUMN_ICON_LOW_RES = "icon_low_res";
         private final static String COLUMN_LABEL = "label";
         private final static String COLUMN_SYSTEM_STATE = "system_state";
+        // Class name of the row holding the icon, when it is shared with other components.
+        private final static String COLUMN_SHARED_ICON = "shared_icon";
 
         public IconDB(Context context, int iconPixelSize) {
             super(context, LauncherFiles.APP_ICONS_DB,
@@ -793,6 +1051,7 @@ public class IconCache {
                     COLUMN_ICON_LOW_RES + " BLOB, " +
                     COLUMN_LABEL + " TEXT, " +
                     COLUMN_SYSTEM_STATE + " TEXT, " +
+                    COLUMN_SHARED_ICON + " TEXT, " +
                     "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") " +
                     ");");
         }
@@ -801,8 +1060,9 @@ public class IconCache {
     private ContentValues newContentValues(Bitmap icon, Bitmap lowResIcon, String label,
             String packageName) {
         ContentValues values = new ContentValues();
-        values.put(IconDB.COLUMN_ICON, Utilities.flattenBitmap(icon));
-        values.put(IconDB.COLUMN_ICON_LOW_RES, Utilities.flattenBitmap(lowResIcon));
+        values.put(IconDB.COLUMN_ICON, icon == null ? null : Utilities.flattenBitmap(icon));
+        values.put(IconDB.COLUMN_ICON_LOW_RES,
+                lowResIcon == null ? null : Utilities.flattenBitmap(lowResIcon));
 
         values.put(IconDB.COLUMN_LABEL, label);
         values.put(IconDB.COLUMN_SYSTEM_STATE, mIconProvider.getIconSystemState(packageName));
@@ -822,6 +1082,7 @@ public class IconCache {
     private static Bitmap loadIconNoResize(Cursor c, int iconIndex, BitmapFactory.Options options) {
         byte[] data = c.getBlob(iconIndex);
         try {
+            StartupTimeline.increment(StartupTimeline.COUNTER_BYTES_DECODED, data.length);
             return BitmapFactory.decodeByteArray(data, 0, data.length, options);
         } catch (Exception e) {
             return null;
@@ -32,4 +32,12 @@ public class IconProvider {
     public Drawable getIcon(LauncherActivityInfo info, int iconDpi, boolean flattenDrawable) {
         return info.getIcon(iconDpi);
     }
+
+    /**
+     * Returns true if the icon returned by {@link #getIcon} only depends on the icon resource of
+     * {@param info}, so that it can be shared by the activities using the same resource.
+     */
+    public boolean isIconFromResource(LauncherActivityInfo info) {
+        return true;
+    }
 }
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.android.launcher3.IconCache.ItemInfoUpdateReceiver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replaces the low-res icons of the items bound to views with their high-res version.
+ *
+ * Requests are not handled in the order they are made. Each time the worker thread is free, the
+ * next batch of up to {@link #BATCH_SIZE} items is picked from the pending requests:
+ * <ul>
+ *   <li> Views visible on screen come first, like the current workspace page, the visible all
+ *        apps rows or the current page of the open folder.
+ *   <li> Views which are attached but not visible, like the other workspace pages, are only
+ *        upgraded once the launcher is idle, that is when nothing scrolled for
+ *        {@link #IDLE_DELAY_MS} and the UI thread has nothing else to do.
+ *   <li> Views detached from the window, like the all apps rows scrolled away, are dropped. They
+ *        request their icon again when attached.
+ * </ul>
+ * The pending requests are checked at most once per frame, however many views scrolled, and not
+ * at all while a batch is being loaded.
+ * All the methods must be called on the UI thread.
+ */
+public class IconUpgradeScheduler implements ViewTreeObserver.OnScrollChangedListener,
+        MessageQueue.IdleHandler {
+
+    @VisibleForTesting static final int BATCH_SIZE = 8;
+    @VisibleForTesting static final long IDLE_DELAY_MS = 300;
+
+    private final IconCache mIconCache;
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private final Handler mWorkerHandler;
+
+    // Pending requests, oldest first.
+    private final LinkedHashMap<ItemInfoUpdateReceiver, ItemInfoWithIcon> mPending =
+            new LinkedHashMap<>();
+    // Requests handed to the worker thread, removed when cancelled.
+    private final LinkedHashMap<ItemInfoUpdateReceiver, ItemInfoWithIcon> mInFlight =
+            new LinkedHashMap<>();
+
+    private final ArrayList<ItemInfoUpdateReceiver> mBatchReceivers = new ArrayList<>();
+    private final ArrayList<ItemInfoWithIcon> mBatchInfos = new ArrayList<>();
+    private final Rect mTempRect = new Rect();
+
+    private boolean mDispatchPosted;
+    // Whether a batch is being loaded on the worker thread, even if all its requests were
+    // cancelled since.
+    private boolean mBatchInProgress;
+    private boolean mWaitingForIdle;
+    private long mLastScrollTime;
+
+    private final Choreographer.FrameCallback mDispatchCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mDispatchPosted = false;
+            dispatchBatch(false /* includeNotVisible */);
+        }
+    };
+
+    private final Runnable mWaitForIdleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            waitForIdle();
+        }
+    };
+
+    public IconUpgradeScheduler(IconCache iconCache) {
+        this(iconCache, new Handler(LauncherModel.getWorkerLooper()));
+    }
+
+    @VisibleForTesting
+    IconUpgradeScheduler(IconCache iconCache, Handler workerHandler) {
+        mIconCache = iconCache;
+        mWorkerHandler = workerHandler;
+    }
+
+    /**
+     * Requests the high-res icon of {@param info}, which is then applied to {@param receiver}.
+     * It replaces any pending request of {@param receiver}.
+     */
+    public void request(ItemInfoUpdateReceiver receiver, ItemInfoWithIcon info) {
+        mPending.remove(receiver);
+        mInFlight.remove(receiver);
+        mPending.put(receiver, info);
+        scheduleDispatch();
+    }
+
+    /**
+     * Cancels the request of {@param receiver}. If its icon is being loaded, it is not applied.
+     */
+    public void cancel(ItemInfoUpdateReceiver receiver) {
+        mPending.remove(receiver);
+        mInFlight.remove(receiver);
+    }
+
+    /**
+     * Cancels all the requests.
+     */
+    public void clear() {
+        mPending.clear();
+        mInFlight.clear();
+        if (mDispatchPosted) {
+            Choreographer.getInstance().removeFrameCallback(mDispatchCallback);
+            mDispatchPosted = false;
+        }
+        mUiHandler.removeCallbacks(mWaitForIdleRunnable);
+        if (mWaitingForIdle) {
+            Looper.myQueue().removeIdleHandler(this);
+            mWaitingForIdle = false;
+        }
+    }
+
+    /**
+     * Called when any view of the launcher scrolled, as the visible views may have changed.
+     */
+    @Override
+    public void onScrollChanged() {
+        mLastScrollTime = SystemClock.uptimeMillis();
+        scheduleDispatch();
+    }
+
+    @Override
+    public boolean queueIdle() {
+        mWaitingForIdle = false;
+        long remaining = mLastScrollTime + IDLE_DELAY_MS - SystemClock.uptimeMillis();
+        if (remaining > 0) {
+            mUiHandler.postDelayed(mWaitForIdleRunnable, remaining);
+        } else {
+            dispatchBatch(true /* includeNotVisible */);
+        }
+        return false;
+    }
+
+    @VisibleForTesting
+    int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Checks the pending requests on the next frame, unless already scheduled. Nothing is done
+     * while a batch is in progress, as the next one is dispatched when it is done.
+     */
+    private void scheduleDispatch() {
+        if (!mDispatchPosted && !mBatchInProgress && !mPending.isEmpty()) {
+            mDispatchPosted = true;
+            Choreographer.getInstance().postFrameCallback(mDispatchCallback);
+        }
+    }
+
+    private void waitForIdle() {
+        if (!mWaitingForIdle) {
+            mWaitingForIdle = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Hands the next batch of requests to the worker thread, unless one is already in progress.
+     * @param includeNotVisible whether the views not visible on screen can be upgraded, once no
+     *                          visible view is left.
+     */
+    @VisibleForTesting
+    void dispatchBatch(boolean includeNotVisible) {
+        if (mBatchInProgress || mPending.isEmpty()) {
+            return;
+        }
+
+        boolean hasNotVisible = false;
+        Iterator<Map.Entry<ItemInfoUpdateReceiver, ItemInfoWithIcon>> it =
+                mPending.entrySet().iterator();
+        while (it.hasNext() && mInFlight.size() < BATCH_SIZE) {
+            Map.Entry<ItemInfoUpdateReceiver, ItemInfoWithIcon> request = it.next();
+            ItemInfoUpdateReceiver receiver = request.getKey();
+            if (receiver instanceof View) {
+                View view = (View) receiver;
+                if (!view.isAttachedToWindow()) {
+                    it.remove();
+                    continue;
+                }
+                if (!view.isShown() || !view.getGlobalVisibleRect(mTempRect)) {
+                    hasNotVisible = true;
+                    continue;
+                }
+            }
+            it.remove();
+            mInFlight.put(receiver, request.getValue());
+        }
+
+        if (mInFlight.isEmpty() && hasNotVisible) {
+            if (!includeNotVisible) {
+                waitForIdle();
+                return;
+            }
+            it = mPending.entrySet().iterator();
+            while (it.hasNext() && mInFlight.size() < BATCH_SIZE) {
+                Map.Entry<ItemInfoUpdateReceiver, ItemInfoWithIcon> request = it.next();
+                it.remove();
+                mInFlight.put(request.getKey(), request.getValue());
+            }
+        }
+
+        if (!mInFlight.isEmpty()) {
+            mBatchInProgress = true;
+            mWorkerHandler.post(new BatchTask(new ArrayList<>(mInFlight.values())));
+        }
+    }
+
+    /**
+     * Applies the loaded icons which were not cancelled meanwhile, and starts the next batch.
+     */
+    private void onBatchLoaded() {
+        // The receivers may request again when applying the info.
+        mBatchInProgress = false;
+        mBatchReceivers.addAll(mInFlight.keySet());
+        mBatchInfos.addAll(mInFlight.values());
+        mInFlight.clear();
+        for (int i = 0; i < mBatchReceivers.size(); i++) {
+            mBatchReceivers.get(i).reapplyItemInfo(mBatchInfos.get(i));
+        }
+        mBatchReceivers.clear();
+        mBatchInfos.clear();
+
+        scheduleDispatch();
+    }
+
+    private class BatchTask implements Runnable {
+
+        private final ArrayList<ItemInfoWithIcon> mInfos;
+
+        BatchTask(ArrayList<ItemInfoWithIcon> infos) {
+            mInfos = infos;
+        }
+
+        @Override
+        public void run() {
+            for (ItemInfoWithIcon info : mInfos) {
+                mIconCache.updateToHighResIcon(info);
+            }
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onBatchLoaded();
+                }
+            });
+        }
+    }
+}
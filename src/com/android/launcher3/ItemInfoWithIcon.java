@@ -18,6 +18,8 @@ package com.android.launcher3;
 
 import android.graphics.Bitmap;
 
+import com.android.launcher3.util.LabelSortKey;
+
 /**
  * Represents an ItemInfo which also holds an icon.
  */
@@ -33,11 +35,17 @@ public abstract class ItemInfoWithIcon extends ItemInfo {
      */
     public boolean usingLowResIcon;
 
+    /**
+     * Key to sort the item by its title, computed when first sorted.
+     */
+    public LabelSortKey sortKey;
+
     protected ItemInfoWithIcon() { }
 
     protected ItemInfoWithIcon(ItemInfoWithIcon info) {
         super(info);
         iconBitmap = info.iconBitmap;
         usingLowResIcon = info.usingLowResIcon;
+        sortKey = info.sortKey;
     }
 }
@@ -103,10 +103,13 @@ import com.android.launcher3.dynamicui.ExtractedColors;
 import com.android.launcher3.dynamicui.WallpaperColorInfo;
 import com.android.launcher3.folder.Folder;
 import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.graphics.HolographicOutlineHelper;
 import com.android.launcher3.keyboard.CustomActionsPopup;
 import com.android.launcher3.keyboard.ViewGroupFocusHelper;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.logging.UserEventDispatcher;
+import com.android.launcher3.logging.UserEventLog;
 import com.android.launcher3.model.ModelWriter;
 import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.model.WidgetItem;
@@ -123,6 +126,7 @@ import com.android.launcher3.util.ActivityResultInfo;
 import com.android.launcher3.util.RunnableWithId;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ComponentKeyMapper;
+import com.android.launcher3.util.InteractionJankMonitor;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.MultiHashMap;
 import com.android.launcher3.util.PackageManagerHelper;
@@ -140,9 +144,12 @@ import com.android.launcher3.widget.WidgetHostViewLoader;
 import com.android.launcher3.widget.WidgetsContainerView;
 import com.better.launcher.gesture.GestureHelper;
 import com.better.launcher.views.GestureView;
+import com.google.protobuf.nano.MessageNano;
 
 
 import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -292,6 +299,7 @@ public class Launcher extends BaseActivity
     private boolean mShouldFadeInScrim;
 
     private PopupDataProvider mPopupDataProvider;
+    private IconUpgradeScheduler mIconUpgradeScheduler;
 
     // Determines how long to wait after a rotation before restoring the screen orientation to
     // match the sensor state.
@@ -375,6 +383,7 @@ public class Launcher extends BaseActivity
         if (LauncherAppState.PROFILE_STARTUP) {
             Trace.beginSection("Launcher-onCreate");
         }
+        StartupTimeline.begin(StartupTimeline.PHASE_LAUNCHER_CREATE);
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.preOnCreate();
@@ -406,6 +415,11 @@ public class Launcher extends BaseActivity
         mIconCache = app.getIconCache();
         mAccessibilityDelegate = new LauncherAccessibilityDelegate(this);
 
+        if (FeatureFlags.INTERACTION_JANK_MONITOR) {
+            InteractionJankMonitor.getInstance().setRefreshRate(
+                    getWindowManager().getDefaultDisplay().getRefreshRate());
+        }
+
         mDragController = new DragController(this);
         mAllAppsController = new AllAppsTransitionController(this);
         mStateTransitionAnimation = new LauncherStateTransitionAnimation(this, mAllAppsController);
@@ -425,6 +439,9 @@ public class Launcher extends BaseActivity
 
         mLauncherView = LayoutInflater.from(this).inflate(R.layout.launcher, null);
 
+        mIconUpgradeScheduler = new IconUpgradeScheduler(mIconCache);
+        mLauncherView.getViewTreeObserver().addOnScrollChangedListener(mIconUpgradeScheduler);
+
         setupViews();
         mDeviceProfile.layout(this, false /* notifyListeners */);
         loadExtractedColorsAndColorItems();
@@ -438,6 +455,7 @@ public class Launcher extends BaseActivity
 
         restoreState(savedInstanceState);
 
+        StartupTimeline.end(StartupTimeline.PHASE_LAUNCHER_CREATE);
         if (LauncherAppState.PROFILE_STARTUP) {
             Trace.endSection();
         }
@@ -634,6 +652,10 @@ public class Launcher extends BaseActivity
         return mPopupDataProvider;
     }
 
+    public IconUpgradeScheduler getIconUpgradeScheduler() {
+        return mIconUpgradeScheduler;
+    }
+
     /**
      * Returns whether we should delay spring loaded mode -- for shortcuts and widgets that have
      * a configuration step, this allows the proper animations to run after other transitions.
@@ -911,6 +933,7 @@ public class Launcher extends BaseActivity
         }
 
         NotificationListener.removeNotificationsChangedListener();
+        getUserEventDispatcher().flushEventLog();
     }
 
     @Override
@@ -1883,6 +1906,7 @@ public class Launcher extends BaseActivity
         LauncherAnimUtils.onDestroyActivity();
 
         clearPendingBinds();
+        mIconUpgradeScheduler.clear();
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onDestroy();
@@ -2850,6 +2874,13 @@ public class Launcher extends BaseActivity
 
             // This clears all widget bitmaps from the widget tray
             // TODO(hyunyoungs)
+
+            // Drop the buffers and outlines kept around for drag and drop.
+            HolographicOutlineHelper.getInstance(this).clearCaches();
+
+            if (mAppsView != null && mAppsView.getTransitionSnapshot() != null) {
+                mAppsView.getTransitionSnapshot().release();
+            }
         }
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onTrimMemory(level);
@@ -3928,10 +3959,20 @@ public class Launcher extends BaseActivity
     }
 
     /**
-     * $ adb shell dumpsys activity com.android.launcher3.Launcher [--all]
+     * $ adb shell dumpsys activity com.android.launcher3.Launcher [--all | --jank-proto]
      */
     @Override
     public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (FeatureFlags.INTERACTION_JANK_MONITOR
+                && args.length > 0 && TextUtils.equals(args[0], "--jank-proto")) {
+            try {
+                new FileOutputStream(fd).write(MessageNano.toByteArray(
+                        InteractionJankMonitor.getInstance().toProto()));
+            } catch (IOException e) {
+                Log.e(TAG, "Exception writing dumpsys --jank-proto", e);
+            }
+            return;
+        }
         super.dump(prefix, fd, writer, args);
 
         if (args.length > 0 && TextUtils.equals(args[0], "--all")) {
@@ -3968,6 +4009,18 @@ public class Launcher extends BaseActivity
         writer.print(prefix + "\tmWorkspaceLoading=" + mWorkspaceLoading);
         writer.print(" mPendingRequestArgs=" + mPendingRequestArgs);
         writer.println(" mPendingActivityResult=" + mPendingActivityResult);
+        if (FeatureFlags.INTERACTION_JANK_MONITOR) {
+            InteractionJankMonitor.getInstance().dump(prefix + "\t", writer);
+        }
+        if (FeatureFlags.USER_EVENT_LOG) {
+            UserEventLog.getInstance(this).dump(prefix + "\t", writer);
+        }
+        mIconCache.dump(prefix + "\t", writer);
+        writer.println(prefix + "\tView binding:");
+        mAppsView.getBindMetrics().dump(prefix + "\t\t", writer);
+        if (mWidgetsView != null) {
+            mWidgetsView.getBindMetrics().dump(prefix + "\t\t", writer);
+        }
 
         mModel.dumpState(prefix, fd, writer, args);
 
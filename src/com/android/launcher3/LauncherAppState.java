@@ -29,6 +29,7 @@ import com.android.launcher3.compat.PackageInstallerCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.dynamicui.ExtractionUtils;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.notification.NotificationListener;
 import com.android.launcher3.util.ConfigMonitor;
 import com.android.launcher3.util.Preconditions;
@@ -89,6 +90,7 @@ public class LauncherAppState {
         }
         Log.v(Launcher.TAG, "LauncherAppState initiated");
         Preconditions.assertUIThread();
+        StartupTimeline.begin(StartupTimeline.PHASE_APP_STATE_INIT);
         mContext = context;
 
         if (TestingUtils.MEMORY_DUMP_ENABLED) {
@@ -96,7 +98,9 @@ public class LauncherAppState {
         }
 
         mInvariantDeviceProfile = new InvariantDeviceProfile(mContext);
+        StartupTimeline.begin(StartupTimeline.PHASE_ICON_CACHE_INIT);
         mIconCache = new IconCache(mContext, mInvariantDeviceProfile);
+        StartupTimeline.end(StartupTimeline.PHASE_ICON_CACHE_INIT);
         mWidgetCache = new WidgetPreviewLoader(mContext, mIconCache);
         mModel = new LauncherModel(this, mIconCache, AppFilter.newInstance(mContext));
 
@@ -139,6 +143,7 @@ public class LauncherAppState {
             };
             mNotificationBadgingObserver.register(NOTIFICATION_BADGING);
         }
+        StartupTimeline.end(StartupTimeline.PHASE_APP_STATE_INIT);
     }
 
     /**
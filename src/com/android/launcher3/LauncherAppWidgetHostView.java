@@ -63,6 +63,8 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
     @ViewDebug.ExportedProperty(category = "launcher")
     private int mPreviousOrientation;
 
+    private int mUpdateCount;
+
     private float mSlop;
 
     @ViewDebug.ExportedProperty(category = "launcher")
@@ -112,6 +114,13 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         return mInflater.inflate(R.layout.appwidget_error, this, false);
     }
 
+    /**
+     * Returns the number of times the views of this widget were updated.
+     */
+    public int getUpdateCount() {
+        return mUpdateCount;
+    }
+
     public void updateLastInflationOrientation() {
         mPreviousOrientation = mContext.getResources().getConfiguration().orientation;
     }
@@ -121,6 +130,7 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         // Store the orientation in which the widget was inflated
         updateLastInflationOrientation();
         super.updateAppWidget(remoteViews);
+        mUpdateCount++;
 
         // The provider info or the views might have changed.
         checkIfAutoAdvance();
@@ -22,6 +22,9 @@ public class LauncherFiles {
 
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
     public static final String APP_ICONS_DB = "app_icons.db";
+    public static final String MODEL_SNAPSHOT = "model_snapshot.pb";
+    public static final String COMPILED_LAYOUT = "compiled_layout.pb";
+    public static final String STARTUP_TIMELINE = "startup_timeline.pb";
 
     public static final List<String> ALL_FILES = Collections.unmodifiableList(Arrays.asList(
             LAUNCHER_DB,
@@ -29,5 +32,8 @@ public class LauncherFiles {
             WIDGET_PREVIEWS_DB,
             MANAGED_USER_PREFERENCES_KEY + XML,
             DEVICE_PREFERENCES_KEY + XML,
-            APP_ICONS_DB));
+            APP_ICONS_DB,
+            MODEL_SNAPSHOT,
+            COMPILED_LAYOUT,
+            STARTUP_TIMELINE));
 }
@@ -57,6 +57,7 @@ import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ItemInfoMatcher;
+import com.android.launcher3.util.LabelSortKey;
 import com.android.launcher3.util.MultiHashMap;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
@@ -202,9 +203,9 @@ public class LauncherModel extends BroadcastReceiver
         return new ModelWriter(mApp.getContext(), sBgDataModel, hasVerticalHotseat);
     }
 
-    static void checkItemInfoLocked(
+    static void checkItemInfo(
             final long itemId, final ItemInfo item, StackTraceElement[] stackTrace) {
-        ItemInfo modelItem = sBgDataModel.itemsIdMap.get(itemId);
+        ItemInfo modelItem = sBgDataModel.getSnapshot().itemsIdMap.get(itemId);
         if (modelItem != null && item != modelItem) {
             // check all the data is consistent
             if (modelItem instanceof ShortcutInfo && item instanceof ShortcutInfo) {
@@ -245,9 +246,7 @@ public class LauncherModel extends BroadcastReceiver
         final long itemId = item.id;
         Runnable r = new Runnable() {
             public void run() {
-                synchronized (sBgDataModel) {
-                    checkItemInfoLocked(itemId, item, stackTrace);
-                }
+                checkItemInfo(itemId, item, stackTrace);
             }
         };
         runOnWorkerThread(r);
@@ -295,6 +294,7 @@ public class LauncherModel extends BroadcastReceiver
                 synchronized (sBgDataModel) {
                     sBgDataModel.workspaceScreens.clear();
                     sBgDataModel.workspaceScreens.addAll(screensCopy);
+                    sBgDataModel.publishSnapshot();
                 }
             }
         };
@@ -382,7 +382,9 @@ public class LauncherModel extends BroadcastReceiver
 
         final String action = intent.getAction();
         if (Intent.ACTION_LOCALE_CHANGED.equals(action)) {
-            // If we have changed locale we need to clear out the labels in all apps/workspace.
+            // If we have changed locale we need to clear out the labels in all apps/workspace,
+            // and the sort keys computed with the previous collator.
+            LabelSortKey.onLocaleChanged();
             forceReload();
         } else if (Intent.ACTION_MANAGED_PROFILE_ADDED.equals(action)
                 || Intent.ACTION_MANAGED_PROFILE_REMOVED.equals(action)) {
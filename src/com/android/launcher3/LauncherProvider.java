@@ -32,6 +32,7 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -58,7 +59,10 @@ import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.dynamicui.ExtractionUtils;
 import com.android.launcher3.graphics.IconShapeOverride;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.logging.StartupTimeline;
+import com.android.launcher3.model.CompiledLayout;
 import com.android.launcher3.model.DbDowngradeHelper;
+import com.android.launcher3.provider.ImportDataTask;
 import com.android.launcher3.provider.LauncherDbUtils;
 import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
 import com.android.launcher3.provider.RestoreDbTask;
@@ -105,6 +109,8 @@ public class LauncherProvider extends ContentProvider {
     public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
         LauncherAppState appState = LauncherAppState.getInstanceNoCreate();
         if (appState == null || !appState.getModel().isModelLoaded()) {
+            // Until the model is loaded, only report how far the start went.
+            StartupTimeline.dump("", writer);
             return;
         }
         appState.getModel().dumpState("", fd, writer, args);
@@ -304,14 +310,14 @@ public class LauncherProvider extends ContentProvider {
 
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         try (SQLiteTransaction t = new SQLiteTransaction(db)) {
-            int numValues = values.length;
-            for (int i = 0; i < numValues; i++) {
-                addModifiedTime(values[i]);
-                if (dbInsertAndCheck(mOpenHelper, db, args.table, null, values[i]) < 0) {
-                    return 0;
-                }
+            for (ContentValues value : values) {
+                addModifiedTime(value);
             }
+            mOpenHelper.bulkInsertAndCheck(db, args.table, values);
             t.commit();
+        } catch (SQLException e) {
+            Log.e(TAG, "Error inserting " + values.length + " rows", e);
+            return 0;
         }
 
         notifyListeners();
@@ -422,10 +428,37 @@ public class LauncherProvider extends ContentProvider {
                 mOpenHelper.removeGhostWidgets(mOpenHelper.getWritableDatabase());
                 return null;
             }
+            case LauncherSettings.Settings.METHOD_IMPORT_DATA: {
+                return importData(arg);
+            }
         }
         return null;
     }
 
+    /**
+     * Imports the workspace of the launcher providing {@param sourceAuthority}. The imported
+     * rows are written in a single transaction, so that a failed import leaves the DB untouched.
+     * @return null if the import failed.
+     */
+    private Bundle importData(String sourceAuthority) {
+        boolean imported;
+        try {
+            imported = ImportDataTask.importWorkspace(getContext(), mOpenHelper, sourceAuthority);
+        } catch (Exception e) {
+            FileLog.e(TAG, "Failed to import data from " + sourceAuthority, e);
+            // The ids allocated by the import are not valid anymore.
+            mOpenHelper.resetIds();
+            return null;
+        }
+        if (imported) {
+            clearFlagEmptyDbCreated();
+            notifyListeners();
+        }
+        Bundle result = new Bundle();
+        result.putBoolean(LauncherSettings.Settings.EXTRA_VALUE, imported);
+        return result;
+    }
+
     /**
      * Deletes any empty folder from the DB.
      * @return Ids of deleted folders.
@@ -598,6 +631,15 @@ public class LauncherProvider extends ContentProvider {
             mWidgetHostResetHandler = widgetHostResetHandler;
         }
 
+        /**
+         * Reads the max ids from the DB again, after a transaction allocating ids was rolled back.
+         */
+        public void resetIds() {
+            mMaxItemId = -1;
+            mMaxScreenId = -1;
+            initIds();
+        }
+
         protected void initIds() {
             // In the case where neither onCreate nor onUpgrade gets called, we read the maxId from
             // the DB here
@@ -1046,6 +1088,64 @@ public class LauncherProvider extends ContentProvider {
             return dbInsertAndCheck(this, db, Favorites.TABLE_NAME, null, values);
         }
 
+        /**
+         * Inserts all the rows of {@param values} in {@param table}. Rows of a bulk insert
+         * usually share the same columns, so the insert statement is compiled once and only
+         * recompiled when the column set changes. Should be called within a transaction.
+         * @throws SQLException if a row could not be inserted.
+         */
+        public void bulkInsertAndCheck(SQLiteDatabase db, String table, ContentValues[] values) {
+            SQLiteStatement insert = null;
+            String[] columns = null;
+            try {
+                for (ContentValues value : values) {
+                    if (!value.containsKey(LauncherSettings.ChangeLogColumns._ID)) {
+                        throw new RuntimeException(
+                                "Error: attempting to add item without specifying an id");
+                    }
+                    if (columns == null || !hasSameColumns(value, columns)) {
+                        Utilities.closeSilently(insert);
+                        columns = value.keySet().toArray(new String[value.size()]);
+                        insert = db.compileStatement(buildInsertStatement(table, columns));
+                    }
+                    insert.clearBindings();
+                    for (int j = 0; j < columns.length; j++) {
+                        DatabaseUtils.bindObjectToProgram(insert, j + 1, value.get(columns[j]));
+                    }
+                    checkId(table, value);
+                    insert.executeInsert();
+                }
+            } finally {
+                Utilities.closeSilently(insert);
+            }
+        }
+
+        private static boolean hasSameColumns(ContentValues values, String[] columns) {
+            if (values.size() != columns.length) {
+                return false;
+            }
+            for (String column : columns) {
+                if (!values.containsKey(column)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String buildInsertStatement(String table, String[] columns) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+            StringBuilder bindArgs = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sql.append(',');
+                    bindArgs.append(',');
+                }
+                sql.append(columns[i]);
+                bindArgs.append('?');
+            }
+            return sql.append(") VALUES (").append(bindArgs).append(')').toString();
+        }
+
         public void checkId(String table, ContentValues values) {
             long id = values.getAsLong(LauncherSettings.BaseLauncherColumns._ID);
             if (WorkspaceScreens.TABLE_NAME.equals(table)) {
@@ -1078,8 +1178,17 @@ public class LauncherProvider extends ContentProvider {
 
         @Thunk int loadFavorites(SQLiteDatabase db, AutoInstallsLayout loader) {
             ArrayList<Long> screenIds = new ArrayList<Long>();
-            // TODO: Use multiple loaders with fall-back and transaction.
-            int count = loader.loadLayout(db, screenIds);
+            int count = -1;
+            CompiledLayout compiled = FeatureFlags.COMPILED_LAYOUT_CACHE
+                    ? CompiledLayout.loadIfValid(mContext, loader) : null;
+            if (compiled != null) {
+                count = compiled.replay(mContext, db, loader.mAppWidgetHost, screenIds);
+            }
+            boolean parsed = count < 0;
+            if (parsed) {
+                // TODO: Use multiple loaders with fall-back and transaction.
+                count = loader.loadLayout(db, screenIds);
+            }
 
             // Add the screens specified by the items above
             Collections.sort(screenIds);
@@ -1100,6 +1209,9 @@ public class LauncherProvider extends ContentProvider {
             mMaxItemId = initializeMaxItemId(db);
             mMaxScreenId = initializeMaxScreenId(db);
 
+            if (FeatureFlags.COMPILED_LAYOUT_CACHE && parsed && count > 0) {
+                CompiledLayout.write(mContext, db, loader, count, screenIds);
+            }
             return count;
         }
     }
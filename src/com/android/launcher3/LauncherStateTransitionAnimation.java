@@ -33,6 +33,7 @@ import com.android.launcher3.allapps.AllAppsTransitionController;
 import com.android.launcher3.anim.AnimationLayerSet;
 import com.android.launcher3.anim.CircleRevealOutlineProvider;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.util.InteractionJankMonitor;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.WidgetsContainerView;
 
@@ -689,10 +690,12 @@ public class LauncherStateTransitionAnimation {
             mCurrentAnimation.cancel();
             mCurrentAnimation = null;
         }
+        InteractionJankMonitor.end(InteractionJankMonitor.STATE_TRANSITION);
     }
 
     @Thunk void cleanupAnimation() {
         mCurrentAnimation = null;
+        InteractionJankMonitor.end(InteractionJankMonitor.STATE_TRANSITION);
     }
 
     private class StartAnimRunnable implements Runnable {
@@ -713,6 +716,7 @@ public class LauncherStateTransitionAnimation {
             if (mViewToFocus != null) {
                 mViewToFocus.requestFocus();
             }
+            InteractionJankMonitor.begin(InteractionJankMonitor.STATE_TRANSITION);
             mAnim.start();
         }
     }
@@ -49,6 +49,7 @@ import android.view.animation.Interpolator;
 import com.android.launcher3.anim.PropertyListBuilder;
 import com.android.launcher3.pageindicators.PageIndicator;
 import com.android.launcher3.touch.OverScroll;
+import com.android.launcher3.util.InteractionJankMonitor;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
 
@@ -431,6 +432,7 @@ public abstract class PagedView extends ViewGroup implements ViewGroup.OnHierarc
     protected void pageBeginTransition() {
         if (!mIsPageInTransition) {
             mIsPageInTransition = true;
+            InteractionJankMonitor.begin(InteractionJankMonitor.PAGE_SCROLL);
             onPageBeginTransition();
         }
     }
@@ -438,6 +440,7 @@ public abstract class PagedView extends ViewGroup implements ViewGroup.OnHierarc
     protected void pageEndTransition() {
         if (mIsPageInTransition) {
             mIsPageInTransition = false;
+            InteractionJankMonitor.end(InteractionJankMonitor.PAGE_SCROLL);
             onPageEndTransition();
         }
     }
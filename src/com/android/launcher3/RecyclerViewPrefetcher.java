@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+
+/**
+ * Inflates the views of a {@link BaseRecyclerView} into its recycled view pool before they are
+ * needed:
+ * <ul>
+ *   <li> While the UI thread is idle, so that the first time the list is shown does not inflate
+ *        every visible item.
+ *   <li> While fast scrolling, so that the pool holds a view for every item laid out by the
+ *        next jumps, as many as the scroll velocity requires.
+ * </ul>
+ * The views are only created here. They are bound by the RecyclerView when it lays them out, and
+ * the items ahead of a regular scroll or fling are prefetched by its own GapWorker.
+ * The work is done in small slices, so it does not delay the frames drawn meanwhile.
+ */
+public class RecyclerViewPrefetcher implements MessageQueue.IdleHandler, Runnable {
+
+    // The time spent in each slice of pre-inflation.
+    private static final long SLICE_BUDGET_NANOS = 4 * 1000000;
+    // How far ahead, in time at the current fast scroll velocity, the views are inflated.
+    private static final long LOOKAHEAD_MS = 200;
+
+    private final RecyclerView mRv;
+    private final ArrayList<RecyclerView.ViewHolder> mPooledHolders = new ArrayList<>();
+
+    private RecyclerView.Adapter mAdapter;
+
+    private int mItemsPerRow = 1;
+    private int mRowsPerScreen = 1;
+
+    private int mPreinflateViewType;
+    private int mPreinflateTarget;
+    private int mPreinflateCount;
+    private boolean mIdleHandlerAdded;
+
+    private int mLastFastScrollPosition = RecyclerView.NO_POSITION;
+    private long mLastFastScrollTime;
+    private int mFastScrollTarget;
+
+    public RecyclerViewPrefetcher(RecyclerView rv) {
+        mRv = rv;
+    }
+
+    public void onAdapterChanged(RecyclerView.Adapter adapter) {
+        if (mAdapter == adapter) {
+            return;
+        }
+        mAdapter = adapter;
+        mPreinflateCount = 0;
+    }
+
+    /**
+     * Sets the number of items in each row, and the number of rows visible at once.
+     */
+    public void setGridSize(int itemsPerRow, int rowsPerScreen) {
+        mItemsPerRow = Math.max(1, itemsPerRow);
+        mRowsPerScreen = Math.max(1, rowsPerScreen);
+    }
+
+    /**
+     * Inflates views of {@param viewType} into the recycled view pool when the UI thread is
+     * idle, until {@param count} of them were created. The pool must be able to hold them.
+     */
+    public void preinflate(int viewType, int count) {
+        if (viewType != mPreinflateViewType) {
+            mPreinflateViewType = viewType;
+            mPreinflateCount = 0;
+        }
+        mPreinflateTarget = count;
+        if (mPreinflateCount < mPreinflateTarget && !mIdleHandlerAdded) {
+            mIdleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (mAdapter == null) {
+            mIdleHandlerAdded = false;
+            return false;
+        }
+        RecyclerView.RecycledViewPool pool = mRv.getRecycledViewPool();
+        long start = System.nanoTime();
+        while (mPreinflateCount < mPreinflateTarget
+                && System.nanoTime() - start < SLICE_BUDGET_NANOS) {
+            pool.putRecycledView(mAdapter.createViewHolder(mRv, mPreinflateViewType));
+            mPreinflateCount++;
+        }
+        mIdleHandlerAdded = mPreinflateCount < mPreinflateTarget;
+        return mIdleHandlerAdded;
+    }
+
+    /**
+     * Called when the fast scroller moves the list to {@param position}. Enough views for the
+     * items which will be laid out next, according to the velocity of the scroll, are inflated
+     * into the pool before the next frame.
+     */
+    public void onFastScroll(int position) {
+        long now = SystemClock.uptimeMillis();
+        int lastPosition = mLastFastScrollPosition;
+        long elapsed = now - mLastFastScrollTime;
+        mLastFastScrollPosition = position;
+        mLastFastScrollTime = now;
+        if (lastPosition == RecyclerView.NO_POSITION || position == lastPosition || elapsed <= 0) {
+            return;
+        }
+
+        // Items per millisecond, rounded to whole rows ahead with at least one row.
+        float velocity = (float) (position - lastPosition) / elapsed;
+        int screenItems = mItemsPerRow * mRowsPerScreen;
+        int rowsAhead = (int) Math.ceil(Math.abs(velocity) * LOOKAHEAD_MS / mItemsPerRow);
+        int itemsAhead = Math.min(Math.max(rowsAhead, 1) * mItemsPerRow, screenItems);
+        // The pool never holds more than the views inflated when idle.
+        mFastScrollTarget = Math.min(itemsAhead, mPreinflateTarget);
+        mRv.removeCallbacks(this);
+        mRv.post(this);
+    }
+
+    /**
+     * Called when the fast scroll ended, to stop inflating views.
+     */
+    public void onFastScrollCompleted() {
+        mLastFastScrollPosition = RecyclerView.NO_POSITION;
+        mFastScrollTarget = 0;
+        mRv.removeCallbacks(this);
+    }
+
+    @Override
+    public void run() {
+        if (mAdapter == null || mFastScrollTarget <= 0) {
+            return;
+        }
+        // Count the views already in the pool, by taking them out and putting them back.
+        RecyclerView.RecycledViewPool pool = mRv.getRecycledViewPool();
+        RecyclerView.ViewHolder holder;
+        while (mPooledHolders.size() < mFastScrollTarget
+                && (holder = pool.getRecycledView(mPreinflateViewType)) != null) {
+            mPooledHolders.add(holder);
+        }
+
+        long startTime = System.nanoTime();
+        boolean done = true;
+        while (mPooledHolders.size() < mFastScrollTarget) {
+            if (System.nanoTime() - startTime > SLICE_BUDGET_NANOS) {
+                // Continue after the next frame.
+                done = false;
+                break;
+            }
+            mPooledHolders.add(mAdapter.createViewHolder(mRv, mPreinflateViewType));
+        }
+
+        for (int i = mPooledHolders.size() - 1; i >= 0; i--) {
+            pool.putRecycledView(mPooledHolders.get(i));
+        }
+        mPooledHolders.clear();
+        if (!done) {
+            mRv.post(this);
+        }
+    }
+}
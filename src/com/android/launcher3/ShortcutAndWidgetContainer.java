@@ -24,7 +24,8 @@ import android.view.ViewGroup;
 
 import com.android.launcher3.CellLayout.ContainerType;
 
-public class ShortcutAndWidgetContainer extends ViewGroup {
+public class ShortcutAndWidgetContainer extends ViewGroup
+        implements ViewGroup.OnHierarchyChangeListener {
     static final String TAG = "ShortcutAndWidgetContainer";
 
     // These are temporary variables to prevent having to allocate a new object just to
@@ -47,6 +48,28 @@ public class ShortcutAndWidgetContainer extends ViewGroup {
         mLauncher = Launcher.getLauncher(context);
         mWallpaperManager = WallpaperManager.getInstance(context);
         mContainerType = containerType;
+        setOnHierarchyChangeListener(this);
+    }
+
+    @ContainerType
+    public int getContainerType() {
+        return mContainerType;
+    }
+
+    @Override
+    public void onChildViewAdded(View parent, View child) {
+        Workspace workspace = mLauncher.getWorkspace();
+        if (workspace != null) {
+            workspace.getViewRegistry().onViewAdded(this, child);
+        }
+    }
+
+    @Override
+    public void onChildViewRemoved(View parent, View child) {
+        Workspace workspace = mLauncher.getWorkspace();
+        if (workspace != null) {
+            workspace.getViewRegistry().onViewRemoved(this, child);
+        }
     }
 
     public void setCellDimensions(int cellWidth, int cellHeight, int countX, int countY) {
@@ -51,6 +51,7 @@ import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityManager;
 
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.graphics.IconStorage;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
@@ -293,6 +294,8 @@ public final class Utilities {
      * @param samples The approximate max number of samples to use.
      */
     public static int findDominantColorByHue(Bitmap bitmap, int samples) {
+        // The pixels of hardware bitmaps can't be read.
+        bitmap = IconStorage.toSoftware(bitmap);
         final int height = bitmap.getHeight();
         final int width = bitmap.getWidth();
         int sampleStride = (int) Math.sqrt((height * width) / samples);
@@ -392,6 +395,7 @@ public final class Utilities {
      * Compresses the bitmap to a byte array for serialization.
      */
     public static byte[] flattenBitmap(Bitmap bitmap) {
+        bitmap = IconStorage.toSoftware(bitmap);
         // Try go guesstimate how much space the icon will take when serialized
         // to avoid unnecessary allocations/copies during the write.
         int size = bitmap.getWidth() * bitmap.getHeight() * 4;
@@ -28,6 +28,7 @@ import android.annotation.SuppressLint;
 import android.app.WallpaperManager;
 import android.appwidget.AppWidgetHostView;
 import android.appwidget.AppWidgetProviderInfo;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
@@ -39,6 +40,7 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.Parcelable;
 import android.os.UserHandle;
+import android.util.ArraySet;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.Property;
@@ -74,6 +76,7 @@ import com.android.launcher3.folder.Folder;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.folder.PreviewBackground;
 import com.android.launcher3.graphics.DragPreviewProvider;
+import com.android.launcher3.graphics.HolographicOutlineHelper;
 import com.android.launcher3.graphics.PreloadIconDrawable;
 import com.android.launcher3.popup.PopupContainerWithArrow;
 import com.android.launcher3.shortcuts.ShortcutDragPreviewProvider;
@@ -178,6 +181,8 @@ public class Workspace extends PagedView
     @Thunk final Launcher mLauncher;
     @Thunk DragController mDragController;
 
+    private final WorkspaceViewRegistry mViewRegistry = new WorkspaceViewRegistry(this);
+
     // These are temporary variables to prevent having to allocate a new object just to
     // return an (x, y) value from helper functions. Do NOT use them to maintain other state.
     private static final Rect sTempRect = new Rect();
@@ -554,9 +559,25 @@ public class Workspace extends PagedView
         cl.setOnInterceptTouchListener(this);
         cl.setClickable(true);
         cl.setImportantForAccessibility(IMPORTANT_FOR_ACCESSIBILITY_NO);
+        mViewRegistry.onContainerAdded(cl.getShortcutsAndWidgets());
         super.onChildViewAdded(parent, child);
     }
 
+    @Override
+    public void onChildViewRemoved(View parent, View child) {
+        if (child instanceof CellLayout) {
+            mViewRegistry.onContainerRemoved(((CellLayout) child).getShortcutsAndWidgets());
+        }
+        super.onChildViewRemoved(parent, child);
+    }
+
+    /**
+     * Returns the index of the views bound to the workspace, hotseat and their folders.
+     */
+    public WorkspaceViewRegistry getViewRegistry() {
+        return mViewRegistry;
+    }
+
     boolean isTouchActive() {
         return mTouchState != TOUCH_STATE_REST;
     }
@@ -2192,7 +2213,8 @@ public class Workspace extends PagedView
         DragView dv = mDragController.startDrag(b, dragLayerX, dragLayerY, source,
                 dragObject, dragVisualizeOffset, dragRect, scale, dragOptions);
         dv.setIntrinsicIconScaleFactor(source.getIntrinsicIconScaleFactor());
-        b.recycle();
+        // The DragView keeps its own copy of the preview.
+        HolographicOutlineHelper.getInstance(mLauncher).releaseDragBitmap(b);
         return dv;
     }
 
@@ -2919,10 +2941,9 @@ public class Workspace extends PagedView
                     && !mReorderAlarm.alarmPending() && (mLastReorderX != reorderX ||
                     mLastReorderY != reorderY)) {
 
-                int[] resultSpan = new int[2];
                 mDragTargetLayout.performReorder((int) mDragViewVisualCenter[0],
                         (int) mDragViewVisualCenter[1], minSpanX, minSpanY, item.spanX, item.spanY,
-                        child, mTargetCell, resultSpan, CellLayout.MODE_SHOW_REORDER_HINT);
+                        child, mTargetCell, null, CellLayout.MODE_SHOW_REORDER_HINT);
 
                 // Otherwise, if we aren't adding to or creating a folder and there's no pending
                 // reorder, then we schedule a reorder
@@ -3698,34 +3719,28 @@ public class Workspace extends PagedView
     }
 
     public View getHomescreenIconByItemId(final long id) {
-        return getFirstMatch(new ItemOperator() {
-
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                return info != null && info.id == id;
-            }
-        });
+        return mViewRegistry.getView(id, false /* includeFolderContents */);
     }
 
     public View getViewForTag(final Object tag) {
-        return getFirstMatch(new ItemOperator() {
-
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                return info == tag;
-            }
-        });
+        if (!(tag instanceof ItemInfo)) {
+            return null;
+        }
+        View v = mViewRegistry.getView(((ItemInfo) tag).id, false /* includeFolderContents */);
+        return v != null && v.getTag() == tag ? v : null;
     }
 
     public LauncherAppWidgetHostView getWidgetForAppWidgetId(final int appWidgetId) {
-        return (LauncherAppWidgetHostView) getFirstMatch(new ItemOperator() {
-
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                return (info instanceof LauncherAppWidgetInfo) &&
-                        ((LauncherAppWidgetInfo) info).appWidgetId == appWidgetId;
+        ArraySet<View> widgets = mViewRegistry.getWidgetViews();
+        for (int i = widgets.size() - 1; i >= 0; i--) {
+            View v = widgets.valueAt(i);
+            Object info = v.getTag();
+            if ((info instanceof LauncherAppWidgetInfo) &&
+                    ((LauncherAppWidgetInfo) info).appWidgetId == appWidgetId) {
+                return (LauncherAppWidgetHostView) v;
             }
-        });
+        }
+        return null;
     }
 
     public View getFirstMatch(final ItemOperator operator) {
@@ -3762,6 +3777,55 @@ public class Workspace extends PagedView
      * shortcuts are not removed.
      */
     public void removeItemsByMatcher(final ItemInfoMatcher matcher) {
+        HashSet<PackageUserKey> targetPackages = matcher.getTargetPackages();
+        if (targetPackages != null) {
+            removeItemsByMatcher(matcher, targetPackages);
+        } else {
+            removeItemsByMatcherInAllLayouts(matcher);
+        }
+
+        // Strip all the empty screens
+        stripEmptyScreens();
+    }
+
+    /**
+     * Removes the items matching {@param matcher} by only checking the views which target one of
+     * {@param targetPackages}.
+     */
+    private void removeItemsByMatcher(
+            ItemInfoMatcher matcher, HashSet<PackageUserKey> targetPackages) {
+        // The candidates are a copy, as removing views updates the registry.
+        for (View child : mViewRegistry.getViews(targetPackages)) {
+            if (!(child.getTag() instanceof ItemInfo)) {
+                continue;
+            }
+            ItemInfo itemToRemove = (ItemInfo) child.getTag();
+            ComponentName cn = itemToRemove instanceof LauncherAppWidgetInfo
+                    ? ((LauncherAppWidgetInfo) itemToRemove).providerName
+                    : itemToRemove.getTargetComponent();
+            if (cn == null || !matcher.matches(itemToRemove, cn)) {
+                continue;
+            }
+
+            if (!mViewRegistry.isInFolder(child)) {
+                // Note: We can not remove the view directly from CellLayoutChildren as this
+                // does not re-mark the spaces as unoccupied.
+                ((CellLayout) child.getParent().getParent()).removeViewInLayout(child);
+                if (child instanceof DropTarget) {
+                    mDragController.removeDropTarget((DropTarget) child);
+                }
+            } else if (itemToRemove instanceof ShortcutInfo) {
+                View parent = mViewRegistry.getView(itemToRemove.container, false);
+                if (parent != null && parent.getTag() instanceof FolderInfo) {
+                    FolderInfo folderInfo = (FolderInfo) parent.getTag();
+                    folderInfo.prepareAutoUpdate();
+                    folderInfo.remove((ShortcutInfo) itemToRemove, false);
+                }
+            }
+        }
+    }
+
+    private void removeItemsByMatcherInAllLayouts(final ItemInfoMatcher matcher) {
         ArrayList<CellLayout> cellLayouts = getWorkspaceAndHotseatCellLayouts();
         for (final CellLayout layoutParent: cellLayouts) {
             final ViewGroup layout = layoutParent.getShortcutsAndWidgets();
@@ -3798,9 +3862,6 @@ public class Workspace extends PagedView
                 }
             }
         }
-
-        // Strip all the empty screens
-        stripEmptyScreens();
     }
 
     public interface ItemOperator {
@@ -3853,80 +3914,55 @@ public class Workspace extends PagedView
 
     void updateShortcuts(ArrayList<ShortcutInfo> shortcuts) {
         int total  = shortcuts.size();
-        final HashSet<ShortcutInfo> updates = new HashSet<>(total);
         final HashSet<Long> folderIds = new HashSet<>();
 
         for (int i = 0; i < total; i++) {
-            ShortcutInfo s = shortcuts.get(i);
-            updates.add(s);
-            folderIds.add(s.container);
-        }
-
-        mapOverItems(MAP_RECURSE, new ItemOperator() {
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                if (info instanceof ShortcutInfo && v instanceof BubbleTextView &&
-                        updates.contains(info)) {
-                    ShortcutInfo si = (ShortcutInfo) info;
-                    BubbleTextView shortcut = (BubbleTextView) v;
-                    Drawable oldIcon = shortcut.getIcon();
-                    boolean oldPromiseState = (oldIcon instanceof PreloadIconDrawable)
-                            && ((PreloadIconDrawable) oldIcon).hasNotCompleted();
-                    shortcut.applyFromShortcutInfo(si, si.isPromise() != oldPromiseState);
-                }
-                // process all the shortcuts
-                return false;
+            ShortcutInfo si = shortcuts.get(i);
+            View v = mViewRegistry.getView(si.id, true /* includeFolderContents */);
+            if (v instanceof BubbleTextView && v.getTag() == si) {
+                BubbleTextView shortcut = (BubbleTextView) v;
+                Drawable oldIcon = shortcut.getIcon();
+                boolean oldPromiseState = (oldIcon instanceof PreloadIconDrawable)
+                        && ((PreloadIconDrawable) oldIcon).hasNotCompleted();
+                shortcut.applyFromShortcutInfo(si, si.isPromise() != oldPromiseState);
             }
-        });
+            folderIds.add(si.container);
+        }
 
         // Update folder icons
-        mapOverItems(MAP_NO_RECURSE, new ItemOperator() {
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                if (info instanceof FolderInfo && folderIds.contains(info.id)) {
-                    ((FolderInfo) info).itemsChanged(false);
-                }
-                // process all the shortcuts
-                return false;
+        for (long folderId : folderIds) {
+            View v = mViewRegistry.getView(folderId, false /* includeFolderContents */);
+            if (v != null && v.getTag() instanceof FolderInfo) {
+                ((FolderInfo) v.getTag()).itemsChanged(false);
             }
-        });
+        }
     }
 
     public void updateIconBadges(final Set<PackageUserKey> updatedBadges) {
         final PackageUserKey packageUserKey = new PackageUserKey(null, null);
         final HashSet<Long> folderIds = new HashSet<>();
-        mapOverItems(MAP_RECURSE, new ItemOperator() {
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                if (info instanceof ShortcutInfo && v instanceof BubbleTextView
-                        && packageUserKey.updateFromItemInfo(info)) {
-                    if (updatedBadges.contains(packageUserKey)) {
-                        ((BubbleTextView) v).applyBadgeState(info, true /* animate */);
-                        folderIds.add(info.container);
-                    }
-                }
-                // process all the shortcuts
-                return false;
+        for (View v : mViewRegistry.getViews(updatedBadges)) {
+            Object info = v.getTag();
+            if (info instanceof ShortcutInfo && v instanceof BubbleTextView
+                    && packageUserKey.updateFromItemInfo((ItemInfo) info)
+                    && updatedBadges.contains(packageUserKey)) {
+                ((BubbleTextView) v).applyBadgeState((ItemInfo) info, true /* animate */);
+                folderIds.add(((ItemInfo) info).container);
             }
-        });
+        }
 
         // Update folder icons
-        mapOverItems(MAP_NO_RECURSE, new ItemOperator() {
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                if (info instanceof FolderInfo && folderIds.contains(info.id)
-                        && v instanceof FolderIcon) {
-                    FolderBadgeInfo folderBadgeInfo = new FolderBadgeInfo();
-                    for (ShortcutInfo si : ((FolderInfo) info).contents) {
-                        folderBadgeInfo.addBadgeInfo(mLauncher.getPopupDataProvider()
-                                .getBadgeInfoForItem(si));
-                    }
-                    ((FolderIcon) v).setBadgeInfo(folderBadgeInfo);
+        for (long folderId : folderIds) {
+            View v = mViewRegistry.getView(folderId, false /* includeFolderContents */);
+            if (v instanceof FolderIcon && v.getTag() instanceof FolderInfo) {
+                FolderBadgeInfo folderBadgeInfo = new FolderBadgeInfo();
+                for (ShortcutInfo si : ((FolderInfo) v.getTag()).contents) {
+                    folderBadgeInfo.addBadgeInfo(mLauncher.getPopupDataProvider()
+                            .getBadgeInfoForItem(si));
                 }
-                // process all the shortcuts
-                return false;
+                ((FolderIcon) v).setBadgeInfo(folderBadgeInfo);
             }
-        });
+        }
     }
 
     public void removeAbandonedPromise(String packageName, UserHandle user) {
@@ -3938,21 +3974,18 @@ public class Workspace extends PagedView
     }
 
     public void updateRestoreItems(final HashSet<ItemInfo> updates) {
-        mapOverItems(MAP_RECURSE, new ItemOperator() {
-            @Override
-            public boolean evaluate(ItemInfo info, View v) {
-                if (info instanceof ShortcutInfo && v instanceof BubbleTextView
-                        && updates.contains(info)) {
-                    ((BubbleTextView) v).applyPromiseState(false /* promiseStateChanged */);
-                } else if (v instanceof PendingAppWidgetHostView
-                        && info instanceof LauncherAppWidgetInfo
-                        && updates.contains(info)) {
-                    ((PendingAppWidgetHostView) v).applyState();
-                }
-                // process all the shortcuts
-                return false;
+        for (ItemInfo info : updates) {
+            View v = mViewRegistry.getView(info.id, true /* includeFolderContents */);
+            if (v == null || v.getTag() != info) {
+                continue;
             }
-        });
+            if (info instanceof ShortcutInfo && v instanceof BubbleTextView) {
+                ((BubbleTextView) v).applyPromiseState(false /* promiseStateChanged */);
+            } else if (v instanceof PendingAppWidgetHostView
+                    && info instanceof LauncherAppWidgetInfo) {
+                ((PendingAppWidgetHostView) v).applyState();
+            }
+        }
     }
 
     public void widgetsRestored(final ArrayList<LauncherAppWidgetInfo> changedInfo) {
@@ -3976,18 +4009,13 @@ public class Workspace extends PagedView
             } else {
                 // widgetRefresh will automatically run when the packages are updated.
                 // For now just update the progress bars
-                mapOverItems(MAP_NO_RECURSE, new ItemOperator() {
-                    @Override
-                    public boolean evaluate(ItemInfo info, View view) {
-                        if (view instanceof PendingAppWidgetHostView
-                                && changedInfo.contains(info)) {
-                            ((LauncherAppWidgetInfo) info).installProgress = 100;
-                            ((PendingAppWidgetHostView) view).applyState();
-                        }
-                        // process all the shortcuts
-                        return false;
+                for (LauncherAppWidgetInfo info : changedInfo) {
+                    View view = mViewRegistry.getView(info.id, false /* includeFolderContents */);
+                    if (view instanceof PendingAppWidgetHostView && view.getTag() == info) {
+                        info.installProgress = 100;
+                        ((PendingAppWidgetHostView) view).applyState();
                     }
-                });
+                }
             }
         }
     }
@@ -4114,17 +4142,13 @@ public class Workspace extends PagedView
 
             mRefreshPending = false;
 
-            mapOverItems(MAP_NO_RECURSE, new ItemOperator() {
-                @Override
-                public boolean evaluate(ItemInfo info, View view) {
-                    if (view instanceof PendingAppWidgetHostView && mInfos.contains(info)) {
-                        mLauncher.removeItem(view, info, false /* deleteFromDb */);
-                        mLauncher.bindAppWidget((LauncherAppWidgetInfo) info);
-                    }
-                    // process all the shortcuts
-                    return false;
+            for (LauncherAppWidgetInfo info : mInfos) {
+                View view = mViewRegistry.getView(info.id, false /* includeFolderContents */);
+                if (view instanceof PendingAppWidgetHostView && view.getTag() == info) {
+                    mLauncher.removeItem(view, info, false /* deleteFromDb */);
+                    mLauncher.bindAppWidget(info);
                 }
-            });
+            }
         }
 
         @Override
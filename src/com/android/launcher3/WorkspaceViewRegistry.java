@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import com.android.launcher3.folder.Folder;
+import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.util.LongArrayMap;
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * Index of the item views bound to the workspace and hotseat, including the views of the items
+ * inside their folders. It is kept up to date from the hierarchy changes of the
+ * {@link ShortcutAndWidgetContainer}s, so that lookups by item id or by package do not need to
+ * traverse every page and folder.
+ */
+public class WorkspaceViewRegistry {
+
+    private static class Entry {
+        final long id;
+        final boolean inFolder;
+
+        Entry(long id, boolean inFolder) {
+            this.id = id;
+            this.inFolder = inFolder;
+        }
+    }
+
+    private final ArrayMap<View, Entry> mEntries = new ArrayMap<>();
+    private final LongArrayMap<View> mViewsById = new LongArrayMap<>();
+    private final ArraySet<View> mWidgetViews = new ArraySet<>();
+
+    private final Workspace mWorkspace;
+
+    public WorkspaceViewRegistry(Workspace workspace) {
+        mWorkspace = workspace;
+    }
+
+    /**
+     * Called when {@param child} is added to {@param container}.
+     */
+    public void onViewAdded(ShortcutAndWidgetContainer container, View child) {
+        int containerType = container.getContainerType();
+        if (containerType == CellLayout.HOTSEAT) {
+            add(child, false);
+        } else if (containerType == CellLayout.WORKSPACE) {
+            // Pages which are not attached yet are registered by onContainerAdded.
+            ViewParent page = container.getParent();
+            if (page != null && page.getParent() == mWorkspace) {
+                add(child, false);
+            }
+        } else {
+            // Only track folder contents while the folder icon itself is bound.
+            Folder folder = findFolder(container);
+            if (folder != null && mEntries.containsKey(folder.getFolderIcon())) {
+                add(child, true);
+            }
+        }
+    }
+
+    /**
+     * Called when {@param child} is removed from {@param container}.
+     */
+    public void onViewRemoved(ShortcutAndWidgetContainer container, View child) {
+        remove(child);
+    }
+
+    /**
+     * Called when a page, along with all its views, is added to the workspace.
+     */
+    public void onContainerAdded(ShortcutAndWidgetContainer container) {
+        int count = container.getChildCount();
+        for (int i = 0; i < count; i++) {
+            add(container.getChildAt(i), false);
+        }
+    }
+
+    /**
+     * Called when a page, along with all its views, is removed from the workspace.
+     */
+    public void onContainerRemoved(ShortcutAndWidgetContainer container) {
+        int count = container.getChildCount();
+        for (int i = 0; i < count; i++) {
+            remove(container.getChildAt(i));
+        }
+    }
+
+    @VisibleForTesting
+    void add(View view, boolean inFolder) {
+        if (!(view.getTag() instanceof ItemInfo)) {
+            return;
+        }
+        remove(view);
+
+        ItemInfo info = (ItemInfo) view.getTag();
+        mEntries.put(view, new Entry(info.id, inFolder));
+        mViewsById.put(info.id, view);
+        if (info instanceof LauncherAppWidgetInfo) {
+            mWidgetViews.add(view);
+        }
+
+        if (view instanceof FolderIcon) {
+            for (View child : ((FolderIcon) view).getFolder().getItemsInReadingOrder()) {
+                add(child, true);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void remove(View view) {
+        Entry entry = mEntries.remove(view);
+        if (entry == null) {
+            return;
+        }
+        if (mViewsById.get(entry.id) == view) {
+            mViewsById.remove(entry.id);
+        }
+        mWidgetViews.remove(view);
+
+        if (view instanceof FolderIcon) {
+            for (View child : ((FolderIcon) view).getFolder().getItemsInReadingOrder()) {
+                remove(child);
+            }
+        }
+    }
+
+    /**
+     * Returns the view bound to the item with {@param id}, or null. Items inside folders are
+     * only returned if {@param includeFolderContents} is true.
+     */
+    public View getView(long id, boolean includeFolderContents) {
+        View view = mViewsById.get(id);
+        if (view != null && !includeFolderContents && mEntries.get(view).inFolder) {
+            return null;
+        }
+        return view;
+    }
+
+    /**
+     * Returns the views of the items targeting a component in one of {@param keys}, including
+     * the items inside folders. The package is read from the current tag of each view, as the
+     * target of a bound item can change, e.g. when a promise icon is replaced by the app.
+     */
+    public ArrayList<View> getViews(Set<PackageUserKey> keys) {
+        ArrayList<View> views = new ArrayList<>();
+        int count = mEntries.size();
+        for (int i = 0; i < count; i++) {
+            View view = mEntries.keyAt(i);
+            if (view.getTag() instanceof ItemInfo) {
+                PackageUserKey key = getPackageUserKey((ItemInfo) view.getTag());
+                if (key != null && keys.contains(key)) {
+                    views.add(view);
+                }
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Returns the views of all the bound widgets.
+     */
+    public ArraySet<View> getWidgetViews() {
+        return mWidgetViews;
+    }
+
+    public boolean isInFolder(View view) {
+        Entry entry = mEntries.get(view);
+        return entry != null && entry.inFolder;
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    private static PackageUserKey getPackageUserKey(ItemInfo info) {
+        ComponentName cn = info instanceof LauncherAppWidgetInfo
+                ? ((LauncherAppWidgetInfo) info).providerName
+                : info.getTargetComponent();
+        return cn == null || info.user == null
+                ? null : new PackageUserKey(cn.getPackageName(), info.user);
+    }
+
+    private static Folder findFolder(ViewGroup container) {
+        ViewParent parent = container.getParent();
+        while (parent != null && !(parent instanceof Folder)) {
+            parent = parent.getParent();
+        }
+        return (Folder) parent;
+    }
+}
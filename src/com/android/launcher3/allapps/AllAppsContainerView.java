@@ -49,6 +49,7 @@ import com.android.launcher3.dragndrop.DragOptions;
 import com.android.launcher3.folder.Folder;
 import com.android.launcher3.keyboard.FocusedItemDecorator;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+import com.android.launcher3.util.BindMetrics;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ComponentKeyMapper;
 import com.android.launcher3.util.PackageUserKey;
@@ -77,6 +78,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
     private int mNumPredictedAppsPerRow;
 
     private SpringAnimationHandler mSpringAnimationHandler;
+    private AllAppsTransitionSnapshot mTransitionSnapshot;
 
     public AllAppsContainerView(Context context) {
         this(context, null);
@@ -126,6 +128,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
      */
     public void setApps(List<AppInfo> apps) {
         mApps.setApps(apps);
+        mAppsRecyclerView.preinflateIcons(mLauncher.getDeviceProfile());
     }
 
     /**
@@ -137,6 +140,9 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
     }
 
     public void updatePromiseAppProgress(PromiseAppInfo app) {
+        if (mTransitionSnapshot != null) {
+            mTransitionSnapshot.invalidate();
+        }
         int childCount = mAppsRecyclerView.getChildCount();
         for (int i = 0; i < childCount; i++) {
             View child = mAppsRecyclerView.getChildAt(i);
@@ -229,6 +235,14 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
         mAppsRecyclerView.preMeasureViews(mAdapter);
         mAdapter.setIconFocusListener(focusedItemDecorator.getFocusListener());
 
+        if (FeatureFlags.ALL_APPS_SNAPSHOT_TRANSITION) {
+            AllAppsRecyclerViewContainerView content =
+                    (AllAppsRecyclerViewContainerView) getContentView();
+            mTransitionSnapshot = new AllAppsTransitionSnapshot(mAppsRecyclerView, content,
+                    mAdapter);
+            content.setTransitionSnapshot(mTransitionSnapshot);
+        }
+
         getRevealView().setVisibility(View.VISIBLE);
         getContentView().setVisibility(View.VISIBLE);
         getContentView().setBackground(null);
@@ -354,6 +368,9 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
     }
 
     public void updateIconBadges(Set<PackageUserKey> updatedBadges) {
+        if (mTransitionSnapshot != null) {
+            mTransitionSnapshot.invalidate();
+        }
         final PackageUserKey packageUserKey = new PackageUserKey(null, null);
         final int n = mAppsRecyclerView.getChildCount();
         for (int i = 0; i < n; i++) {
@@ -371,4 +388,16 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
     public SpringAnimationHandler getSpringAnimationHandler() {
         return mSpringAnimationHandler;
     }
+
+    public BindMetrics getBindMetrics() {
+        return mAdapter.getBindMetrics();
+    }
+
+    /**
+     * Returns the snapshot drawn during the transition to and from all apps, or null if the
+     * live view is always animated.
+     */
+    public AllAppsTransitionSnapshot getTransitionSnapshot() {
+        return mTransitionSnapshot;
+    }
 }
@@ -44,6 +44,7 @@ import com.android.launcher3.anim.SpringAnimationHandler;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.discovery.AppDiscoveryAppInfo;
 import com.android.launcher3.discovery.AppDiscoveryItemView;
+import com.android.launcher3.util.BindMetrics;
 import com.android.launcher3.util.PackageManagerHelper;
 
 import java.util.List;
@@ -208,6 +209,8 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
 
     private SpringAnimationHandler<ViewHolder> mSpringAnimationHandler;
 
+    private final BindMetrics mBindMetrics = new BindMetrics("AllAppsGridAdapter");
+
     public AllAppsGridAdapter(Launcher launcher, AlphabeticalAppsList apps, View.OnClickListener
             iconClickListener, View.OnLongClickListener iconLongClickListener) {
         Resources res = launcher.getResources();
@@ -282,11 +285,21 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
         return mGridLayoutMgr;
     }
 
+    public BindMetrics getBindMetrics() {
+        return mBindMetrics;
+    }
+
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        long start = System.nanoTime();
+        ViewHolder holder = inflateViewHolder(parent, viewType);
+        mBindMetrics.recordInflate(start);
+        return holder;
+    }
+
+    private ViewHolder inflateViewHolder(ViewGroup parent, int viewType) {
         switch (viewType) {
             case VIEW_TYPE_ICON:
-            case VIEW_TYPE_PREDICTION_ICON:
                 BubbleTextView icon = (BubbleTextView) mLayoutInflater.inflate(
                         R.layout.all_apps_icon, parent, false);
                 icon.setOnClickListener(mIconClickListener);
@@ -331,9 +344,14 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
+        long start = System.nanoTime();
+        bindItem(holder, position);
+        mBindMetrics.recordBind(start);
+    }
+
+    private void bindItem(ViewHolder holder, int position) {
         switch (holder.getItemViewType()) {
             case VIEW_TYPE_ICON:
-            case VIEW_TYPE_PREDICTION_ICON:
                 AppInfo info = mApps.getAdapterItems().get(position).appInfo;
                 BubbleTextView icon = (BubbleTextView) holder.itemView;
                 icon.applyFromApplicationInfo(info);
@@ -403,7 +421,9 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
     @Override
     public int getItemViewType(int position) {
         AlphabeticalAppsList.AdapterItem item = mApps.getAdapterItems().get(position);
-        return item.viewType;
+        // The predicted apps row and the apps grid use the same icon views and bind them in the
+        // same way, so they share a single view type and hence their recycled views.
+        return isIconViewType(item.viewType) ? VIEW_TYPE_ICON : item.viewType;
     }
 
     /**
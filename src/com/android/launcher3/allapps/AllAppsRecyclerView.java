@@ -138,13 +138,34 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
         mNumAppsPerRow = numAppsPerRow;
 
         RecyclerView.RecycledViewPool pool = getRecycledViewPool();
-        int approxRows = (int) Math.ceil(grid.availableHeightPx / grid.allAppsIconSizePx);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH, 1);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET_DIVIDER, 1);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET, 1);
-        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON, approxRows * mNumAppsPerRow);
-        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_PREDICTION_ICON, mNumAppsPerRow);
+        // Also holds the icons of the predicted apps row, which share the icon view type.
+        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON,
+                getIconPoolSize(grid, mNumAppsPerRow) + mNumAppsPerRow);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_PREDICTION_DIVIDER, 1);
+        mPrefetcher.setGridSize(mNumAppsPerRow, getRowsPerScreen(grid));
+    }
+
+    /**
+     * Inflates enough icons for two screens of all apps while the UI thread is idle, so that
+     * opening all apps for the first time does not inflate them.
+     */
+    public void preinflateIcons(DeviceProfile grid) {
+        int numAppsPerRow = grid.inv.numColumns;
+        int poolSize = getIconPoolSize(grid, numAppsPerRow);
+        getRecycledViewPool().setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON, poolSize);
+        mPrefetcher.setGridSize(numAppsPerRow, getRowsPerScreen(grid));
+        mPrefetcher.preinflate(AllAppsGridAdapter.VIEW_TYPE_ICON, poolSize);
+    }
+
+    private static int getRowsPerScreen(DeviceProfile grid) {
+        return (int) Math.ceil((float) grid.availableHeightPx / grid.allAppsCellHeightPx);
+    }
+
+    private static int getIconPoolSize(DeviceProfile grid, int numAppsPerRow) {
+        return getRowsPerScreen(grid) * numAppsPerRow * 2;
     }
 
     /**
@@ -318,7 +339,9 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
         // Update the fast scroll
         int scrollY = getCurrentScrollY();
         int availableScrollHeight = getAvailableScrollHeight();
-        mFastScrollHelper.smoothScrollToSection(scrollY, availableScrollHeight, lastInfo);
+        if (mFastScrollHelper.smoothScrollToSection(scrollY, availableScrollHeight, lastInfo)) {
+            mPrefetcher.onFastScroll(lastInfo.fastScrollToItem.position);
+        }
         return lastInfo.sectionName;
     }
 
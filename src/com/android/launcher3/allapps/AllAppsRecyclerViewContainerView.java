@@ -17,6 +17,7 @@ package com.android.launcher3.allapps;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
@@ -37,6 +38,7 @@ public class AllAppsRecyclerViewContainerView extends RelativeLayout
         implements BubbleTextShadowHandler {
 
     private final ClickShadowView mTouchFeedbackView;
+    private AllAppsTransitionSnapshot mTransitionSnapshot;
 
     public AllAppsRecyclerViewContainerView(Context context) {
         this(context, null);
@@ -59,6 +61,21 @@ public class AllAppsRecyclerViewContainerView extends RelativeLayout
         addView(mTouchFeedbackView, size, size);
     }
 
+    public void setTransitionSnapshot(AllAppsTransitionSnapshot snapshot) {
+        mTransitionSnapshot = snapshot;
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (mTransitionSnapshot != null && mTransitionSnapshot.isShowing()
+                && child.getId() == R.id.apps_list_view) {
+            // Skip drawing the icons of the recycler view during the transition.
+            mTransitionSnapshot.draw(canvas);
+            return false;
+        }
+        return super.drawChild(canvas, child, drawingTime);
+    }
+
     @Override
     public void setPressedIcon(BubbleTextView icon, Bitmap background) {
         if (icon == null || background == null) {
@@ -29,6 +29,7 @@ import com.android.launcher3.graphics.GradientView;
 import com.android.launcher3.touch.SwipeDetector;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Action;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
+import com.android.launcher3.util.InteractionJankMonitor;
 import com.android.launcher3.util.SystemUiController;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.TouchController;
@@ -105,6 +106,10 @@ public class AllAppsTransitionController implements TouchController, SwipeDetect
     private SpringAnimation mSearchSpring;
     private SpringAnimationHandler mSpringAnimationHandler;
 
+    // The interaction recording the frames of the running transition, which differs when a
+    // snapshot of all apps is animated instead of the live view, or -1.
+    private int mTransitionInteraction = -1;
+
     public AllAppsTransitionController(Launcher l) {
         mLauncher = l;
         mDetector = new SwipeDetector(l, this, SwipeDetector.VERTICAL);
@@ -227,7 +232,7 @@ public class AllAppsTransitionController implements TouchController, SwipeDetect
                             containerType);
                 }
                 mLauncher.showAppsView(true /* animated */, false /* updatePredictedApps */);
-                if (hasSpringAnimationHandler()) {
+                if (hasSpringAnimationHandler() && !isSnapshotShowing()) {
                     mSpringAnimationHandler.add(mSearchSpring, true /* setDefaultValues */);
                     // The icons are moving upwards, so we go to 0 from 1. (y-axis 1 is below 0.)
                     mSpringAnimationHandler.animateToFinalPosition(0 /* pos */, 1 /* startValue */);
@@ -275,9 +280,43 @@ public class AllAppsTransitionController implements TouchController, SwipeDetect
                     mAppsView.setRevealDrawableColor(mHotseatBackgroundColor);
                 }
             }
+            onTransitionStart();
         }
     }
 
+    private void onTransitionStart() {
+        AllAppsTransitionSnapshot snapshot = mAppsView.getTransitionSnapshot();
+        int interaction = snapshot != null && snapshot.show()
+                ? InteractionJankMonitor.ALL_APPS_SNAPSHOT_TRANSITION
+                : InteractionJankMonitor.ALL_APPS_TRANSITION;
+        if (mTransitionInteraction != interaction) {
+            if (mTransitionInteraction != -1) {
+                InteractionJankMonitor.end(mTransitionInteraction);
+            }
+            mTransitionInteraction = interaction;
+            InteractionJankMonitor.begin(interaction);
+        }
+    }
+
+    /**
+     * Swaps the snapshot, if any, for the live view once the transition has settled.
+     */
+    private void onTransitionEnd(boolean closed) {
+        if (mTransitionInteraction != -1) {
+            InteractionJankMonitor.end(mTransitionInteraction);
+            mTransitionInteraction = -1;
+        }
+        AllAppsTransitionSnapshot snapshot = mAppsView.getTransitionSnapshot();
+        if (snapshot != null) {
+            snapshot.onTransitionEnd(closed);
+        }
+    }
+
+    private boolean isSnapshotShowing() {
+        AllAppsTransitionSnapshot snapshot = mAppsView.getTransitionSnapshot();
+        return snapshot != null && snapshot.isShowing();
+    }
+
     private void updateLightStatusBar(float shift) {
         // Do not modify status bar on landscape as all apps is not full bleed.
         if (!FeatureFlags.LAUNCHER3_GRADIENT_ALL_APPS
@@ -506,6 +545,7 @@ public class AllAppsTransitionController implements TouchController, SwipeDetect
             mSpringAnimationHandler.reset();
         }
         setProgress(0f);
+        onTransitionEnd(false /* closed */);
     }
 
     public void finishPullDown() {
@@ -517,6 +557,7 @@ public class AllAppsTransitionController implements TouchController, SwipeDetect
             mSpringAnimationHandler.reset();
         }
         setProgress(1f);
+        onTransitionEnd(true /* closed */);
     }
 
     private void cancelAnimation() {
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.allapps;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.VisibleForTesting;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * A bitmap of the first screen of all apps (the predicted apps and the first rows), which is
+ * drawn instead of the live {@link AllAppsRecyclerView} while all apps is being pulled up or
+ * down. This way a frame of the transition only moves a single bitmap, instead of drawing
+ * every visible icon, label and badge.
+ *
+ * The snapshot is captured when the UI thread is idle while all apps is closed, and is
+ * invalidated whenever the list of apps or the visible icons change.
+ */
+public class AllAppsTransitionSnapshot implements MessageQueue.IdleHandler {
+
+    private final AllAppsRecyclerView mAppsRecyclerView;
+    private final View mContainer;
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private Bitmap mBitmap;
+    private boolean mValid;
+    private boolean mShowing;
+    private boolean mCaptureScheduled;
+    private boolean mReleasePending;
+
+    public AllAppsTransitionSnapshot(AllAppsRecyclerView appsRecyclerView, View container,
+            RecyclerView.Adapter<?> adapter) {
+        mAppsRecyclerView = appsRecyclerView;
+        mContainer = container;
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                invalidate();
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                invalidate();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                invalidate();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                invalidate();
+            }
+
+            @Override
+            public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * Marks the snapshot as out of date. If it is currently shown, the live view is shown
+     * instead for the rest of the transition. If all apps is closed, the snapshot is captured
+     * again once the UI thread is idle.
+     */
+    public void invalidate() {
+        mValid = false;
+        hide();
+        if (!mAppsRecyclerView.isShown()) {
+            scheduleCapture();
+        }
+    }
+
+    /**
+     * Captures the snapshot the next time the UI thread is idle, if it is out of date.
+     */
+    public void scheduleCapture() {
+        if (!mValid && !mCaptureScheduled) {
+            mCaptureScheduled = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (!capture() && mAppsRecyclerView.isLayoutRequested()) {
+            // Try again once the pending layout is done.
+            return true;
+        }
+        mCaptureScheduled = false;
+        return false;
+    }
+
+    /**
+     * Draws the first screen of the recycler view into the snapshot, if it is laid out and
+     * scrolled to the top.
+     * @return whether the snapshot is valid.
+     */
+    public boolean capture() {
+        if (mValid && isSnapshotSizeValid()) {
+            return true;
+        }
+        AllAppsRecyclerView rv = mAppsRecyclerView;
+        if (mShowing || rv.getWidth() == 0 || rv.getHeight() == 0 || rv.isLayoutRequested()
+                || rv.getCurrentScrollY() != 0) {
+            return false;
+        }
+        if (!isSnapshotSizeValid()) {
+            mBitmap = Bitmap.createBitmap(rv.getWidth(), rv.getHeight(), Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        Canvas canvas = new Canvas(mBitmap);
+        rv.draw(canvas);
+        canvas.setBitmap(null);
+        mValid = true;
+        return true;
+    }
+
+    /**
+     * Starts drawing the snapshot in place of the recycler view.
+     * @return whether the snapshot is shown, or false if it is not available and the live view
+     * should be animated instead.
+     */
+    public boolean show() {
+        if (mShowing) {
+            return true;
+        }
+        if (mAppsRecyclerView.getCurrentScrollY() != 0 || !capture()) {
+            return false;
+        }
+        mShowing = true;
+        mContainer.invalidate();
+        return true;
+    }
+
+    /**
+     * Switches back to drawing the live recycler view.
+     */
+    public void hide() {
+        if (mShowing) {
+            mShowing = false;
+            mContainer.invalidate();
+            mAppsRecyclerView.invalidate();
+            if (mReleasePending) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * Switches back to the live recycler view once a transition has settled. The snapshot is
+     * captured again for the next transition if all apps is {@param closed}, and dropped if it
+     * is open, as it is captured again when all apps closes.
+     */
+    public void onTransitionEnd(boolean closed) {
+        hide();
+        if (closed) {
+            scheduleCapture();
+        } else {
+            release();
+        }
+    }
+
+    public boolean isShowing() {
+        return mShowing;
+    }
+
+    /**
+     * Draws the snapshot at the position of the recycler view, in the coordinates of its parent.
+     */
+    public void draw(Canvas canvas) {
+        View rv = mAppsRecyclerView;
+        canvas.drawBitmap(mBitmap, rv.getLeft() + rv.getTranslationX(),
+                rv.getTop() + rv.getTranslationY(), mPaint);
+    }
+
+    /**
+     * Drops the snapshot bitmap, or does it when the transition ends if it is being shown. It is
+     * captured again before the next transition. The bitmap is not recycled as it may still be
+     * referenced by the last frame drawn.
+     */
+    public void release() {
+        if (mShowing) {
+            mReleasePending = true;
+            return;
+        }
+        mReleasePending = false;
+        mValid = false;
+        mBitmap = null;
+    }
+
+    @VisibleForTesting
+    boolean hasBitmap() {
+        return mBitmap != null;
+    }
+
+    private boolean isSnapshotSizeValid() {
+        return mBitmap != null && mBitmap.getWidth() == mAppsRecyclerView.getWidth()
+                && mBitmap.getHeight() == mAppsRecyclerView.getHeight();
+    }
+}
@@ -181,7 +181,6 @@ public class AlphabeticalAppsList {
 
     // The of ordered component names as a result of a search query
     private ArrayList<ComponentKey> mSearchResults;
-    private HashMap<CharSequence, String> mCachedSectionNames = new HashMap<>();
     private AllAppsGridAdapter mAdapter;
     private AlphabeticIndexCompat mIndexer;
     private AppInfoComparator mAppNameComparator;
@@ -417,7 +416,7 @@ public class AlphabeticalAppsList {
             TreeMap<String, ArrayList<AppInfo>> sectionMap = new TreeMap<>(new LabelComparator());
             for (AppInfo info : mApps) {
                 // Add the section to the cache
-                String sectionName = getAndUpdateCachedSectionName(info.title);
+                String sectionName = mIndexer.computeSectionName(info);
 
                 // Add it to the mapping
                 ArrayList<AppInfo> sectionApps = sectionMap.get(sectionName);
@@ -437,7 +436,7 @@ public class AlphabeticalAppsList {
             // Just compute the section headers for use below
             for (AppInfo info : mApps) {
                 // Add the section to the cache
-                getAndUpdateCachedSectionName(info.title);
+                mIndexer.computeSectionName(info);
             }
         }
 
@@ -447,7 +446,7 @@ public class AlphabeticalAppsList {
 
     /**
      * Updates the set of filtered apps with the current filter.  At this point, we expect
-     * mCachedSectionNames to have been calculated for the set of all apps in mApps.
+     * the section names to have been calculated for the set of all apps in mApps.
      */
     private void updateAdapterItems() {
         refillAdapterItems();
@@ -512,7 +511,7 @@ public class AlphabeticalAppsList {
         // Recreate the filtered and sectioned apps (for convenience for the grid layout) from the
         // ordered set of sections
         for (AppInfo info : getFiltersAppInfos()) {
-            String sectionName = getAndUpdateCachedSectionName(info.title);
+            String sectionName = mIndexer.computeSectionName(info);
 
             // Create a new section if the section names do not match
             if (!sectionName.equals(lastSectionName)) {
@@ -649,17 +648,4 @@ public class AlphabeticalAppsList {
         return mapper.getItem(mComponentToAppMap);
     }
 
-    /**
-     * Returns the cached section name for the given title, recomputing and updating the cache if
-     * the title has no cached section name.
-     */
-    private String getAndUpdateCachedSectionName(CharSequence title) {
-        String sectionName = mCachedSectionNames.get(title);
-        if (sectionName == null) {
-            sectionName = mIndexer.computeSectionName(title);
-            mCachedSectionNames.put(title, sectionName);
-        }
-        return sectionName;
-    }
-
 }
@@ -21,29 +21,32 @@ import android.os.UserHandle;
 
 import com.android.launcher3.AppInfo;
 import com.android.launcher3.compat.UserManagerCompat;
-import com.android.launcher3.util.LabelComparator;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.util.LabelSortKey;
 
 import java.util.Comparator;
 
 /**
- * A comparator to arrange items based on user profiles.
+ * A comparator to arrange items based on user profiles. Titles are compared with their
+ * {@link LabelSortKey}.
  */
 public class AppInfoComparator implements Comparator<AppInfo> {
 
     private final UserManagerCompat mUserManager;
     private final UserHandle mMyUser;
-    private final LabelComparator mLabelComparator;
 
     public AppInfoComparator(Context context) {
         mUserManager = UserManagerCompat.getInstance(context);
         mMyUser = Process.myUserHandle();
-        mLabelComparator = new LabelComparator();
     }
 
     @Override
     public int compare(AppInfo a, AppInfo b) {
+        LabelSortKey aKey = LabelSortKey.get(a, mUserManager);
+        LabelSortKey bKey = LabelSortKey.get(b, mUserManager);
+
         // Order by the title in the current locale
-        int result = mLabelComparator.compare(a.title.toString(), b.title.toString());
+        int result = aKey.compareTitle(bKey);
         if (result != 0) {
             return result;
         }
@@ -57,9 +60,7 @@ public class AppInfoComparator implements Comparator<AppInfo> {
         if (mMyUser.equals(a.user)) {
             return -1;
         } else {
-            Long aUserSerial = mUserManager.getSerialNumberForUser(a.user);
-            Long bUserSerial = mUserManager.getSerialNumberForUser(b.user);
-            return aUserSerial.compareTo(bUserSerial);
+            return Utilities.longCompare(aKey.userSerial, bKey.userSerial);
         }
     }
 }
@@ -67,6 +67,16 @@ public class BadgeInfo {
         mNotificationKeys = new ArrayList<>();
     }
 
+    /**
+     * Creates a copy of {@param badgeInfo}, which is not affected by later changes to it.
+     */
+    public BadgeInfo(BadgeInfo badgeInfo) {
+        mPackageUserKey = badgeInfo.mPackageUserKey;
+        mNotificationKeys = new ArrayList<>(badgeInfo.mNotificationKeys);
+        mTotalCount = badgeInfo.mTotalCount;
+        mNotificationInfo = badgeInfo.mNotificationInfo;
+    }
+
     /**
      * Returns whether the notification was added or its count changed.
      */
@@ -78,10 +88,11 @@ public class BadgeInfo {
             if (prevKey.count == notificationKey.count) {
                 return false;
             }
-            // Notification was updated with a new count.
+            // Notification was updated with a new count. Replace the key rather than updating it,
+            // as it may be shared with copies of this badge.
             mTotalCount -= prevKey.count;
             mTotalCount += notificationKey.count;
-            prevKey.count = notificationKey.count;
+            mNotificationKeys.set(indexOfPrevKey, notificationKey);
             return true;
         }
         boolean added = mNotificationKeys.add(notificationKey);
@@ -95,11 +106,12 @@ public class BadgeInfo {
      * Returns whether the notification was removed (false if it didn't exist).
      */
     public boolean removeNotificationKey(NotificationKeyData notificationKey) {
-        boolean removed = mNotificationKeys.remove(notificationKey);
-        if (removed) {
-            mTotalCount -= notificationKey.count;
+        int index = mNotificationKeys.indexOf(notificationKey);
+        if (index == -1) {
+            return false;
         }
-        return removed;
+        mTotalCount -= mNotificationKeys.remove(index).count;
+        return true;
     }
 
     public List<NotificationKeyData> getNotificationKeys() {
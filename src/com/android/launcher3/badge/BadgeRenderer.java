@@ -26,6 +26,8 @@ import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.Shader;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.LongSparseArray;
 import android.util.SparseArray;
 
 import com.android.launcher3.R;
@@ -50,6 +52,13 @@ public class BadgeRenderer {
     private static final float STACK_OFFSET_PERCENTAGE_Y = 0.06f;
     private static final float DOT_SCALE = 0.6f;
 
+    private static final int MODE_DOT = 0;
+    private static final int MODE_TEXT = 1;
+    private static final int MODE_ICON = 2;
+    // Enough for the palettes of the badged icons visible at once.
+    @VisibleForTesting
+    static final int MAX_ATLAS_ENTRIES = 24;
+
     private final Context mContext;
     private final int mSize;
     private final int mCharSize;
@@ -60,9 +69,12 @@ public class BadgeRenderer {
     private final IconDrawer mLargeIconDrawer;
     private final IconDrawer mSmallIconDrawer;
     private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private final Paint mBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG
-            | Paint.FILTER_BITMAP_FLAG);
+    private final Paint mAtlasPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     private final SparseArray<Bitmap> mBackgroundsWithShadow;
+    // Fully composited badges, keyed by palette color, mode, count and stacking. This turns the
+    // badge draws of every frame of scrolling and transitions into a single drawBitmap().
+    private final LongSparseArray<AtlasEntry> mAtlas = new LongSparseArray<>();
+    private long mAtlasAccessCount;
 
     public BadgeRenderer(Context context, int iconSizePx) {
         mContext = context;
@@ -95,29 +107,24 @@ public class BadgeRenderer {
      */
     public void draw(Canvas canvas, IconPalette palette, @Nullable BadgeInfo badgeInfo,
             Rect iconBounds, float badgeScale, Point spaceForOffset) {
-        mTextPaint.setColor(palette.textColor);
         IconDrawer iconDrawer = badgeInfo != null && badgeInfo.isIconLarge()
                 ? mLargeIconDrawer : mSmallIconDrawer;
         Shader icon = badgeInfo == null ? null : badgeInfo.getNotificationIconForBadge(
                 mContext, palette.backgroundColor, mSize, iconDrawer.mPadding);
-        String notificationCount = badgeInfo == null ? "0"
-                : String.valueOf(badgeInfo.getNotificationCount());
-        int numChars = notificationCount.length();
-        int width = DOTS_ONLY ? mSize : mSize + mCharSize * (numChars - 1);
-        // Lazily load the background with shadow.
-        Bitmap backgroundWithShadow = mBackgroundsWithShadow.get(numChars);
-        if (backgroundWithShadow == null) {
-            backgroundWithShadow = new ShadowGenerator.Builder(Color.WHITE)
-                    .setupBlurForSize(mSize).createPill(width, mSize);
-            mBackgroundsWithShadow.put(numChars, backgroundWithShadow);
-        }
+        int count = badgeInfo == null ? 0 : badgeInfo.getNotificationCount();
+        int width = DOTS_ONLY ? mSize : mSize + mCharSize * (getNumChars(count) - 1);
+        boolean isText = !DOTS_ONLY && count != 0;
+        boolean isIcon = !DOTS_ONLY && icon != null;
+        boolean isDot = !(isText || isIcon);
+        boolean shouldStack = !isDot && badgeInfo != null
+                && badgeInfo.getNotificationKeys().size() > 1;
+        int mode = isText ? MODE_TEXT : isIcon ? MODE_ICON : MODE_DOT;
+        AtlasEntry badge = getAtlasEntry(palette, mode, isText ? count : 0, shouldStack);
+
         canvas.save(Canvas.MATRIX_SAVE_FLAG);
         // We draw the badge relative to its center.
         int badgeCenterX = iconBounds.right - width / 2;
         int badgeCenterY = iconBounds.top + mSize / 2;
-        boolean isText = !DOTS_ONLY && badgeInfo != null && badgeInfo.getNotificationCount() != 0;
-        boolean isIcon = !DOTS_ONLY && icon != null;
-        boolean isDot = !(isText || isIcon);
         if (isDot) {
             badgeScale *= DOT_SCALE;
         }
@@ -125,34 +132,121 @@ public class BadgeRenderer {
         int offsetY = Math.min(mOffset, spaceForOffset.y);
         canvas.translate(badgeCenterX + offsetX, badgeCenterY - offsetY);
         canvas.scale(badgeScale, badgeScale);
-        // Prepare the background and shadow and possible stacking effect.
-        mBackgroundPaint.setColorFilter(palette.backgroundColorMatrixFilter);
-        int backgroundWithShadowSize = backgroundWithShadow.getHeight(); // Same as width.
-        boolean shouldStack = !isDot && badgeInfo != null
-                && badgeInfo.getNotificationKeys().size() > 1;
-        if (shouldStack) {
-            int offsetDiffX = mStackOffsetX - mOffset;
-            int offsetDiffY = mStackOffsetY - mOffset;
-            canvas.translate(offsetDiffX, offsetDiffY);
-            canvas.drawBitmap(backgroundWithShadow, -backgroundWithShadowSize / 2,
-                    -backgroundWithShadowSize / 2, mBackgroundPaint);
-            canvas.translate(-offsetDiffX, -offsetDiffY);
+        canvas.drawBitmap(badge.bitmap, badge.left, badge.top, mAtlasPaint);
+        if (isIcon) {
+            // The notification icon changes with each notification, so only its background
+            // is part of the atlas.
+            iconDrawer.drawIcon(icon, canvas);
         }
+        canvas.restore();
+    }
+
+    /**
+     * Returns the fully composited badge for the given palette and contents, rendering it
+     * into the atlas if needed.
+     */
+    private AtlasEntry getAtlasEntry(IconPalette palette, int mode, int count, boolean stack) {
+        // The background color is derived from the dominant color, and only differs from it
+        // when the background is desaturated.
+        long key = ((long) palette.dominantColor << 32)
+                | (palette.backgroundColor != palette.dominantColor ? 1L << 31 : 0)
+                | (stack ? 1L << 30 : 0)
+                | ((long) mode << 28)
+                | count;
+        AtlasEntry entry = mAtlas.get(key);
+        if (entry == null) {
+            if (mAtlas.size() >= MAX_ATLAS_ENTRIES) {
+                evictLeastRecentlyUsed();
+            }
+            entry = createAtlasEntry(palette, mode, count, stack);
+            mAtlas.put(key, entry);
+        }
+        entry.lastUsed = ++mAtlasAccessCount;
+        return entry;
+    }
 
-        if (isText) {
-            canvas.drawBitmap(backgroundWithShadow, -backgroundWithShadowSize / 2,
-                    -backgroundWithShadowSize / 2, mBackgroundPaint);
+    private void evictLeastRecentlyUsed() {
+        int oldestIndex = 0;
+        for (int i = mAtlas.size() - 1; i > 0; i--) {
+            if (mAtlas.valueAt(i).lastUsed < mAtlas.valueAt(oldestIndex).lastUsed) {
+                oldestIndex = i;
+            }
+        }
+        // The bitmap is not recycled as it may still be referenced by a pending frame.
+        mAtlas.removeAt(oldestIndex);
+    }
+
+    private AtlasEntry createAtlasEntry(IconPalette palette, int mode, int count, boolean stack) {
+        String notificationCount = String.valueOf(count);
+        int numChars = notificationCount.length();
+        int width = DOTS_ONLY ? mSize : mSize + mCharSize * (numChars - 1);
+        // Lazily load the background with shadow.
+        Bitmap backgroundWithShadow = mBackgroundsWithShadow.get(numChars);
+        if (backgroundWithShadow == null) {
+            backgroundWithShadow = new ShadowGenerator.Builder(Color.WHITE)
+                    .setupBlurForSize(mSize).createPill(width, mSize);
+            mBackgroundsWithShadow.put(numChars, backgroundWithShadow);
+        }
+        int backgroundWithShadowSize = backgroundWithShadow.getHeight(); // Same as width.
+        int backgroundLeft = -backgroundWithShadowSize / 2;
+        int backgroundTop = -backgroundWithShadowSize / 2;
+        int offsetDiffX = stack ? mStackOffsetX - mOffset : 0;
+        int offsetDiffY = stack ? mStackOffsetY - mOffset : 0;
+
+        // Bounds of everything drawn for the badge, relative to its center.
+        int left = Math.min(backgroundLeft, backgroundLeft + offsetDiffX);
+        int top = Math.min(backgroundTop, backgroundTop + offsetDiffY);
+        int right = Math.max(backgroundLeft, backgroundLeft + offsetDiffX)
+                + backgroundWithShadow.getWidth();
+        int bottom = Math.max(backgroundTop, backgroundTop + offsetDiffY)
+                + backgroundWithShadow.getHeight();
+        Bitmap bitmap = Bitmap.createBitmap(right - left, bottom - top, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.translate(-left, -top);
+
+        Paint backgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        backgroundPaint.setColorFilter(mode == MODE_DOT
+                ? palette.saturatedBackgroundColorMatrixFilter
+                : palette.backgroundColorMatrixFilter);
+        if (stack) {
+            canvas.drawBitmap(backgroundWithShadow, backgroundLeft + offsetDiffX,
+                    backgroundTop + offsetDiffY, backgroundPaint);
+        }
+        canvas.drawBitmap(backgroundWithShadow, backgroundLeft, backgroundTop, backgroundPaint);
+        if (mode == MODE_TEXT) {
+            mTextPaint.setColor(palette.textColor);
             canvas.drawText(notificationCount, 0, mTextHeight / 2, mTextPaint);
-        } else if (isIcon) {
-            canvas.drawBitmap(backgroundWithShadow, -backgroundWithShadowSize / 2,
-                    -backgroundWithShadowSize / 2, mBackgroundPaint);
-            iconDrawer.drawIcon(icon, canvas);
-        } else if (isDot) {
-            mBackgroundPaint.setColorFilter(palette.saturatedBackgroundColorMatrixFilter);
-            canvas.drawBitmap(backgroundWithShadow, -backgroundWithShadowSize / 2,
-                    -backgroundWithShadowSize / 2, mBackgroundPaint);
         }
-        canvas.restore();
+        canvas.setBitmap(null);
+        return new AtlasEntry(bitmap, left, top);
+    }
+
+    private static int getNumChars(int count) {
+        int numChars = 1;
+        while (count >= 10) {
+            count /= 10;
+            numChars++;
+        }
+        return numChars;
+    }
+
+    @VisibleForTesting
+    int getAtlasSize() {
+        return mAtlas.size();
+    }
+
+    /** A badge drawn with its background, shadow and contents, positioned from its center. */
+    private static class AtlasEntry {
+        final Bitmap bitmap;
+        final float left;
+        final float top;
+        long lastUsed;
+
+        AtlasEntry(Bitmap bitmap, float left, float top) {
+            this.bitmap = bitmap;
+            this.left = left;
+            this.top = top;
+        }
     }
 
     /** Draws the notification icon with padding of a given size. */
@@ -7,17 +7,31 @@ import android.os.Build;
 import android.os.LocaleList;
 import android.util.Log;
 
+import com.android.launcher3.ItemInfoWithIcon;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.util.LabelSortKey;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Locale;
 
+/**
+ * Computes the section names of titles, using the alphabetic index of the current locales.
+ *
+ * The bucket labels are resolved once when the index is created, and the section name of an
+ * item is cached with its {@link LabelSortKey} until its title or the locale changes.
+ */
 public class AlphabeticIndexCompat {
     private static final String TAG = "AlphabeticIndexCompat";
 
     private static final String MID_DOT = "\u2219";
     private final BaseIndex mBaseIndex;
     private final String mDefaultMiscLabel;
+    private final UserManagerCompat mUserManager;
+
+    // Label of each bucket, and whether it is empty once trimmed.
+    private final String[] mBucketLabels;
+    private final boolean[] mBucketLabelEmpty;
 
     public AlphabeticIndexCompat(Context context) {
         BaseIndex index = null;
@@ -48,6 +62,29 @@ public class AlphabeticIndexCompat {
             // Dot
             mDefaultMiscLabel = MID_DOT;
         }
+        mUserManager = UserManagerCompat.getInstance(context);
+
+        int bucketCount = mBaseIndex.getBucketCount();
+        mBucketLabels = new String[bucketCount];
+        mBucketLabelEmpty = new boolean[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            mBucketLabels[i] = mBaseIndex.getBucketLabel(i);
+            mBucketLabelEmpty[i] = Utilities.trim(mBucketLabels[i]).isEmpty();
+        }
+    }
+
+    /**
+     * Returns the section name of the title of {@param info}, which is only computed again when
+     * its title changed.
+     */
+    public String computeSectionName(ItemInfoWithIcon info) {
+        LabelSortKey key = LabelSortKey.get(info, mUserManager);
+        String sectionName = key.getSectionName(this);
+        if (sectionName == null) {
+            sectionName = computeSectionName(info.title);
+            key.setSectionName(this, sectionName);
+        }
+        return sectionName;
     }
 
     /**
@@ -55,8 +92,17 @@ public class AlphabeticIndexCompat {
      */
     public String computeSectionName(CharSequence cs) {
         String s = Utilities.trim(cs);
-        String sectionName = mBaseIndex.getBucketLabel(mBaseIndex.getBucketIndex(s));
-        if (Utilities.trim(sectionName).isEmpty() && s.length() > 0) {
+        int bucketIndex = mBaseIndex.getBucketIndex(s);
+        String sectionName;
+        boolean sectionNameEmpty;
+        if (bucketIndex >= 0 && bucketIndex < mBucketLabels.length) {
+            sectionName = mBucketLabels[bucketIndex];
+            sectionNameEmpty = mBucketLabelEmpty[bucketIndex];
+        } else {
+            sectionName = mBaseIndex.getBucketLabel(bucketIndex);
+            sectionNameEmpty = Utilities.trim(sectionName).isEmpty();
+        }
+        if (sectionNameEmpty && s.length() > 0) {
             int c = s.codePointAt(0);
             boolean startsWithDigit = Character.isDigit(c);
             if (startsWithDigit) {
@@ -83,8 +129,17 @@ public class AlphabeticIndexCompat {
      */
     private static class BaseIndex {
 
-        private static final String BUCKETS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-";
-        private static final int UNKNOWN_BUCKET_INDEX = BUCKETS.length() - 1;
+        // Sorted, so that the bucket of a character is found with a binary search.
+        private static final char[] BUCKETS = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+        private static final int UNKNOWN_BUCKET_INDEX = 0;
+
+        private final boolean mDottedUpperCaseI;
+
+        BaseIndex() {
+            // Like String.toUpperCase, which upper cases i to a dotted I in these languages.
+            String language = Locale.getDefault().getLanguage();
+            mDottedUpperCaseI = "tr".equals(language) || "az".equals(language);
+        }
 
         /**
          * Returns the index of the bucket in which the given string should appear.
@@ -93,18 +148,26 @@ public class AlphabeticIndexCompat {
             if (s.isEmpty()) {
                 return UNKNOWN_BUCKET_INDEX;
             }
-            int index = BUCKETS.indexOf(s.substring(0, 1).toUpperCase());
-            if (index != -1) {
-                return index;
+            char c = s.charAt(0);
+            if (c == 'i' && mDottedUpperCaseI) {
+                return UNKNOWN_BUCKET_INDEX;
             }
-            return UNKNOWN_BUCKET_INDEX;
+            int index = Arrays.binarySearch(BUCKETS, Character.toUpperCase(c));
+            return index > UNKNOWN_BUCKET_INDEX ? index : UNKNOWN_BUCKET_INDEX;
+        }
+
+        /**
+         * Returns the number of buckets.
+         */
+        protected int getBucketCount() {
+            return BUCKETS.length;
         }
 
         /**
          * Returns the label for the bucket at the given index (as returned by getBucketIndex).
          */
         protected String getBucketLabel(int index) {
-            return BUCKETS.substring(index, index + 1);
+            return String.valueOf(BUCKETS[index]);
         }
     }
 
@@ -117,12 +180,14 @@ public class AlphabeticIndexCompat {
         private Object mAlphabeticIndex;
         private Method mGetBucketIndexMethod;
         private Method mGetBucketLabelMethod;
+        private Method mGetBucketCountMethod;
 
         public AlphabeticIndexV16(Context context) throws Exception {
             Locale curLocale = context.getResources().getConfiguration().locale;
             Class clazz = Class.forName("libcore.icu.AlphabeticIndex");
             mGetBucketIndexMethod = clazz.getDeclaredMethod("getBucketIndex", String.class);
             mGetBucketLabelMethod = clazz.getDeclaredMethod("getBucketLabel", int.class);
+            mGetBucketCountMethod = clazz.getDeclaredMethod("getBucketCount");
             mAlphabeticIndex = clazz.getConstructor(Locale.class).newInstance(curLocale);
 
             if (!curLocale.getLanguage().equals(Locale.ENGLISH.getLanguage())) {
@@ -145,6 +210,18 @@ public class AlphabeticIndexCompat {
             return super.getBucketIndex(s);
         }
 
+        /**
+         * Returns the number of buckets, or 0 if unknown.
+         */
+        protected int getBucketCount() {
+            try {
+                return (Integer) mGetBucketCountMethod.invoke(mAlphabeticIndex);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            return 0;
+        }
+
         /**
          * Returns the label for the bucket at the given index (as returned by getBucketIndex).
          */
@@ -187,6 +264,13 @@ public class AlphabeticIndexCompat {
             return mAlphabeticIndex.getBucketIndex(s);
         }
 
+        /**
+         * Returns the number of buckets.
+         */
+        protected int getBucketCount() {
+            return mAlphabeticIndex.getBucketCount();
+        }
+
         /**
          * Returns the label for the bucket at the given index
          */
@@ -28,10 +28,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.PermissionInfo;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.BitmapRegionDecoder;
-import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
@@ -43,11 +40,10 @@ import android.util.Log;
 import android.util.Pair;
 
 import com.android.launcher3.Utilities;
+import com.android.launcher3.dynamicui.WallpaperSampler;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import static android.app.WallpaperManager.FLAG_SYSTEM;
@@ -57,7 +53,7 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
 
     private static final String TAG = "WMCompatVL";
 
-    private static final String VERSION_PREFIX = "1,";
+    private static final String VERSION_PREFIX = "3,";
     private static final String KEY_COLORS = "wallpaper_parsed_colors";
     private static final String ACTION_EXTRACTION_COMPLETE =
             "com.android.launcher3.compat.WallpaperManagerCompatVL.EXTRACTION_COMPLETE";
@@ -66,25 +62,24 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
 
     private final Context mContext;
     private WallpaperColorsCompat mColorsCompat;
+    // The wallpaper which mColorsCompat were extracted from, -1 if unknown.
+    private int mWallpaperId = -1;
 
     WallpaperManagerCompatVL(Context context) {
         mContext = context;
 
         String colors = getDevicePrefs(mContext).getString(KEY_COLORS, "");
-        int wallpaperId = -1;
         if (colors.startsWith(VERSION_PREFIX)) {
             Pair<Integer, WallpaperColorsCompat> storedValue = parseValue(colors);
-            wallpaperId = storedValue.first;
+            mWallpaperId = storedValue.first;
             mColorsCompat = storedValue.second;
         }
 
-        if (wallpaperId == -1 || wallpaperId != getWallpaperId(context)) {
-            reloadColors();
-        }
+        reloadColorsIfNecessary();
         context.registerReceiver(new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                reloadColors();
+                reloadColorsIfNecessary();
             }
         }, new IntentFilter(Intent.ACTION_WALLPAPER_CHANGED));
 
@@ -122,6 +117,16 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
         mListeners.add(listener);
     }
 
+    /**
+     * Extracts the colors, unless they were already extracted from the current wallpaper. The
+     * broadcast is also sent when only the lock screen wallpaper changed.
+     */
+    private void reloadColorsIfNecessary() {
+        if (mWallpaperId == -1 || mWallpaperId != getWallpaperId(mContext)) {
+            reloadColors();
+        }
+    }
+
     private void reloadColors() {
         JobInfo job = new JobInfo.Builder(Utilities.WALLPAPER_COMPAT_JOB_ID,
                 new ComponentName(mContext, ColorExtractionService.class))
@@ -131,7 +136,9 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
 
     private void handleResult(String result) {
         getDevicePrefs(mContext).edit().putString(KEY_COLORS, result).apply();
-        mColorsCompat = parseValue(result).second;
+        Pair<Integer, WallpaperColorsCompat> value = parseValue(result);
+        mWallpaperId = value.first;
+        mColorsCompat = value.second;
         for (OnColorsChangedListenerCompat listener : mListeners) {
             listener.onColorsChanged(mColorsCompat, FLAG_SYSTEM);
         }
@@ -167,10 +174,10 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
      * Intent service to handle color extraction
      */
     public static class ColorExtractionService extends JobService implements Runnable {
-        private static final int MAX_WALLPAPER_EXTRACTION_AREA = 112 * 112;
 
         private HandlerThread mWorkerThread;
         private Handler mWorkerHandler;
+        private WallpaperSampler mSampler;
 
         @Override
         public void onCreate() {
@@ -178,6 +185,7 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
             mWorkerThread = new HandlerThread("ColorExtractionService");
             mWorkerThread.start();
             mWorkerHandler = new Handler(mWorkerThread.getLooper());
+            mSampler = new WallpaperSampler(true /* mainColors */);
         }
 
         @Override
@@ -205,7 +213,7 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
         public void run() {
             int wallpaperId = getWallpaperId(this);
 
-            Bitmap bitmap = null;
+            List<Palette.Swatch> swatches = null;
             Drawable drawable = null;
 
             WallpaperManager wm = WallpaperManager.getInstance(this);
@@ -218,68 +226,32 @@ public class WallpaperManagerCompatVL extends WallpaperManagerCompat {
                     try (ParcelFileDescriptor fd = wm.getWallpaperFile(FLAG_SYSTEM)) {
                         BitmapRegionDecoder decoder = BitmapRegionDecoder
                                 .newInstance(fd.getFileDescriptor(), false);
-
-                        int requestedArea = decoder.getWidth() * decoder.getHeight();
-                        BitmapFactory.Options options = new BitmapFactory.Options();
-
-                        if (requestedArea > MAX_WALLPAPER_EXTRACTION_AREA) {
-                            double areaRatio =
-                                    (double) requestedArea / MAX_WALLPAPER_EXTRACTION_AREA;
-                            double nearestPowOf2 =
-                                    Math.floor(Math.log(areaRatio) / (2 * Math.log(2)));
-                            options.inSampleSize = (int) Math.pow(2, nearestPowOf2);
-                        }
                         Rect region = new Rect(0, 0, decoder.getWidth(), decoder.getHeight());
-                        bitmap = decoder.decodeRegion(region, options);
+                        swatches = mSampler.sampleRegion(decoder, region);
                         decoder.recycle();
                     } catch (IOException | NullPointerException e) {
                         Log.e(TAG, "Fetching partial bitmap failed, trying old method", e);
                     }
                 }
-                if (bitmap == null) {
+                if (swatches == null) {
                     drawable = wm.getDrawable();
                 }
             }
 
             if (drawable != null) {
-                // Calculate how big the bitmap needs to be.
-                // This avoids unnecessary processing and allocation inside Palette.
-                final int requestedArea = drawable.getIntrinsicWidth() *
-                        drawable.getIntrinsicHeight();
-                double scale = 1;
-                if (requestedArea > MAX_WALLPAPER_EXTRACTION_AREA) {
-                    scale = Math.sqrt(MAX_WALLPAPER_EXTRACTION_AREA / (double) requestedArea);
-                }
-                bitmap = Bitmap.createBitmap((int) (drawable.getIntrinsicWidth() * scale),
-                        (int) (drawable.getIntrinsicHeight() * scale), Bitmap.Config.ARGB_8888);
-                final Canvas bmpCanvas = new Canvas(bitmap);
-                drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-                drawable.draw(bmpCanvas);
+                // Draw the drawable at a small size, this avoids unnecessary processing and
+                // allocation while sampling.
+                swatches = mSampler.sampleDrawable(drawable);
             }
 
             String value = VERSION_PREFIX + wallpaperId;
 
-            if (bitmap != null) {
-                Palette palette = Palette.from(bitmap).generate();
-                bitmap.recycle();
-
+            if (swatches != null) {
+                // The swatches are the main colors, sorted by population, as Palette returns them.
                 StringBuilder builder = new StringBuilder(value);
-                List<Pair<Integer,Integer>> colorsToOccurrences = new ArrayList<>();
-                for (Palette.Swatch swatch : palette.getSwatches()) {
-                    colorsToOccurrences.add(new Pair(swatch.getRgb(), swatch.getPopulation()));
-                }
-
-                Collections.sort(colorsToOccurrences, new Comparator<Pair<Integer, Integer>>() {
-                    @Override
-                    public int compare(Pair<Integer, Integer> a, Pair<Integer, Integer> b) {
-                        return b.second - a.second;
-                    }
-                });
-
-                for (int i=0; i < Math.min(3, colorsToOccurrences.size()); i++) {
-                    builder.append(',').append(colorsToOccurrences.get(i).first);
+                for (int i = 0; i < Math.min(3, swatches.size()); i++) {
+                    builder.append(',').append(swatches.get(i).getRgb());
                 }
-
                 value = builder.toString();
             }
 
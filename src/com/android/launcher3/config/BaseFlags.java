@@ -64,6 +64,25 @@ abstract class BaseFlags {
     public static final boolean DISCOVERY_ENABLED = false;
     // When enabled, the qsb will be moved to the hotseat.
     public static final boolean QSB_IN_HOTSEAT = true;
+    // When enabled, the loaded workspace is snapshotted to disk and reused on the next start
+    // if the launcher DB has not changed.
+    public static final boolean MODEL_SNAPSHOT = true;
+    // When enabled, the rows produced by a default layout are cached in a binary form and
+    // replayed instead of parsing the layout on every empty DB.
+    public static final boolean COMPILED_LAYOUT_CACHE = true;
+    // When enabled, a bitmap of the first screen of all apps is animated instead of the live
+    // list during the all apps transition.
+    public static final boolean ALL_APPS_SNAPSHOT_TRANSITION = false;
+    // When enabled, the frames drawn during page scrolls, state transitions, folder opening and
+    // drags are recorded and reported in dumpsys.
+    public static final boolean INTERACTION_JANK_MONITOR = true;
+    // When enabled, the phases of the cold start are timed and the timelines of the last
+    // launches are kept on disk and reported in the model dump.
+    public static final boolean STARTUP_TIMELINE = true;
+    // When enabled, the user events are written to a binary log on disk.
+    public static final boolean USER_EVENT_LOG = true;
+    // When enabled, the cached icons are kept as hardware bitmaps, out of the Java heap.
+    public static final boolean HARDWARE_BITMAP_ICONS = false;
 
     // Features to control Launcher3Go behavior
     public static final boolean GO_DISABLE_WIDGETS = false;
@@ -36,6 +36,7 @@ import com.android.launcher3.Launcher;
 import com.android.launcher3.R;
 import com.android.launcher3.ShortcutInfo;
 import com.android.launcher3.accessibility.DragViewStateAnnouncer;
+import com.android.launcher3.util.InteractionJankMonitor;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.util.TouchController;
@@ -193,6 +194,7 @@ public class DragController implements DragDriver.EventListener, TouchController
         }
 
         mLauncher.getDragLayer().performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        InteractionJankMonitor.begin(InteractionJankMonitor.DRAG);
         dragView.show(mMotionDownX, mMotionDownY);
         mDistanceSinceScroll = 0;
 
@@ -316,6 +318,7 @@ public class DragController implements DragDriver.EventListener, TouchController
         for (DragListener listener : new ArrayList<>(mListeners)) {
             listener.onDragEnd();
         }
+        InteractionJankMonitor.end(InteractionJankMonitor.DRAG);
     }
 
     /**
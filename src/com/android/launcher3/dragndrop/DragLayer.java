@@ -94,6 +94,7 @@ public class DragLayer extends InsettableFrameLayout {
 
     private boolean mHoverPointClosesFolder = false;
     private final Rect mHitRect = new Rect();
+    private final Rect mTmpRect = new Rect();
     private final Rect mHighlightRect = new Rect();
 
     private TouchCompleteListener mTouchCompleteListener;
@@ -429,7 +430,7 @@ public class DragLayer extends InsettableFrameLayout {
     }
 
     public void getViewRectRelativeToSelf(View v, Rect r) {
-        int[] loc = new int[2];
+        int[] loc = mTmpXY;
         getLocationInWindow(loc);
         int x = loc[0];
         int y = loc[1];
@@ -564,7 +565,7 @@ public class DragLayer extends InsettableFrameLayout {
     public void animateViewIntoPosition(DragView dragView, final int[] pos, float alpha,
             float scaleX, float scaleY, int animationEndStyle, Runnable onFinishRunnable,
             int duration) {
-        Rect r = new Rect();
+        Rect r = mTmpRect;
         getViewRectRelativeToSelf(dragView, r);
         final int fromX = r.left;
         final int fromY = r.top;
@@ -584,10 +585,10 @@ public class DragLayer extends InsettableFrameLayout {
         CellLayout.LayoutParams lp =  (CellLayout.LayoutParams) child.getLayoutParams();
         parentChildren.measureChild(child);
 
-        Rect r = new Rect();
+        Rect r = mTmpRect;
         getViewRectRelativeToSelf(dragView, r);
 
-        int coord[] = new int[2];
+        int coord[] = mTmpXY;
         float childScale = child.getScaleX();
         coord[0] = lp.x + (int) (child.getMeasuredWidth() * (1 - childScale) / 2);
         coord[1] = lp.y + (int) (child.getMeasuredHeight() * (1 - childScale) / 2);
@@ -710,7 +711,9 @@ public class DragLayer extends InsettableFrameLayout {
         AnimatorUpdateListener updateCb = new AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
-                final float percent = (Float) animation.getAnimatedValue();
+                // The animator goes from 0 to 1, so this is the same as its animated value,
+                // without boxing it on every frame.
+                final float percent = animation.getAnimatedFraction();
                 final int width = view.getMeasuredWidth();
                 final int height = view.getMeasuredHeight();
 
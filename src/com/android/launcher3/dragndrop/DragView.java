@@ -224,8 +224,13 @@ public class DragView extends View {
                     mBadge = getBadge(info, appState, outObj[0]);
                     mBadge.setBounds(badgeBounds);
 
-                    Utilities.scaleRectAboutCenter(bounds,
-                            IconNormalizer.getInstance(mLauncher).getScale(dr, null, null, null));
+                    IconNormalizer normalizer = IconNormalizer.obtain(mLauncher);
+                    try {
+                        Utilities.scaleRectAboutCenter(bounds,
+                                normalizer.getScale(dr, null, null, null));
+                    } finally {
+                        normalizer.recycle();
+                    }
                     AdaptiveIconDrawable adaptiveIcon = (AdaptiveIconDrawable) dr;
 
                     // Shrink very tiny bit so that the clip path is smaller than the original bitmap
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.graphics.Color;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.graphics.ColorUtils;
 import android.util.Log;
 import android.util.Pair;
@@ -50,6 +51,9 @@ public class ColorExtractionAlgorithm {
     private static final float FIT_WEIGHT_S = 1.0f;
     private static final float FIT_WEIGHT_L = 10.0f;
 
+    // Number of cells of the hue grid used to look up the tonal palettes
+    private static final int HUE_GRID_SIZE = 1024;
+
     public static final int MAIN_COLOR_LIGHT = 0xffb0b0b0;
     public static final int SECONDARY_COLOR_LIGHT = 0xff9e9e9e;
     public static final int MAIN_COLOR_DARK = 0xff212121;
@@ -236,47 +240,64 @@ public class ColorExtractionAlgorithm {
     }
 
     @Nullable
-    private static TonalPalette findTonalPalette(float h, float s) {
+    @VisibleForTesting
+    static TonalPalette findTonalPalette(float h, float s) {
         // Fallback to a grey palette if the color is too desaturated.
         // This avoids hue shifts.
         if (s < 0.05f) {
             return GREY_PALETTE;
         }
 
-        TonalPalette best = null;
+        if (h >= 0.0f && h < 1.0f) {
+            int index = HUE_GRID[Math.min((int) (h * HUE_GRID_SIZE), HUE_GRID_SIZE - 1)];
+            if (index >= 0) {
+                return TONAL_PALETTES[index];
+            }
+        }
+        int index = searchTonalPalette(h);
+        return index >= 0 ? TONAL_PALETTES[index] : null;
+    }
+
+    /**
+     * Searches the palette which contains the hue {@param h}, or the closest one.
+     * @return the index of the palette in {@link #TONAL_PALETTES}, or -1 if there is none.
+     */
+    @VisibleForTesting
+    static int searchTonalPalette(float h) {
+        int best = -1;
         float error = Float.POSITIVE_INFINITY;
 
         for (int i = 0; i < TONAL_PALETTES.length; i++) {
             final TonalPalette candidate = TONAL_PALETTES[i];
 
             if (h >= candidate.minHue && h <= candidate.maxHue) {
-                best = candidate;
+                best = i;
                 break;
             }
 
             if (candidate.maxHue > 1.0f && h >= 0.0f && h <= fract(candidate.maxHue)) {
-                best = candidate;
+                best = i;
                 break;
             }
 
             if (candidate.minHue < 0.0f && h >= fract(candidate.minHue) && h <= 1.0f) {
-                best = candidate;
+                best = i;
                 break;
             }
 
             if (h <= candidate.minHue && candidate.minHue - h < error) {
-                best = candidate;
+                best = i;
                 error = candidate.minHue - h;
             } else if (h >= candidate.maxHue && h - candidate.maxHue < error) {
-                best = candidate;
+                best = i;
                 error = h - candidate.maxHue;
             } else if (candidate.maxHue > 1.0f && h >= fract(candidate.maxHue)
                     && h - fract(candidate.maxHue) < error) {
-                best = candidate;
+                best = i;
                 error = h - fract(candidate.maxHue);
             } else if (candidate.minHue < 0.0f && h <= fract(candidate.minHue)
                     && fract(candidate.minHue) - h < error) {
-                best = candidate;
+                best = i;
                 error = fract(candidate.minHue) - h;
             }
         }
@@ -284,6 +305,21 @@ public class ColorExtractionAlgorithm {
         return best;
     }
 
+    /**
+     * Precomputes the palette of each cell of the hue grid. Cells whose edges do not map to the
+     * same palette are marked with -1, and looked up with {@link #searchTonalPalette}.
+     */
+    private static int[] buildHueGrid() {
+        int[] grid = new int[HUE_GRID_SIZE];
+        int end = searchTonalPalette(0f);
+        for (int i = 0; i < HUE_GRID_SIZE; i++) {
+            int start = end;
+            end = searchTonalPalette((float) (i + 1) / HUE_GRID_SIZE);
+            grid[i] = start == end ? start : -1;
+        }
+        return grid;
+    }
+
     private static float fract(float v) {
         return v - (float) Math.floor(v);
     }
@@ -322,7 +358,8 @@ public class ColorExtractionAlgorithm {
     // Data definition of Material Design tonal palettes
     // When the sort type is set to TONAL, these palettes are used to find
     // a best fit. Each palette is defined as 22 HSL colors
-    private static final TonalPalette[] TONAL_PALETTES = {
+    @VisibleForTesting
+    static final TonalPalette[] TONAL_PALETTES = {
             new TonalPalette(
                     new float[] {1f, 1f, 0.991f, 0.991f, 0.9833333333333333f, 0f, 0f, 0f,
                             0.01134380453752181f, 0.015625000000000003f, 0.024193548387096798f,
@@ -598,6 +635,9 @@ public class ColorExtractionAlgorithm {
                     0.8196078431372549f, 0.9176470588235294f, 0.9490196078431372f}
     );
 
+    // Index of the palette of each hue cell, built once the palettes are defined
+    private static final int[] HUE_GRID = buildHueGrid();
+
     @SuppressWarnings("WeakerAccess")
     static final ColorRange[] BLACKLISTED_COLORS = new ColorRange[] {
 
@@ -21,7 +21,6 @@ import android.app.WallpaperManager;
 import android.app.job.JobParameters;
 import android.app.job.JobService;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.BitmapRegionDecoder;
 import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
@@ -40,6 +39,7 @@ import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Extracts colors from the wallpaper, and saves results to {@link LauncherProvider}.
@@ -54,6 +54,7 @@ public class ColorExtractionService extends JobService {
 
     private HandlerThread mWorkerThread;
     private Handler mWorkerHandler;
+    private WallpaperSampler mSampler;
 
     @Override
     public void onCreate() {
@@ -61,6 +62,7 @@ public class ColorExtractionService extends JobService {
         mWorkerThread = new HandlerThread("ColorExtractionService");
         mWorkerThread.start();
         mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        mSampler = new WallpaperSampler();
     }
 
     @Override
@@ -88,16 +90,26 @@ public class ColorExtractionService extends JobService {
                         extractedColors.updateWallpaperThemePalette(null);
                     }
                 } else {
-                    // We extract colors for the hotseat and status bar separately,
-                    // since they only consider part of the wallpaper.
-                    extractedColors.updateHotseatPalette(getHotseatPalette());
-
-                    if (FeatureFlags.LIGHT_STATUS_BAR) {
-                        extractedColors.updateStatusBarPalette(getStatusBarPalette());
-                    }
-
-                    if (FeatureFlags.QSB_IN_HOTSEAT || FeatureFlags.LAUNCHER3_GRADIENT_ALL_APPS) {
-                        extractedColors.updateWallpaperThemePalette(getWallpaperPalette());
+                    // The regions are all sampled from the same decoder, when available.
+                    BitmapRegionDecoder decoder = openWallpaperDecoder(wallpaperManager);
+                    try {
+                        // We extract colors for the hotseat and status bar separately,
+                        // since they only consider part of the wallpaper.
+                        extractedColors.updateHotseatPalette(getHotseatPalette(decoder));
+
+                        if (FeatureFlags.LIGHT_STATUS_BAR) {
+                            extractedColors.updateStatusBarPalette(getStatusBarPalette(decoder));
+                        }
+
+                        if (FeatureFlags.QSB_IN_HOTSEAT
+                                || FeatureFlags.LAUNCHER3_GRADIENT_ALL_APPS) {
+                            extractedColors.updateWallpaperThemePalette(
+                                    getWallpaperPalette(decoder));
+                        }
+                    } finally {
+                        if (decoder != null) {
+                            decoder.recycle();
+                        }
                     }
                 }
 
@@ -125,80 +137,75 @@ public class ColorExtractionService extends JobService {
     }
 
     @TargetApi(Build.VERSION_CODES.N)
-    private Palette getHotseatPalette() {
-        WallpaperManager wallpaperManager = WallpaperManager.getInstance(this);
+    private BitmapRegionDecoder openWallpaperDecoder(WallpaperManager wallpaperManager) {
         if (Utilities.ATLEAST_NOUGAT) {
             try (ParcelFileDescriptor fd = wallpaperManager
                     .getWallpaperFile(WallpaperManager.FLAG_SYSTEM)) {
-                BitmapRegionDecoder decoder = BitmapRegionDecoder
-                        .newInstance(fd.getFileDescriptor(), false);
-                int height = decoder.getHeight();
-                Rect decodeRegion = new Rect(0, (int) (height * (1f - HOTSEAT_FRACTION)),
-                        decoder.getWidth(), height);
-                Bitmap bitmap = decoder.decodeRegion(decodeRegion, null);
-                decoder.recycle();
-                if (bitmap != null) {
-                    return Palette.from(bitmap).clearFilters().generate();
-                }
+                return BitmapRegionDecoder.newInstance(fd.getFileDescriptor(), false);
             } catch (IOException | NullPointerException e) {
                 Log.e(TAG, "Fetching partial bitmap failed, trying old method", e);
             }
         }
+        return null;
+    }
 
-        Bitmap wallpaper = ((BitmapDrawable) wallpaperManager.getDrawable()).getBitmap();
-        return Palette.from(wallpaper)
-                .setRegion(0, (int) (wallpaper.getHeight() * (1f - HOTSEAT_FRACTION)),
-                        wallpaper.getWidth(), wallpaper.getHeight())
-                .clearFilters()
-                .generate();
+    private Palette getHotseatPalette(BitmapRegionDecoder decoder) {
+        if (decoder != null) {
+            int height = decoder.getHeight();
+            Palette palette = getRegionPalette(decoder, new Rect(0,
+                    (int) (height * (1f - HOTSEAT_FRACTION)), decoder.getWidth(), height));
+            if (palette != null) {
+                return palette;
+            }
+        }
+
+        Bitmap wallpaper = getWallpaperBitmap();
+        return getRegionPalette(wallpaper, new Rect(0,
+                (int) (wallpaper.getHeight() * (1f - HOTSEAT_FRACTION)),
+                wallpaper.getWidth(), wallpaper.getHeight()));
     }
 
-    @TargetApi(Build.VERSION_CODES.N)
-    private Palette getStatusBarPalette() {
-        WallpaperManager wallpaperManager = WallpaperManager.getInstance(this);
+    private Palette getStatusBarPalette(BitmapRegionDecoder decoder) {
         int statusBarHeight = getResources()
                 .getDimensionPixelSize(R.dimen.status_bar_height);
 
-        if (Utilities.ATLEAST_NOUGAT) {
-            try (ParcelFileDescriptor fd = wallpaperManager
-                    .getWallpaperFile(WallpaperManager.FLAG_SYSTEM)) {
-                BitmapRegionDecoder decoder = BitmapRegionDecoder
-                        .newInstance(fd.getFileDescriptor(), false);
-                Rect decodeRegion = new Rect(0, 0,
-                        decoder.getWidth(), statusBarHeight);
-                Bitmap bitmap = decoder.decodeRegion(decodeRegion, null);
-                decoder.recycle();
-                if (bitmap != null) {
-                    return Palette.from(bitmap).clearFilters().generate();
-                }
-            } catch (IOException | NullPointerException e) {
-                Log.e(TAG, "Fetching partial bitmap failed, trying old method", e);
+        if (decoder != null) {
+            Palette palette = getRegionPalette(decoder,
+                    new Rect(0, 0, decoder.getWidth(), statusBarHeight));
+            if (palette != null) {
+                return palette;
             }
         }
 
-        Bitmap wallpaper = ((BitmapDrawable) wallpaperManager.getDrawable()).getBitmap();
-        return Palette.from(wallpaper)
-                .setRegion(0, 0, wallpaper.getWidth(), statusBarHeight)
-                .clearFilters()
-                .generate();
+        Bitmap wallpaper = getWallpaperBitmap();
+        return getRegionPalette(wallpaper,
+                new Rect(0, 0, wallpaper.getWidth(), statusBarHeight));
     }
 
-    @TargetApi(Build.VERSION_CODES.N)
-    private Palette getWallpaperPalette() {
-        WallpaperManager wallpaperManager = WallpaperManager.getInstance(this);
-        if (Utilities.ATLEAST_NOUGAT) {
-            try (ParcelFileDescriptor fd = wallpaperManager
-                    .getWallpaperFile(WallpaperManager.FLAG_SYSTEM)) {
-                Bitmap bitmap = BitmapFactory.decodeFileDescriptor(fd.getFileDescriptor());
-                if (bitmap != null) {
-                    return Palette.from(bitmap).clearFilters().generate();
-                }
-            } catch (IOException | NullPointerException e) {
-                Log.e(TAG, "Fetching partial bitmap failed, trying old method", e);
+    private Palette getWallpaperPalette(BitmapRegionDecoder decoder) {
+        if (decoder != null) {
+            Palette palette = getRegionPalette(decoder,
+                    new Rect(0, 0, decoder.getWidth(), decoder.getHeight()));
+            if (palette != null) {
+                return palette;
             }
         }
 
-        Bitmap wallpaper = ((BitmapDrawable) wallpaperManager.getDrawable()).getBitmap();
-        return Palette.from(wallpaper).clearFilters().generate();
+        Bitmap wallpaper = getWallpaperBitmap();
+        return getRegionPalette(wallpaper,
+                new Rect(0, 0, wallpaper.getWidth(), wallpaper.getHeight()));
+    }
+
+    private Palette getRegionPalette(BitmapRegionDecoder decoder, Rect region) {
+        List<Palette.Swatch> swatches = mSampler.sampleRegion(decoder, region);
+        return swatches == null ? null : Palette.from(swatches);
+    }
+
+    private Palette getRegionPalette(Bitmap wallpaper, Rect region) {
+        return Palette.from(mSampler.sampleRegion(wallpaper, region));
+    }
+
+    private Bitmap getWallpaperBitmap() {
+        return ((BitmapDrawable) WallpaperManager.getInstance(this).getDrawable()).getBitmap();
     }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.dynamicui;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.graphics.ColorUtils;
+import android.support.v7.graphics.Palette;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Samples the colors of the wallpaper, or of a region of it.
+ *
+ * The wallpaper is decoded with a sample size which keeps it under {@link #MAX_SAMPLE_AREA}, or
+ * drawn at that size, and its pixels are read into a reused buffer. The colors are then quantized
+ * in a single pass, by counting the pixels in a histogram of 4 bits per channel, and the most
+ * populated buckets are returned as swatches.
+ *
+ * When sampling the main colors, the colors which {@link Palette} ignores by default are ignored,
+ * and each selected bucket absorbs its neighbouring buckets, so that the shades of a color are
+ * returned as a single swatch.
+ *
+ * An instance is not thread safe, it is meant to be used on the worker thread of an extraction.
+ */
+public class WallpaperSampler {
+
+    public static final int MAX_SAMPLE_AREA = 112 * 112;
+    public static final int MAX_COLORS = 16;
+
+    private static final int HISTOGRAM_SIZE = 1 << 12;
+
+    private final int[] mPopulations = new int[HISTOGRAM_SIZE];
+    private final int[] mRedSums = new int[HISTOGRAM_SIZE];
+    private final int[] mGreenSums = new int[HISTOGRAM_SIZE];
+    private final int[] mBlueSums = new int[HISTOGRAM_SIZE];
+
+    private final boolean mMainColors;
+
+    private final Rect mTempRect = new Rect();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final float[] mTmpHsl = new float[3];
+    private int[] mPixels = new int[MAX_SAMPLE_AREA];
+
+    public WallpaperSampler() {
+        this(false);
+    }
+
+    /**
+     * @param mainColors whether to only return the main colors, as {@link Palette} does by
+     *                   default, instead of the raw most populated buckets.
+     */
+    public WallpaperSampler(boolean mainColors) {
+        mMainColors = mainColors;
+    }
+
+    /**
+     * Decodes {@param region} of the image of {@param decoder}, and returns its colors, most
+     * populated first, or null if the region could not be decoded.
+     */
+    public List<Palette.Swatch> sampleRegion(BitmapRegionDecoder decoder, Rect region) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(region.width(), region.height());
+        Bitmap bitmap = decoder.decodeRegion(region, options);
+        if (bitmap == null) {
+            return null;
+        }
+        List<Palette.Swatch> swatches = sampleBitmap(bitmap);
+        bitmap.recycle();
+        return swatches;
+    }
+
+    /**
+     * Returns the colors of {@param region} of {@param bitmap}, which is scaled down if needed.
+     */
+    public List<Palette.Swatch> sampleRegion(Bitmap bitmap, Rect region) {
+        Bitmap sample = createSampleBitmap(region.width(), region.height());
+        Canvas canvas = new Canvas(sample);
+        mTempRect.set(0, 0, sample.getWidth(), sample.getHeight());
+        canvas.drawBitmap(bitmap, region, mTempRect, mPaint);
+        canvas.setBitmap(null);
+
+        List<Palette.Swatch> swatches = sampleBitmap(sample);
+        sample.recycle();
+        return swatches;
+    }
+
+    /**
+     * Returns the colors of {@param drawable}, drawn at its intrinsic size or scaled down.
+     */
+    public List<Palette.Swatch> sampleDrawable(Drawable drawable) {
+        Bitmap sample = createSampleBitmap(
+                drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        Canvas canvas = new Canvas(sample);
+        drawable.setBounds(0, 0, sample.getWidth(), sample.getHeight());
+        drawable.draw(canvas);
+        canvas.setBitmap(null);
+
+        List<Palette.Swatch> swatches = sampleBitmap(sample);
+        sample.recycle();
+        return swatches;
+    }
+
+    private List<Palette.Swatch> sampleBitmap(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int count = width * height;
+        if (mPixels.length < count) {
+            // A power of 2 sample size can round the decoded size up.
+            mPixels = new int[count];
+        }
+        bitmap.getPixels(mPixels, 0, width, 0, 0, width, height);
+        return quantize(mPixels, count);
+    }
+
+    /**
+     * Returns the {@link #MAX_COLORS} most populated colors of the first {@param count}
+     * {@param pixels}, most populated first. Fully transparent pixels are ignored.
+     */
+    @VisibleForTesting
+    List<Palette.Swatch> quantize(int[] pixels, int count) {
+        Arrays.fill(mPopulations, 0);
+        Arrays.fill(mRedSums, 0);
+        Arrays.fill(mGreenSums, 0);
+        Arrays.fill(mBlueSums, 0);
+
+        for (int i = 0; i < count; i++) {
+            int color = pixels[i];
+            if ((color >>> 24) == 0) {
+                continue;
+            }
+            // The 4 most significant bits of each channel.
+            int bucket = ((color >> 12) & 0xF00) | ((color >> 8) & 0xF0) | ((color >> 4) & 0xF);
+            mPopulations[bucket]++;
+            mRedSums[bucket] += (color >> 16) & 0xFF;
+            mGreenSums[bucket] += (color >> 8) & 0xFF;
+            mBlueSums[bucket] += color & 0xFF;
+        }
+
+        if (mMainColors) {
+            return selectMainColors();
+        }
+
+        // Select the most populated buckets, by insertion in a list sorted by population.
+        int[] topBuckets = new int[MAX_COLORS];
+        int topCount = 0;
+        for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket++) {
+            int population = mPopulations[bucket];
+            if (population == 0 || (topCount == MAX_COLORS
+                    && population <= mPopulations[topBuckets[MAX_COLORS - 1]])) {
+                continue;
+            }
+            int pos = Math.min(topCount, MAX_COLORS - 1);
+            while (pos > 0 && mPopulations[topBuckets[pos - 1]] < population) {
+                topBuckets[pos] = topBuckets[pos - 1];
+                pos--;
+            }
+            topBuckets[pos] = bucket;
+            topCount = Math.min(topCount + 1, MAX_COLORS);
+        }
+
+        List<Palette.Swatch> swatches = new ArrayList<>(topCount);
+        for (int i = 0; i < topCount; i++) {
+            int bucket = topBuckets[i];
+            swatches.add(new Palette.Swatch(getAverageColor(bucket), mPopulations[bucket]));
+        }
+        return swatches;
+    }
+
+    /**
+     * Returns the {@link #MAX_COLORS} most populated buckets of the histogram, ignoring the
+     * colors which {@link Palette} ignores by default. Each selected bucket absorbs its populated
+     * neighbours.
+     */
+    private List<Palette.Swatch> selectMainColors() {
+        for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket++) {
+            if (mPopulations[bucket] > 0 && !isAllowed(getAverageColor(bucket))) {
+                mPopulations[bucket] = 0;
+            }
+        }
+
+        List<Palette.Swatch> swatches = new ArrayList<>(MAX_COLORS);
+        while (swatches.size() < MAX_COLORS) {
+            int best = -1;
+            for (int bucket = 0; bucket < HISTOGRAM_SIZE; bucket++) {
+                if (mPopulations[bucket] > 0
+                        && (best < 0 || mPopulations[bucket] > mPopulations[best])) {
+                    best = bucket;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+
+            int red = best >> 8;
+            int green = (best >> 4) & 0xF;
+            int blue = best & 0xF;
+            for (int r = Math.max(0, red - 1); r <= Math.min(0xF, red + 1); r++) {
+                for (int g = Math.max(0, green - 1); g <= Math.min(0xF, green + 1); g++) {
+                    for (int b = Math.max(0, blue - 1); b <= Math.min(0xF, blue + 1); b++) {
+                        int neighbour = (r << 8) | (g << 4) | b;
+                        if (neighbour != best && mPopulations[neighbour] > 0) {
+                            mPopulations[best] += mPopulations[neighbour];
+                            mRedSums[best] += mRedSums[neighbour];
+                            mGreenSums[best] += mGreenSums[neighbour];
+                            mBlueSums[best] += mBlueSums[neighbour];
+                            mPopulations[neighbour] = 0;
+                        }
+                    }
+                }
+            }
+            swatches.add(new Palette.Swatch(getAverageColor(best), mPopulations[best]));
+            mPopulations[best] = 0;
+        }
+
+        // Absorbing neighbours can change the order.
+        Collections.sort(swatches, new Comparator<Palette.Swatch>() {
+            @Override
+            public int compare(Palette.Swatch lhs, Palette.Swatch rhs) {
+                return Integer.compare(rhs.getPopulation(), lhs.getPopulation());
+            }
+        });
+        return swatches;
+    }
+
+    private int getAverageColor(int bucket) {
+        int population = mPopulations[bucket];
+        return Color.rgb(mRedSums[bucket] / population,
+                mGreenSums[bucket] / population, mBlueSums[bucket] / population);
+    }
+
+    /**
+     * Matches the default filter of {@link Palette}, which ignores colors close to black, to white
+     * and to the red side of the I line.
+     */
+    private boolean isAllowed(int color) {
+        ColorUtils.colorToHSL(color, mTmpHsl);
+        boolean isBlack = mTmpHsl[2] <= 0.05f;
+        boolean isWhite = mTmpHsl[2] >= 0.95f;
+        boolean isNearRedILine = mTmpHsl[0] >= 10f && mTmpHsl[0] <= 37f && mTmpHsl[1] <= 0.82f;
+        return !isBlack && !isWhite && !isNearRedILine;
+    }
+
+    private static Bitmap createSampleBitmap(int width, int height) {
+        float scale = 1;
+        long area = (long) width * height;
+        if (area > MAX_SAMPLE_AREA) {
+            scale = (float) Math.sqrt(MAX_SAMPLE_AREA / (double) area);
+        }
+        return Bitmap.createBitmap(Math.max(1, (int) (width * scale)),
+                Math.max(1, (int) (height * scale)), Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Returns the smallest power of 2 sample size which keeps the decoded area under
+     * {@link #MAX_SAMPLE_AREA}.
+     */
+    @VisibleForTesting
+    static int getSampleSize(int width, int height) {
+        int sampleSize = 1;
+        while ((long) (width / sampleSize) * (height / sampleSize) > MAX_SAMPLE_AREA) {
+            sampleSize <<= 1;
+        }
+        return sampleSize;
+    }
+}
@@ -76,6 +76,7 @@ import com.android.launcher3.dragndrop.DragOptions;
 import com.android.launcher3.pageindicators.PageIndicatorDots;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+import com.android.launcher3.util.InteractionJankMonitor;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.PendingAddShortcutInfo;
 
@@ -633,6 +634,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         anim.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onAnimationStart(Animator animation) {
+                InteractionJankMonitor.begin(InteractionJankMonitor.FOLDER_OPEN);
                 if (FeatureFlags.LAUNCHER3_NEW_FOLDER_ANIMATION) {
                     mFolderIcon.setBackgroundVisible(false);
                     mFolderIcon.drawLeaveBehindIfExists();
@@ -647,6 +649,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
             }
             @Override
             public void onAnimationEnd(Animator animation) {
+                InteractionJankMonitor.end(InteractionJankMonitor.FOLDER_OPEN);
                 mState = STATE_OPEN;
 
                 onCompleteRunnable.run();
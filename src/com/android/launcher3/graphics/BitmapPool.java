@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+
+/**
+ * A small pool of mutable bitmaps which are reused, via {@link Bitmap#reconfigure}, for any
+ * size which fits in their allocation. This is not thread safe.
+ */
+public class BitmapPool {
+
+    private final int mMaxBitmaps;
+    private final long mMaxBytes;
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<>();
+    private long mPooledBytes;
+
+    public BitmapPool(int maxBitmaps, long maxBytes) {
+        mMaxBitmaps = maxBitmaps;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cleared bitmap of the given size and config, reusing the smallest pooled bitmap
+     * which is large enough. Responsibility for the bitmap is transferred to the caller, who
+     * can give it back with {@link #release(Bitmap)}.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        int bytesNeeded = width * height * getBytesPerPixel(config);
+        int bestIndex = -1;
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            int allocation = mBitmaps.get(i).getAllocationByteCount();
+            if (allocation >= bytesNeeded && (bestIndex == -1
+                    || allocation < mBitmaps.get(bestIndex).getAllocationByteCount())) {
+                bestIndex = i;
+            }
+        }
+        if (bestIndex == -1) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        Bitmap bitmap = mBitmaps.remove(bestIndex);
+        mPooledBytes -= bitmap.getAllocationByteCount();
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height
+                || bitmap.getConfig() != config) {
+            bitmap.reconfigure(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Returns {@param bitmap} to the pool. The caller must not use it afterwards.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || mBitmaps.contains(bitmap)) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        // Evict the oldest bitmaps to make room.
+        while (!mBitmaps.isEmpty()
+                && (mBitmaps.size() >= mMaxBitmaps || mPooledBytes + size > mMaxBytes)) {
+            Bitmap evicted = mBitmaps.remove(0);
+            mPooledBytes -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+        mBitmaps.add(bitmap);
+        mPooledBytes += size;
+    }
+
+    public void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+        mPooledBytes = 0;
+    }
+
+    public long getPooledBytes() {
+        return mPooledBytes;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -25,8 +25,11 @@ import android.graphics.drawable.Drawable;
 import android.view.View;
 
 import com.android.launcher3.BubbleTextView;
+import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.LauncherAppWidgetHostView;
+import com.android.launcher3.PendingAppWidgetHostView;
 import com.android.launcher3.R;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.folder.FolderIcon;
@@ -104,7 +107,8 @@ public class DragPreviewProvider {
 
     /**
      * Returns a new bitmap to show when the {@link #mView} is being dragged around.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Responsibility for the bitmap is transferred to the caller, who can give it back with
+     * {@link HolographicOutlineHelper#releaseDragBitmap(Bitmap)} once it is no longer used.
      */
     public Bitmap createDragBitmap(Canvas canvas) {
         float scale = 1f;
@@ -122,8 +126,8 @@ public class DragPreviewProvider {
             height = (int) (mView.getHeight() * scale);
         }
 
-        Bitmap b = Bitmap.createBitmap(width + blurSizeOutline, height + blurSizeOutline,
-                Bitmap.Config.ARGB_8888);
+        Bitmap b = HolographicOutlineHelper.getInstance(mView.getContext())
+                .acquireDragBitmap(width + blurSizeOutline, height + blurSizeOutline);
         canvas.setBitmap(b);
 
         canvas.save();
@@ -145,8 +149,8 @@ public class DragPreviewProvider {
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns a bitmap to be used as the object outline, e.g. to visualize the drop location.
+     * The bitmap may be shared with later drags of the same item and should not be modified.
      */
     public Bitmap createDragOutline(Canvas canvas) {
         float scale = 1f;
@@ -158,9 +162,21 @@ public class DragPreviewProvider {
             width = (int) Math.floor(mView.getWidth() * scale);
             height = (int) Math.floor(mView.getHeight() * scale);
         }
+        width += blurSizeOutline;
+        height += blurSizeOutline;
+
+        HolographicOutlineHelper outlineHelper =
+                HolographicOutlineHelper.getInstance(mView.getContext());
+        long contentStamp = getContentStamp();
+        long itemId = mView.getTag() instanceof ItemInfo ? ((ItemInfo) mView.getTag()).id : -1;
+        if (contentStamp != 0) {
+            Bitmap cached = outlineHelper.getCachedOutline(itemId, width, height, contentStamp);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        Bitmap b = Bitmap.createBitmap(width + blurSizeOutline, height + blurSizeOutline,
-                Bitmap.Config.ALPHA_8);
+        Bitmap b = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
         canvas.setBitmap(b);
 
         canvas.save();
@@ -168,13 +184,35 @@ public class DragPreviewProvider {
         drawDragView(canvas);
         canvas.restore();
 
-        HolographicOutlineHelper.getInstance(mView.getContext())
-                .applyExpensiveOutlineWithBlur(b, canvas);
+        outlineHelper.applyExpensiveOutlineWithBlur(b, canvas);
 
         canvas.setBitmap(null);
+        if (contentStamp != 0) {
+            outlineHelper.cacheOutline(itemId, contentStamp, b);
+        }
         return b;
     }
 
+    /**
+     * Returns a value which changes whenever the content drawn for the outline of {@link #mView}
+     * changes, or 0 if that is not known and the outline can't be cached.
+     */
+    private long getContentStamp() {
+        if (mView instanceof BubbleTextView) {
+            Drawable d = ((BubbleTextView) mView).getIcon();
+            if (d instanceof FastBitmapDrawable && !(d instanceof PreloadIconDrawable)) {
+                // The icon drawable is replaced when the item is updated.
+                return ((long) System.identityHashCode(d) << 32)
+                        | (((FastBitmapDrawable) d).getBitmap().getGenerationId() & 0xFFFFFFFFL);
+            }
+        } else if (mView instanceof LauncherAppWidgetHostView
+                && !(mView instanceof PendingAppWidgetHostView)) {
+            return ((long) System.identityHashCode(mView) << 32)
+                    | (((LauncherAppWidgetHostView) mView).getUpdateCount() & 0xFFFFFFFFL);
+        }
+        return 0;
+    }
+
     protected static Rect getDrawableBounds(Drawable d) {
         Rect bounds = new Rect();
         d.copyBounds(bounds);
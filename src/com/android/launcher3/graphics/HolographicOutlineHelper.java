@@ -27,6 +27,7 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.util.LruCache;
 import android.util.SparseArray;
 
 import com.android.launcher3.BubbleTextView;
@@ -41,6 +42,10 @@ import java.nio.ByteBuffer;
  */
 public class HolographicOutlineHelper {
 
+    private static final int MAX_SCRATCH_BYTES = 6 * 1024 * 1024;
+    private static final int MAX_DRAG_BITMAP_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_OUTLINE_CACHE_BYTES = 2 * 1024 * 1024;
+
     private static HolographicOutlineHelper sInstance;
 
     private final Canvas mCanvas = new Canvas();
@@ -58,6 +63,19 @@ public class HolographicOutlineHelper {
     // We have 4 different icon sizes: homescreen, hotseat, folder & all-apps
     private final SparseArray<Bitmap> mBitmapCache = new SparseArray<>(4);
 
+    /** Scratch buffers used while generating outlines, so that no bitmaps are extracted. */
+    private final BitmapPool mScratchPool = new BitmapPool(3, MAX_SCRATCH_BYTES);
+    /** Buffers for the drag previews, which are copied by the DragView. */
+    private final BitmapPool mDragBitmapPool = new BitmapPool(2, MAX_DRAG_BITMAP_BYTES);
+    private final LruCache<OutlineKey, Bitmap> mOutlineCache =
+            new LruCache<OutlineKey, Bitmap>(MAX_OUTLINE_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(OutlineKey key, Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+    private byte[] mThresholdPixels;
+
     private HolographicOutlineHelper(Context context) {
         Resources res = context.getResources();
 
@@ -92,12 +110,15 @@ public class HolographicOutlineHelper {
 
         // We start by removing most of the alpha channel so as to ignore shadows, and
         // other types of partial transparency when defining the shape of the object
-        byte[] pixels = new byte[srcDst.getWidth() * srcDst.getHeight()];
-        ByteBuffer buffer = ByteBuffer.wrap(pixels);
-        buffer.rewind();
+        int pixelCount = srcDst.getWidth() * srcDst.getHeight();
+        if (mThresholdPixels == null || mThresholdPixels.length < pixelCount) {
+            mThresholdPixels = new byte[pixelCount];
+        }
+        byte[] pixels = mThresholdPixels;
+        ByteBuffer buffer = ByteBuffer.wrap(pixels, 0, pixelCount);
         srcDst.copyPixelsToBuffer(buffer);
 
-        for (int i = 0; i < pixels.length; i++) {
+        for (int i = 0; i < pixelCount; i++) {
             if ((pixels[i] & 0xFF) < 188) {
                 pixels[i] = 0;
             }
@@ -106,48 +127,86 @@ public class HolographicOutlineHelper {
         buffer.rewind();
         srcDst.copyPixelsFromBuffer(buffer);
 
+        // The blurs are drawn into scratch bitmaps of the same size as srcDst, instead of
+        // extracting new bitmaps. Anything they would add outside of srcDst is clipped when
+        // drawing them back anyway.
+        int width = srcDst.getWidth();
+        int height = srcDst.getHeight();
+
         // calculate the outer blur first
+        Bitmap thickOuterBlur = mScratchPool.acquire(width, height, Bitmap.Config.ALPHA_8);
         mBlurPaint.setMaskFilter(mMediumOuterBlurMaskFilter);
-        int[] outerBlurOffset = new int[2];
-        Bitmap thickOuterBlur = srcDst.extractAlpha(mBlurPaint, outerBlurOffset);
+        srcDstCanvas.setBitmap(thickOuterBlur);
+        srcDstCanvas.drawBitmap(srcDst, 0, 0, mBlurPaint);
 
+        Bitmap brightOutline = mScratchPool.acquire(width, height, Bitmap.Config.ALPHA_8);
         mBlurPaint.setMaskFilter(mThinOuterBlurMaskFilter);
-        int[] brightOutlineOffset = new int[2];
-        Bitmap brightOutline = srcDst.extractAlpha(mBlurPaint, brightOutlineOffset);
+        srcDstCanvas.setBitmap(brightOutline);
+        srcDstCanvas.drawBitmap(srcDst, 0, 0, mBlurPaint);
 
         // calculate the inner blur
         srcDstCanvas.setBitmap(srcDst);
         srcDstCanvas.drawColor(0xFF000000, PorterDuff.Mode.SRC_OUT);
+        Bitmap thickInnerBlur = mScratchPool.acquire(width, height, Bitmap.Config.ALPHA_8);
         mBlurPaint.setMaskFilter(mMediumInnerBlurMaskFilter);
-        int[] thickInnerBlurOffset = new int[2];
-        Bitmap thickInnerBlur = srcDst.extractAlpha(mBlurPaint, thickInnerBlurOffset);
+        srcDstCanvas.setBitmap(thickInnerBlur);
+        srcDstCanvas.drawBitmap(srcDst, 0, 0, mBlurPaint);
 
         // mask out the inner blur
-        srcDstCanvas.setBitmap(thickInnerBlur);
-        srcDstCanvas.drawBitmap(srcDst, -thickInnerBlurOffset[0],
-                -thickInnerBlurOffset[1], mErasePaint);
-        srcDstCanvas.drawRect(0, 0, -thickInnerBlurOffset[0], thickInnerBlur.getHeight(),
-                mErasePaint);
-        srcDstCanvas.drawRect(0, 0, thickInnerBlur.getWidth(), -thickInnerBlurOffset[1],
-                mErasePaint);
+        srcDstCanvas.drawBitmap(srcDst, 0, 0, mErasePaint);
 
         // draw the inner and outer blur
         srcDstCanvas.setBitmap(srcDst);
         srcDstCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
-        srcDstCanvas.drawBitmap(thickInnerBlur, thickInnerBlurOffset[0], thickInnerBlurOffset[1],
-                mDrawPaint);
-        srcDstCanvas.drawBitmap(thickOuterBlur, outerBlurOffset[0], outerBlurOffset[1],
-                mDrawPaint);
+        srcDstCanvas.drawBitmap(thickInnerBlur, 0, 0, mDrawPaint);
+        srcDstCanvas.drawBitmap(thickOuterBlur, 0, 0, mDrawPaint);
 
         // draw the bright outline
-        srcDstCanvas.drawBitmap(brightOutline, brightOutlineOffset[0], brightOutlineOffset[1],
-                mDrawPaint);
+        srcDstCanvas.drawBitmap(brightOutline, 0, 0, mDrawPaint);
 
         // cleanup
         srcDstCanvas.setBitmap(null);
-        brightOutline.recycle();
-        thickOuterBlur.recycle();
-        thickInnerBlur.recycle();
+        mScratchPool.release(brightOutline);
+        mScratchPool.release(thickOuterBlur);
+        mScratchPool.release(thickInnerBlur);
+    }
+
+    /**
+     * Returns a bitmap to draw a drag preview into, which can be given back with
+     * {@link #releaseDragBitmap(Bitmap)} once it has been copied.
+     */
+    public Bitmap acquireDragBitmap(int width, int height) {
+        return mDragBitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public void releaseDragBitmap(Bitmap bitmap) {
+        mDragBitmapPool.release(bitmap);
+    }
+
+    /**
+     * Returns the outline generated for the item {@param itemId} with the given size and content,
+     * or null if it is not cached.
+     */
+    public Bitmap getCachedOutline(long itemId, int width, int height, long contentStamp) {
+        return mOutlineCache.get(new OutlineKey(itemId, width, height, contentStamp));
+    }
+
+    /**
+     * Caches {@param outline}. The bitmap is shared and should not be modified afterwards.
+     */
+    public void cacheOutline(long itemId, long contentStamp, Bitmap outline) {
+        mOutlineCache.put(new OutlineKey(itemId, outline.getWidth(), outline.getHeight(),
+                contentStamp), outline);
+    }
+
+    /**
+     * Drops all the pooled and cached bitmaps.
+     */
+    public void clearCaches() {
+        mScratchPool.clear();
+        mDragBitmapPool.clear();
+        mOutlineCache.evictAll();
+        mThresholdPixels = null;
     }
 
     public Bitmap createMediumDropShadow(BubbleTextView view) {
@@ -211,4 +270,36 @@ public class HolographicOutlineHelper {
             mBitmapCache.put((bitmap.getWidth() << 16) | bitmap.getHeight(), bitmap);
         }
     }
+
+    private static class OutlineKey {
+        private final long mItemId;
+        private final int mWidth;
+        private final int mHeight;
+        private final long mContentStamp;
+
+        OutlineKey(long itemId, int width, int height, long contentStamp) {
+            mItemId = itemId;
+            mWidth = width;
+            mHeight = height;
+            mContentStamp = contentStamp;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OutlineKey)) {
+                return false;
+            }
+            OutlineKey other = (OutlineKey) o;
+            return mItemId == other.mItemId && mWidth == other.mWidth
+                    && mHeight == other.mHeight && mContentStamp == other.mContentStamp;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (mItemId ^ (mItemId >>> 32));
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            return 31 * result + (int) (mContentStamp ^ (mContentStamp >>> 32));
+        }
+    }
 }
@@ -29,16 +29,32 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.AdaptiveIconDrawable;
 import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Drawable.ConstantState;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.util.Pools;
 import android.util.Log;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.Utilities;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
 import java.util.Random;
+import java.util.WeakHashMap;
 
+/**
+ * Computes the scale which visually normalizes an icon with the other icons.
+ *
+ * Instances are obtained from a pool, bounded by the number of cores, and hold their own scratch
+ * bitmaps and buffers, so that icons can be normalized in parallel without keeping an instance
+ * alive for every thread which ever normalized an icon. An instance must be recycled once done.
+ * The results are shared by all the instances: the scale of adaptive
+ * icons is computed once, and the scale of other icons is cached per {@link ConstantState}, which
+ * identifies the drawables loaded from the same resource.
+ */
 public class IconNormalizer {
 
     private static final String TAG = "IconNormalizer";
@@ -56,34 +72,52 @@ public class IconNormalizer {
 
     private static final int MIN_VISIBLE_ALPHA = 40;
 
+    // Used to check the alpha of 8 pixels at once, see visiblePixels()
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long VISIBLE_ALPHA_OFFSET =
+            0x0101010101010101L * (127 - MIN_VISIBLE_ALPHA);
+
     // Shape detection related constants
     private static final float BOUND_RATIO_MARGIN = .05f;
     private static final float PIXEL_DIFF_PERCENTAGE_THRESHOLD = 0.005f;
-    private static final float SCALE_NOT_INITIALIZED = 0;
 
-    private static final Object LOCK = new Object();
-    private static IconNormalizer sIconNormalizer;
+    private static final Pools.SynchronizedPool<IconNormalizer> sPool =
+            new Pools.SynchronizedPool<>(Runtime.getRuntime().availableProcessors());
+
+    // Scale of all the adaptive icons, which share the same mask, computed once.
+    private static volatile ScaleResult sAdaptiveIconScale;
+    // Scale of the other icons, guarded by itself.
+    private static final WeakHashMap<ConstantState, ScaleResult> sScaleCache =
+            new WeakHashMap<>();
+    // Fraction of its bounds covered by the adaptive icon mask, computed once.
+    private static volatile float sMaskAreaFraction = -1;
 
     private final int mMaxSize;
     private final Bitmap mBitmap;
-    private final Bitmap mBitmapARGB;
     private final Canvas mCanvas;
     private final Paint mPaintMaskShape;
     private final Paint mPaintMaskShapeOutline;
     private final byte[] mPixels;
-    private final int[] mPixelsARGB;
+    // mPixels, 8 pixels per word. Rows are padded to a whole number of words.
+    private final LongBuffer mPixelWordsBuffer;
+    private final long[] mPixelWords;
+    private final int mRowWords;
 
-    private final Rect mAdaptiveIconBounds;
-    private float mAdaptiveIconScale;
+    // Only needed for isShape(), created on first use.
+    private Bitmap mBitmapARGB;
+    private Canvas mCanvasARGB;
+    private int[] mPixelsARGB;
 
     // for each y, stores the position of the leftmost x and the rightmost x
     private final float[] mLeftBorder;
     private final float[] mRightBorder;
+    private final float[] mAngles;
     private final Rect mBounds;
+    private final RectF mTempBounds;
     private final Matrix mMatrix;
 
     private final Paint mPaintIcon;
-    private final Canvas mCanvasARGB;
 
     private final File mDir;
     private int mFileId;
@@ -92,18 +126,18 @@ public class IconNormalizer {
     private IconNormalizer(Context context) {
         // Use twice the icon size as maximum size to avoid scaling down twice.
         mMaxSize = LauncherAppState.getIDP(context).iconBitmapSize * 2;
-        mBitmap = Bitmap.createBitmap(mMaxSize, mMaxSize, Bitmap.Config.ALPHA_8);
+        mRowWords = (mMaxSize + 7) / 8;
+        // The rows of an ALPHA_8 bitmap are not padded when its width is a multiple of 8.
+        mBitmap = Bitmap.createBitmap(mRowWords * 8, mMaxSize, Bitmap.Config.ALPHA_8);
         mCanvas = new Canvas(mBitmap);
-        mPixels = new byte[mMaxSize * mMaxSize];
-        mPixelsARGB = new int[mMaxSize * mMaxSize];
+        mPixels = new byte[mRowWords * 8 * mMaxSize];
+        mPixelWordsBuffer = ByteBuffer.wrap(mPixels).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        mPixelWords = new long[mRowWords * mMaxSize];
         mLeftBorder = new float[mMaxSize];
         mRightBorder = new float[mMaxSize];
+        mAngles = new float[mMaxSize - 1];
         mBounds = new Rect();
-        mAdaptiveIconBounds = new Rect();
-
-        // Needed for isShape() method
-        mBitmapARGB = Bitmap.createBitmap(mMaxSize, mMaxSize, Bitmap.Config.ARGB_8888);
-        mCanvasARGB = new Canvas(mBitmapARGB);
+        mTempBounds = new RectF();
 
         mPaintIcon = new Paint();
         mPaintIcon.setColor(Color.WHITE);
@@ -120,9 +154,8 @@ public class IconNormalizer {
         mPaintMaskShapeOutline.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
 
         mMatrix = new Matrix();
-        mAdaptiveIconScale = SCALE_NOT_INITIALIZED;
 
-        mDir = context.getExternalFilesDir(null);
+        mDir = DEBUG ? context.getExternalFilesDir(null) : null;
         mRandom = new Random();
     }
 
@@ -146,6 +179,11 @@ public class IconNormalizer {
         // Actual icon (white) and the fitted shape (e.g., circle)(red) XOR operation
         // should generate transparent image, if the actual icon is equivalent to the shape.
         mFileId = mRandom.nextInt();
+        if (mBitmapARGB == null) {
+            mBitmapARGB = Bitmap.createBitmap(mMaxSize, mMaxSize, Bitmap.Config.ARGB_8888);
+            mCanvasARGB = new Canvas(mBitmapARGB);
+            mPixelsARGB = new int[mMaxSize * mMaxSize];
+        }
         mBitmapARGB.eraseColor(Color.TRANSPARENT);
         mCanvasARGB.drawBitmap(mBitmap, 0, 0, mPaintIcon);
 
@@ -229,17 +267,43 @@ public class IconNormalizer {
      *
      * @param outBounds optional rect to receive the fraction distance from each edge.
      */
-    public synchronized float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
+    public float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
             @Nullable Path path, @Nullable boolean[] outMaskShape) {
-        if (Utilities.ATLEAST_OREO && d instanceof AdaptiveIconDrawable &&
-                mAdaptiveIconScale != SCALE_NOT_INITIALIZED) {
-            if (outBounds != null) {
-                outBounds.set(mAdaptiveIconBounds);
+        boolean isAdaptiveIcon = Utilities.ATLEAST_OREO && d instanceof AdaptiveIconDrawable;
+        if (isAdaptiveIcon) {
+            ScaleResult adaptiveIconScale = sAdaptiveIconScale;
+            if (adaptiveIconScale != null) {
+                if (outBounds != null) {
+                    outBounds.set(adaptiveIconScale.iconBounds);
+                }
+                return adaptiveIconScale.scale;
+            }
+        }
+
+        int intrinsicWidth = d.getIntrinsicWidth();
+        int intrinsicHeight = d.getIntrinsicHeight();
+        boolean needsMaskShape = outMaskShape != null && outMaskShape.length > 0;
+        ConstantState state = isAdaptiveIcon ? null : d.getConstantState();
+        if (state != null) {
+            ScaleResult cached;
+            synchronized (sScaleCache) {
+                cached = sScaleCache.get(state);
+            }
+            if (cached != null && cached.width == intrinsicWidth
+                    && cached.height == intrinsicHeight
+                    && (!needsMaskShape || cached.hasMaskShape)) {
+                if (outBounds != null) {
+                    outBounds.set(cached.bounds);
+                }
+                if (needsMaskShape) {
+                    outMaskShape[0] = cached.maskShape;
+                }
+                return cached.scale;
             }
-            return mAdaptiveIconScale;
         }
-        int width = d.getIntrinsicWidth();
-        int height = d.getIntrinsicHeight();
+
+        int width = intrinsicWidth;
+        int height = intrinsicHeight;
         if (width <= 0 || height <= 0) {
             width = width <= 0 || width > mMaxSize ? mMaxSize : width;
             height = height <= 0 || height > mMaxSize ? mMaxSize : height;
@@ -256,59 +320,28 @@ public class IconNormalizer {
         ByteBuffer buffer = ByteBuffer.wrap(mPixels);
         buffer.rewind();
         mBitmap.copyPixelsToBuffer(buffer);
+        mPixelWordsBuffer.rewind();
+        mPixelWordsBuffer.get(mPixelWords, 0, height * mRowWords);
 
-        // Overall bounds of the visible icon.
-        int topY = -1;
-        int bottomY = -1;
-        int leftX = mMaxSize + 1;
-        int rightX = -1;
-
-        // Create border by going through all pixels one row at a time and for each row find
+        // Create border by going through the pixels one row at a time and for each row find
         // the first and the last non-transparent pixel. Set those values to mLeftBorder and
         // mRightBorder and use -1 if there are no visible pixel in the row.
+        int visiblePixels = scanBorders(mPixelWords, mRowWords, width, height,
+                mLeftBorder, mRightBorder, mBounds, needsMaskShape);
 
-        // buffer position
-        int index = 0;
-        // buffer shift after every row, width of buffer = mMaxSize
-        int rowSizeDiff = mMaxSize - width;
-        // first and last position for any row.
-        int firstX, lastX;
-
-        for (int y = 0; y < height; y++) {
-            firstX = lastX = -1;
-            for (int x = 0; x < width; x++) {
-                if ((mPixels[index] & 0xFF) > MIN_VISIBLE_ALPHA) {
-                    if (firstX == -1) {
-                        firstX = x;
-                    }
-                    lastX = x;
-                }
-                index++;
-            }
-            index += rowSizeDiff;
-
-            mLeftBorder[y] = firstX;
-            mRightBorder[y] = lastX;
-
-            // If there is at least one visible pixel, update the overall bounds.
-            if (firstX != -1) {
-                bottomY = y;
-                if (topY == -1) {
-                    topY = y;
-                }
-
-                leftX = Math.min(leftX, firstX);
-                rightX = Math.max(rightX, lastX);
-            }
-        }
+        // Overall bounds of the visible icon.
+        int topY = mBounds.top;
+        int bottomY = mBounds.bottom;
+        int leftX = mBounds.left;
+        int rightX = mBounds.right;
 
         if (topY == -1 || rightX == -1) {
             // No valid pixels found. Do not scale.
             return 1;
         }
 
-        convertToConvexArray(mLeftBorder, 1, topY, bottomY);
-        convertToConvexArray(mRightBorder, -1, topY, bottomY);
+        convertToConvexArray(mLeftBorder, 1, topY, bottomY, mAngles);
+        convertToConvexArray(mRightBorder, -1, topY, bottomY, mAngles);
 
         // Area of the convex hull
         float area = 0;
@@ -329,28 +362,32 @@ public class IconNormalizer {
         } else {
             scaleRequired = MAX_SQUARE_AREA_FACTOR + LINEAR_SCALE_SLOPE * (1 - hullByRect);
         }
-        mBounds.left = leftX;
-        mBounds.right = rightX;
-
-        mBounds.top = topY;
-        mBounds.bottom = bottomY;
-
+        mTempBounds.set(((float) mBounds.left) / width, ((float) mBounds.top),
+                1 - ((float) mBounds.right) / width,
+                1 - ((float) mBounds.bottom) / height);
         if (outBounds != null) {
-            outBounds.set(((float) mBounds.left) / width, ((float) mBounds.top),
-                    1 - ((float) mBounds.right) / width,
-                    1 - ((float) mBounds.bottom) / height);
+            outBounds.set(mTempBounds);
         }
 
-        if (outMaskShape != null && outMaskShape.length > 0) {
-            outMaskShape[0] = isShape(path);
+        boolean maskShape = false;
+        if (needsMaskShape) {
+            maskShape = mayBeShape(path, visiblePixels) && isShape(path);
+            outMaskShape[0] = maskShape;
         }
         float areaScale = area / (width * height);
         // Use sqrt of the final ratio as the images is scaled across both width and height.
         float scale = areaScale > scaleRequired ? (float) Math.sqrt(scaleRequired / areaScale) : 1;
-        if (Utilities.ATLEAST_OREO && d instanceof AdaptiveIconDrawable &&
-                mAdaptiveIconScale == SCALE_NOT_INITIALIZED) {
-            mAdaptiveIconScale = scale;
-            mAdaptiveIconBounds.set(mBounds);
+
+        ScaleResult result = new ScaleResult(intrinsicWidth, intrinsicHeight, scale,
+                mTempBounds, mBounds, needsMaskShape, maskShape);
+        if (isAdaptiveIcon) {
+            if (sAdaptiveIconScale == null) {
+                sAdaptiveIconScale = result;
+            }
+        } else if (state != null) {
+            synchronized (sScaleCache) {
+                sScaleCache.put(state, result);
+            }
         }
         return scale;
     }
@@ -362,12 +399,10 @@ public class IconNormalizer {
      * @param direction 1 for left border and -1 for right border.
      * @param topY the first Y position (inclusive) with a valid value.
      * @param bottomY the last Y position (inclusive) with a valid value.
+     * @param angles buffer receiving the tangent at each pixel.
      */
     private static void convertToConvexArray(
-            float[] xCoordinates, int direction, int topY, int bottomY) {
-        int total = xCoordinates.length;
-        // The tangent at each pixel.
-        float[] angles = new float[total - 1];
+            float[] xCoordinates, int direction, int topY, int bottomY, float[] angles) {
 
         int first = topY; // First valid y coordinate
         int last = -1;    // Last valid y coordinate which didn't have a missing value
@@ -409,12 +444,179 @@ public class IconNormalizer {
         }
     }
 
-    public static IconNormalizer getInstance(Context context) {
-        synchronized (LOCK) {
-            if (sIconNormalizer == null) {
-                sIconNormalizer = new IconNormalizer(context);
+    /**
+     * Finds the first and last visible pixel of each row of an alpha mask.
+     *
+     * Each row is scanned from both ends, 8 pixels at a time, and the pixels in between are only
+     * read to count them.
+     * @param pixelWords the alpha of the pixels, 8 per word in little endian order, with each row
+     *                   starting on a new word.
+     * @param outLeftBorder receives the first visible x of each row, -1 if there is none.
+     * @param outRightBorder receives the last visible x of each row, -1 if there is none.
+     * @param outBounds receives the bounds (inclusive) of the visible pixels, -1 if there is none.
+     * @return the number of visible pixels if {@param countPixels}, 0 otherwise.
+     */
+    @VisibleForTesting
+    static int scanBorders(long[] pixelWords, int rowWords, int width, int height,
+            float[] outLeftBorder, float[] outRightBorder, Rect outBounds, boolean countPixels) {
+        int topY = -1;
+        int bottomY = -1;
+        int leftX = Integer.MAX_VALUE;
+        int rightX = -1;
+        int count = 0;
+
+        int lastWord = (width - 1) >> 3;
+        int lastWordPixels = width - (lastWord << 3);
+        // Ignores the pixels beyond the width in the last word of a row.
+        long lastWordMask = lastWordPixels == 8 ? -1L : (1L << (lastWordPixels << 3)) - 1;
+
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * rowWords;
+            int firstX = -1;
+            int lastX = -1;
+
+            int first = 0;
+            long firstVisible = 0;
+            for (; first <= lastWord; first++) {
+                firstVisible = visiblePixels(pixelWords[rowStart + first],
+                        first == lastWord ? lastWordMask : -1L);
+                if (firstVisible != 0) {
+                    firstX = (first << 3) + (Long.numberOfTrailingZeros(firstVisible) >> 3);
+                    break;
+                }
+            }
+
+            if (firstX != -1) {
+                int last = first;
+                long lastVisible = firstVisible;
+                for (int i = lastWord; i > first; i--) {
+                    long visible = visiblePixels(pixelWords[rowStart + i],
+                            i == lastWord ? lastWordMask : -1L);
+                    if (visible != 0) {
+                        last = i;
+                        lastVisible = visible;
+                        break;
+                    }
+                }
+                lastX = (last << 3) + ((63 - Long.numberOfLeadingZeros(lastVisible)) >> 3);
+
+                if (countPixels) {
+                    for (int i = first; i <= last; i++) {
+                        count += Long.bitCount(visiblePixels(pixelWords[rowStart + i],
+                                i == lastWord ? lastWordMask : -1L));
+                    }
+                }
+
+                // There is at least one visible pixel, update the overall bounds.
+                bottomY = y;
+                if (topY == -1) {
+                    topY = y;
+                }
+                leftX = Math.min(leftX, firstX);
+                rightX = Math.max(rightX, lastX);
+            }
+
+            outLeftBorder[y] = firstX;
+            outRightBorder[y] = lastX;
+        }
+
+        outBounds.set(topY == -1 ? -1 : leftX, topY, rightX, bottomY);
+        return count;
+    }
+
+    /**
+     * Returns the high bit of each byte of {@param pixels & mask} whose alpha is more than
+     * {@link #MIN_VISIBLE_ALPHA}. The low 7 bits of each byte are offset so that they carry into
+     * the high bit when the alpha is visible, without carrying into the next byte.
+     */
+    private static long visiblePixels(long pixels, long mask) {
+        pixels &= mask;
+        return (((pixels & LOW_BITS) + VISIBLE_ALPHA_OFFSET) | pixels) & HIGH_BITS;
+    }
+
+    /**
+     * Returns false if the icon can not be the same shape as the path, because its number of
+     * visible pixels differs from the area of the path too much for {@link #isShape} to pass.
+     * That difference can only be hidden by the outline which isShape removes.
+     */
+    private boolean mayBeShape(Path maskPath, int visiblePixels) {
+        int width = mBounds.width();
+        int height = mBounds.height();
+        float boundsArea = width * height;
+        float maskArea = getMaskAreaFraction(maskPath) * boundsArea;
+        float outlineArea = 2 * (width + height) * mPaintMaskShapeOutline.getStrokeWidth();
+        return Math.abs(visiblePixels - maskArea)
+                <= PIXEL_DIFF_PERCENTAGE_THRESHOLD * boundsArea + outlineArea;
+    }
+
+    /**
+     * Returns the fraction of the [0,1]x[0,1] bounds covered by {@param maskPath}. All the
+     * adaptive icons use the same mask, so it is only rendered once.
+     */
+    private float getMaskAreaFraction(Path maskPath) {
+        float fraction = sMaskAreaFraction;
+        if (fraction >= 0) {
+            return fraction;
+        }
+
+        Path path = new Path();
+        mMatrix.setScale(mMaxSize, mMaxSize);
+        maskPath.transform(mMatrix, path);
+        Bitmap bitmap = Bitmap.createBitmap(mMaxSize, mMaxSize, Bitmap.Config.ALPHA_8);
+        new Canvas(bitmap).drawPath(path, mPaintIcon);
+        byte[] pixels = new byte[bitmap.getRowBytes() * mMaxSize];
+        bitmap.copyPixelsToBuffer(ByteBuffer.wrap(pixels));
+        bitmap.recycle();
+
+        int count = 0;
+        for (byte alpha : pixels) {
+            if ((alpha & 0xFF) > MIN_VISIBLE_ALPHA) {
+                count++;
             }
         }
-        return sIconNormalizer;
+        fraction = (float) count / (mMaxSize * mMaxSize);
+        sMaskAreaFraction = fraction;
+        return fraction;
+    }
+
+    /**
+     * Returns an instance for the exclusive use of the caller, which must {@link #recycle()} it.
+     */
+    public static IconNormalizer obtain(Context context) {
+        IconNormalizer normalizer = sPool.acquire();
+        return normalizer != null ? normalizer : new IconNormalizer(context);
+    }
+
+    /**
+     * Returns this instance to the pool. It is dropped if the pool is full.
+     */
+    public void recycle() {
+        sPool.release(this);
+    }
+
+    /**
+     * The scale computed for an icon.
+     */
+    private static class ScaleResult {
+        final int width;
+        final int height;
+        final float scale;
+        // Fraction distance from each edge.
+        final RectF bounds;
+        // Bounds of the visible icon in pixels, which adaptive icons reported as is.
+        final Rect iconBounds;
+        final boolean hasMaskShape;
+        final boolean maskShape;
+
+        ScaleResult(int width, int height, float scale, RectF bounds, Rect iconBounds,
+                boolean hasMaskShape, boolean maskShape) {
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.bounds = new RectF(bounds);
+            this.iconBounds = new Rect(iconBounds);
+            this.hasMaskShape = hasMaskShape;
+            this.maskShape = maskShape;
+        }
     }
 }
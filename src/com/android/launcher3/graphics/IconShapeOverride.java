@@ -111,6 +111,15 @@ public class IconShapeOverride {
         return staticField;
     }
 
+    /**
+     * Returns the path of the mask currently applied to adaptive icons, including any override,
+     * or an empty string if there is none.
+     */
+    public static String getMaskPath() {
+        int resId = getConfigResId();
+        return resId == 0 ? "" : Resources.getSystem().getString(resId);
+    }
+
     private static int getConfigResId() {
         return Resources.getSystem().getIdentifier("config_icon_mask", "string", "android");
     }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import com.android.launcher3.Utilities;
+import com.android.launcher3.config.FeatureFlags;
+
+import java.io.PrintWriter;
+import java.util.IdentityHashMap;
+
+/**
+ * Decides where the pixels of the cached icons are kept.
+ *
+ * With {@link FeatureFlags#HARDWARE_BITMAP_ICONS}, on O and above, the icons kept by the icon
+ * cache are hardware bitmaps, whose pixels only live in graphics memory instead of the Java heap.
+ * They can be drawn on a hardware accelerated canvas, but their pixels can't be read and they
+ * can't be drawn on a software canvas, so the few places doing so use {@link #toSoftware}.
+ */
+public class IconStorage {
+
+    public static final boolean USE_HARDWARE_BITMAPS =
+            FeatureFlags.HARDWARE_BITMAP_ICONS && Utilities.ATLEAST_OREO;
+
+    @TargetApi(Build.VERSION_CODES.O)
+    public static boolean isHardware(Bitmap bitmap) {
+        return Utilities.ATLEAST_OREO && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+
+    /**
+     * Returns the bitmap to keep in the icon cache for {@param icon}, which is moved out of the
+     * Java heap if enabled. {@param icon} should not be used afterwards.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    public static Bitmap toStorage(Bitmap icon) {
+        if (!USE_HARDWARE_BITMAPS || icon == null || isHardware(icon)) {
+            return icon;
+        }
+        Bitmap hardwareIcon = icon.copy(Bitmap.Config.HARDWARE, false /* isMutable */);
+        // The copy fails if the graphics memory is exhausted.
+        return hardwareIcon == null ? icon : hardwareIcon;
+    }
+
+    /**
+     * Returns {@param bitmap}, or a copy of it in the Java heap if it is a hardware bitmap, so
+     * that its pixels can be read or drawn on a software canvas.
+     */
+    public static Bitmap toSoftware(Bitmap bitmap) {
+        if (bitmap == null || !isHardware(bitmap)) {
+            return bitmap;
+        }
+        return bitmap.copy(Bitmap.Config.ARGB_8888, false /* isMutable */);
+    }
+
+    /**
+     * Returns the options to decode icons from the icon DB, directly into the storage used for
+     * the cached icons, or {@param defaultConfig} if they are kept in the Java heap.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    public static BitmapFactory.Options newDecodeOptions(Bitmap.Config defaultConfig) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = USE_HARDWARE_BITMAPS ? Bitmap.Config.HARDWARE : defaultConfig;
+        return options;
+    }
+
+    /**
+     * Sums the memory used by a set of icons, by storage type. Icons shared by several items are
+     * only counted once.
+     */
+    public static class Usage {
+
+        private final IdentityHashMap<Bitmap, Boolean> mCounted = new IdentityHashMap<>();
+        private int mHeapCount;
+        private long mHeapBytes;
+        private int mHardwareCount;
+        private long mHardwareBytes;
+
+        public void add(Bitmap icon) {
+            if (icon == null || icon.isRecycled() || mCounted.put(icon, Boolean.TRUE) != null) {
+                return;
+            }
+            if (isHardware(icon)) {
+                mHardwareCount++;
+                mHardwareBytes += icon.getAllocationByteCount();
+            } else {
+                mHeapCount++;
+                mHeapBytes += icon.getAllocationByteCount();
+            }
+        }
+
+        public void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + "heap: icons=" + mHeapCount + " bytes=" + mHeapBytes);
+            writer.println(prefix + "hardware: icons=" + mHardwareCount
+                    + " bytes=" + mHardwareBytes);
+        }
+    }
+}
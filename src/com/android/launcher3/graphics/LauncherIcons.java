@@ -36,6 +36,7 @@ import android.os.Build;
 import android.os.Process;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
+import android.support.v4.util.Pools;
 
 import com.android.launcher3.AppInfo;
 import com.android.launcher3.FastBitmapDrawable;
@@ -54,13 +55,9 @@ import com.android.launcher3.util.Provider;
  */
 public class LauncherIcons {
 
-    private static final Rect sOldBounds = new Rect();
-    private static final Canvas sCanvas = new Canvas();
-
-    static {
-        sCanvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
-                Paint.FILTER_BITMAP_FLAG));
-    }
+    // Canvases used to draw the icons, so that icons can be created in parallel.
+    private static final Pools.SynchronizedPool<Canvas> sCanvasPool =
+            new Pools.SynchronizedPool<>(Runtime.getRuntime().availableProcessors());
 
     /**
      * Returns a bitmap suitable for the all apps view. If the package or the resource do not
@@ -103,29 +100,33 @@ public class LauncherIcons {
         IconNormalizer normalizer;
         float scale = 1f;
         if (!FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION) {
-            normalizer = IconNormalizer.getInstance(context);
-            if (Utilities.ATLEAST_OREO && iconAppTargetSdk >= Build.VERSION_CODES.O) {
-                boolean[] outShape = new boolean[1];
-                AdaptiveIconDrawable dr = (AdaptiveIconDrawable)
-                        context.getDrawable(R.drawable.adaptive_icon_drawable_wrapper).mutate();
-                dr.setBounds(0, 0, 1, 1);
-                scale = normalizer.getScale(icon, null, dr.getIconMask(), outShape);
-                if (FeatureFlags.LEGACY_ICON_TREATMENT &&
-                        !outShape[0]){
-                    Drawable wrappedIcon = wrapToAdaptiveIconDrawable(context, icon, scale);
-                    if (wrappedIcon != icon) {
-                        icon = wrappedIcon;
-                        scale = normalizer.getScale(icon, null, null, null);
+            normalizer = IconNormalizer.obtain(context);
+            try {
+                if (Utilities.ATLEAST_OREO && iconAppTargetSdk >= Build.VERSION_CODES.O) {
+                    boolean[] outShape = new boolean[1];
+                    AdaptiveIconDrawable dr = (AdaptiveIconDrawable)
+                            context.getDrawable(R.drawable.adaptive_icon_drawable_wrapper).mutate();
+                    dr.setBounds(0, 0, 1, 1);
+                    scale = normalizer.getScale(icon, null, dr.getIconMask(), outShape);
+                    if (FeatureFlags.LEGACY_ICON_TREATMENT &&
+                            !outShape[0]){
+                        Drawable wrappedIcon = wrapToAdaptiveIconDrawable(context, icon, scale);
+                        if (wrappedIcon != icon) {
+                            icon = wrappedIcon;
+                            scale = normalizer.getScale(icon, null, null, null);
+                        }
                     }
+                } else {
+                    scale = normalizer.getScale(icon, null, null, null);
                 }
-            } else {
-                scale = normalizer.getScale(icon, null, null, null);
+            } finally {
+                normalizer.recycle();
             }
         }
         Bitmap bitmap = createIconBitmap(icon, context, scale);
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.ATLEAST_OREO &&
                 icon instanceof AdaptiveIconDrawable) {
-            bitmap = ShadowGenerator.getInstance(context).recreateIcon(bitmap);
+            bitmap = ShadowGenerator.addShadow(bitmap, context);
         }
         return badgeIconForUser(bitmap, user, context);
     }
@@ -157,25 +158,28 @@ public class LauncherIcons {
         IconNormalizer normalizer;
         float scale = 1f;
         if (!FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION) {
-            normalizer = IconNormalizer.getInstance(context);
-            if (Utilities.ATLEAST_OREO && iconAppTargetSdk >= Build.VERSION_CODES.O) {
-                boolean[] outShape = new boolean[1];
-                AdaptiveIconDrawable dr = (AdaptiveIconDrawable)
-                        context.getDrawable(R.drawable.adaptive_icon_drawable_wrapper).mutate();
-                dr.setBounds(0, 0, 1, 1);
-                scale = normalizer.getScale(icon, iconBounds, dr.getIconMask(), outShape);
-                if (Utilities.ATLEAST_OREO && FeatureFlags.LEGACY_ICON_TREATMENT &&
-                        !outShape[0]) {
-                    Drawable wrappedIcon = wrapToAdaptiveIconDrawable(context, icon, scale);
-                    if (wrappedIcon != icon) {
-                        icon = wrappedIcon;
-                        scale = normalizer.getScale(icon, iconBounds, null, null);
+            normalizer = IconNormalizer.obtain(context);
+            try {
+                if (Utilities.ATLEAST_OREO && iconAppTargetSdk >= Build.VERSION_CODES.O) {
+                    boolean[] outShape = new boolean[1];
+                    AdaptiveIconDrawable dr = (AdaptiveIconDrawable)
+                            context.getDrawable(R.drawable.adaptive_icon_drawable_wrapper).mutate();
+                    dr.setBounds(0, 0, 1, 1);
+                    scale = normalizer.getScale(icon, iconBounds, dr.getIconMask(), outShape);
+                    if (Utilities.ATLEAST_OREO && FeatureFlags.LEGACY_ICON_TREATMENT &&
+                            !outShape[0]) {
+                        Drawable wrappedIcon = wrapToAdaptiveIconDrawable(context, icon, scale);
+                        if (wrappedIcon != icon) {
+                            icon = wrappedIcon;
+                            scale = normalizer.getScale(icon, iconBounds, null, null);
+                        }
                     }
+                } else {
+                    scale = normalizer.getScale(icon, iconBounds, null, null);
                 }
-            } else {
-                scale = normalizer.getScale(icon, iconBounds, null, null);
+            } finally {
+                normalizer.recycle();
             }
-
         }
         scale = Math.min(scale, ShadowGenerator.getScaleForBounds(iconBounds));
         return createIconBitmap(icon, context, scale);
@@ -186,7 +190,7 @@ public class LauncherIcons {
      * {@link #createScaledBitmapWithoutShadow(Drawable, Context, int)}
      */
     public static Bitmap addShadowToIcon(Bitmap icon, Context context) {
-        return ShadowGenerator.getInstance(context).recreateIcon(icon);
+        return ShadowGenerator.addShadow(icon, context);
     }
 
     /**
@@ -198,12 +202,14 @@ public class LauncherIcons {
 
     public static Bitmap badgeWithDrawable(Bitmap srcTgt, Drawable badge, Context context) {
         int badgeSize = context.getResources().getDimensionPixelSize(R.dimen.profile_badge_size);
-        synchronized (sCanvas) {
-            sCanvas.setBitmap(srcTgt);
+        Canvas canvas = obtainCanvas();
+        try {
+            canvas.setBitmap(srcTgt);
             int iconSize = srcTgt.getWidth();
             badge.setBounds(iconSize - badgeSize, iconSize - badgeSize, iconSize, iconSize);
-            badge.draw(sCanvas);
-            sCanvas.setBitmap(null);
+            badge.draw(canvas);
+        } finally {
+            recycleCanvas(canvas);
         }
         return srcTgt;
     }
@@ -220,7 +226,7 @@ public class LauncherIcons {
         Bitmap bitmap =  createIconBitmap(icon, context, scale);
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.ATLEAST_OREO &&
                 icon instanceof AdaptiveIconDrawable) {
-            bitmap = ShadowGenerator.getInstance(context).recreateIcon(bitmap);
+            bitmap = ShadowGenerator.addShadow(bitmap, context);
         }
         return bitmap;
     }
@@ -229,48 +235,48 @@ public class LauncherIcons {
      * @param scale the scale to apply before drawing {@param icon} on the canvas
      */
     public static Bitmap createIconBitmap(Drawable icon, Context context, float scale) {
-        synchronized (sCanvas) {
-            final int iconBitmapSize = LauncherAppState.getIDP(context).iconBitmapSize;
-            int width = iconBitmapSize;
-            int height = iconBitmapSize;
-
-            if (icon instanceof PaintDrawable) {
-                PaintDrawable painter = (PaintDrawable) icon;
-                painter.setIntrinsicWidth(width);
-                painter.setIntrinsicHeight(height);
-            } else if (icon instanceof BitmapDrawable) {
-                // Ensure the bitmap has a density.
-                BitmapDrawable bitmapDrawable = (BitmapDrawable) icon;
-                Bitmap bitmap = bitmapDrawable.getBitmap();
-                if (bitmap != null && bitmap.getDensity() == Bitmap.DENSITY_NONE) {
-                    bitmapDrawable.setTargetDensity(context.getResources().getDisplayMetrics());
-                }
+        final int iconBitmapSize = LauncherAppState.getIDP(context).iconBitmapSize;
+        int width = iconBitmapSize;
+        int height = iconBitmapSize;
+
+        if (icon instanceof PaintDrawable) {
+            PaintDrawable painter = (PaintDrawable) icon;
+            painter.setIntrinsicWidth(width);
+            painter.setIntrinsicHeight(height);
+        } else if (icon instanceof BitmapDrawable) {
+            // Ensure the bitmap has a density.
+            BitmapDrawable bitmapDrawable = (BitmapDrawable) icon;
+            Bitmap bitmap = bitmapDrawable.getBitmap();
+            if (bitmap != null && bitmap.getDensity() == Bitmap.DENSITY_NONE) {
+                bitmapDrawable.setTargetDensity(context.getResources().getDisplayMetrics());
             }
+        }
 
-            int sourceWidth = icon.getIntrinsicWidth();
-            int sourceHeight = icon.getIntrinsicHeight();
-            if (sourceWidth > 0 && sourceHeight > 0) {
-                // Scale the icon proportionally to the icon dimensions
-                final float ratio = (float) sourceWidth / sourceHeight;
-                if (sourceWidth > sourceHeight) {
-                    height = (int) (width / ratio);
-                } else if (sourceHeight > sourceWidth) {
-                    width = (int) (height * ratio);
-                }
+        int sourceWidth = icon.getIntrinsicWidth();
+        int sourceHeight = icon.getIntrinsicHeight();
+        if (sourceWidth > 0 && sourceHeight > 0) {
+            // Scale the icon proportionally to the icon dimensions
+            final float ratio = (float) sourceWidth / sourceHeight;
+            if (sourceWidth > sourceHeight) {
+                height = (int) (width / ratio);
+            } else if (sourceHeight > sourceWidth) {
+                width = (int) (height * ratio);
             }
-            // no intrinsic size --> use default size
-            int textureWidth = iconBitmapSize;
-            int textureHeight = iconBitmapSize;
+        }
+        // no intrinsic size --> use default size
+        int textureWidth = iconBitmapSize;
+        int textureHeight = iconBitmapSize;
 
-            Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
-                    Bitmap.Config.ARGB_8888);
-            final Canvas canvas = sCanvas;
+        Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
+                Bitmap.Config.ARGB_8888);
+        final Canvas canvas = obtainCanvas();
+        try {
             canvas.setBitmap(bitmap);
 
             final int left = (textureWidth-width) / 2;
             final int top = (textureHeight-height) / 2;
 
-            sOldBounds.set(icon.getBounds());
+            Rect oldBounds = icon.copyBounds();
             if (Utilities.ATLEAST_OREO && icon instanceof AdaptiveIconDrawable) {
                 int offset = Math.max((int)(ShadowGenerator.BLUR_FACTOR * iconBitmapSize),
                         Math.min(left, top));
@@ -283,11 +289,27 @@ public class LauncherIcons {
             canvas.scale(scale, scale, textureWidth / 2, textureHeight / 2);
             icon.draw(canvas);
             canvas.restore();
-            icon.setBounds(sOldBounds);
-            canvas.setBitmap(null);
+            icon.setBounds(oldBounds);
+        } finally {
+            recycleCanvas(canvas);
+        }
 
-            return bitmap;
+        return bitmap;
+    }
+
+    private static Canvas obtainCanvas() {
+        Canvas canvas = sCanvasPool.acquire();
+        if (canvas == null) {
+            canvas = new Canvas();
+            canvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
+                    Paint.FILTER_BITMAP_FLAG));
         }
+        return canvas;
+    }
+
+    private static void recycleCanvas(Canvas canvas) {
+        canvas.setBitmap(null);
+        sCanvasPool.release(canvas);
     }
 
     /**
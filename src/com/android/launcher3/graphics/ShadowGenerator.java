@@ -26,11 +26,13 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
 import android.support.v4.graphics.ColorUtils;
+import android.support.v4.util.Pools;
 
 import com.android.launcher3.LauncherAppState;
 
 /**
- * Utility class to add shadows to bitmaps.
+ * Utility class to add shadows to bitmaps. Instances are obtained from a pool bounded by the
+ * number of cores, so that shadows can be generated in parallel.
  */
 public class ShadowGenerator {
 
@@ -44,9 +46,8 @@ public class ShadowGenerator {
 
     private static final int AMBIENT_SHADOW_ALPHA = 30;
 
-    private static final Object LOCK = new Object();
-    // Singleton object guarded by {@link #LOCK}
-    private static ShadowGenerator sShadowGenerator;
+    private static final Pools.SynchronizedPool<ShadowGenerator> sPool =
+            new Pools.SynchronizedPool<>(Runtime.getRuntime().availableProcessors());
 
     private final int mIconSize;
 
@@ -63,12 +64,12 @@ public class ShadowGenerator {
         mDefaultBlurMaskFilter = new BlurMaskFilter(mIconSize * BLUR_FACTOR, Blur.NORMAL);
     }
 
-    public synchronized Bitmap recreateIcon(Bitmap icon) {
+    public Bitmap recreateIcon(Bitmap icon) {
         return recreateIcon(icon, true, mDefaultBlurMaskFilter, AMBIENT_SHADOW_ALPHA,
                 KEY_SHADOW_ALPHA);
     }
 
-    public synchronized Bitmap recreateIcon(Bitmap icon, boolean resize,
+    public Bitmap recreateIcon(Bitmap icon, boolean resize,
             BlurMaskFilter blurMaskFilter, int ambientAlpha, int keyAlpha) {
         int width = resize ? mIconSize : icon.getWidth();
         int height = resize ? mIconSize : icon.getHeight();
@@ -95,16 +96,34 @@ public class ShadowGenerator {
         return result;
     }
 
-    public static ShadowGenerator getInstance(Context context) {
+    /**
+     * Returns an instance for the exclusive use of the caller, which must {@link #recycle()} it.
+     */
+    public static ShadowGenerator obtain(Context context) {
         // TODO: This currently fails as the system default icon also needs a shadow as it
         // uses adaptive icon.
         // Preconditions.assertNonUiThread();
-        synchronized (LOCK) {
-            if (sShadowGenerator == null) {
-                sShadowGenerator = new ShadowGenerator(context);
-            }
+        ShadowGenerator generator = sPool.acquire();
+        return generator != null ? generator : new ShadowGenerator(context);
+    }
+
+    /**
+     * Returns this instance to the pool. It is dropped if the pool is full.
+     */
+    public void recycle() {
+        sPool.release(this);
+    }
+
+    /**
+     * Adds a shadow to {@param icon} with a pooled instance.
+     */
+    public static Bitmap addShadow(Bitmap icon, Context context) {
+        ShadowGenerator generator = obtain(context);
+        try {
+            return generator.recreateIcon(icon);
+        } finally {
+            generator.recycle();
         }
-        return sShadowGenerator;
     }
 
     /**
@@ -9,12 +9,22 @@ import android.util.Pair;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
+import java.util.ArrayDeque;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.concurrent.CountDownLatch;
@@ -24,6 +34,12 @@ import java.util.concurrent.TimeUnit;
  * Wrapper around {@link Log} to allow writing to a file.
  * This class can safely be called from main thread.
  *
+ * Lines are appended, with their raw timestamp, to an in-memory buffer which is written to the
+ * file in batches, when it is half full or a second after the first pending line. The timestamps
+ * are only formatted when the logs are dumped. Logging never waits for the writer: full buffers
+ * are queued behind a new one, and once too many are queued lines are dropped and their count
+ * is logged with the next line.
+ *
  * Note: This should only be used for logging errors which have a persistent effect on user's data,
  * but whose effect may not be visible immediately.
  */
@@ -35,22 +51,63 @@ public final class FileLog {
     private static final DateFormat DATE_FORMAT =
             DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
 
-    private static final long MAX_LOG_FILE_SIZE = 4 << 20;  // 4 mb
+    static final int MAX_LOG_FILE_SIZE = 4 << 20;  // 4 mb
+
+    private static final int BUFFER_SIZE = 64 << 10;  // 64 kb
+    private static final int FLUSH_SIZE = BUFFER_SIZE / 2;
+    private static final long FLUSH_DELAY = 1000;  // 1 second
+    // Buffers kept between writes. More are allocated when the writer falls behind, up to
+    // MAX_BUFFERS, after which lines are dropped.
+    private static final int MIN_BUFFERS = 2;
+    private static final int MAX_BUFFERS = 16;
+
+    // File header: magic, followed by the offsets of the first record, of the end of the last
+    // record, and of the end of the records written before the segment started over.
+    private static final int MAGIC = 0x4C4F4732;  // LOG2
+    private static final int START_OFFSET_POSITION = 4;
+    private static final int END_OFFSET_POSITION = 8;
+    private static final int LIMIT_OFFSET_POSITION = 12;
+    private static final int HEADER_SIZE = 16;
+    // Record header: timestamp in millis, followed by the length of the UTF-8 text.
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int WRITE_NONE = 0;
+    private static final int WRITE_DELAYED = 1;
+    private static final int WRITE_NOW = 2;
+
+    private static final Object sLock = new Object();
 
     private static Handler sHandler = null;
     private static File sLogsDirectory = null;
 
+    // Buffers and encoder guarded by sLock. Lines are appended to sBuffer. Full buffers wait in
+    // sFullBuffers to be written, and written buffers are returned to sFreeBuffers. The buffer
+    // being written is owned by the writer thread.
+    private static ByteBuffer sBuffer = null;
+    private static final ArrayDeque<ByteBuffer> sFullBuffers = new ArrayDeque<>();
+    private static final ArrayDeque<ByteBuffer> sFreeBuffers = new ArrayDeque<>();
+    private static int sBufferCount = 0;
+    private static CharsetEncoder sEncoder = null;
+    private static int sPendingWrite = WRITE_NONE;
+    private static int sDroppedLines = 0;
+
     public static void setDir(File logsDir) {
-        if (ENABLED) {
-            synchronized (DATE_FORMAT) {
-                // If the target directory changes, stop any active thread.
-                if (sHandler != null && !logsDir.equals(sLogsDirectory)) {
-                    ((HandlerThread) sHandler.getLooper().getThread()).quit();
-                    sHandler = null;
+        synchronized (sLock) {
+            // If the target directory changes, stop any active thread. A batch which it is
+            // writing still goes to its own directory, and its buffer is then returned to
+            // sFreeBuffers, so the next thread never waits for it.
+            if (ENABLED && sHandler != null && !logsDir.equals(sLogsDirectory)) {
+                ((HandlerThread) sHandler.getLooper().getThread()).quit();
+                sHandler = null;
+                sPendingWrite = WRITE_NONE;
+                sFreeBuffers.addAll(sFullBuffers);
+                sFullBuffers.clear();
+                if (sBuffer != null) {
+                    sBuffer.clear();
                 }
             }
+            sLogsDirectory = logsDir;
         }
-        sLogsDirectory = logsDir;
     }
 
     public static void d(String tag, String msg, Exception e) {
@@ -81,19 +138,100 @@ public final class FileLog {
         if (!ENABLED) {
             return;
         }
-        String out = String.format("%s %s %s", DATE_FORMAT.format(new Date()), tag, msg);
+        long time = System.currentTimeMillis();
+        String out = tag + " " + msg;
         if (e != null) {
             out += "\n" + Log.getStackTraceString(e);
         }
-        Message.obtain(getHandler(), LogWriterCallback.MSG_WRITE, out).sendToTarget();
+        CharBuffer chars = CharBuffer.wrap(out);
+
+        synchronized (sLock) {
+            Handler handler = getHandler();
+            if (sBuffer == null) {
+                sBuffer = obtainBufferLocked();
+                sEncoder = StandardCharsets.UTF_8.newEncoder();
+            }
+            appendDroppedCountLocked(time);
+            if (!appendRecordLocked(time, chars)) {
+                sDroppedLines++;
+            }
+
+            if (!sFullBuffers.isEmpty() || sBuffer.position() >= FLUSH_SIZE) {
+                if (sPendingWrite != WRITE_NOW) {
+                    handler.removeMessages(LogWriterCallback.MSG_WRITE);
+                    handler.sendEmptyMessage(LogWriterCallback.MSG_WRITE);
+                    sPendingWrite = WRITE_NOW;
+                }
+            } else if (sPendingWrite == WRITE_NONE) {
+                handler.sendEmptyMessageDelayed(LogWriterCallback.MSG_WRITE, FLUSH_DELAY);
+                sPendingWrite = WRITE_DELAYED;
+            }
+        }
+    }
+
+    /**
+     * Appends a record to {@link #sBuffer}. If it is full, it is queued to be written and the
+     * record is appended to a new buffer. Lines larger than a buffer are truncated.
+     * @return false if too many buffers are waiting to be written.
+     */
+    private static boolean appendRecordLocked(long time, CharBuffer chars) {
+        while (true) {
+            ByteBuffer buffer = sBuffer;
+            int start = buffer.position();
+            if (buffer.remaining() > RECORD_HEADER_SIZE) {
+                buffer.position(start + RECORD_HEADER_SIZE);
+                sEncoder.reset();
+                CoderResult result = sEncoder.encode(chars, buffer, true);
+                if (!result.isOverflow() || start == 0) {
+                    buffer.putLong(start, time);
+                    buffer.putInt(start + 8,
+                            buffer.position() - start - RECORD_HEADER_SIZE);
+                    return true;
+                }
+                // Doesn't fit, retry in a new buffer.
+                buffer.position(start);
+                chars.rewind();
+            }
+
+            ByteBuffer next = obtainBufferLocked();
+            if (next == null) {
+                return false;
+            }
+            sFullBuffers.add(buffer);
+            sBuffer = next;
+        }
+    }
+
+    /**
+     * Logs the number of lines which were dropped since the last record, if any.
+     */
+    private static void appendDroppedCountLocked(long time) {
+        if (sDroppedLines > 0 && appendRecordLocked(time,
+                CharBuffer.wrap("FileLog Writer is behind, dropped " + sDroppedLines + " lines"))) {
+            sDroppedLines = 0;
+        }
+    }
+
+    /**
+     * Returns an empty buffer, or null if too many buffers are in use.
+     */
+    private static ByteBuffer obtainBufferLocked() {
+        ByteBuffer buffer = sFreeBuffers.poll();
+        if (buffer == null && sBufferCount < MAX_BUFFERS) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            sBufferCount++;
+        }
+        return buffer;
     }
 
     private static Handler getHandler() {
-        synchronized (DATE_FORMAT) {
+        synchronized (sLock) {
             if (sHandler == null) {
                 HandlerThread thread = new HandlerThread("file-logger");
                 thread.start();
-                sHandler = new Handler(thread.getLooper(), new LogWriterCallback());
+                LogWriterCallback callback = new LogWriterCallback(sLogsDirectory);
+                sHandler = new Handler(thread.getLooper(), callback);
+                callback.mHandler = sHandler;
             }
         }
         return sHandler;
@@ -117,7 +255,8 @@ public final class FileLog {
     /**
      * Writes logs to the file.
      * Log files are named log-0 for even days of the year and log-1 for odd days of the year.
-     * Logs older than 36 hours are purged.
+     * Logs older than 36 hours are purged. A log file is a segment of {@link #MAX_LOG_FILE_SIZE}
+     * mapped in memory, which starts over when full.
      */
     private static class LogWriterCallback implements Handler.Callback {
 
@@ -127,73 +266,45 @@ public final class FileLog {
         private static final int MSG_CLOSE = 2;
         private static final int MSG_FLUSH = 3;
 
+        private final File mLogsDirectory;
+        private Handler mHandler;
         private String mCurrentFileName = null;
-        private PrintWriter mCurrentWriter = null;
+        private MappedByteBuffer mCurrentSegment = null;
+
+        LogWriterCallback(File logsDirectory) {
+            mLogsDirectory = logsDirectory;
+        }
 
-        private void closeWriter() {
-            Utilities.closeSilently(mCurrentWriter);
-            mCurrentWriter = null;
+        private void closeSegment() {
+            if (mCurrentSegment != null) {
+                mCurrentSegment.force();
+                mCurrentSegment = null;
+            }
         }
 
         @Override
         public boolean handleMessage(Message msg) {
-            if (sLogsDirectory == null || !ENABLED) {
+            if (mLogsDirectory == null || !ENABLED) {
                 return true;
             }
             switch (msg.what) {
                 case MSG_WRITE: {
-                    Calendar cal = Calendar.getInstance();
-                    // suffix with 0 or 1 based on the day of the year.
-                    String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) & 1);
-
-                    if (!fileName.equals(mCurrentFileName)) {
-                        closeWriter();
-                    }
-
-                    try {
-                        if (mCurrentWriter == null) {
-                            mCurrentFileName = fileName;
-
-                            boolean append = false;
-                            File logFile = new File(sLogsDirectory, fileName);
-                            if (logFile.exists()) {
-                                Calendar modifiedTime = Calendar.getInstance();
-                                modifiedTime.setTimeInMillis(logFile.lastModified());
-
-                                // If the file was modified more that 36 hours ago, purge the file.
-                                // We use instead of 24 to account for day-365 followed by day-1
-                                modifiedTime.add(Calendar.HOUR, 36);
-                                append = cal.before(modifiedTime)
-                                        && logFile.length() < MAX_LOG_FILE_SIZE;
-                            }
-                            mCurrentWriter = new PrintWriter(new FileWriter(logFile, append));
-                        }
-
-                        mCurrentWriter.println((String) msg.obj);
-                        mCurrentWriter.flush();
-
-                        // Auto close file stream after some time.
-                        sHandler.removeMessages(MSG_CLOSE);
-                        sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
-                    } catch (Exception e) {
-                        Log.e("FileLog", "Error writing logs to file", e);
-                        // Close stream, will try reopening during next log
-                        closeWriter();
-                    }
+                    writePendingLogs();
                     return true;
                 }
                 case MSG_CLOSE: {
-                    closeWriter();
+                    closeSegment();
                     return true;
                 }
                 case MSG_FLUSH: {
-                    closeWriter();
+                    writePendingLogs();
+                    closeSegment();
                     Pair<PrintWriter, CountDownLatch> p =
                             (Pair<PrintWriter, CountDownLatch>) msg.obj;
 
                     if (p.first != null) {
-                        dumpFile(p.first, FILE_NAME_PREFIX + 0);
-                        dumpFile(p.first, FILE_NAME_PREFIX + 1);
+                        dumpFile(p.first, new File(mLogsDirectory, FILE_NAME_PREFIX + 0));
+                        dumpFile(p.first, new File(mLogsDirectory, FILE_NAME_PREFIX + 1));
                     }
                     p.second.countDown();
                     return true;
@@ -201,26 +312,238 @@ public final class FileLog {
             }
             return true;
         }
+
+        private void writePendingLogs() {
+            while (true) {
+                ByteBuffer records;
+                synchronized (sLock) {
+                    if (sHandler != mHandler) {
+                        // The directory changed while this writer was busy, leave the buffers to
+                        // the new writer.
+                        return;
+                    }
+                    records = sFullBuffers.poll();
+                    if (records == null) {
+                        sPendingWrite = WRITE_NONE;
+                        if (sBuffer == null) {
+                            return;
+                        }
+                        appendDroppedCountLocked(System.currentTimeMillis());
+                        if (sBuffer.position() == 0) {
+                            return;
+                        }
+                        // Let the logging threads continue in another buffer.
+                        ByteBuffer next = obtainBufferLocked();
+                        if (next == null) {
+                            return;
+                        }
+                        records = sBuffer;
+                        sBuffer = next;
+                    }
+                }
+
+                records.flip();
+                writeRecords(records);
+                records.clear();
+                synchronized (sLock) {
+                    if (sBufferCount > MIN_BUFFERS) {
+                        // Release the buffers allocated while the writer was behind.
+                        sBufferCount--;
+                    } else {
+                        sFreeBuffers.add(records);
+                    }
+                }
+            }
+        }
+
+        private void writeRecords(ByteBuffer records) {
+            Calendar cal = Calendar.getInstance();
+            // suffix with 0 or 1 based on the day of the year.
+            String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) & 1);
+
+            if (!fileName.equals(mCurrentFileName)) {
+                closeSegment();
+            }
+
+            try {
+                if (mCurrentSegment == null) {
+                    mCurrentFileName = fileName;
+                    mCurrentSegment = openSegment(new File(mLogsDirectory, fileName), cal);
+                }
+
+                appendToSegment(mCurrentSegment, records);
+
+                // Auto close file segment after some time.
+                mHandler.removeMessages(MSG_CLOSE);
+                mHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
+            } catch (Exception e) {
+                Log.e("FileLog", "Error writing logs to file", e);
+                // Close segment, will try reopening during next log
+                closeSegment();
+            }
+        }
+
+        /**
+         * Appends {@param records} after the last record of the segment, or at its beginning if
+         * they don't fit. The oldest records which are overwritten are dropped by moving the start
+         * offset past them, so the segment is a ring holding the most recent records.
+         */
+        private static void appendToSegment(MappedByteBuffer segment, ByteBuffer records) {
+            int start = segment.getInt(START_OFFSET_POSITION);
+            int end = segment.getInt(END_OFFSET_POSITION);
+            int limit = segment.getInt(LIMIT_OFFSET_POSITION);
+            int length = records.remaining();
+
+            int offset = end;
+            if (end + length > MAX_LOG_FILE_SIZE) {
+                // Start over. Records written after end belong to the previous pass and are
+                // dropped with it, and the records of this pass now end at limit.
+                if (start > end) {
+                    start = HEADER_SIZE;
+                }
+                limit = end;
+                offset = HEADER_SIZE;
+            }
+
+            if (start == end) {
+                start = offset;
+            } else {
+                // Drop the records starting in [offset, offset + length]. The upper bound is
+                // inclusive, so that start and end are only equal when the segment is empty.
+                while (start >= offset && start <= offset + length) {
+                    int recordLength = segment.getInt(start + 8);
+                    if (recordLength < 0) {
+                        start = end;
+                    } else {
+                        start += RECORD_HEADER_SIZE + recordLength;
+                    }
+                    if (start >= limit && start > end) {
+                        start = HEADER_SIZE;
+                    }
+                    if (start == end) {
+                        // All the previous records are overwritten.
+                        start = offset;
+                        break;
+                    }
+                }
+            }
+
+            segment.position(offset);
+            segment.put(records);
+            segment.putInt(START_OFFSET_POSITION, start);
+            segment.putInt(END_OFFSET_POSITION, segment.position());
+            segment.putInt(LIMIT_OFFSET_POSITION, limit);
+        }
+
+        private static MappedByteBuffer openSegment(File logFile, Calendar cal)
+                throws IOException {
+            boolean append = false;
+            if (logFile.exists()) {
+                Calendar modifiedTime = Calendar.getInstance();
+                modifiedTime.setTimeInMillis(logFile.lastModified());
+
+                // If the file was modified more that 36 hours ago, purge the file.
+                // We use instead of 24 to account for day-365 followed by day-1
+                modifiedTime.add(Calendar.HOUR, 36);
+                append = cal.before(modifiedTime);
+            }
+
+            RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+            try {
+                if (!append) {
+                    file.setLength(0);
+                }
+                // The mapping stays valid once the file is closed.
+                MappedByteBuffer segment = file.getChannel()
+                        .map(FileChannel.MapMode.READ_WRITE, 0, MAX_LOG_FILE_SIZE);
+                if (segment.getInt(0) != MAGIC
+                        || !isValidOffset(segment.getInt(START_OFFSET_POSITION))
+                        || !isValidOffset(segment.getInt(END_OFFSET_POSITION))
+                        || !isValidOffset(segment.getInt(LIMIT_OFFSET_POSITION))) {
+                    // New file, or written in a different format.
+                    segment.putInt(0, MAGIC);
+                    segment.putInt(START_OFFSET_POSITION, HEADER_SIZE);
+                    segment.putInt(END_OFFSET_POSITION, HEADER_SIZE);
+                    segment.putInt(LIMIT_OFFSET_POSITION, MAX_LOG_FILE_SIZE);
+                }
+                return segment;
+            } finally {
+                Utilities.closeSilently(file);
+            }
+        }
+    }
+
+    private static boolean isValidOffset(int offset) {
+        return offset >= HEADER_SIZE && offset <= MAX_LOG_FILE_SIZE;
     }
 
-    private static void dumpFile(PrintWriter out, String fileName) {
-        File logFile = new File(sLogsDirectory, fileName);
+    private static void dumpFile(PrintWriter out, File logFile) {
         if (logFile.exists()) {
+            out.println();
+            out.println("--- logfile: " + logFile.getName() + " ---");
 
-            BufferedReader in = null;
+            int start, end, limit;
+            DataInputStream in = null;
             try {
-                in = new BufferedReader(new FileReader(logFile));
-                out.println();
-                out.println("--- logfile: " + fileName + " ---");
-                String line;
-                while ((line = in.readLine()) != null) {
-                    out.println(line);
+                in = new DataInputStream(new FileInputStream(logFile));
+                if (in.readInt() != MAGIC) {
+                    return;
                 }
+                start = in.readInt();
+                end = in.readInt();
+                limit = in.readInt();
             } catch (Exception e) {
-                // ignore
+                return;
             } finally {
                 Utilities.closeSilently(in);
             }
+            if (!isValidOffset(start) || !isValidOffset(end) || !isValidOffset(limit)) {
+                return;
+            }
+
+            if (start <= end) {
+                dumpRecords(out, logFile, start, end);
+            } else {
+                // The records wrap around the end of the segment.
+                dumpRecords(out, logFile, start, limit);
+                dumpRecords(out, logFile, HEADER_SIZE, end);
+            }
+        }
+    }
+
+    /**
+     * Prints the records between the offsets {@param from} and {@param to} of the log file.
+     */
+    private static void dumpRecords(PrintWriter out, File logFile, int from, int to) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+            int offset = 0;
+            while (offset < from) {
+                int skipped = in.skipBytes(from - offset);
+                if (skipped <= 0) {
+                    return;
+                }
+                offset += skipped;
+            }
+            byte[] text = new byte[BUFFER_SIZE];
+            Date date = new Date();
+            while (offset + RECORD_HEADER_SIZE <= to) {
+                date.setTime(in.readLong());
+                int length = in.readInt();
+                offset += RECORD_HEADER_SIZE + length;
+                if (length < 0 || length > text.length || offset > to) {
+                    break;
+                }
+                in.readFully(text, 0, length);
+                out.print(DATE_FORMAT.format(date));
+                out.print(' ');
+                out.println(new String(text, 0, length, StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            // ignore
+        } finally {
+            Utilities.closeSilently(in);
         }
     }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.logging;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.model.nano.LauncherDumpProto;
+import com.android.launcher3.model.nano.LauncherDumpProto.StartupRecord;
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Records when each phase of the cold start of the launcher begins and ends, from the creation
+ * of the activity to the last loader step, along with a few counters of the work done.
+ *
+ * Only the first occurrence of each phase in the process is recorded. Once the loader completes
+ * its first run, the timeline is appended to the ones of the previous launches on disk, and all
+ * of them are printed in the model dump.
+ */
+public class StartupTimeline {
+
+    private static final String TAG = "StartupTimeline";
+
+    public static final int PHASE_LAUNCHER_CREATE = 0;
+    public static final int PHASE_APP_STATE_INIT = 1;
+    public static final int PHASE_ICON_CACHE_INIT = 2;
+    public static final int PHASE_LOAD_WORKSPACE = 3;
+    public static final int PHASE_BIND_FIRST_PAGE = 4;
+    public static final int PHASE_FIRST_DRAW = 5;
+    public static final int PHASE_BIND_DEFERRED = 6;
+    public static final int PHASE_LOAD_ALL_APPS = 7;
+    public static final int PHASE_UPDATE_ICON_CACHE = 8;
+    public static final int PHASE_LOAD_DEEP_SHORTCUTS = 9;
+    public static final int PHASE_LOAD_WIDGETS = 10;
+
+    private static final String[] PHASE_NAMES = new String[] {
+            "LauncherCreate", "AppStateInit", "IconCacheInit", "LoadWorkspace", "BindFirstPage",
+            "FirstDraw", "BindDeferred", "LoadAllApps", "UpdateIconCache", "LoadDeepShortcuts",
+            "LoadWidgets"};
+
+    public static final int COUNTER_ITEMS_LOADED = 0;
+    public static final int COUNTER_BIND_CHUNKS = 1;
+    public static final int COUNTER_ICONS_FROM_DB = 2;
+    public static final int COUNTER_ICONS_GENERATED = 3;
+    public static final int COUNTER_BYTES_DECODED = 4;
+
+    private static final String[] COUNTER_NAMES = new String[] {
+            "itemsLoaded", "bindChunks", "iconsFromDb", "iconsGenerated", "bytesDecoded"};
+
+    private static final int VERSION = 1;
+    @VisibleForTesting static final int MAX_LAUNCHES = 10;
+
+    private static StartupTimeline sInstance;
+
+    private final long mOriginNanos;
+    private final long mOriginWallTimeMillis;
+
+    // Microseconds since the origin, or -1 if the phase was not reached.
+    private final long[] mStartMicros = new long[PHASE_NAMES.length];
+    private final long[] mEndMicros = new long[PHASE_NAMES.length];
+    private final long[] mCounters = new long[COUNTER_NAMES.length];
+
+    // Set once the timeline was written, after which nothing is recorded anymore.
+    private volatile boolean mFinished;
+    // Previous launches, most recent first, available after the timeline was written.
+    private StartupRecord[] mHistory = new StartupRecord[0];
+
+    private static synchronized StartupTimeline getInstance() {
+        if (sInstance == null) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            long origin = now;
+            if (Utilities.ATLEAST_NOUGAT) {
+                // Measure from the process start, which happens before any of the phases.
+                origin = Process.getStartElapsedRealtime() * 1000000;
+            }
+            sInstance = new StartupTimeline(origin,
+                    System.currentTimeMillis() - (now - origin) / 1000000);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    StartupTimeline(long originNanos, long originWallTimeMillis) {
+        mOriginNanos = originNanos;
+        mOriginWallTimeMillis = originWallTimeMillis;
+        Arrays.fill(mStartMicros, -1);
+        Arrays.fill(mEndMicros, -1);
+    }
+
+    public static void begin(int phase) {
+        if (FeatureFlags.STARTUP_TIMELINE) {
+            getInstance().beginAt(phase, SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    public static void end(int phase) {
+        if (FeatureFlags.STARTUP_TIMELINE) {
+            getInstance().endAt(phase, SystemClock.elapsedRealtimeNanos());
+        }
+    }
+
+    /**
+     * Records a phase which has no duration, like the first frame.
+     */
+    public static void mark(int phase) {
+        if (FeatureFlags.STARTUP_TIMELINE) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            StartupTimeline timeline = getInstance();
+            timeline.beginAt(phase, now);
+            timeline.endAt(phase, now);
+        }
+    }
+
+    public static void increment(int counter, long delta) {
+        if (FeatureFlags.STARTUP_TIMELINE) {
+            getInstance().add(counter, delta);
+        }
+    }
+
+    /**
+     * Writes the timeline of this launch to disk, followed by the ones of the previous launches.
+     * Called on the worker thread when the loader completes, only the first call has any effect.
+     */
+    public static void finish(Context context) {
+        if (FeatureFlags.STARTUP_TIMELINE) {
+            getInstance().writeToFile(new File(context.getFilesDir(),
+                    LauncherFiles.STARTUP_TIMELINE));
+        }
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        if (FeatureFlags.STARTUP_TIMELINE) {
+            getInstance().dumpTimelines(prefix, writer);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void beginAt(int phase, long nowNanos) {
+        if (!mFinished && mStartMicros[phase] < 0) {
+            mStartMicros[phase] = (nowNanos - mOriginNanos) / 1000;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void endAt(int phase, long nowNanos) {
+        if (!mFinished && mStartMicros[phase] >= 0 && mEndMicros[phase] < 0) {
+            mEndMicros[phase] = (nowNanos - mOriginNanos) / 1000;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized void add(int counter, long delta) {
+        if (!mFinished) {
+            mCounters[counter] += delta;
+        }
+    }
+
+    @VisibleForTesting
+    synchronized StartupRecord toRecord() {
+        StartupRecord record = new StartupRecord();
+        record.timeMillis = mOriginWallTimeMillis;
+        record.phaseStartMicros = mStartMicros.clone();
+        record.phaseEndMicros = mEndMicros.clone();
+        record.counters = mCounters.clone();
+        return record;
+    }
+
+    private void writeToFile(File file) {
+        StartupRecord record;
+        synchronized (this) {
+            if (mFinished) {
+                return;
+            }
+            record = toRecord();
+            mFinished = true;
+        }
+
+        LauncherDumpProto.StartupTimeline history = null;
+        AtomicFile atomicFile = new AtomicFile(file);
+        if (file.exists()) {
+            try {
+                history = MessageNano.mergeFrom(new LauncherDumpProto.StartupTimeline(),
+                        atomicFile.readFully());
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to read startup timeline", e);
+            }
+        }
+        if (history == null || history.version != VERSION) {
+            history = new LauncherDumpProto.StartupTimeline();
+            history.version = VERSION;
+        }
+        StartupRecord[] previous = history.launches;
+        history.launches = appendLaunch(previous, record);
+        synchronized (this) {
+            mHistory = previous;
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = atomicFile.startWrite();
+            fos.write(MessageNano.toByteArray(history));
+            atomicFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write startup timeline", e);
+            atomicFile.failWrite(fos);
+        }
+    }
+
+    /**
+     * Returns {@param launches} preceded by {@param record}, without the oldest ones beyond
+     * {@link #MAX_LAUNCHES}.
+     */
+    @VisibleForTesting
+    static StartupRecord[] appendLaunch(StartupRecord[] launches, StartupRecord record) {
+        int count = Math.min(launches.length + 1, MAX_LAUNCHES);
+        StartupRecord[] result = new StartupRecord[count];
+        result[0] = record;
+        System.arraycopy(launches, 0, result, 1, count - 1);
+        return result;
+    }
+
+    private void dumpTimelines(String prefix, PrintWriter writer) {
+        StartupRecord current;
+        StartupRecord[] history;
+        synchronized (this) {
+            current = toRecord();
+            history = mHistory;
+        }
+        writer.println(prefix + "Startup timeline:" + (mFinished ? "" : " (in progress)"));
+        dumpRecord(prefix + "\t", writer, current);
+        for (StartupRecord record : history) {
+            dumpRecord(prefix + "\t", writer, record);
+        }
+    }
+
+    private static void dumpRecord(String prefix, PrintWriter writer, StartupRecord record) {
+        writer.println(prefix + "launch at "
+                + DateFormat.getDateTimeInstance().format(new Date(record.timeMillis)));
+        int phases = Math.min(PHASE_NAMES.length,
+                Math.min(record.phaseStartMicros.length, record.phaseEndMicros.length));
+        for (int i = 0; i < phases; i++) {
+            long start = record.phaseStartMicros[i];
+            if (start < 0) {
+                continue;
+            }
+            long end = record.phaseEndMicros[i];
+            writer.println(prefix + "\t" + PHASE_NAMES[i] + ": startMs=" + start / 1000f
+                    + (end < 0 ? " (not completed)" : " durationMs=" + (end - start) / 1000f));
+        }
+        StringBuilder counters = new StringBuilder(prefix).append('\t');
+        for (int i = 0; i < Math.min(COUNTER_NAMES.length, record.counters.length); i++) {
+            counters.append(COUNTER_NAMES[i]).append('=').append(record.counters[i]).append(' ');
+        }
+        writer.println(counters);
+    }
+}
@@ -77,6 +77,9 @@ public class UserEventDispatcher {
         ued.mIsInLandscapeMode = isInLandscapeMode;
         ued.mIsInMultiWindowMode = isInMultiWindowMode;
         ued.mUuidStr = uuidStr;
+        if (FeatureFlags.USER_EVENT_LOG) {
+            ued.mEventLog = UserEventLog.getInstance(context);
+        }
         return ued;
     }
 
@@ -125,6 +128,7 @@ public class UserEventDispatcher {
     private boolean mIsInMultiWindowMode;
     private boolean mIsInLandscapeMode;
     private String mUuidStr;
+    private UserEventLog mEventLog;
 
     //                      APP_ICON    SHORTCUT    WIDGET
     // --------------------------------------------------------------
@@ -307,6 +311,9 @@ public class UserEventDispatcher {
         ev.isInMultiWindowMode = mIsInMultiWindowMode;
         ev.elapsedContainerMillis = SystemClock.uptimeMillis() - mElapsedContainerMillis;
         ev.elapsedSessionMillis = SystemClock.uptimeMillis() - mElapsedSessionMillis;
+        if (mEventLog != null) {
+            mEventLog.log(ev);
+        }
 
         if (!IS_VERBOSE) {
             return;
@@ -328,6 +335,15 @@ public class UserEventDispatcher {
         Log.d(TAG, log);
     }
 
+    /**
+     * Writes the events logged so far to disk, in the background.
+     */
+    public void flushEventLog() {
+        if (mEventLog != null) {
+            mEventLog.flush();
+        }
+    }
+
     private static String getTargetsStr(Target[] targets) {
         String result = "child:" + LoggerUtils.getTargetStr(targets[0]);
         for (int i = 1; i < targets.length; i++) {
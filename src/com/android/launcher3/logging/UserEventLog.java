@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.logging;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.android.launcher3.Utilities;
+import com.android.launcher3.userevent.nano.LauncherLogProto.LauncherEvent;
+import com.google.protobuf.nano.CodedInputByteBufferNano;
+import com.google.protobuf.nano.CodedOutputByteBufferNano;
+import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable log of the {@link LauncherEvent}s dispatched by {@link UserEventDispatcher}.
+ *
+ * Events are serialized, each preceded by its length, into one of a fixed set of preallocated
+ * blocks. Full blocks, or the current one after {@link #FLUSH_DELAY_MS}, are handed to a
+ * background thread which appends them to the log file, so logging an event does not allocate
+ * or touch the disk. If the writer falls behind and no block is free, events are dropped.
+ *
+ * The log file is rotated once it reaches {@link #MAX_FILE_SIZE}, keeping the previous one.
+ * Both can be read back with {@link #readEvents}.
+ */
+public class UserEventLog implements Handler.Callback, Runnable {
+
+    private static final String TAG = "UserEventLog";
+
+    private static final String DIR_NAME = "user_events";
+    private static final String FILE_NAME_PREFIX = "events-";
+
+    private static final int BLOCK_SIZE = 16 * 1024;
+    private static final int NUM_BLOCKS = 4;
+    private static final long FLUSH_DELAY_MS = 30 * 1000;
+    @VisibleForTesting static final long MAX_FILE_SIZE = 512 * 1024;
+
+    private static final int MSG_WRITE = 1;
+    private static final int MSG_SYNC = 2;
+
+    private static UserEventLog sInstance;
+
+    private final File mDir;
+    private final Handler mWriterHandler;
+    // Posts the delayed flushes, on the thread which logs the events.
+    private final Handler mFlushHandler;
+
+    private final ArrayBlockingQueue<Block> mFreeBlocks;
+    // Only accessed by the thread which logs the events.
+    private Block mCurrentBlock;
+    private int mDroppedEvents;
+
+    // Only accessed on the writer thread.
+    private FileOutputStream mOutput;
+    private long mFileSize;
+
+    public static UserEventLog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UserEventLog(new File(context.getFilesDir(), DIR_NAME),
+                    BLOCK_SIZE, NUM_BLOCKS, Looper.getMainLooper());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param flushLooper the looper of the thread logging the events, used to flush them after
+     *                    a delay, or null to only flush when a block is full or on {@link #flush}.
+     */
+    @VisibleForTesting
+    UserEventLog(File dir, int blockSize, int numBlocks, Looper flushLooper) {
+        mDir = dir;
+        mFreeBlocks = new ArrayBlockingQueue<>(numBlocks);
+        for (int i = 0; i < numBlocks; i++) {
+            mFreeBlocks.add(new Block(blockSize));
+        }
+        mCurrentBlock = mFreeBlocks.poll();
+
+        HandlerThread thread = new HandlerThread("user-event-log",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mWriterHandler = new Handler(thread.getLooper(), this);
+        mFlushHandler = flushLooper == null ? null : new Handler(flushLooper);
+    }
+
+    /**
+     * Appends {@param event} to the current block. Must be called on a single thread, the UI
+     * thread of the launcher.
+     */
+    public void log(LauncherEvent event) {
+        int size = event.getSerializedSize();
+        int length = CodedOutputByteBufferNano.computeRawVarint32Size(size) + size;
+        if (mCurrentBlock != null && mCurrentBlock.out.spaceLeft() < length) {
+            flush();
+        }
+        if (mCurrentBlock == null) {
+            mCurrentBlock = mFreeBlocks.poll();
+        }
+        if (mCurrentBlock == null || mCurrentBlock.out.spaceLeft() < length) {
+            // The writer is behind, or the event is larger than a block.
+            mDroppedEvents++;
+            return;
+        }
+
+        boolean wasEmpty = mCurrentBlock.isEmpty();
+        try {
+            mCurrentBlock.out.writeRawVarint32(size);
+            event.writeTo(mCurrentBlock.out);
+        } catch (IOException e) {
+            // Can't happen, the space left was checked.
+            Log.e(TAG, "Unable to serialize event", e);
+        }
+        if (wasEmpty && mFlushHandler != null) {
+            mFlushHandler.postDelayed(this, FLUSH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Hands the events logged so far to the writer thread.
+     */
+    public void flush() {
+        if (mFlushHandler != null) {
+            mFlushHandler.removeCallbacks(this);
+        }
+        if (mCurrentBlock != null && !mCurrentBlock.isEmpty()) {
+            Message.obtain(mWriterHandler, MSG_WRITE, mCurrentBlock).sendToTarget();
+            mCurrentBlock = mFreeBlocks.poll();
+        }
+    }
+
+    @Override
+    public void run() {
+        flush();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "User event log: droppedEvents=" + mDroppedEvents
+                + " freeBlocks=" + mFreeBlocks.size());
+    }
+
+    @VisibleForTesting
+    int getDroppedEvents() {
+        return mDroppedEvents;
+    }
+
+    /**
+     * Waits until the blocks handed to the writer thread were written.
+     */
+    @VisibleForTesting
+    void waitForWrites() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Message.obtain(mWriterHandler, MSG_SYNC, latch).sendToTarget();
+        latch.await(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_WRITE: {
+                Block block = (Block) msg.obj;
+                write(block);
+                block.reset();
+                mFreeBlocks.offer(block);
+                return true;
+            }
+            case MSG_SYNC: {
+                closeOutput();
+                ((CountDownLatch) msg.obj).countDown();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(Block block) {
+        try {
+            if (mOutput == null) {
+                mDir.mkdirs();
+                File file = new File(mDir, FILE_NAME_PREFIX + 0);
+                mFileSize = file.length();
+                mOutput = new FileOutputStream(file, true);
+            }
+            int length = block.size();
+            mOutput.write(block.data, 0, length);
+            mFileSize += length;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write user events", e);
+            closeOutput();
+            return;
+        }
+
+        if (mFileSize >= MAX_FILE_SIZE) {
+            closeOutput();
+            File previous = new File(mDir, FILE_NAME_PREFIX + 1);
+            previous.delete();
+            new File(mDir, FILE_NAME_PREFIX + 0).renameTo(previous);
+        }
+    }
+
+    private void closeOutput() {
+        Utilities.closeSilently(mOutput);
+        mOutput = null;
+    }
+
+    /**
+     * Reads the events logged in {@param dir}, oldest first. Events which were not flushed yet
+     * are not included. The launcher does not need to be running, so that the files pulled from
+     * a device can be read offline.
+     */
+    public static List<LauncherEvent> readEvents(File dir) throws IOException {
+        List<LauncherEvent> events = new ArrayList<>();
+        readEvents(new File(dir, FILE_NAME_PREFIX + 1), events);
+        readEvents(new File(dir, FILE_NAME_PREFIX + 0), events);
+        return events;
+    }
+
+    /**
+     * Reads the events logged by the launcher of {@param context}.
+     */
+    public static List<LauncherEvent> readEvents(Context context) throws IOException {
+        return readEvents(new File(context.getFilesDir(), DIR_NAME));
+    }
+
+    private static void readEvents(File file, List<LauncherEvent> out) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+        } finally {
+            Utilities.closeSilently(in);
+        }
+
+        CodedInputByteBufferNano input = CodedInputByteBufferNano.newInstance(data);
+        try {
+            while (!input.isAtEnd()) {
+                LauncherEvent event = new LauncherEvent();
+                input.readMessage(event);
+                out.add(event);
+            }
+        } catch (InvalidProtocolBufferNanoException e) {
+            // The last block may have been partially written when the process died.
+            Log.w(TAG, "Truncated user event log " + file, e);
+        }
+    }
+
+    /**
+     * A preallocated buffer of serialized events.
+     */
+    private static class Block {
+        final byte[] data;
+        CodedOutputByteBufferNano out;
+
+        Block(int size) {
+            data = new byte[size];
+            reset();
+        }
+
+        int size() {
+            return data.length - out.spaceLeft();
+        }
+
+        boolean isEmpty() {
+            return out.spaceLeft() == data.length;
+        }
+
+        /**
+         * Called on the writer thread once the block was written, so that the UI thread never
+         * allocates the output.
+         */
+        void reset() {
+            out = CodedOutputByteBufferNano.newInstance(data);
+        }
+    }
+}
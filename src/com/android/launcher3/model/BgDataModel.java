@@ -29,6 +29,7 @@ import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.ShortcutInfo;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.logging.DumpTargetWrapper;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.model.nano.LauncherDumpProto;
 import com.android.launcher3.model.nano.LauncherDumpProto.ContainerType;
 import com.android.launcher3.model.nano.LauncherDumpProto.DumpTarget;
@@ -46,18 +47,82 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 /**
- * All the data stored in-memory and managed by the LauncherModel
+ * All the data stored in-memory and managed by the LauncherModel.
+ *
+ * Writers must hold the lock on this object, and publish a new snapshot of the collections
+ * with each change. Readers which only need a consistent view of the collections can use
+ * {@link #getSnapshot()} instead, which never waits for the lock.
  */
 public class BgDataModel {
 
     private static final String TAG = "BgDataModel";
 
+    /**
+     * An immutable copy of the collections in the model, built by the writers after a change.
+     * The {@link ItemInfo} objects themselves are shared with the model and not copied, except
+     * for the contents of the folders.
+     */
+    public static class Snapshot {
+
+        public final long version;
+        public final LongArrayMap<ItemInfo> itemsIdMap;
+        public final List<ItemInfo> workspaceItems;
+        public final List<LauncherAppWidgetInfo> appWidgets;
+        public final LongArrayMap<FolderInfo> folders;
+        public final LongArrayMap<List<ShortcutInfo>> folderContents;
+        public final List<Long> workspaceScreens;
+        public final Map<ShortcutKey, Integer> pinnedShortcutCounts;
+        public final Map<ComponentKey, List<String>> deepShortcutMap;
+
+        private Snapshot() {
+            version = 0;
+            itemsIdMap = new LongArrayMap<>();
+            workspaceItems = Collections.emptyList();
+            appWidgets = Collections.emptyList();
+            folders = new LongArrayMap<>();
+            folderContents = new LongArrayMap<>();
+            workspaceScreens = Collections.emptyList();
+            pinnedShortcutCounts = Collections.emptyMap();
+            deepShortcutMap = Collections.emptyMap();
+        }
+
+        private Snapshot(long version, BgDataModel model) {
+            this.version = version;
+            itemsIdMap = model.itemsIdMap.clone();
+            workspaceItems = Collections.unmodifiableList(new ArrayList<>(model.workspaceItems));
+            appWidgets = Collections.unmodifiableList(new ArrayList<>(model.appWidgets));
+            folders = model.folders.clone();
+            folderContents = new LongArrayMap<>();
+            for (int i = 0; i < folders.size(); i++) {
+                folderContents.put(folders.keyAt(i), Collections.unmodifiableList(
+                        new ArrayList<>(folders.valueAt(i).contents)));
+            }
+            workspaceScreens =
+                    Collections.unmodifiableList(new ArrayList<>(model.workspaceScreens));
+
+            HashMap<ShortcutKey, Integer> counts = new HashMap<>();
+            for (Map.Entry<ShortcutKey, MutableInt> entry : model.pinnedShortcutCounts.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().value);
+            }
+            pinnedShortcutCounts = Collections.unmodifiableMap(counts);
+
+            HashMap<ComponentKey, List<String>> shortcuts = new HashMap<>();
+            for (Map.Entry<ComponentKey, ArrayList<String>> entry
+                    : model.deepShortcutMap.entrySet()) {
+                shortcuts.put(entry.getKey(),
+                        Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            }
+            deepShortcutMap = Collections.unmodifiableMap(shortcuts);
+        }
+    }
+
     /**
      * Map of all the ItemInfos (shortcuts, folders, and widgets) created by
      * LauncherModel to their ids
@@ -105,6 +170,44 @@ public class BgDataModel {
      */
     public final WidgetsModel widgetsModel = new WidgetsModel();
 
+    private volatile Snapshot mSnapshot = new Snapshot();
+    private int mBatchUpdateDepth;
+
+    /**
+     * Returns the last published snapshot of the model, without acquiring the model lock.
+     */
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Publishes a new snapshot. Needs to be called after modifying the collections directly,
+     * changes made through the methods of this class are published automatically.
+     */
+    public synchronized void publishSnapshot() {
+        mSnapshot = new Snapshot(mSnapshot.version + 1, this);
+    }
+
+    /**
+     * Defers publishing snapshots until the matching {@link #endBatchUpdate()}, so that bulk
+     * changes like a full load only publish once, and readers are not blocked meanwhile.
+     */
+    public synchronized void beginBatchUpdate() {
+        mBatchUpdateDepth++;
+    }
+
+    public synchronized void endBatchUpdate() {
+        if (--mBatchUpdateDepth == 0) {
+            publishSnapshot();
+        }
+    }
+
+    private void onChangedLocked() {
+        if (mBatchUpdateDepth == 0) {
+            publishSnapshot();
+        }
+    }
+
     /**
      * Clears all the data
      */
@@ -116,14 +219,20 @@ public class BgDataModel {
         workspaceScreens.clear();
         pinnedShortcutCounts.clear();
         deepShortcutMap.clear();
+        onChangedLocked();
     }
 
-     public synchronized void dump(String prefix, FileDescriptor fd, PrintWriter writer,
-             String[] args) {
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        Snapshot snapshot = getSnapshot();
         if (args.length > 0 && TextUtils.equals(args[0], "--proto")) {
-            dumpProto(prefix, fd, writer, args);
+            dumpProto(snapshot, prefix, fd, writer, args);
             return;
         }
+        List<Long> workspaceScreens = snapshot.workspaceScreens;
+        List<ItemInfo> workspaceItems = snapshot.workspaceItems;
+        List<LauncherAppWidgetInfo> appWidgets = snapshot.appWidgets;
+        LongArrayMap<FolderInfo> folders = snapshot.folders;
+        LongArrayMap<ItemInfo> itemsIdMap = snapshot.itemsIdMap;
         writer.println(prefix + "Data Model:");
         writer.print(prefix + " ---- workspace screens: ");
         for (int i = 0; i < workspaceScreens.size(); i++) {
@@ -146,10 +255,11 @@ public class BgDataModel {
         for (int i = 0; i< itemsIdMap.size(); i++) {
             writer.println(prefix + '\t' + itemsIdMap.valueAt(i).toString());
         }
+        StartupTimeline.dump(prefix, writer);
 
         if (args.length > 0 && TextUtils.equals(args[0], "--all")) {
             writer.println(prefix + "shortcuts");
-            for (ArrayList<String> map : deepShortcutMap.values()) {
+            for (List<String> map : snapshot.deepShortcutMap.values()) {
                 writer.print(prefix + "  ");
                 for (String str : map) {
                     writer.print(str + ", ");
@@ -159,8 +269,13 @@ public class BgDataModel {
         }
     }
 
-    private synchronized void dumpProto(String prefix, FileDescriptor fd, PrintWriter writer,
-            String[] args) {
+    private void dumpProto(Snapshot snapshot, String prefix, FileDescriptor fd,
+            PrintWriter writer, String[] args) {
+        List<Long> workspaceScreens = snapshot.workspaceScreens;
+        List<ItemInfo> workspaceItems = snapshot.workspaceItems;
+        List<LauncherAppWidgetInfo> appWidgets = snapshot.appWidgets;
+        LongArrayMap<FolderInfo> folders = snapshot.folders;
+        LongArrayMap<List<ShortcutInfo>> folderContents = snapshot.folderContents;
 
         // Add top parent nodes. (L1)
         DumpTargetWrapper hotseat = new DumpTargetWrapper(ContainerType.HOTSEAT, 0);
@@ -175,7 +290,7 @@ public class BgDataModel {
             FolderInfo fInfo = folders.valueAt(i);
             dtw = new DumpTargetWrapper(ContainerType.FOLDER, folders.size());
             dtw.writeToDumpTarget(fInfo);
-            for(ShortcutInfo sInfo: fInfo.contents) {
+            for (ShortcutInfo sInfo : folderContents.get(fInfo.id)) {
                 DumpTargetWrapper child = new DumpTargetWrapper(sInfo);
                 child.writeToDumpTarget(sInfo);
                 dtw.add(child);
@@ -183,7 +298,7 @@ public class BgDataModel {
             if (fInfo.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
                 hotseat.add(dtw);
             } else if (fInfo.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                workspaces.get(fInfo.screenId).add(dtw);
+                addToWorkspace(workspaces, fInfo.screenId, dtw);
             }
         }
         // Add leaf nodes (L3): *Info
@@ -197,7 +312,7 @@ public class BgDataModel {
             if (info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
                 hotseat.add(dtw);
             } else if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                workspaces.get(info.screenId).add(dtw);
+                addToWorkspace(workspaces, info.screenId, dtw);
             }
         }
         for (int i = 0; i < appWidgets.size(); i++) {
@@ -207,7 +322,7 @@ public class BgDataModel {
             if (info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
                 hotseat.add(dtw);
             } else if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                workspaces.get(info.screenId).add(dtw);
+                addToWorkspace(workspaces, info.screenId, dtw);
             }
         }
 
@@ -241,6 +356,18 @@ public class BgDataModel {
         }
     }
 
+    /**
+     * Adds {@param dtw} to the dump of screen {@param screenId}. The screen of an item may have
+     * changed since the snapshot was taken, in which case it is not dumped.
+     */
+    private static void addToWorkspace(LongArrayMap<DumpTargetWrapper> workspaces, long screenId,
+            DumpTargetWrapper dtw) {
+        DumpTargetWrapper workspace = workspaces.get(screenId);
+        if (workspace != null) {
+            workspace.add(dtw);
+        }
+    }
+
     public synchronized void removeItem(Context context, ItemInfo... items) {
         removeItem(context, Arrays.asList(items));
     }
@@ -285,6 +412,7 @@ public class BgDataModel {
             }
             itemsIdMap.remove(item.id);
         }
+        onChangedLocked();
     }
 
     public synchronized void addItem(Context context, ItemInfo item, boolean newItem) {
@@ -335,6 +463,7 @@ public class BgDataModel {
                 appWidgets.add((LauncherAppWidgetInfo) item);
                 break;
         }
+        onChangedLocked();
     }
 
     /**
@@ -348,6 +477,7 @@ public class BgDataModel {
             // No placeholder -- create a new instance
             folderInfo = new FolderInfo();
             folders.put(id, folderInfo);
+            onChangedLocked();
         }
         return folderInfo;
     }
@@ -378,5 +508,6 @@ public class BgDataModel {
                 deepShortcutMap.addToList(targetComponent, shortcut.getId());
             }
         }
+        onChangedLocked();
     }
 }
@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import android.appwidget.AppWidgetHost;
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.launcher3.AutoInstallsLayout;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.IconShapeOverride;
+import com.android.launcher3.model.nano.LauncherDumpProto;
+import com.android.launcher3.model.nano.LauncherDumpProto.ResolvedIntent;
+import com.android.launcher3.model.nano.LauncherDumpProto.SnapshotItem;
+import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Binary copy of the rows produced by parsing a default workspace layout. Parsing a layout
+ * involves reading the xml and resolving every entry through the package manager, so the
+ * result is cached and replayed with a single compiled insert statement as long as the layout,
+ * the grid and every package the layout referenced are unchanged.
+ */
+public class CompiledLayout {
+
+    private static final String TAG = "CompiledLayout";
+
+    private static final int VERSION = 1;
+
+    private final LauncherDumpProto.CompiledLayout mProto;
+
+    private CompiledLayout(LauncherDumpProto.CompiledLayout proto) {
+        mProto = proto;
+    }
+
+    /**
+     * Loads the compiled copy of the layout read by {@param loader} if it exists and is still
+     * valid, otherwise returns null.
+     */
+    public static CompiledLayout loadIfValid(Context context, AutoInstallsLayout loader) {
+        return loadIfValid(context, getFile(context), LauncherAppState.getIDP(context), loader);
+    }
+
+    @VisibleForTesting
+    static CompiledLayout loadIfValid(Context context, File file, InvariantDeviceProfile idp,
+            AutoInstallsLayout loader) {
+        if (!file.exists()) {
+            return null;
+        }
+        LauncherDumpProto.CompiledLayout proto;
+        try {
+            proto = MessageNano.mergeFrom(new LauncherDumpProto.CompiledLayout(),
+                    new AtomicFile(file).readFully());
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read compiled layout", e);
+            file.delete();
+            return null;
+        }
+
+        if (proto.version != VERSION || !getKey(context, idp, loader).equals(proto.layoutKey)) {
+            return null;
+        }
+        PackageManager pm = context.getPackageManager();
+        for (LauncherDumpProto.PackageVersion version : proto.packageVersions) {
+            if (ModelSnapshot.getLastUpdateTime(pm, version.packageName)
+                    != version.lastUpdateTime) {
+                Log.d(TAG, "Compiled layout is stale, package changed: " + version.packageName);
+                return null;
+            }
+        }
+        for (ResolvedIntent resolved : proto.resolvedIntents) {
+            Intent intent;
+            try {
+                intent = Intent.parseUri(resolved.uri, 0);
+            } catch (URISyntaxException e) {
+                return null;
+            }
+            if (!resolve(pm, intent).equals(resolved.resolution)) {
+                Log.d(TAG, "Compiled layout is stale, resolution changed: " + resolved.uri);
+                return null;
+            }
+        }
+        return new CompiledLayout(proto);
+    }
+
+    /**
+     * Inserts the compiled rows in {@param db} and adds the screens used by them to
+     * {@param screenIds}. Widgets which were bound when the layout was parsed are bound again.
+     * @return the number of entries added on the desktop, same as
+     *         {@link AutoInstallsLayout#loadLayout}, or -1 if nothing was inserted.
+     */
+    public int replay(Context context, SQLiteDatabase db, AppWidgetHost widgetHost,
+            ArrayList<Long> screenIds) {
+        long startTime = SystemClock.uptimeMillis();
+        int count = mProto.count;
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(Favorites.TABLE_NAME)
+                .append(" (");
+        StringBuilder bindArgs = new StringBuilder();
+        for (int i = 0; i < ModelSnapshot.COLUMNS.length; i++) {
+            if (i > 0) {
+                sql.append(',');
+                bindArgs.append(',');
+            }
+            sql.append(ModelSnapshot.COLUMNS[i]);
+            bindArgs.append('?');
+        }
+        // Like the provider, the rows are marked as modified so that the DB fingerprint of
+        // ModelSnapshot changes with them.
+        sql.append(',').append(Favorites.MODIFIED);
+        bindArgs.append(",?");
+        sql.append(") VALUES (").append(bindArgs).append(')');
+        long modified = System.currentTimeMillis();
+
+        SQLiteStatement insert = null;
+        ArrayList<Integer> boundWidgetIds = new ArrayList<>();
+        try (SQLiteTransaction t = new SQLiteTransaction(db)) {
+            insert = db.compileStatement(sql.toString());
+            for (SnapshotItem item : mProto.items) {
+                int appWidgetId = item.appWidgetId;
+                if (item.itemType == Favorites.ITEM_TYPE_APPWIDGET && appWidgetId >= 0) {
+                    appWidgetId = bindWidget(widgetHost, widgetManager, item);
+                    if (appWidgetId < 0) {
+                        count--;
+                        continue;
+                    }
+                    boundWidgetIds.add(appWidgetId);
+                }
+                bindItem(insert, item, appWidgetId);
+                insert.bindLong(ModelSnapshot.COLUMNS.length + 1, modified);
+                insert.executeInsert();
+            }
+            t.commit();
+        } catch (SQLException e) {
+            Log.e(TAG, "Unable to replay compiled layout", e);
+            // The rows are rolled back, release the widgets bound for them.
+            for (int appWidgetId : boundWidgetIds) {
+                widgetHost.deleteAppWidgetId(appWidgetId);
+            }
+            return -1;
+        } finally {
+            Utilities.closeSilently(insert);
+        }
+
+        for (long screenId : mProto.screens) {
+            screenIds.add(screenId);
+        }
+        Log.d(TAG, "Replayed " + mProto.items.length + " items in "
+                + (SystemClock.uptimeMillis() - startTime) + "ms");
+        return count;
+    }
+
+    private static int bindWidget(AppWidgetHost widgetHost, AppWidgetManager widgetManager,
+            SnapshotItem item) {
+        ComponentName cn = ComponentName.unflattenFromString(item.appWidgetProvider);
+        if (cn == null) {
+            return -1;
+        }
+        try {
+            int appWidgetId = widgetHost.allocateAppWidgetId();
+            if (!widgetManager.bindAppWidgetIdIfAllowed(appWidgetId, cn)) {
+                Log.e(TAG, "Unable to bind app widget id " + cn);
+                widgetHost.deleteAppWidgetId(appWidgetId);
+                return -1;
+            }
+            return appWidgetId;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Problem allocating appWidgetId", e);
+            return -1;
+        }
+    }
+
+    private static void bindItem(SQLiteStatement insert, SnapshotItem item, int appWidgetId) {
+        int nulls = item.nullColumns;
+        insert.clearBindings();
+        insert.bindLong(1, item.id);
+        insert.bindLong(2, item.container);
+        insert.bindLong(3, item.itemType);
+        insert.bindLong(4, item.screen);
+        insert.bindLong(5, item.cellX);
+        insert.bindLong(6, item.cellY);
+        insert.bindLong(7, item.spanX);
+        insert.bindLong(8, item.spanY);
+        insert.bindLong(9, item.rank);
+        insert.bindLong(10, item.options);
+        insert.bindLong(11, item.profileId);
+        insert.bindLong(12, item.restored);
+        if ((nulls & ModelSnapshot.NULL_INTENT) == 0) {
+            insert.bindString(13, item.intent);
+        }
+        if ((nulls & ModelSnapshot.NULL_TITLE) == 0) {
+            insert.bindString(14, item.title);
+        }
+        if ((nulls & ModelSnapshot.NULL_ICON) == 0) {
+            insert.bindBlob(15, item.icon);
+        }
+        if ((nulls & ModelSnapshot.NULL_ICON_PACKAGE) == 0) {
+            insert.bindString(16, item.iconPackage);
+        }
+        if ((nulls & ModelSnapshot.NULL_ICON_RESOURCE) == 0) {
+            insert.bindString(17, item.iconResource);
+        }
+        insert.bindLong(18, appWidgetId);
+        if ((nulls & ModelSnapshot.NULL_APPWIDGET_PROVIDER) == 0) {
+            insert.bindString(19, item.appWidgetProvider);
+        }
+    }
+
+    /**
+     * Writes the rows which {@param loader} just added to {@param db}, so that the next load of
+     * the same layout can replay them.
+     * @param count the value returned by {@link AutoInstallsLayout#loadLayout}
+     */
+    public static void write(Context context, SQLiteDatabase db, AutoInstallsLayout loader,
+            int count, ArrayList<Long> screenIds) {
+        write(context, getFile(context), LauncherAppState.getIDP(context), db, loader, count,
+                screenIds);
+    }
+
+    @VisibleForTesting
+    static void write(Context context, File target, InvariantDeviceProfile idp,
+            SQLiteDatabase db, AutoInstallsLayout loader, int count, ArrayList<Long> screenIds) {
+        Dependencies dependencies = loader.getDependencies();
+        if (!dependencies.mCacheable) {
+            target.delete();
+            return;
+        }
+
+        LauncherDumpProto.CompiledLayout proto = new LauncherDumpProto.CompiledLayout();
+        proto.version = VERSION;
+        proto.layoutKey = getKey(context, idp, loader);
+        proto.count = count;
+
+        proto.screens = new long[screenIds.size()];
+        for (int i = 0; i < screenIds.size(); i++) {
+            proto.screens[i] = screenIds.get(i);
+        }
+
+        ArrayList<SnapshotItem> items = new ArrayList<>();
+        try (Cursor c = db.query(Favorites.TABLE_NAME, ModelSnapshot.COLUMNS,
+                null, null, null, null, null)) {
+            while (c.moveToNext()) {
+                items.add(ModelSnapshot.readItem(c));
+            }
+        }
+        proto.items = items.toArray(new SnapshotItem[items.size()]);
+
+        HashSet<String> packages = new HashSet<>(dependencies.mPackages);
+        packages.add(loader.getLayoutPackage());
+        packages.add(context.getPackageName());
+        PackageManager pm = context.getPackageManager();
+        proto.packageVersions = new LauncherDumpProto.PackageVersion[packages.size()];
+        int i = 0;
+        for (String pkg : packages) {
+            LauncherDumpProto.PackageVersion version = new LauncherDumpProto.PackageVersion();
+            version.packageName = pkg;
+            version.lastUpdateTime = ModelSnapshot.getLastUpdateTime(pm, pkg);
+            proto.packageVersions[i++] = version;
+        }
+        proto.resolvedIntents = dependencies.mResolvedIntents.toArray(
+                new ResolvedIntent[dependencies.mResolvedIntents.size()]);
+
+        AtomicFile file = new AtomicFile(target);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            fos.write(MessageNano.toByteArray(proto));
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write compiled layout", e);
+            file.failWrite(fos);
+        }
+    }
+
+    /**
+     * Returns a key describing everything the compiled rows depend on, other than packages. The
+     * rows include the icons of shortcuts, rendered for the current density, icon size and icon
+     * shape.
+     */
+    private static String getKey(Context context, InvariantDeviceProfile idp,
+            AutoInstallsLayout loader) {
+        return loader.getLayoutKey()
+                + ":" + idp.numColumns + "x" + idp.numRows + "x" + idp.numHotseatIcons
+                + ":" + context.getResources().getConfiguration().locale
+                + ":" + context.getResources().getDisplayMetrics().densityDpi
+                + ":" + idp.fillResIconDpi + "/" + idp.iconBitmapSize
+                + ":" + IconShapeOverride.getMaskPath();
+    }
+
+    /**
+     * Returns a string describing how {@param intent} currently resolves.
+     */
+    private static String resolve(PackageManager pm, Intent intent) {
+        return getResolution(pm.resolveActivity(intent, PackageManager.MATCH_DEFAULT_ONLY),
+                pm.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY));
+    }
+
+    private static String getResolution(ResolveInfo resolved, List<ResolveInfo> appList) {
+        ArrayList<String> components = new ArrayList<>(appList.size());
+        for (ResolveInfo info : appList) {
+            components.add(info.activityInfo.packageName + "/" + info.activityInfo.name);
+        }
+        Collections.sort(components);
+        StringBuilder result = new StringBuilder();
+        if (resolved != null) {
+            ActivityInfo info = resolved.activityInfo;
+            result.append(info.packageName).append('/').append(info.name);
+        }
+        for (String component : components) {
+            result.append(';').append(component);
+        }
+        return result.toString();
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), LauncherFiles.COMPILED_LAYOUT);
+    }
+
+    /**
+     * Packages and intents which the result of parsing a layout depends on.
+     */
+    public static class Dependencies {
+        private final HashSet<String> mPackages = new HashSet<>();
+        private final ArrayList<ResolvedIntent> mResolvedIntents = new ArrayList<>();
+        private boolean mCacheable = true;
+
+        public void addPackage(String packageName) {
+            if (packageName != null) {
+                mPackages.add(packageName);
+            }
+        }
+
+        public void addMetaIntent(Intent intent, ResolveInfo resolved,
+                List<ResolveInfo> appList) {
+            ResolvedIntent result = new ResolvedIntent();
+            result.uri = intent.toUri(0);
+            result.resolution = getResolution(resolved, appList);
+            mResolvedIntents.add(result);
+
+            if (resolved != null) {
+                addPackage(resolved.activityInfo.packageName);
+            }
+            for (ResolveInfo info : appList) {
+                addPackage(info.activityInfo.packageName);
+            }
+        }
+
+        /**
+         * Marks the layout as having side effects which can not be replayed.
+         */
+        public void markNotCacheable() {
+            mCacheable = false;
+        }
+    }
+}
@@ -45,6 +45,7 @@ import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.util.ContentWriter;
 import com.android.launcher3.util.GridOccupancy;
 import com.android.launcher3.util.LongArrayMap;
@@ -181,6 +182,7 @@ public class LoaderCursor extends CursorWrapper {
             // Failed to load from resource, try loading from DB.
             byte[] data = getBlob(iconIndex);
             try {
+                StartupTimeline.increment(StartupTimeline.COUNTER_BYTES_DECODED, data.length);
                 icon = LauncherIcons.createIconBitmap(
                         BitmapFactory.decodeByteArray(data, 0, data.length), mContext);
             } catch (Exception e) {
@@ -32,6 +32,7 @@ import com.android.launcher3.MainThreadExecutor;
 import com.android.launcher3.PagedView;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.LooperIdleLock;
 import com.android.launcher3.util.MultiHashMap;
@@ -150,6 +151,7 @@ public class LoaderResults {
             }
         });
 
+        StartupTimeline.begin(StartupTimeline.PHASE_BIND_FIRST_PAGE);
         Executor mainExecutor = mUiExecutor;
         // Load items on the current page.
         bindWorkspaceItems(currentWorkspaceItems, currentAppWidgets, mainExecutor);
@@ -170,6 +172,7 @@ public class LoaderResults {
                     callbacks.finishFirstPageBind(
                             validFirstPage ? (ViewOnDrawExecutor) deferredExecutor : null);
                 }
+                StartupTimeline.end(StartupTimeline.PHASE_BIND_FIRST_PAGE);
             }
         });
 
@@ -182,6 +185,7 @@ public class LoaderResults {
                 if (callbacks != null) {
                     callbacks.finishBindingItems();
                 }
+                StartupTimeline.end(StartupTimeline.PHASE_BIND_DEFERRED);
             }
         };
         deferredExecutor.execute(r);
@@ -307,6 +311,7 @@ public class LoaderResults {
                     if (callbacks != null) {
                         callbacks.bindItems(workspaceItems.subList(start, start+chunkSize), false);
                     }
+                    StartupTimeline.increment(StartupTimeline.COUNTER_BIND_CHUNKS, 1);
                 }
             };
             executor.execute(r);
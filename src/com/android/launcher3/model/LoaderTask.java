@@ -57,6 +57,7 @@ import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.folder.FolderIconPreviewVerifier;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.logging.StartupTimeline;
 import com.android.launcher3.provider.ImportDataTask;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
@@ -102,6 +103,9 @@ public class LoaderTask implements Runnable {
 
     private boolean mStopped;
 
+    // Snapshot used to load the workspace, if it was still valid
+    private ModelSnapshot mSnapshot;
+
     public LoaderTask(LauncherAppState app, AllAppsList bgAllAppsList, BgDataModel dataModel,
             LoaderResults results) {
         mApp = app;
@@ -144,12 +148,28 @@ public class LoaderTask implements Runnable {
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
             long now = 0;
             if (DEBUG_LOADERS) Log.d(TAG, "step 1.1: loading workspace");
-            loadWorkspace();
+            // Publish a single model snapshot once the workspace is loaded.
+            StartupTimeline.begin(StartupTimeline.PHASE_LOAD_WORKSPACE);
+            mBgDataModel.beginBatchUpdate();
+            try {
+                loadWorkspace();
+            } finally {
+                mBgDataModel.endBatchUpdate();
+            }
+            StartupTimeline.end(StartupTimeline.PHASE_LOAD_WORKSPACE);
 
             verifyNotStopped();
             if (DEBUG_LOADERS) Log.d(TAG, "step 1.2: bind workspace workspace");
             mResults.bindWorkspace();
 
+            if (mSnapshot != null
+                    && mShortcutManager.hasHostPermission()
+                    && mSnapshot.restoreDeepShortcutMap(mApp.getContext(), mBgDataModel)) {
+                // Bind the last known shortcuts, until they are reloaded in step 3.
+                mBgDataModel.hasShortcutHostPermission = true;
+                mResults.bindDeepShortcuts();
+            }
+
             // Take a break
             if (DEBUG_LOADERS) {
                 Log.d(TAG, "step 1 completed, wait for idle");
@@ -161,7 +181,9 @@ public class LoaderTask implements Runnable {
 
             // second step
             if (DEBUG_LOADERS) Log.d(TAG, "step 2.1: loading all apps");
+            StartupTimeline.begin(StartupTimeline.PHASE_LOAD_ALL_APPS);
             loadAllApps();
+            StartupTimeline.end(StartupTimeline.PHASE_LOAD_ALL_APPS);
 
             if (DEBUG_LOADERS) Log.d(TAG, "step 2.2: Binding all apps");
             verifyNotStopped();
@@ -169,7 +191,9 @@ public class LoaderTask implements Runnable {
 
             verifyNotStopped();
             if (DEBUG_LOADERS) Log.d(TAG, "step 2.3: Update icon cache");
+            StartupTimeline.begin(StartupTimeline.PHASE_UPDATE_ICON_CACHE);
             updateIconCache();
+            StartupTimeline.end(StartupTimeline.PHASE_UPDATE_ICON_CACHE);
 
             // Take a break
             if (DEBUG_LOADERS) {
@@ -182,7 +206,9 @@ public class LoaderTask implements Runnable {
 
             // third step
             if (DEBUG_LOADERS) Log.d(TAG, "step 3.1: loading deep shortcuts");
+            StartupTimeline.begin(StartupTimeline.PHASE_LOAD_DEEP_SHORTCUTS);
             loadDeepShortcuts();
+            StartupTimeline.end(StartupTimeline.PHASE_LOAD_DEEP_SHORTCUTS);
 
             verifyNotStopped();
             if (DEBUG_LOADERS) Log.d(TAG, "step 3.2: bind deep shortcuts");
@@ -195,13 +221,23 @@ public class LoaderTask implements Runnable {
 
             // fourth step
             if (DEBUG_LOADERS) Log.d(TAG, "step 4.1: loading widgets");
+            StartupTimeline.begin(StartupTimeline.PHASE_LOAD_WIDGETS);
             mBgDataModel.widgetsModel.update(mApp, null);
+            StartupTimeline.end(StartupTimeline.PHASE_LOAD_WIDGETS);
 
             verifyNotStopped();
             if (DEBUG_LOADERS) Log.d(TAG, "step 4.2: Binding widgets");
             mResults.bindWidgets();
 
+            // Only write the snapshot if the one used to load is missing or stale.
+            if (FeatureFlags.MODEL_SNAPSHOT && (mSnapshot == null
+                    || !mSnapshot.isUpToDate(mApp.getContext(), mBgDataModel))) {
+                if (DEBUG_LOADERS) Log.d(TAG, "step 4.3: writing model snapshot");
+                ModelSnapshot.write(mApp.getContext(), mBgDataModel);
+            }
+
             transaction.commit();
+            StartupTimeline.finish(mApp.getContext());
         } catch (CancellationException e) {
             // Loader stopped, ignore
             if (DEBUG_LOADERS) {
@@ -256,11 +292,22 @@ public class LoaderTask implements Runnable {
 
             final HashMap<String, Integer> installingPkgs =
                     mPackageInstaller.updateAndGetActiveSessionCache();
-            mBgDataModel.workspaceScreens.addAll(LauncherModel.loadWorkspaceScreensDb(context));
+
+            mSnapshot = FeatureFlags.MODEL_SNAPSHOT ? ModelSnapshot.loadIfValid(context,
+                    ModelSnapshot.readDbFingerprint(contentResolver)) : null;
+            if (mSnapshot != null) {
+                if (DEBUG_LOADERS) Log.d(TAG, "loadWorkspace: using model snapshot");
+                mBgDataModel.workspaceScreens.addAll(mSnapshot.getWorkspaceScreens());
+            } else {
+                mBgDataModel.workspaceScreens.addAll(LauncherModel.loadWorkspaceScreensDb(context));
+            }
 
             Map<ShortcutKey, ShortcutInfoCompat> shortcutKeyToPinnedShortcuts = new HashMap<>();
-            final LoaderCursor c = new LoaderCursor(contentResolver.query(
-                    LauncherSettings.Favorites.CONTENT_URI, null, null, null, null), mApp);
+            final LoaderCursor c = new LoaderCursor(mSnapshot != null
+                    ? mSnapshot.newFavoritesCursor()
+                    : contentResolver.query(
+                            LauncherSettings.Favorites.CONTENT_URI, null, null, null, null),
+                    mApp);
 
             HashMap<ComponentKey, AppWidgetProviderInfo> widgetProvidersMap = null;
 
@@ -764,6 +811,8 @@ public class LoaderTask implements Runnable {
                 mBgDataModel.workspaceScreens.removeAll(unusedScreens);
                 LauncherModel.updateWorkspaceScreenOrder(context, mBgDataModel.workspaceScreens);
             }
+            StartupTimeline.increment(StartupTimeline.COUNTER_ITEMS_LOADED,
+                    mBgDataModel.itemsIdMap.size());
         }
         if (LauncherAppState.PROFILE_STARTUP) {
             Trace.endSection();
@@ -840,16 +889,21 @@ public class LoaderTask implements Runnable {
     }
 
     private void loadDeepShortcuts() {
-        mBgDataModel.deepShortcutMap.clear();
-        mBgDataModel.hasShortcutHostPermission = mShortcutManager.hasHostPermission();
-        if (mBgDataModel.hasShortcutHostPermission) {
-            for (UserHandle user : mUserManager.getUserProfiles()) {
-                if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfoCompat> shortcuts =
-                            mShortcutManager.queryForAllShortcuts(user);
-                    mBgDataModel.updateDeepShortcutMap(null, user, shortcuts);
+        mBgDataModel.beginBatchUpdate();
+        try {
+            mBgDataModel.deepShortcutMap.clear();
+            mBgDataModel.hasShortcutHostPermission = mShortcutManager.hasHostPermission();
+            if (mBgDataModel.hasShortcutHostPermission) {
+                for (UserHandle user : mUserManager.getUserProfiles()) {
+                    if (mUserManager.isUserUnlocked(user)) {
+                        List<ShortcutInfoCompat> shortcuts =
+                                mShortcutManager.queryForAllShortcuts(user);
+                        mBgDataModel.updateDeepShortcutMap(null, user, shortcuts);
+                    }
                 }
             }
+        } finally {
+            mBgDataModel.endBatchUpdate();
         }
     }
 
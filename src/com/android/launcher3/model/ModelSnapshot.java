@@ -0,0 +1,426 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.LauncherModel;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.LauncherSettings.WorkspaceScreens;
+import com.android.launcher3.compat.UserManagerCompat;
+import com.android.launcher3.model.nano.LauncherDumpProto;
+import com.android.launcher3.model.nano.LauncherDumpProto.SnapshotItem;
+import com.android.launcher3.model.nano.LauncherDumpProto.SnapshotShortcuts;
+import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.MultiHashMap;
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the favorites table, workspace screens and deep shortcut map, written after
+ * a successful load. On the next start, if the DB fingerprint still matches, the loader reads
+ * the favorites from the snapshot instead of querying the provider.
+ */
+public class ModelSnapshot {
+
+    private static final String TAG = "ModelSnapshot";
+
+    private static final int VERSION = 1;
+
+    /**
+     * Aggregates over the favorites table which change whenever a row is inserted, deleted,
+     * moved or updated through the provider (which always bumps {@link Favorites#MODIFIED}).
+     */
+    private static final String[] FAVORITES_FINGERPRINT = new String[] {
+            "COUNT(*)",
+            "TOTAL(" + Favorites._ID + ")",
+            "IFNULL(MAX(" + Favorites.MODIFIED + "), 0)",
+            "TOTAL(" + Favorites.RESTORED + ")",
+            "TOTAL(" + Favorites.CONTAINER + " + " + Favorites.SCREEN + " + " + Favorites.CELLX
+                    + " + " + Favorites.CELLY + " + " + Favorites.RANK + ")"};
+
+    private static final String[] SCREENS_FINGERPRINT = new String[] {
+            "COUNT(*)",
+            "TOTAL(" + WorkspaceScreens._ID + " * (" + WorkspaceScreens.SCREEN_RANK + " + 1))"};
+
+    // Columns read by LoaderTask and LoaderCursor
+    static final String[] COLUMNS = new String[] {
+            Favorites._ID,
+            Favorites.CONTAINER,
+            Favorites.ITEM_TYPE,
+            Favorites.SCREEN,
+            Favorites.CELLX,
+            Favorites.CELLY,
+            Favorites.SPANX,
+            Favorites.SPANY,
+            Favorites.RANK,
+            Favorites.OPTIONS,
+            Favorites.PROFILE_ID,
+            Favorites.RESTORED,
+            Favorites.INTENT,
+            Favorites.TITLE,
+            Favorites.ICON,
+            Favorites.ICON_PACKAGE,
+            Favorites.ICON_RESOURCE,
+            Favorites.APPWIDGET_ID,
+            Favorites.APPWIDGET_PROVIDER};
+
+    static final int NULL_INTENT = 1 << 0;
+    static final int NULL_TITLE = 1 << 1;
+    static final int NULL_ICON = 1 << 2;
+    static final int NULL_ICON_PACKAGE = 1 << 3;
+    static final int NULL_ICON_RESOURCE = 1 << 4;
+    static final int NULL_APPWIDGET_PROVIDER = 1 << 5;
+
+    private final LauncherDumpProto.ModelSnapshot mProto;
+
+    private ModelSnapshot(LauncherDumpProto.ModelSnapshot proto) {
+        mProto = proto;
+    }
+
+    /**
+     * Returns a cheap fingerprint of the launcher DB, computed with a single aggregate query per
+     * table, or null if the DB could not be queried.
+     */
+    public static long[] readDbFingerprint(ContentResolver resolver) {
+        long[] result = new long[FAVORITES_FINGERPRINT.length + SCREENS_FINGERPRINT.length];
+        try (Cursor c = resolver.query(Favorites.CONTENT_URI,
+                FAVORITES_FINGERPRINT, null, null, null)) {
+            if (c == null || !c.moveToNext()) {
+                return null;
+            }
+            for (int i = 0; i < FAVORITES_FINGERPRINT.length; i++) {
+                result[i] = c.getLong(i);
+            }
+        }
+        try (Cursor c = resolver.query(WorkspaceScreens.CONTENT_URI,
+                SCREENS_FINGERPRINT, null, null, null)) {
+            if (c == null || !c.moveToNext()) {
+                return null;
+            }
+            for (int i = 0; i < SCREENS_FINGERPRINT.length; i++) {
+                result[FAVORITES_FINGERPRINT.length + i] = c.getLong(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the snapshot from disk if it exists and was written for the same DB contents and
+     * grid, otherwise returns null.
+     */
+    public static ModelSnapshot loadIfValid(Context context, long[] dbFingerprint) {
+        return loadIfValid(getFile(context), LauncherAppState.getIDP(context), dbFingerprint);
+    }
+
+    @VisibleForTesting
+    static ModelSnapshot loadIfValid(File file, InvariantDeviceProfile idp, long[] dbFingerprint) {
+        if (dbFingerprint == null || !file.exists()) {
+            return null;
+        }
+        LauncherDumpProto.ModelSnapshot proto;
+        try {
+            proto = MessageNano.mergeFrom(new LauncherDumpProto.ModelSnapshot(),
+                    new AtomicFile(file).readFully());
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read model snapshot", e);
+            file.delete();
+            return null;
+        }
+
+        if (proto.version != VERSION
+                || !Arrays.equals(proto.dbFingerprint, dbFingerprint)
+                || proto.numRows != idp.numRows
+                || proto.numColumns != idp.numColumns
+                || proto.numHotseatIcons != idp.numHotseatIcons) {
+            Log.d(TAG, "Model snapshot is stale");
+            return null;
+        }
+        return new ModelSnapshot(proto);
+    }
+
+    public ArrayList<Long> getWorkspaceScreens() {
+        ArrayList<Long> screens = new ArrayList<>(mProto.screens.length);
+        for (long screenId : mProto.screens) {
+            screens.add(screenId);
+        }
+        return screens;
+    }
+
+    /**
+     * Returns a cursor over the favorites rows stored in the snapshot, with the same columns as
+     * the provider's favorites table.
+     */
+    public Cursor newFavoritesCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, mProto.items.length);
+        for (SnapshotItem item : mProto.items) {
+            int nulls = item.nullColumns;
+            cursor.addRow(new Object[] {
+                    item.id,
+                    item.container,
+                    item.itemType,
+                    item.screen,
+                    item.cellX,
+                    item.cellY,
+                    item.spanX,
+                    item.spanY,
+                    item.rank,
+                    item.options,
+                    item.profileId,
+                    item.restored,
+                    (nulls & NULL_INTENT) != 0 ? null : item.intent,
+                    (nulls & NULL_TITLE) != 0 ? null : item.title,
+                    (nulls & NULL_ICON) != 0 ? null : item.icon,
+                    (nulls & NULL_ICON_PACKAGE) != 0 ? null : item.iconPackage,
+                    (nulls & NULL_ICON_RESOURCE) != 0 ? null : item.iconResource,
+                    item.appWidgetId,
+                    (nulls & NULL_APPWIDGET_PROVIDER) != 0 ? null : item.appWidgetProvider});
+        }
+        return cursor;
+    }
+
+    /**
+     * Populates the deep shortcut map of {@param dataModel} from the snapshot, if none of the
+     * packages publishing shortcuts have been updated since it was written.
+     * @return true if the map was restored.
+     */
+    public boolean restoreDeepShortcutMap(Context context, BgDataModel dataModel) {
+        MultiHashMap<ComponentKey, String> shortcutMap = readDeepShortcutMap(context);
+        if (shortcutMap == null) {
+            return false;
+        }
+
+        synchronized (dataModel) {
+            dataModel.deepShortcutMap.clear();
+            dataModel.deepShortcutMap.putAll(shortcutMap);
+            dataModel.publishSnapshot();
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether writing a new snapshot would not change anything, that is when the DB was
+     * not modified since the snapshot was written, for example by removing invalid items while
+     * loading, and the deep shortcut map of {@param dataModel} is the one of the snapshot.
+     */
+    public boolean isUpToDate(Context context, BgDataModel dataModel) {
+        if (!Arrays.equals(mProto.dbFingerprint,
+                readDbFingerprint(context.getContentResolver()))) {
+            return false;
+        }
+        MultiHashMap<ComponentKey, String> shortcutMap = readDeepShortcutMap(context);
+        if (shortcutMap == null) {
+            return false;
+        }
+        synchronized (dataModel) {
+            return shortcutMap.equals(dataModel.deepShortcutMap);
+        }
+    }
+
+    /**
+     * Returns the deep shortcut map stored in the snapshot, or null if a package publishing
+     * shortcuts was updated since.
+     */
+    private MultiHashMap<ComponentKey, String> readDeepShortcutMap(Context context) {
+        PackageManager pm = context.getPackageManager();
+        for (LauncherDumpProto.PackageVersion version : mProto.packageVersions) {
+            if (getLastUpdateTime(pm, version.packageName) != version.lastUpdateTime) {
+                return null;
+            }
+        }
+
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        MultiHashMap<ComponentKey, String> shortcutMap = new MultiHashMap<>();
+        for (SnapshotShortcuts shortcuts : mProto.shortcuts) {
+            ComponentName cn = ComponentName.unflattenFromString(shortcuts.component);
+            UserHandle user = userManager.getUserForSerialNumber(shortcuts.userSerial);
+            if (cn == null || user == null) {
+                return null;
+            }
+            shortcutMap.put(new ComponentKey(cn, user),
+                    new ArrayList<>(Arrays.asList(shortcuts.shortcutIds)));
+        }
+        return shortcutMap;
+    }
+
+    /**
+     * Writes a new snapshot of the current DB contents along with the deep shortcut map of
+     * {@param dataModel}. This should only be called after a successful load.
+     */
+    public static void write(Context context, BgDataModel dataModel) {
+        write(context, getFile(context), LauncherAppState.getIDP(context), dataModel);
+    }
+
+    @VisibleForTesting
+    static void write(Context context, File target, InvariantDeviceProfile idp,
+            BgDataModel dataModel) {
+        ContentResolver resolver = context.getContentResolver();
+        LauncherDumpProto.ModelSnapshot proto = new LauncherDumpProto.ModelSnapshot();
+        proto.version = VERSION;
+        // Read the fingerprint before the rows, so that a concurrent change results in a stale
+        // snapshot rather than an incorrect one.
+        proto.dbFingerprint = readDbFingerprint(resolver);
+        if (proto.dbFingerprint == null) {
+            return;
+        }
+
+        proto.numRows = idp.numRows;
+        proto.numColumns = idp.numColumns;
+        proto.numHotseatIcons = idp.numHotseatIcons;
+
+        ArrayList<Long> screens = LauncherModel.loadWorkspaceScreensDb(context);
+        proto.screens = new long[screens.size()];
+        for (int i = 0; i < screens.size(); i++) {
+            proto.screens[i] = screens.get(i);
+        }
+
+        ArrayList<SnapshotItem> items = new ArrayList<>();
+        try (Cursor c = resolver.query(Favorites.CONTENT_URI, COLUMNS, null, null, null)) {
+            if (c == null) {
+                return;
+            }
+            while (c.moveToNext()) {
+                items.add(readItem(c));
+            }
+        }
+        proto.items = items.toArray(new SnapshotItem[items.size()]);
+
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        ArrayList<SnapshotShortcuts> shortcuts = new ArrayList<>();
+        HashSet<String> packages = new HashSet<>();
+        synchronized (dataModel) {
+            for (Map.Entry<ComponentKey, ArrayList<String>> entry
+                    : dataModel.deepShortcutMap.entrySet()) {
+                SnapshotShortcuts s = new SnapshotShortcuts();
+                s.component = entry.getKey().componentName.flattenToString();
+                s.userSerial = userManager.getSerialNumberForUser(entry.getKey().user);
+                s.shortcutIds = entry.getValue().toArray(new String[entry.getValue().size()]);
+                shortcuts.add(s);
+                packages.add(entry.getKey().componentName.getPackageName());
+            }
+        }
+        proto.shortcuts = shortcuts.toArray(new SnapshotShortcuts[shortcuts.size()]);
+
+        PackageManager pm = context.getPackageManager();
+        proto.packageVersions = new LauncherDumpProto.PackageVersion[packages.size()];
+        int i = 0;
+        for (String pkg : packages) {
+            LauncherDumpProto.PackageVersion version = new LauncherDumpProto.PackageVersion();
+            version.packageName = pkg;
+            version.lastUpdateTime = getLastUpdateTime(pm, pkg);
+            proto.packageVersions[i++] = version;
+        }
+
+        AtomicFile file = new AtomicFile(target);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            fos.write(MessageNano.toByteArray(proto));
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write model snapshot", e);
+            file.failWrite(fos);
+        }
+    }
+
+    /**
+     * Reads the current row of a cursor over {@link #COLUMNS}.
+     */
+    static SnapshotItem readItem(Cursor c) {
+        SnapshotItem item = new SnapshotItem();
+        item.id = c.getLong(0);
+        item.container = c.getLong(1);
+        item.itemType = c.getInt(2);
+        item.screen = c.getLong(3);
+        item.cellX = c.getInt(4);
+        item.cellY = c.getInt(5);
+        item.spanX = c.getInt(6);
+        item.spanY = c.getInt(7);
+        item.rank = c.getInt(8);
+        item.options = c.getInt(9);
+        item.profileId = c.getLong(10);
+        item.restored = c.getInt(11);
+        item.appWidgetId = c.getInt(17);
+
+        int nulls = 0;
+        if (c.isNull(12)) {
+            nulls |= NULL_INTENT;
+        } else {
+            item.intent = c.getString(12);
+        }
+        if (c.isNull(13)) {
+            nulls |= NULL_TITLE;
+        } else {
+            item.title = c.getString(13);
+        }
+        if (c.isNull(14)) {
+            nulls |= NULL_ICON;
+        } else {
+            item.icon = c.getBlob(14);
+        }
+        if (c.isNull(15)) {
+            nulls |= NULL_ICON_PACKAGE;
+        } else {
+            item.iconPackage = c.getString(15);
+        }
+        if (c.isNull(16)) {
+            nulls |= NULL_ICON_RESOURCE;
+        } else {
+            item.iconResource = c.getString(16);
+        }
+        if (c.isNull(18)) {
+            nulls |= NULL_APPWIDGET_PROVIDER;
+        } else {
+            item.appWidgetProvider = c.getString(18);
+        }
+        item.nullColumns = nulls;
+        return item;
+    }
+
+    static long getLastUpdateTime(PackageManager pm, String packageName) {
+        try {
+            return pm.getPackageInfo(packageName, PackageManager.GET_UNINSTALLED_PACKAGES)
+                    .lastUpdateTime;
+        } catch (NameNotFoundException e) {
+            return -1;
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), LauncherFiles.MODEL_SNAPSHOT);
+    }
+}
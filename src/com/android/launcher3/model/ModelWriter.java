@@ -236,7 +236,7 @@ public class ModelWriter {
      * Removes all the items from the database matching {@param matcher}.
      */
     public void deleteItemsFromDatabase(ItemInfoMatcher matcher) {
-        deleteItemsFromDatabase(matcher.filterItemInfos(mBgDataModel.itemsIdMap));
+        deleteItemsFromDatabase(matcher.filterItemInfos(mBgDataModel.getSnapshot().itemsIdMap));
     }
 
     /**
@@ -245,11 +245,17 @@ public class ModelWriter {
     public void deleteItemsFromDatabase(final Iterable<? extends ItemInfo> items) {
         mWorkerExecutor.execute(new Runnable() {
             public void run() {
-                for (ItemInfo item : items) {
-                    final Uri uri = Favorites.getContentUri(item.id);
-                    mContext.getContentResolver().delete(uri, null, null);
-
-                    mBgDataModel.removeItem(mContext, item);
+                // Publish a single snapshot for all the items.
+                mBgDataModel.beginBatchUpdate();
+                try {
+                    for (ItemInfo item : items) {
+                        final Uri uri = Favorites.getContentUri(item.id);
+                        mContext.getContentResolver().delete(uri, null, null);
+
+                        mBgDataModel.removeItem(mContext, item);
+                    }
+                } finally {
+                    mBgDataModel.endBatchUpdate();
                 }
             }
         });
@@ -368,6 +374,7 @@ public class ModelWriter {
                 } else {
                     mBgDataModel.workspaceItems.remove(modelItem);
                 }
+                mBgDataModel.publishSnapshot();
             }
         }
     }
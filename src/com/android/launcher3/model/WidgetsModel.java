@@ -25,7 +25,10 @@ import com.android.launcher3.util.Preconditions;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Widgets data model that is used by the adapters of the widget views and controllers.
@@ -37,13 +40,30 @@ public class WidgetsModel {
     private static final String TAG = "WidgetsModel";
     private static final boolean DEBUG = false;
 
-    /* Map of widgets and shortcuts that are tracked per package. */
+    // Full refreshes with at least this many providers are split across worker threads.
+    private static final int MIN_PROVIDERS_FOR_SHARDING = 32;
+    private static final int MAX_SHARDS = 4;
+
+    /**
+     * Map of widgets and shortcuts that are tracked per package. Only accessed on the worker
+     * thread. The lists are never modified once added, so that published maps can share them.
+     */
     private final MultiHashMap<PackageItemInfo, WidgetItem> mWidgetsList = new MultiHashMap<>();
 
+    /* Keys of {@link #mWidgetsList} indexed by package name. */
+    private final HashMap<String, PackageItemInfo> mPackageItemInfos = new HashMap<>();
+
+    /* Shallow copy of {@link #mWidgetsList}, published after every update. */
+    private MultiHashMap<PackageItemInfo, WidgetItem> mPublishedWidgetsList = new MultiHashMap<>();
+
     private AppFilter mAppFilter;
 
+    /**
+     * Returns the last published widgets map. The map and its lists are shared with other
+     * callers and must not be modified.
+     */
     public synchronized MultiHashMap<PackageItemInfo, WidgetItem> getWidgetsMap() {
-        return mWidgetsList.clone();
+        return mPublishedWidgetsList;
     }
 
     /**
@@ -61,9 +81,11 @@ public class WidgetsModel {
 
             // Widgets
             AppWidgetManagerCompat widgetManager = AppWidgetManagerCompat.getInstance(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
-                widgetsAndShortcuts.add(new WidgetItem(LauncherAppWidgetProviderInfo
-                        .fromProviderInfo(context, widgetInfo), pm, idp));
+            List<AppWidgetProviderInfo> providers = widgetManager.getAllProviders(packageUser);
+            if (packageUser == null && providers.size() >= MIN_PROVIDERS_FOR_SHARDING) {
+                widgetsAndShortcuts.addAll(createWidgetItemsSharded(context, providers, pm, idp));
+            } else {
+                widgetsAndShortcuts.addAll(createWidgetItems(context, providers, pm, idp));
             }
 
             // Shortcuts
@@ -86,7 +108,79 @@ public class WidgetsModel {
         app.getWidgetCache().removeObsoletePreviews(widgetsAndShortcuts, packageUser);
     }
 
-    private synchronized void setWidgetsAndShortcuts(ArrayList<WidgetItem> rawWidgetsShortcuts,
+    private static ArrayList<WidgetItem> createWidgetItems(Context context,
+            List<AppWidgetProviderInfo> providers, PackageManager pm,
+            InvariantDeviceProfile idp) {
+        ArrayList<WidgetItem> items = new ArrayList<>(providers.size());
+        for (AppWidgetProviderInfo widgetInfo : providers) {
+            items.add(new WidgetItem(LauncherAppWidgetProviderInfo
+                    .fromProviderInfo(context, widgetInfo), pm, idp));
+        }
+        return items;
+    }
+
+    /**
+     * Same as {@link #createWidgetItems}, but splits the providers by package into shards which
+     * are processed in parallel, as loading the labels and spans of hundreds of providers is
+     * slow. The calling thread also processes any shard which has not been started yet, so that
+     * a busy thread pool never stalls the update. Exceptions thrown by a shard are rethrown as
+     * is, like {@link #createWidgetItems} would.
+     */
+    private static ArrayList<WidgetItem> createWidgetItemsSharded(final Context context,
+            List<AppWidgetProviderInfo> providers, final PackageManager pm,
+            final InvariantDeviceProfile idp) {
+        int numShards = Math.min(MAX_SHARDS, Runtime.getRuntime().availableProcessors());
+        ArrayList<ArrayList<AppWidgetProviderInfo>> shards = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            shards.add(new ArrayList<AppWidgetProviderInfo>());
+        }
+        for (AppWidgetProviderInfo info : providers) {
+            int hash = info.provider.getPackageName().hashCode() & Integer.MAX_VALUE;
+            shards.get(hash % numShards).add(info);
+        }
+
+        ArrayList<FutureTask<ArrayList<WidgetItem>>> tasks = new ArrayList<>(numShards);
+        for (final ArrayList<AppWidgetProviderInfo> shard : shards) {
+            if (shard.isEmpty()) {
+                continue;
+            }
+            FutureTask<ArrayList<WidgetItem>> task = new FutureTask<>(
+                    new Callable<ArrayList<WidgetItem>>() {
+                        @Override
+                        public ArrayList<WidgetItem> call() {
+                            return createWidgetItems(context, shard, pm, idp);
+                        }
+                    });
+            if (!tasks.isEmpty()) {
+                Utilities.THREAD_POOL_EXECUTOR.execute(task);
+            }
+            tasks.add(task);
+        }
+
+        ArrayList<WidgetItem> items = new ArrayList<>(providers.size());
+        for (FutureTask<ArrayList<WidgetItem>> task : tasks) {
+            // No-op if the task was already picked up by the thread pool.
+            task.run();
+            try {
+                items.addAll(task.get());
+            } catch (ExecutionException e) {
+                // The shards only throw unchecked exceptions.
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        return items;
+    }
+
+    private void setWidgetsAndShortcuts(ArrayList<WidgetItem> rawWidgetsShortcuts,
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
         if (DEBUG) {
             Log.d(TAG, "addWidgetsAndShortcuts, widgetsShortcuts#=" + rawWidgetsShortcuts.size());
@@ -99,28 +193,24 @@ public class WidgetsModel {
         // clear the lists.
         if (packageUser == null) {
             mWidgetsList.clear();
+            mPackageItemInfos.clear();
         } else {
             // Only clear the widgets for the given package/user.
-            PackageItemInfo packageItem = null;
-            for (PackageItemInfo item : mWidgetsList.keySet()) {
-                if (item.packageName.equals(packageUser.mPackageName)) {
-                    packageItem = item;
-                    break;
-                }
-            }
+            PackageItemInfo packageItem = mPackageItemInfos.get(packageUser.mPackageName);
             if (packageItem != null) {
                 // We want to preserve the user that was on the packageItem previously,
                 // so add it to tmpPackageItemInfos here to avoid creating a new entry.
                 tmpPackageItemInfos.put(packageItem.packageName, packageItem);
 
-                Iterator<WidgetItem> widgetItemIterator = mWidgetsList.get(packageItem).iterator();
-                while (widgetItemIterator.hasNext()) {
-                    WidgetItem nextWidget = widgetItemIterator.next();
-                    if (nextWidget.componentName.getPackageName().equals(packageUser.mPackageName)
-                            && nextWidget.user.equals(packageUser.mUser)) {
-                        widgetItemIterator.remove();
+                // The list is shared with the published map, so replace it instead.
+                ArrayList<WidgetItem> widgets = new ArrayList<>();
+                for (WidgetItem widget : mWidgetsList.get(packageItem)) {
+                    if (!widget.componentName.getPackageName().equals(packageUser.mPackageName)
+                            || !widget.user.equals(packageUser.mUser)) {
+                        widgets.add(widget);
                     }
                 }
+                mWidgetsList.put(packageItem, widgets);
             }
         }
 
@@ -160,6 +250,7 @@ public class WidgetsModel {
                 pInfo = new PackageItemInfo(packageName);
                 pInfo.user = item.user;
                 tmpPackageItemInfos.put(packageName,  pInfo);
+                mPackageItemInfos.put(packageName, pInfo);
             } else if (!myUser.equals(pInfo.user)) {
                 // Keep updating the user, until we get the primary user.
                 pInfo.user = item.user;
@@ -172,5 +263,12 @@ public class WidgetsModel {
         for (PackageItemInfo p : tmpPackageItemInfos.values()) {
             iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
         }
+
+        MultiHashMap<PackageItemInfo, WidgetItem> published =
+                new MultiHashMap<>(mWidgetsList.size());
+        published.putAll(mWidgetsList);
+        synchronized (this) {
+            mPublishedWidgetsList = published;
+        }
     }
 }
\ No newline at end of file
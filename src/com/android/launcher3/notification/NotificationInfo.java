@@ -131,6 +131,21 @@ public class NotificationInfo implements View.OnClickListener {
         return mIsIconLarge;
     }
 
+    /**
+     * Returns whether the icon of {@param sbn} may be shown in its badge. This can be checked
+     * before creating a NotificationInfo, which loads the icon.
+     *
+     * @see #shouldShowIconInBadge()
+     */
+    public static boolean mayShowIconInBadge(StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+        int badgeIcon = notification.getBadgeIconType();
+        if (badgeIcon == Notification.BADGE_ICON_SMALL) {
+            return true;
+        }
+        return badgeIcon == Notification.BADGE_ICON_LARGE && notification.getLargeIcon() != null;
+    }
+
     public boolean shouldShowIconInBadge() {
         // If the icon we're using for this notification matches what the Notification
         // specified should show in the badge, then return true.
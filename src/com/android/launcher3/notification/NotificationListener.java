@@ -32,13 +32,16 @@ import android.util.Log;
 import android.util.Pair;
 
 import com.android.launcher3.LauncherModel;
+import com.android.launcher3.badge.BadgeInfo;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.SettingsObserver;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.android.launcher3.SettingsActivity.NOTIFICATION_BADGING;
@@ -57,6 +60,14 @@ public class NotificationListener extends NotificationListenerService {
     private static final int MSG_NOTIFICATION_POSTED = 1;
     private static final int MSG_NOTIFICATION_REMOVED = 2;
     private static final int MSG_NOTIFICATION_FULL_REFRESH = 3;
+    private static final int MSG_RESOLVE_BADGES = 4;
+    private static final int MSG_BADGES_UPDATED = 5;
+
+    /**
+     * Notification changes within this delay are resolved together and sent to the
+     * {@link NotificationsChangedListener} as a single update.
+     */
+    private static final long BADGE_UPDATE_DELAY_MS = 16;
 
     private static NotificationListener sNotificationListenerInstance = null;
     private static NotificationsChangedListener sNotificationsChangedListener;
@@ -67,6 +78,16 @@ public class NotificationListener extends NotificationListenerService {
     private final Handler mUiHandler;
     private final Ranking mTempRanking = new Ranking();
 
+    // The following are only accessed on the worker thread.
+    /** Maps packages to their BadgeInfo's. Copies of these are sent to the UI thread. */
+    private final HashMap<PackageUserKey, BadgeInfo> mBadges = new HashMap<>();
+    /**
+     * Badges which changed since they were last sent to the UI thread, mapped to whether they
+     * should be refreshed even if their icon doesn't change.
+     */
+    private final HashMap<PackageUserKey, Boolean> mPendingBadges = new HashMap<>();
+    private boolean mPendingFullRefresh;
+
     private SettingsObserver mNotificationBadgingObserver;
 
     private final Handler.Callback mWorkerCallback = new Handler.Callback() {
@@ -74,10 +95,14 @@ public class NotificationListener extends NotificationListenerService {
         public boolean handleMessage(Message message) {
             switch (message.what) {
                 case MSG_NOTIFICATION_POSTED:
-                    mUiHandler.obtainMessage(message.what, message.obj).sendToTarget();
+                    NotificationPostedMsg msg = (NotificationPostedMsg) message.obj;
+                    onBadgeNotificationPosted(msg.packageUserKey, msg.notificationKey,
+                            msg.shouldBeFilteredOut);
                     break;
                 case MSG_NOTIFICATION_REMOVED:
-                    mUiHandler.obtainMessage(message.what, message.obj).sendToTarget();
+                    Pair<PackageUserKey, NotificationKeyData> pair
+                            = (Pair<PackageUserKey, NotificationKeyData>) message.obj;
+                    onBadgeNotificationRemoved(pair.first, pair.second);
                     break;
                 case MSG_NOTIFICATION_FULL_REFRESH:
                     List<StatusBarNotification> activeNotifications;
@@ -93,7 +118,10 @@ public class NotificationListener extends NotificationListenerService {
                         activeNotifications = new ArrayList<StatusBarNotification>();
                     }
 
-                    mUiHandler.obtainMessage(message.what, activeNotifications).sendToTarget();
+                    onBadgeNotificationsFullRefresh(activeNotifications);
+                    break;
+                case MSG_RESOLVE_BADGES:
+                    resolveBadges();
                     break;
             }
             return true;
@@ -104,24 +132,16 @@ public class NotificationListener extends NotificationListenerService {
         @Override
         public boolean handleMessage(Message message) {
             switch (message.what) {
-                case MSG_NOTIFICATION_POSTED:
+                case MSG_BADGES_UPDATED:
                     if (sNotificationsChangedListener != null) {
-                        NotificationPostedMsg msg = (NotificationPostedMsg) message.obj;
-                        sNotificationsChangedListener.onNotificationPosted(msg.packageUserKey,
-                                msg.notificationKey, msg.shouldBeFilteredOut);
-                    }
-                    break;
-                case MSG_NOTIFICATION_REMOVED:
-                    if (sNotificationsChangedListener != null) {
-                        Pair<PackageUserKey, NotificationKeyData> pair
-                                = (Pair<PackageUserKey, NotificationKeyData>) message.obj;
-                        sNotificationsChangedListener.onNotificationRemoved(pair.first, pair.second);
+                        sNotificationsChangedListener.onNotificationsChanged(
+                                (HashMap<PackageUserKey, BadgeInfo>) message.obj);
                     }
                     break;
                 case MSG_NOTIFICATION_FULL_REFRESH:
                     if (sNotificationsChangedListener != null) {
                         sNotificationsChangedListener.onNotificationFullRefresh(
-                                (List<StatusBarNotification>) message.obj);
+                                (HashMap<PackageUserKey, BadgeInfo>) message.obj);
                     }
                     break;
             }
@@ -172,7 +192,7 @@ public class NotificationListener extends NotificationListenerService {
             // User turned off badging globally, so we unbound this service;
             // tell the listener that there are no notifications to remove dots.
             sNotificationsChangedListener.onNotificationFullRefresh(
-                    Collections.<StatusBarNotification>emptyList());
+                    Collections.<PackageUserKey, BadgeInfo>emptyMap());
         }
     }
 
@@ -229,6 +249,167 @@ public class NotificationListener extends NotificationListenerService {
                 .sendToTarget();
     }
 
+    private void onBadgeNotificationPosted(PackageUserKey postedPackageUserKey,
+            NotificationKeyData notificationKey, boolean shouldBeFilteredOut) {
+        BadgeInfo badgeInfo = mBadges.get(postedPackageUserKey);
+        boolean badgeShouldBeRefreshed;
+        if (badgeInfo == null) {
+            if (!shouldBeFilteredOut) {
+                BadgeInfo newBadgeInfo = new BadgeInfo(postedPackageUserKey);
+                newBadgeInfo.addOrUpdateNotificationKey(notificationKey);
+                mBadges.put(postedPackageUserKey, newBadgeInfo);
+                badgeShouldBeRefreshed = true;
+            } else {
+                return;
+            }
+        } else {
+            badgeShouldBeRefreshed = shouldBeFilteredOut
+                    ? badgeInfo.removeNotificationKey(notificationKey)
+                    : badgeInfo.addOrUpdateNotificationKey(notificationKey);
+            if (badgeInfo.getNotificationKeys().size() == 0) {
+                mBadges.remove(postedPackageUserKey);
+            }
+        }
+        scheduleBadgeUpdate(postedPackageUserKey, badgeShouldBeRefreshed);
+    }
+
+    private void onBadgeNotificationRemoved(PackageUserKey removedPackageUserKey,
+            NotificationKeyData notificationKey) {
+        BadgeInfo oldBadgeInfo = mBadges.get(removedPackageUserKey);
+        if (oldBadgeInfo != null && oldBadgeInfo.removeNotificationKey(notificationKey)) {
+            if (oldBadgeInfo.getNotificationKeys().size() == 0) {
+                mBadges.remove(removedPackageUserKey);
+            }
+            scheduleBadgeUpdate(removedPackageUserKey, true);
+        }
+    }
+
+    private void onBadgeNotificationsFullRefresh(List<StatusBarNotification> activeNotifications) {
+        mBadges.clear();
+        mPendingBadges.clear();
+        if (activeNotifications != null) {
+            for (StatusBarNotification notification : activeNotifications) {
+                PackageUserKey packageUserKey = PackageUserKey.fromNotification(notification);
+                BadgeInfo badgeInfo = mBadges.get(packageUserKey);
+                if (badgeInfo == null) {
+                    badgeInfo = new BadgeInfo(packageUserKey);
+                    mBadges.put(packageUserKey, badgeInfo);
+                }
+                badgeInfo.addOrUpdateNotificationKey(NotificationKeyData
+                        .fromNotification(notification));
+            }
+        }
+        for (PackageUserKey packageUserKey : mBadges.keySet()) {
+            mPendingBadges.put(packageUserKey, true);
+        }
+        // The listener compares the refreshed badges with its own, so send them right away.
+        mPendingFullRefresh = true;
+        mWorkerHandler.removeMessages(MSG_RESOLVE_BADGES);
+        resolveBadges();
+    }
+
+    private void scheduleBadgeUpdate(PackageUserKey packageUserKey, boolean shouldRefresh) {
+        Boolean pendingRefresh = mPendingBadges.get(packageUserKey);
+        mPendingBadges.put(packageUserKey,
+                shouldRefresh || (pendingRefresh != null && pendingRefresh));
+        if (!mWorkerHandler.hasMessages(MSG_RESOLVE_BADGES)) {
+            mWorkerHandler.sendEmptyMessageDelayed(MSG_RESOLVE_BADGES, BADGE_UPDATE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Resolves the notification icons of the pending badges, and sends copies of the badges
+     * which changed to the UI thread.
+     */
+    private void resolveBadges() {
+        ArrayList<String> keys = new ArrayList<>();
+        for (PackageUserKey packageUserKey : mPendingBadges.keySet()) {
+            BadgeInfo badgeInfo = mBadges.get(packageUserKey);
+            if (badgeInfo != null) {
+                keys.addAll(NotificationKeyData.extractKeysOnly(badgeInfo.getNotificationKeys()));
+            }
+        }
+        HashMap<String, StatusBarNotification> activeNotifications = getNotificationsByKey(keys);
+
+        HashMap<PackageUserKey, BadgeInfo> updatedBadges = new HashMap<>();
+        for (Map.Entry<PackageUserKey, Boolean> entry : mPendingBadges.entrySet()) {
+            BadgeInfo badgeInfo = mBadges.get(entry.getKey());
+            if (badgeInfo == null) {
+                // A null value means that the badge was removed.
+                updatedBadges.put(entry.getKey(), null);
+            } else if (updateBadgeIcon(badgeInfo, activeNotifications) || entry.getValue()) {
+                updatedBadges.put(entry.getKey(), new BadgeInfo(badgeInfo));
+            }
+        }
+        mPendingBadges.clear();
+
+        if (mPendingFullRefresh) {
+            mPendingFullRefresh = false;
+            // Send all the badges, as the listener may have been replaced since the last update.
+            HashMap<PackageUserKey, BadgeInfo> allBadges = new HashMap<>();
+            for (Map.Entry<PackageUserKey, BadgeInfo> entry : mBadges.entrySet()) {
+                BadgeInfo updated = updatedBadges.get(entry.getKey());
+                allBadges.put(entry.getKey(),
+                        updated != null ? updated : new BadgeInfo(entry.getValue()));
+            }
+            mUiHandler.obtainMessage(MSG_NOTIFICATION_FULL_REFRESH, allBadges).sendToTarget();
+        } else if (!updatedBadges.isEmpty()) {
+            mUiHandler.obtainMessage(MSG_BADGES_UPDATED, updatedBadges).sendToTarget();
+        }
+    }
+
+    /**
+     * Fetches the active notifications for all the {@param keys} with a single binder call.
+     */
+    private HashMap<String, StatusBarNotification> getNotificationsByKey(List<String> keys) {
+        HashMap<String, StatusBarNotification> notifications = new HashMap<>();
+        if (!sIsConnected || keys.isEmpty()) {
+            return notifications;
+        }
+        StatusBarNotification[] active;
+        try {
+            active = getActiveNotifications(keys.toArray(new String[keys.size()]));
+        } catch (SecurityException ex) {
+            Log.e(TAG, "SecurityException: failed to fetch notifications");
+            return notifications;
+        }
+        if (active != null) {
+            for (StatusBarNotification sbn : active) {
+                notifications.put(sbn.getKey(), sbn);
+            }
+        }
+        return notifications;
+    }
+
+    /**
+     * Determines whether the badge should show a notification icon rather than a number,
+     * and sets that icon on the BadgeInfo if so.
+     * @param badgeInfo The badge to update with an icon (null if it shouldn't show one).
+     * @return Whether the badge icon potentially changed (true unless it stayed null).
+     */
+    private boolean updateBadgeIcon(BadgeInfo badgeInfo,
+            HashMap<String, StatusBarNotification> activeNotifications) {
+        boolean hadNotificationToShow = badgeInfo.hasNotificationToShow();
+        NotificationInfo notificationInfo = null;
+        // Look for the most recent notification that has an icon that should be shown in badge.
+        for (NotificationKeyData notificationKeyData : badgeInfo.getNotificationKeys()) {
+            StatusBarNotification sbn =
+                    activeNotifications.get(notificationKeyData.notificationKey);
+            if (sbn != null && NotificationInfo.mayShowIconInBadge(sbn)) {
+                notificationInfo = new NotificationInfo(this, sbn);
+                if (notificationInfo.shouldShowIconInBadge()) {
+                    // Found an appropriate icon.
+                    break;
+                } else {
+                    // Keep looking.
+                    notificationInfo = null;
+                }
+            }
+        }
+        badgeInfo.setNotificationToShow(notificationInfo);
+        return hadNotificationToShow || badgeInfo.hasNotificationToShow();
+    }
+
     /** This makes a potentially expensive binder call and should be run on a background thread. */
     public List<StatusBarNotification> getNotificationsForKeys(List<NotificationKeyData> keys) {
         StatusBarNotification[] notifications = NotificationListener.this
@@ -282,11 +463,19 @@ public class NotificationListener extends NotificationListenerService {
         return (isGroupHeader || missingTitleAndText);
     }
 
+    /**
+     * Receives the badges on the UI thread. The badges are copies owned by the listener.
+     */
     public interface NotificationsChangedListener {
-        void onNotificationPosted(PackageUserKey postedPackageUserKey,
-                NotificationKeyData notificationKey, boolean shouldBeFilteredOut);
-        void onNotificationRemoved(PackageUserKey removedPackageUserKey,
-                NotificationKeyData notificationKey);
-        void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications);
+        /**
+         * @param updatedBadges the badges which should be refreshed, mapped to null for the
+         *                      packages which no longer have any notifications.
+         */
+        void onNotificationsChanged(Map<PackageUserKey, BadgeInfo> updatedBadges);
+
+        /**
+         * @param badges all the current badges, which replace the previous ones.
+         */
+        void onNotificationFullRefresh(Map<PackageUserKey, BadgeInfo> badges);
     }
 }
@@ -220,6 +220,13 @@ public class PopupContainerWithArrow extends AbstractFloatingView implements Dra
             updateNotificationHeader();
         }
 
+        // If the data was prefetched when the icon was touched, populate the views right away.
+        final PopupPrefetcher.Result prefetched = mLauncher.getPopupDataProvider().getPrefetcher()
+                .consume(originalItemInfo, shortcutIds, notificationKeys);
+        if (prefetched != null) {
+            PopupPopulator.applyPrefetched(this, prefetched, shortcutViews, mNotificationItemView);
+        }
+
         int numShortcuts = shortcutViews.size() + systemShortcutViews.size();
         int numNotifications = notificationKeys.size();
         if (numNotifications == 0) {
@@ -250,7 +257,7 @@ public class PopupContainerWithArrow extends AbstractFloatingView implements Dra
         new Handler(workerLooper).postAtFrontOfQueue(PopupPopulator.createUpdateRunnable(
                 mLauncher, originalItemInfo, new Handler(Looper.getMainLooper()),
                 this, shortcutIds, shortcutViews, notificationKeys, mNotificationItemView,
-                systemShortcuts, systemShortcutViews));
+                systemShortcuts, systemShortcutViews, prefetched));
     }
 
     private void addDummyViews(PopupPopulator.Item[] itemTypesToPopulate, int numNotifications) {
@@ -24,9 +24,7 @@ import android.util.Log;
 
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
-import com.android.launcher3.Utilities;
 import com.android.launcher3.badge.BadgeInfo;
-import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationKeyData;
 import com.android.launcher3.notification.NotificationListener;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
@@ -38,10 +36,9 @@ import com.better.launcher.gesture.GestureHelper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Provides data for the popup menu that appears after long-clicking on apps.
@@ -64,46 +61,33 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     /** Maps packages to their BadgeInfo's . */
     private Map<PackageUserKey, BadgeInfo> mPackageUserToBadgeInfos = new HashMap<>();
 
+    private final PopupPrefetcher mPrefetcher;
+
     public PopupDataProvider(Launcher launcher) {
         mLauncher = launcher;
+        mPrefetcher = new PopupPrefetcher(launcher);
     }
 
-    @Override
-    public void onNotificationPosted(PackageUserKey postedPackageUserKey,
-            NotificationKeyData notificationKey, boolean shouldBeFilteredOut) {
-        BadgeInfo badgeInfo = mPackageUserToBadgeInfos.get(postedPackageUserKey);
-        boolean badgeShouldBeRefreshed;
-        if (badgeInfo == null) {
-            if (!shouldBeFilteredOut) {
-                BadgeInfo newBadgeInfo = new BadgeInfo(postedPackageUserKey);
-                newBadgeInfo.addOrUpdateNotificationKey(notificationKey);
-                mPackageUserToBadgeInfos.put(postedPackageUserKey, newBadgeInfo);
-                badgeShouldBeRefreshed = true;
-            } else {
-                badgeShouldBeRefreshed = false;
-            }
-        } else {
-            badgeShouldBeRefreshed = shouldBeFilteredOut
-                    ? badgeInfo.removeNotificationKey(notificationKey)
-                    : badgeInfo.addOrUpdateNotificationKey(notificationKey);
-            if (badgeInfo.getNotificationKeys().size() == 0) {
-                mPackageUserToBadgeInfos.remove(postedPackageUserKey);
-            }
-        }
-        updateLauncherIconBadges(Utilities.singletonHashSet(postedPackageUserKey),
-                badgeShouldBeRefreshed);
+    public PopupPrefetcher getPrefetcher() {
+        return mPrefetcher;
     }
 
     @Override
-    public void onNotificationRemoved(PackageUserKey removedPackageUserKey,
-            NotificationKeyData notificationKey) {
-        BadgeInfo oldBadgeInfo = mPackageUserToBadgeInfos.get(removedPackageUserKey);
-        if (oldBadgeInfo != null && oldBadgeInfo.removeNotificationKey(notificationKey)) {
-            if (oldBadgeInfo.getNotificationKeys().size() == 0) {
-                mPackageUserToBadgeInfos.remove(removedPackageUserKey);
+    public void onNotificationsChanged(Map<PackageUserKey, BadgeInfo> updatedBadges) {
+        boolean notificationsRemoved = false;
+        for (Map.Entry<PackageUserKey, BadgeInfo> entry : updatedBadges.entrySet()) {
+            BadgeInfo prevBadge = entry.getValue() == null
+                    ? mPackageUserToBadgeInfos.remove(entry.getKey())
+                    : mPackageUserToBadgeInfos.put(entry.getKey(), entry.getValue());
+            if (prevBadge != null && (entry.getValue() == null
+                    || entry.getValue().getNotificationKeys().size()
+                            < prevBadge.getNotificationKeys().size())) {
+                notificationsRemoved = true;
             }
-            updateLauncherIconBadges(Utilities.singletonHashSet(removedPackageUserKey));
+        }
+        mLauncher.updateIconBadges(new HashSet<>(updatedBadges.keySet()));
 
+        if (notificationsRemoved) {
             PopupContainerWithArrow openContainer = PopupContainerWithArrow.getOpen(mLauncher);
             if (openContainer != null) {
                 openContainer.trimNotifications(mPackageUserToBadgeInfos);
@@ -112,21 +96,10 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     }
 
     @Override
-    public void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications) {
-        if (activeNotifications == null) return;
+    public void onNotificationFullRefresh(Map<PackageUserKey, BadgeInfo> badges) {
         // This will contain the PackageUserKeys which have updated badges.
         HashMap<PackageUserKey, BadgeInfo> updatedBadges = new HashMap<>(mPackageUserToBadgeInfos);
-        mPackageUserToBadgeInfos.clear();
-        for (StatusBarNotification notification : activeNotifications) {
-            PackageUserKey packageUserKey = PackageUserKey.fromNotification(notification);
-            BadgeInfo badgeInfo = mPackageUserToBadgeInfos.get(packageUserKey);
-            if (badgeInfo == null) {
-                badgeInfo = new BadgeInfo(packageUserKey);
-                mPackageUserToBadgeInfos.put(packageUserKey, badgeInfo);
-            }
-            badgeInfo.addOrUpdateNotificationKey(NotificationKeyData
-                    .fromNotification(notification));
-        }
+        mPackageUserToBadgeInfos = new HashMap<>(badges);
 
         // Add and remove from updatedBadges so it contains the PackageUserKeys of updated badges.
         for (PackageUserKey packageUserKey : mPackageUserToBadgeInfos.keySet()) {
@@ -135,14 +108,14 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             if (prevBadge == null) {
                 updatedBadges.put(packageUserKey, newBadge);
             } else {
-                if (!prevBadge.shouldBeInvalidated(newBadge)) {
+                if (!prevBadge.shouldBeInvalidated(newBadge) && !newBadge.hasNotificationToShow()) {
                     updatedBadges.remove(packageUserKey);
                 }
             }
         }
 
         if (!updatedBadges.isEmpty()) {
-            updateLauncherIconBadges(updatedBadges.keySet());
+            mLauncher.updateIconBadges(updatedBadges.keySet());
         }
 
         PopupContainerWithArrow openContainer = PopupContainerWithArrow.getOpen(mLauncher);
@@ -151,66 +124,6 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         }
     }
 
-    private void updateLauncherIconBadges(Set<PackageUserKey> updatedBadges) {
-        updateLauncherIconBadges(updatedBadges, true);
-    }
-
-    /**
-     * Updates the icons on launcher (workspace, folders, all apps) to refresh their badges.
-     * @param updatedBadges The packages whose badges should be refreshed (either a notification was
-     *                      added or removed, or the badge should show the notification icon).
-     * @param shouldRefresh An optional parameter that will allow us to only refresh badges that
-     *                      have actually changed. If a notification updated its content but not
-     *                      its count or icon, then the badge doesn't change.
-     */
-    private void updateLauncherIconBadges(Set<PackageUserKey> updatedBadges,
-            boolean shouldRefresh) {
-        Iterator<PackageUserKey> iterator = updatedBadges.iterator();
-        while (iterator.hasNext()) {
-            BadgeInfo badgeInfo = mPackageUserToBadgeInfos.get(iterator.next());
-            if (badgeInfo != null && !updateBadgeIcon(badgeInfo) && !shouldRefresh) {
-                // The notification icon isn't used, and the badge hasn't changed
-                // so there is no update to be made.
-                iterator.remove();
-            }
-        }
-        if (!updatedBadges.isEmpty()) {
-            mLauncher.updateIconBadges(updatedBadges);
-        }
-    }
-
-    /**
-     * Determines whether the badge should show a notification icon rather than a number,
-     * and sets that icon on the BadgeInfo if so.
-     * @param badgeInfo The badge to update with an icon (null if it shouldn't show one).
-     * @return Whether the badge icon potentially changed (true unless it stayed null).
-     */
-    private boolean updateBadgeIcon(BadgeInfo badgeInfo) {
-        boolean hadNotificationToShow = badgeInfo.hasNotificationToShow();
-        NotificationInfo notificationInfo = null;
-        NotificationListener notificationListener = NotificationListener.getInstanceIfConnected();
-        if (notificationListener != null && badgeInfo.getNotificationKeys().size() >= 1) {
-            // Look for the most recent notification that has an icon that should be shown in badge.
-            for (NotificationKeyData notificationKeyData : badgeInfo.getNotificationKeys()) {
-                String notificationKey = notificationKeyData.notificationKey;
-                StatusBarNotification[] activeNotifications = notificationListener
-                        .getActiveNotifications(new String[]{notificationKey});
-                if (activeNotifications.length == 1) {
-                    notificationInfo = new NotificationInfo(mLauncher, activeNotifications[0]);
-                    if (notificationInfo.shouldShowIconInBadge()) {
-                        // Found an appropriate icon.
-                        break;
-                    } else {
-                        // Keep looking.
-                        notificationInfo = null;
-                    }
-                }
-            }
-        }
-        badgeInfo.setNotificationToShow(notificationInfo);
-        return hadNotificationToShow || badgeInfo.hasNotificationToShow();
-    }
-
     public void setDeepShortcutMap(MultiHashMap<ComponentKey, String> deepShortcutMapCopy) {
         mDeepShortcutMap = deepShortcutMapCopy;
         if (LOGD) Log.d(TAG, "bindDeepShortcutMap: " + mDeepShortcutMap);
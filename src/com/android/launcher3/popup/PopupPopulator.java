@@ -31,7 +31,6 @@ import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.R;
 import com.android.launcher3.ShortcutInfo;
-import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationItemView;
 import com.android.launcher3.notification.NotificationKeyData;
@@ -176,42 +175,94 @@ public class PopupPopulator {
         return filteredShortcuts;
     }
 
+    /**
+     * Loads the notifications for {@param notificationKeys}.
+     * This makes a potentially expensive binder call and should be run on a background thread.
+     */
+    static List<NotificationInfo> loadNotificationInfos(Launcher launcher,
+            List<NotificationKeyData> notificationKeys) {
+        List<StatusBarNotification> notifications = launcher.getPopupDataProvider()
+                .getStatusBarNotificationsForKeys(notificationKeys);
+        List<NotificationInfo> infos = new ArrayList<>(notifications.size());
+        for (int i = 0; i < notifications.size(); i++) {
+            StatusBarNotification notification = notifications.get(i);
+            infos.add(new NotificationInfo(launcher, notification));
+        }
+        return infos;
+    }
+
+    /**
+     * Loads the shortcuts to show in the popup of {@param activity}, sorted and filtered.
+     * This makes a potentially expensive binder call and should be run on a background thread.
+     */
+    static List<ShortcutInfoCompat> loadShortcuts(Launcher launcher, ComponentName activity,
+            UserHandle user, List<String> shortcutIds, List<NotificationKeyData> notificationKeys) {
+        if (shortcutIds.isEmpty()) {
+            return Collections.EMPTY_LIST;
+        }
+        List<ShortcutInfoCompat> shortcuts = DeepShortcutManager.getInstance(launcher)
+                .queryForShortcutsContainer(activity, shortcutIds, user);
+        String shortcutIdToDeDupe = notificationKeys.isEmpty() ? null
+                : notificationKeys.get(0).shortcutId;
+        return PopupPopulator.sortAndFilterShortcuts(shortcuts, shortcutIdToDeDupe);
+    }
+
+    static ShortcutInfo createShortcutInfo(Launcher launcher, ShortcutInfoCompat shortcut,
+            int rank) {
+        ShortcutInfo si = new ShortcutInfo(shortcut, launcher);
+        // Use unbadged icon for the menu.
+        si.iconBitmap = DeepShortcutManager.getInstance(launcher).getIconCache()
+                .getUnbadgedIcon(shortcut, launcher);
+        si.rank = rank;
+        return si;
+    }
+
+    /**
+     * Populates the shortcuts and notifications of {@param container} with data which was
+     * loaded before it opened.
+     */
+    public static void applyPrefetched(PopupContainerWithArrow container,
+            PopupPrefetcher.Result prefetched, List<DeepShortcutView> shortcutViews,
+            NotificationItemView notificationView) {
+        if (notificationView != null) {
+            new UpdateNotificationChild(notificationView, prefetched.notificationInfos).run();
+        }
+        for (int i = 0; i < prefetched.shortcuts.size() && i < shortcutViews.size(); i++) {
+            new UpdateShortcutChild(container, shortcutViews.get(i),
+                    prefetched.shortcutInfos.get(i), prefetched.shortcuts.get(i)).run();
+        }
+    }
+
+    /**
+     * @param prefetched The data which was already applied with {@link #applyPrefetched}, in
+     *                   which case only the system shortcuts are updated, or null.
+     */
     public static Runnable createUpdateRunnable(final Launcher launcher, final ItemInfo originalInfo,
             final Handler uiHandler, final PopupContainerWithArrow container,
             final List<String> shortcutIds, final List<DeepShortcutView> shortcutViews,
             final List<NotificationKeyData> notificationKeys,
             final NotificationItemView notificationView, final List<SystemShortcut> systemShortcuts,
-            final List<View> systemShortcutViews) {
+            final List<View> systemShortcutViews, final PopupPrefetcher.Result prefetched) {
         final ComponentName activity = originalInfo.getTargetComponent();
         final UserHandle user = originalInfo.user;
         return new Runnable() {
             @Override
             public void run() {
-                if (notificationView != null) {
-                    List<StatusBarNotification> notifications = launcher.getPopupDataProvider()
-                            .getStatusBarNotificationsForKeys(notificationKeys);
-                    List<NotificationInfo> infos = new ArrayList<>(notifications.size());
-                    for (int i = 0; i < notifications.size(); i++) {
-                        StatusBarNotification notification = notifications.get(i);
-                        infos.add(new NotificationInfo(launcher, notification));
-                    }
+                if (notificationView != null && prefetched == null) {
+                    List<NotificationInfo> infos = loadNotificationInfos(launcher,
+                            notificationKeys);
                     uiHandler.post(new UpdateNotificationChild(notificationView, infos));
                 }
 
-                List<ShortcutInfoCompat> shortcuts = DeepShortcutManager.getInstance(launcher)
-                        .queryForShortcutsContainer(activity, shortcutIds, user);
-                String shortcutIdToDeDupe = notificationKeys.isEmpty() ? null
-                        : notificationKeys.get(0).shortcutId;
-                shortcuts = PopupPopulator.sortAndFilterShortcuts(shortcuts, shortcutIdToDeDupe);
-                for (int i = 0; i < shortcuts.size() && i < shortcutViews.size(); i++) {
-                    final ShortcutInfoCompat shortcut = shortcuts.get(i);
-                    ShortcutInfo si = new ShortcutInfo(shortcut, launcher);
-                    // Use unbadged icon for the menu.
-                    si.iconBitmap = LauncherIcons.createShortcutIcon(
-                            shortcut, launcher, false /* badged */);
-                    si.rank = i;
-                    uiHandler.post(new UpdateShortcutChild(container, shortcutViews.get(i),
-                            si, shortcut));
+                if (prefetched == null) {
+                    List<ShortcutInfoCompat> shortcuts = loadShortcuts(launcher, activity, user,
+                            shortcutIds, notificationKeys);
+                    for (int i = 0; i < shortcuts.size() && i < shortcutViews.size(); i++) {
+                        final ShortcutInfoCompat shortcut = shortcuts.get(i);
+                        ShortcutInfo si = createShortcutInfo(launcher, shortcut, i);
+                        uiHandler.post(new UpdateShortcutChild(container, shortcutViews.get(i),
+                                si, shortcut));
+                    }
                 }
 
                 // This ensures that mLauncher.getWidgetsForPackageUser()
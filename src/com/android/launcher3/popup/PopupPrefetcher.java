@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.popup;
+
+import android.content.ComponentName;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
+
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.Launcher;
+import com.android.launcher3.LauncherModel;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.notification.NotificationInfo;
+import com.android.launcher3.notification.NotificationKeyData;
+import com.android.launcher3.shortcuts.DeepShortcutManager;
+import com.android.launcher3.shortcuts.ShortcutInfoCompat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Starts loading the shortcuts and notifications of an icon when it is touched, so that the
+ * {@link PopupContainerWithArrow} can be fully populated when it opens on long-press.
+ */
+public class PopupPrefetcher {
+
+    /** Results older than this are from a previous touch and are never used. */
+    private static final long MAX_RESULT_AGE_MS = 2000;
+
+    /**
+     * The data loaded for an icon's popup.
+     */
+    public static class Result {
+        final ItemInfo itemInfo;
+        final List<String> shortcutIds;
+        final List<String> notificationKeys;
+        final long loadedTime;
+
+        final List<ShortcutInfoCompat> shortcuts;
+        final List<ShortcutInfo> shortcutInfos;
+        final List<NotificationInfo> notificationInfos;
+
+        @VisibleForTesting
+        Result(ItemInfo itemInfo, List<String> shortcutIds, List<String> notificationKeys,
+                List<ShortcutInfoCompat> shortcuts, List<ShortcutInfo> shortcutInfos,
+                List<NotificationInfo> notificationInfos) {
+            this.itemInfo = itemInfo;
+            this.shortcutIds = shortcutIds;
+            this.notificationKeys = notificationKeys;
+            this.shortcuts = shortcuts;
+            this.shortcutInfos = shortcutInfos;
+            this.notificationInfos = notificationInfos;
+            loadedTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    private final Launcher mLauncher;
+    private final Handler mWorkerHandler;
+
+    /** Only accessed on the UI thread. */
+    private PrefetchTask mPendingTask;
+    private volatile Result mResult;
+
+    public PopupPrefetcher(Launcher launcher) {
+        this(launcher, LauncherModel.getWorkerLooper());
+    }
+
+    @VisibleForTesting
+    PopupPrefetcher(Launcher launcher, Looper workerLooper) {
+        mLauncher = launcher;
+        mWorkerHandler = new Handler(workerLooper);
+    }
+
+    /**
+     * Starts loading the popup data for {@param info}, which was just touched.
+     */
+    public void prefetch(ItemInfo info) {
+        cancel();
+        if (!DeepShortcutManager.supportsShortcuts(info) || info.getTargetComponent() == null) {
+            return;
+        }
+        PopupDataProvider popupDataProvider = mLauncher.getPopupDataProvider();
+        List<String> shortcutIds = popupDataProvider.getShortcutIdsForItem(info);
+        List<NotificationKeyData> notificationKeys =
+                popupDataProvider.getNotificationKeysForItem(info);
+        if (shortcutIds.isEmpty() && notificationKeys.isEmpty()) {
+            return;
+        }
+        startPrefetch(info, new ArrayList<>(shortcutIds), new ArrayList<>(notificationKeys));
+    }
+
+    @VisibleForTesting
+    void startPrefetch(ItemInfo info, List<String> shortcutIds,
+            List<NotificationKeyData> notificationKeys) {
+        cancel();
+        mPendingTask = new PrefetchTask(info, shortcutIds, notificationKeys);
+        mWorkerHandler.post(mPendingTask);
+    }
+
+    /**
+     * Stops any prefetch which has not started yet and drops the loaded data.
+     */
+    public void cancel() {
+        if (mPendingTask != null) {
+            mPendingTask.mCancelled = true;
+            mWorkerHandler.removeCallbacks(mPendingTask);
+            mPendingTask = null;
+        }
+        mResult = null;
+    }
+
+    /**
+     * Returns the data prefetched for {@param info} if it is fully loaded and matches the
+     * given shortcuts and notifications, or null. The data can only be consumed once.
+     */
+    public Result consume(ItemInfo info, List<String> shortcutIds,
+            List<NotificationKeyData> notificationKeys) {
+        Result result = mResult;
+        // Stop any load which is still running, so that it doesn't publish a result which
+        // would be picked up by a later popup.
+        cancel();
+        if (result == null || result.itemInfo != info
+                || SystemClock.uptimeMillis() - result.loadedTime > MAX_RESULT_AGE_MS
+                || !result.shortcutIds.equals(shortcutIds)
+                || !result.notificationKeys.equals(
+                        NotificationKeyData.extractKeysOnly(notificationKeys))) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Loads the popup data of {@param info} on the worker thread. Returns early, with partial
+     * data, once {@param task} is cancelled.
+     */
+    @VisibleForTesting
+    Result load(ItemInfo info, List<String> shortcutIds,
+            List<NotificationKeyData> notificationKeys, PrefetchTask task) {
+        ComponentName activity = info.getTargetComponent();
+        UserHandle user = info.user;
+
+        List<NotificationInfo> notificationInfos = notificationKeys.isEmpty()
+                ? Collections.<NotificationInfo>emptyList()
+                : PopupPopulator.loadNotificationInfos(mLauncher, notificationKeys);
+        List<ShortcutInfoCompat> shortcuts = PopupPopulator.loadShortcuts(mLauncher,
+                activity, user, shortcutIds, notificationKeys);
+        List<ShortcutInfo> shortcutInfos = new ArrayList<>(shortcuts.size());
+        for (int i = 0; i < shortcuts.size() && !task.mCancelled; i++) {
+            shortcutInfos.add(PopupPopulator.createShortcutInfo(mLauncher, shortcuts.get(i), i));
+        }
+        return new Result(info, shortcutIds, NotificationKeyData.extractKeysOnly(notificationKeys),
+                shortcuts, shortcutInfos, notificationInfos);
+    }
+
+    @VisibleForTesting
+    class PrefetchTask implements Runnable {
+        private final ItemInfo mInfo;
+        private final List<String> mShortcutIds;
+        private final List<NotificationKeyData> mNotificationKeys;
+        volatile boolean mCancelled;
+
+        PrefetchTask(ItemInfo info, List<String> shortcutIds,
+                List<NotificationKeyData> notificationKeys) {
+            mInfo = info;
+            mShortcutIds = shortcutIds;
+            mNotificationKeys = notificationKeys;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            Result result = load(mInfo, mShortcutIds, mNotificationKeys, this);
+            if (!mCancelled) {
+                mResult = result;
+            }
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.android.launcher3.provider;
 
 import static com.android.launcher3.Utilities.getDevicePrefs;
 
-import android.content.ContentProviderOperation;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -29,7 +28,9 @@ import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.LongSparseArray;
@@ -38,7 +39,7 @@ import com.android.launcher3.AutoInstallsLayout.LayoutParserCallback;
 import com.android.launcher3.DefaultLayoutParser;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.LauncherAppWidgetInfo;
-import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherProvider.DatabaseHelper;
 import com.android.launcher3.LauncherSettings;
 import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.LauncherSettings.Settings;
@@ -50,6 +51,7 @@ import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.logging.FileLog;
 import com.android.launcher3.model.GridSizeMigrationTask;
+import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
 import com.android.launcher3.util.LongArrayMap;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -63,12 +65,16 @@ public class ImportDataTask {
     public static final String KEY_DATA_IMPORT_SRC_PKG = "data_import_src_pkg";
     public static final String KEY_DATA_IMPORT_SRC_AUTHORITY = "data_import_src_authority";
 
+    private static final String KEY_DATA_IMPORT_ATTEMPTS = "data_import_attempts";
+
     private static final String TAG = "ImportDataTask";
     private static final int MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION = 6;
-    // Insert items progressively to avoid OOM exception when loading icons.
-    private static final int BATCH_INSERT_SIZE = 15;
+    // Number of times an interrupted import is retried before giving up.
+    private static final int MAX_IMPORT_ATTEMPTS = 2;
 
     private final Context mContext;
+    private final DatabaseHelper mOpenHelper;
+    private final SQLiteDatabase mDb;
 
     private final Uri mOtherScreensUri;
     private final Uri mOtherFavoritesUri;
@@ -77,14 +83,30 @@ public class ImportDataTask {
     private int mMaxGridSizeX;
     private int mMaxGridSizeY;
 
-    private ImportDataTask(Context context, String sourceAuthority) {
+    // Set of package names present in hotseat
+    private final HashSet<String> mHotseatTargetApps = new HashSet<>();
+    private int mMaxId;
+
+    private ImportDataTask(Context context, DatabaseHelper openHelper, String sourceAuthority) {
         mContext = context;
+        mOpenHelper = openHelper;
+        mDb = openHelper.getWritableDatabase();
         mOtherScreensUri = Uri.parse("content://" +
                 sourceAuthority + "/" + WorkspaceScreens.TABLE_NAME);
         mOtherFavoritesUri = Uri.parse("content://" + sourceAuthority + "/" + Favorites.TABLE_NAME);
     }
 
-    public boolean importWorkspace() throws Exception {
+    /**
+     * Imports the workspace of the launcher providing {@param sourceAuthority}. The source is
+     * read completely before anything is written, and the imported rows are then inserted in a
+     * single transaction, so that a failed import, which throws, leaves the DB untouched.
+     */
+    public static boolean importWorkspace(Context context, DatabaseHelper openHelper,
+            String sourceAuthority) throws Exception {
+        return new ImportDataTask(context, openHelper, sourceAuthority).importWorkspace();
+    }
+
+    private boolean importWorkspace() throws Exception {
         ArrayList<Long> allScreens = LauncherDbUtils.getScreenIdsFromCursor(
                 mContext.getContentResolver().query(mOtherScreensUri, null, null, null,
                         LauncherSettings.WorkspaceScreens.SCREEN_RANK));
@@ -98,61 +120,64 @@ public class ImportDataTask {
         }
 
         mHotseatSize = mMaxGridSizeX = mMaxGridSizeY = 0;
+        long startTime = SystemClock.uptimeMillis();
 
         // Build screen update
-        ArrayList<ContentProviderOperation> screenOps = new ArrayList<>();
         int count = allScreens.size();
         LongSparseArray<Long> screenIdMap = new LongSparseArray<>(count);
+        ContentValues[] screens = new ContentValues[count];
         for (int i = 0; i < count; i++) {
             ContentValues v = new ContentValues();
             v.put(LauncherSettings.WorkspaceScreens._ID, i);
             v.put(LauncherSettings.WorkspaceScreens.SCREEN_RANK, i);
+            v.put(LauncherSettings.WorkspaceScreens.MODIFIED, System.currentTimeMillis());
             screenIdMap.put(allScreens.get(i), (long) i);
-            screenOps.add(ContentProviderOperation.newInsert(
-                    LauncherSettings.WorkspaceScreens.CONTENT_URI).withValues(v).build());
+            screens[i] = v;
+        }
+        ArrayList<ContentValues> items = readWorkspaceItems(screenIdMap);
+
+        // The source provider is not queried anymore, only write to our own DB from here.
+        try (SQLiteTransaction t = new SQLiteTransaction(mDb)) {
+            mOpenHelper.bulkInsertAndCheck(mDb, WorkspaceScreens.TABLE_NAME, screens);
+            mOpenHelper.bulkInsertAndCheck(mDb, Favorites.TABLE_NAME,
+                    items.toArray(new ContentValues[items.size()]));
+            t.commit();
         }
-        mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, screenOps);
-        importWorkspaceItems(allScreens.get(0), screenIdMap);
+        long elapsed = Math.max(1, SystemClock.uptimeMillis() - startTime);
+        FileLog.d(TAG, String.format("Imported %d rows in %dms (%d rows/s)",
+                items.size(), elapsed, items.size() * 1000L / elapsed));
 
-        GridSizeMigrationTask.markForMigration(mContext, mMaxGridSizeX, mMaxGridSizeY, mHotseatSize);
+        fillHotseat();
 
-        // Create empty DB flag.
-        LauncherSettings.Settings.call(mContext.getContentResolver(),
-                LauncherSettings.Settings.METHOD_CLEAR_EMPTY_DB_FLAG);
+        GridSizeMigrationTask.markForMigration(mContext, mMaxGridSizeX, mMaxGridSizeY, mHotseatSize);
         return true;
     }
 
     /**
-     * 1) Imports all the workspace entries from the source provider.
+     * 1) Reads all the workspace entries from the source provider.
      * 2) For home screen entries, maps the screen id based on {@param screenIdMap}
-     * 3) In the end fills any holes in hotseat with items from default hotseat layout.
+     * 3) Shifts the first screen down by a row, if its first row is used and the QSB
+     *    needs it.
+     * @return the rows to insert, all with the same columns.
+     * @throws Exception if there is not enough data to import.
      */
-    private void importWorkspaceItems(
-            long firsetScreenId, LongSparseArray<Long> screenIdMap) throws Exception {
+    private ArrayList<ContentValues> readWorkspaceItems(LongSparseArray<Long> screenIdMap)
+            throws Exception {
         String profileId = Long.toString(UserManagerCompat.getInstance(mContext)
                 .getSerialNumberForUser(Process.myUserHandle()));
 
-        boolean createEmptyRowOnFirstScreen;
-        if (FeatureFlags.QSB_ON_FIRST_SCREEN) {
-            try (Cursor c = mContext.getContentResolver().query(mOtherFavoritesUri, null,
-                    // get items on the first row of the first screen
-                    "profileId = ? AND container = -100 AND screen = ? AND cellY = 0",
-                    new String[]{profileId, Long.toString(firsetScreenId)},
-                    null)) {
-                // First row of first screen is not empty
-                createEmptyRowOnFirstScreen = c.moveToNext();
-            }
-        }
-
-        ArrayList<ContentProviderOperation> insertOperations = new ArrayList<>(BATCH_INSERT_SIZE);
-
-        // Set of package names present in hotseat
-        final HashSet<String> hotseatTargetApps = new HashSet<>();
-        int maxId = 0;
+        ArrayList<ContentValues> items = new ArrayList<>();
+        mHotseatTargetApps.clear();
+        mMaxId = 0;
 
         // Number of imported items on workspace and hotseat
         int totalItemsOnWorkspace = 0;
 
+        // Whether the first row of the first screen is occupied
+        boolean firstRowOccupied = false;
+        // Bottom of the lowest item on the first screen
+        int firstScreenMaxY = 0;
+
         try (Cursor c = mContext.getContentResolver()
                 .query(mOtherFavoritesUri, null,
                         // Only migrate the primary user
@@ -179,12 +204,22 @@ public class ImportDataTask {
             final int iconResourceIndex = c.getColumnIndexOrThrow(Favorites.ICON_RESOURCE);
 
             SparseBooleanArray mValidFolders = new SparseBooleanArray();
-            ContentValues values = new ContentValues();
 
             while (c.moveToNext()) {
-                values.clear();
+                // All rows get the same set of columns, so that the provider can insert them
+                // using a single compiled statement.
+                ContentValues values = new ContentValues();
+                values.putNull(Favorites.ICON_PACKAGE);
+                values.putNull(Favorites.ICON_RESOURCE);
+                values.putNull(Favorites.ICON);
+                values.putNull(Favorites.INTENT);
+                values.putNull(Favorites.APPWIDGET_PROVIDER);
+                values.put(Favorites.RANK, 0);
+                values.put(Favorites.RESTORED, 0);
+                values.put(Favorites.MODIFIED, System.currentTimeMillis());
+
                 int id = c.getInt(idIndex);
-                maxId = Math.max(maxId, id);
+                mMaxId = Math.max(mMaxId, id);
                 int type = c.getInt(itemTypeIndex);
                 int container = c.getInt(containerIndex);
 
@@ -204,9 +239,9 @@ public class ImportDataTask {
                         }
                         // Reset the screen to 0-index value
                         screen = newScreenId;
-                        if (createEmptyRowOnFirstScreen && screen == Workspace.FIRST_SCREEN_ID) {
-                            // Shift items by 1.
-                            cellY++;
+                        if (screen == Workspace.FIRST_SCREEN_ID) {
+                            firstRowOccupied |= cellY == 0;
+                            firstScreenMaxY = Math.max(firstScreenMaxY, cellY + spanY);
                         }
 
                         mMaxGridSizeX = Math.max(mMaxGridSizeX, cellX + spanX);
@@ -269,7 +304,7 @@ public class ImportDataTask {
                     if (intent.getComponent() != null) {
                         intent.setPackage(intent.getComponent().getPackageName());
                     }
-                    hotseatTargetApps.add(getPackage(intent));
+                    mHotseatTargetApps.add(getPackage(intent));
                 }
 
                 values.put(Favorites._ID, id);
@@ -281,29 +316,35 @@ public class ImportDataTask {
                 values.put(Favorites.SPANX, spanX);
                 values.put(Favorites.SPANY, spanY);
                 values.put(Favorites.TITLE, c.getString(titleIndex));
-                insertOperations.add(ContentProviderOperation
-                        .newInsert(Favorites.CONTENT_URI).withValues(values).build());
+                items.add(values);
                 if (container < 0) {
                     totalItemsOnWorkspace++;
                 }
-
-                if (insertOperations.size() >= BATCH_INSERT_SIZE) {
-                    mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                            insertOperations);
-                    insertOperations.clear();
-                }
             }
         }
         FileLog.d(TAG, totalItemsOnWorkspace + " items imported from external source");
         if (totalItemsOnWorkspace < MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION) {
             throw new Exception("Insufficient data");
         }
-        if (!insertOperations.isEmpty()) {
-            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                    insertOperations);
-            insertOperations.clear();
+
+        if (FeatureFlags.QSB_ON_FIRST_SCREEN && firstRowOccupied) {
+            // First row of first screen is not empty, shift the items on that screen by 1.
+            for (ContentValues values : items) {
+                if (values.getAsInteger(Favorites.CONTAINER) == Favorites.CONTAINER_DESKTOP
+                        && values.getAsLong(Favorites.SCREEN) == Workspace.FIRST_SCREEN_ID) {
+                    values.put(Favorites.CELLY, values.getAsInteger(Favorites.CELLY) + 1);
+                }
+            }
+            mMaxGridSizeY = Math.max(mMaxGridSizeY, firstScreenMaxY + 1);
         }
+        return items;
+    }
 
+    /**
+     * Fills any holes in hotseat with items from default hotseat layout. This goes through the
+     * content resolver and must not be called while holding a transaction.
+     */
+    private void fillHotseat() throws Exception {
         LongArrayMap<Object> hotseatItems = GridSizeMigrationTask.removeBrokenHotseatItems(mContext);
         int myHotseatCount = LauncherAppState.getIDP(mContext).numHotseatIcons;
         if (!FeatureFlags.NO_ALL_APPS_ICON) {
@@ -311,19 +352,18 @@ public class ImportDataTask {
         }
         if (hotseatItems.size() < myHotseatCount) {
             // Insufficient hotseat items. Add a few more.
-            HotseatParserCallback parserCallback = new HotseatParserCallback(
-                    hotseatTargetApps, hotseatItems, insertOperations, maxId + 1, myHotseatCount);
-            new HotseatLayoutParser(mContext,
-                    parserCallback).loadLayout(null, new ArrayList<Long>());
-            mHotseatSize = (int) hotseatItems.keyAt(hotseatItems.size() - 1) + 1;
-
-            if (!insertOperations.isEmpty()) {
-                mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                        insertOperations);
+            HotseatParserCallback parserCallback = new HotseatParserCallback(mOpenHelper,
+                    mHotseatTargetApps, hotseatItems, mMaxId + 1, myHotseatCount);
+            try (SQLiteTransaction t = new SQLiteTransaction(mDb)) {
+                new HotseatLayoutParser(mContext,
+                        parserCallback).loadLayout(mDb, new ArrayList<Long>());
+                t.commit();
             }
+            mHotseatSize = (int) hotseatItems.keyAt(hotseatItems.size() - 1) + 1;
         }
     }
 
+
     private static String getPackage(Intent intent) {
         return intent.getComponent() != null ? intent.getComponent().getPackageName()
             : intent.getPackage();
@@ -343,37 +383,62 @@ public class ImportDataTask {
             return false;
         }
 
-        // Synchronously clear the migration flags. This ensures that we do not try migration
-        // again and thus prevents potential crash loops due to migration failure.
-        devicePrefs.edit().remove(KEY_DATA_IMPORT_SRC_PKG).remove(KEY_DATA_IMPORT_SRC_AUTHORITY).commit();
-
-        if (!Settings.call(context.getContentResolver(), Settings.METHOD_WAS_EMPTY_DB_CREATED)
-                .getBoolean(Settings.EXTRA_VALUE, false)) {
-            // Only migration if a new DB was created.
+        // Synchronously record the attempt before starting. If the process dies during import,
+        // nothing is written and the import is retried on next load, but only a limited number
+        // of times to prevent potential crash loops due to migration failure.
+        int attempt = devicePrefs.getInt(KEY_DATA_IMPORT_ATTEMPTS, 0);
+        if (attempt >= MAX_IMPORT_ATTEMPTS) {
+            FileLog.e(TAG, "Giving up data import after " + attempt + " attempts");
+            clearImportFlags(devicePrefs);
             return false;
         }
+        devicePrefs.edit().putInt(KEY_DATA_IMPORT_ATTEMPTS, attempt + 1).commit();
 
-        for (ProviderInfo info : context.getPackageManager().queryContentProviders(
-                null, context.getApplicationInfo().uid, 0)) {
+        try {
+            if (!Settings.call(context.getContentResolver(), Settings.METHOD_WAS_EMPTY_DB_CREATED)
+                    .getBoolean(Settings.EXTRA_VALUE, false)) {
+                // Only migration if a new DB was created.
+                return false;
+            }
 
-            if (sourcePackage.equals(info.packageName)) {
-                if ((info.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) == 0) {
-                    // Only migrate if the source launcher is also on system image.
-                    return false;
-                }
+            for (ProviderInfo info : context.getPackageManager().queryContentProviders(
+                    null, context.getApplicationInfo().uid, 0)) {
 
-                // Wait until we found a provider with matching authority.
-                if (sourceAuthority.equals(info.authority)) {
-                    if (TextUtils.isEmpty(info.readPermission) ||
-                            context.checkPermission(info.readPermission, Process.myPid(),
-                                    Process.myUid()) == PackageManager.PERMISSION_GRANTED) {
-                        // All checks passed, run the import task.
-                        return new ImportDataTask(context, sourceAuthority).importWorkspace();
+                if (sourcePackage.equals(info.packageName)) {
+                    if ((info.applicationInfo.flags & ApplicationInfo.FLAG_SYSTEM) == 0) {
+                        // Only migrate if the source launcher is also on system image.
+                        return false;
+                    }
+
+                    // Wait until we found a provider with matching authority.
+                    if (sourceAuthority.equals(info.authority)) {
+                        if (TextUtils.isEmpty(info.readPermission) ||
+                                context.checkPermission(info.readPermission, Process.myPid(),
+                                        Process.myUid()) == PackageManager.PERMISSION_GRANTED) {
+                            // All checks passed, run the import task in the provider.
+                            Bundle result = context.getContentResolver().call(
+                                    Settings.CONTENT_URI, Settings.METHOD_IMPORT_DATA,
+                                    sourceAuthority, null);
+                            if (result == null) {
+                                throw new Exception("Data import failed");
+                            }
+                            return result.getBoolean(Settings.EXTRA_VALUE);
+                        }
                     }
                 }
             }
+            return false;
+        } finally {
+            clearImportFlags(devicePrefs);
         }
-        return false;
+    }
+
+    private static void clearImportFlags(SharedPreferences devicePrefs) {
+        devicePrefs.edit()
+                .remove(KEY_DATA_IMPORT_SRC_PKG)
+                .remove(KEY_DATA_IMPORT_SRC_AUTHORITY)
+                .remove(KEY_DATA_IMPORT_ATTEMPTS)
+                .commit();
     }
 
     private static int getMyHotseatLayoutId(Context context) {
@@ -405,18 +470,18 @@ public class ImportDataTask {
      * {@link LayoutParserCallback} which adds items in empty hotseat spots.
      */
     private static class HotseatParserCallback implements LayoutParserCallback {
+        private final DatabaseHelper mOpenHelper;
         private final HashSet<String> mExistingApps;
         private final LongArrayMap<Object> mExistingItems;
-        private final ArrayList<ContentProviderOperation> mOutOps;
         private final int mRequiredSize;
         private int mStartItemId;
 
-        HotseatParserCallback(
+        HotseatParserCallback(DatabaseHelper openHelper,
                 HashSet<String> existingApps, LongArrayMap<Object> existingItems,
-                ArrayList<ContentProviderOperation> outOps, int startItemId, int requiredSize) {
+                int startItemId, int requiredSize) {
+            mOpenHelper = openHelper;
             mExistingApps = existingApps;
             mExistingItems = existingItems;
-            mOutOps = outOps;
             mRequiredSize = requiredSize;
             mStartItemId = startItemId;
         }
@@ -452,7 +517,7 @@ public class ImportDataTask {
             }
             mExistingItems.put(screen, intent);
             values.put(Favorites.SCREEN, screen);
-            mOutOps.add(ContentProviderOperation.newInsert(Favorites.CONTENT_URI).withValues(values).build());
+            mOpenHelper.insertAndCheck(db, values);
             return 0;
         }
     }
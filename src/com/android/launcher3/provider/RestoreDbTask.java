@@ -20,6 +20,8 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
 
 import com.android.launcher3.LauncherAppWidgetInfo;
 import com.android.launcher3.LauncherProvider.DatabaseHelper;
@@ -48,9 +50,12 @@ public class RestoreDbTask {
 
     public static boolean performRestore(DatabaseHelper helper) {
         SQLiteDatabase db = helper.getWritableDatabase();
+        long startTime = SystemClock.uptimeMillis();
         try (SQLiteTransaction t = new SQLiteTransaction(db)) {
             new RestoreDbTask().sanitizeDB(helper, db);
             t.commit();
+            FileLog.d(TAG, "Restored db sanitized in "
+                    + (SystemClock.uptimeMillis() - startTime) + "ms");
             return true;
         } catch (Exception e) {
             FileLog.e(TAG, "Failed to verify db", e);
@@ -76,20 +81,25 @@ public class RestoreDbTask {
             FileLog.d(TAG, itemsDeleted + " items belonging to a managed profile, were deleted");
         }
 
-        // Mark all items as restored.
+        // Mark all items as restored, and widgets with the appropriate widget restore flags, in a
+        // single pass over the table.
         boolean keepAllIcons = Utilities.isPropertyEnabled(LogConfig.KEEP_ALL_ICONS);
-        ContentValues values = new ContentValues();
-        values.put(Favorites.RESTORED, ShortcutInfo.FLAG_RESTORED_ICON
-                | (keepAllIcons ? ShortcutInfo.FLAG_RESTORE_STARTED : 0));
-        db.update(Favorites.TABLE_NAME, values, null, null);
-
-        // Mark widgets with appropriate restore flag
-        values.put(Favorites.RESTORED,  LauncherAppWidgetInfo.FLAG_ID_NOT_VALID |
-                LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY |
-                LauncherAppWidgetInfo.FLAG_UI_NOT_READY |
-                (keepAllIcons ? LauncherAppWidgetInfo.FLAG_RESTORE_STARTED : 0));
-        db.update(Favorites.TABLE_NAME, values, "itemType = ?",
-                new String[]{Integer.toString(Favorites.ITEM_TYPE_APPWIDGET)});
+        SQLiteStatement markRestored = db.compileStatement("UPDATE " + Favorites.TABLE_NAME
+                + " SET " + Favorites.RESTORED + " = CASE WHEN " + Favorites.ITEM_TYPE
+                + " = ? THEN ? ELSE ? END");
+        try {
+            markRestored.bindLong(1, Favorites.ITEM_TYPE_APPWIDGET);
+            markRestored.bindLong(2, LauncherAppWidgetInfo.FLAG_ID_NOT_VALID |
+                    LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY |
+                    LauncherAppWidgetInfo.FLAG_UI_NOT_READY |
+                    (keepAllIcons ? LauncherAppWidgetInfo.FLAG_RESTORE_STARTED : 0));
+            markRestored.bindLong(3, ShortcutInfo.FLAG_RESTORED_ICON
+                    | (keepAllIcons ? ShortcutInfo.FLAG_RESTORE_STARTED : 0));
+            int itemsUpdated = markRestored.executeUpdateDelete();
+            FileLog.d(TAG, itemsUpdated + " items marked as restored");
+        } finally {
+            Utilities.closeSilently(markRestored);
+        }
 
         long myProfileId = helper.getDefaultUserSerial();
         if (Utilities.longCompare(oldProfileId, myProfileId) != 0) {
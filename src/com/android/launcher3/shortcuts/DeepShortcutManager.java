@@ -58,6 +58,7 @@ public class DeepShortcutManager {
     }
 
     private final LauncherApps mLauncherApps;
+    private final ShortcutIconCache mIconCache = new ShortcutIconCache();
     private boolean mWasLastCallSuccess;
 
     private DeepShortcutManager(Context context) {
@@ -75,8 +76,17 @@ public class DeepShortcutManager {
         return mWasLastCallSuccess;
     }
 
-    public void onShortcutsChanged(List<ShortcutInfoCompat> shortcuts) {
-        // mShortcutCache.removeShortcuts(shortcuts);
+    /**
+     * Returns the cache of the icons shown for shortcuts in popups.
+     */
+    public ShortcutIconCache getIconCache() {
+        return mIconCache;
+    }
+
+    public void onShortcutsChanged(String packageName, UserHandle user,
+            List<ShortcutInfoCompat> shortcuts) {
+        // The shortcuts which were removed are not included, so drop all the icons of the package.
+        mIconCache.removePackage(packageName, user);
     }
 
     /**
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.shortcuts;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.UserHandle;
+import android.util.LruCache;
+
+import com.android.launcher3.graphics.LauncherIcons;
+
+/**
+ * Caches the unbadged icons rendered for the shortcuts shown in popups, bounded by the number
+ * of bytes used by the bitmaps. Icons of a package are invalidated when its shortcuts change.
+ */
+public class ShortcutIconCache {
+
+    private static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final LruCache<ShortcutKey, Bitmap> mIcons;
+
+    public ShortcutIconCache() {
+        this((int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 64));
+    }
+
+    public ShortcutIconCache(int maxBytes) {
+        mIcons = new LruCache<ShortcutKey, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(ShortcutKey key, Bitmap icon) {
+                return icon.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the unbadged icon for {@param shortcut}, rendering it if it is not cached.
+     * This may be expensive and should be called on a background thread.
+     */
+    public Bitmap getUnbadgedIcon(ShortcutInfoCompat shortcut, Context context) {
+        ShortcutKey key = ShortcutKey.fromInfo(shortcut);
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            icon = LauncherIcons.createShortcutIcon(shortcut, context, false /* badged */);
+            if (icon != null) {
+                mIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Removes all the icons of the shortcuts of {@param packageName} and {@param user}.
+     */
+    public void removePackage(String packageName, UserHandle user) {
+        for (ShortcutKey key : mIcons.snapshot().keySet()) {
+            if (key.componentName.getPackageName().equals(packageName)
+                    && key.user.equals(user)) {
+                mIcons.remove(key);
+            }
+        }
+    }
+
+    public int sizeInBytes() {
+        return mIcons.size();
+    }
+}
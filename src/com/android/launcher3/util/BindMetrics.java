@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+
+/**
+ * Measures the time a RecyclerView adapter spends inflating and binding views, per frame.
+ * The work done between two frames is accumulated, and added to the totals on the next frame.
+ * Must only be used on the UI thread. This does not allocate.
+ */
+public class BindMetrics implements Choreographer.FrameCallback {
+
+    private final String mName;
+
+    private boolean mFramePending;
+    private long mFrameInflateNanos;
+    private long mFrameBindNanos;
+
+    private int mInflateCount;
+    private int mBindCount;
+    private long mTotalInflateNanos;
+    private long mTotalBindNanos;
+    private int mFramesWithWork;
+    private long mMaxFrameNanos;
+
+    public BindMetrics(String name) {
+        mName = name;
+    }
+
+    /**
+     * Records a view inflation which started at {@param startNanos}, from {@link System#nanoTime}.
+     */
+    public void recordInflate(long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        mInflateCount++;
+        mTotalInflateNanos += duration;
+        mFrameInflateNanos += duration;
+        onWorkRecorded();
+    }
+
+    /**
+     * Records a view binding which started at {@param startNanos}, from {@link System#nanoTime}.
+     */
+    public void recordBind(long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        mBindCount++;
+        mTotalBindNanos += duration;
+        mFrameBindNanos += duration;
+        onWorkRecorded();
+    }
+
+    private void onWorkRecorded() {
+        if (!mFramePending) {
+            mFramePending = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFramePending = false;
+        mFramesWithWork++;
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, mFrameInflateNanos + mFrameBindNanos);
+        mFrameInflateNanos = 0;
+        mFrameBindNanos = 0;
+    }
+
+    public int getInflateCount() {
+        return mInflateCount;
+    }
+
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    /**
+     * Returns the average time spent inflating and binding, over the frames which did any.
+     */
+    public float getAverageFrameMs() {
+        return mFramesWithWork == 0 ? 0
+                : (mTotalInflateNanos + mTotalBindNanos) / 1000000f / mFramesWithWork;
+    }
+
+    public float getMaxFrameMs() {
+        return mMaxFrameNanos / 1000000f;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + mName + ": inflated=" + mInflateCount
+                + " (" + mTotalInflateNanos / 1000000 + "ms)"
+                + " bound=" + mBindCount + " (" + mTotalBindNanos / 1000000 + "ms)"
+                + " frames=" + mFramesWithWork
+                + " avgFrameMs=" + getAverageFrameMs()
+                + " maxFrameMs=" + getMaxFrameMs());
+    }
+}
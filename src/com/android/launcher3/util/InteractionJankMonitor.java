@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
+
+import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.model.nano.LauncherDumpProto;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Records the duration of the frames drawn during the interactions of the launcher, like a page
+ * scroll or a folder opening, and reports their percentiles and dropped frames in dumpsys.
+ *
+ * A frame callback is only registered while an interaction is running. The frame durations are
+ * written to a fixed size ring buffer per interaction, so recording a frame does not allocate.
+ * All the methods must be called on the UI thread, which is also where the dumps are run, so
+ * the buffers are never accessed concurrently and need no locking.
+ */
+public class InteractionJankMonitor implements Choreographer.FrameCallback {
+
+    public static final int PAGE_SCROLL = 0;
+    public static final int STATE_TRANSITION = 1;
+    public static final int ALL_APPS_TRANSITION = 2;
+    public static final int FOLDER_OPEN = 3;
+    public static final int DRAG = 4;
+    // The all apps transition, when a snapshot of all apps is animated instead of the live view.
+    public static final int ALL_APPS_SNAPSHOT_TRANSITION = 5;
+
+    private static final String[] NAMES = new String[] {
+            "PageScroll", "StateTransition", "AllAppsTransition", "FolderOpen", "Drag",
+            "AllAppsSnapshotTransition"};
+
+    // The number of frame durations kept for each interaction, older ones are overwritten.
+    @VisibleForTesting static final int BUFFER_SIZE = 512;
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private static InteractionJankMonitor sInstance;
+
+    private final Stats[] mStats = new Stats[NAMES.length];
+    private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    // Bit mask of the running interactions.
+    private int mActiveInteractions;
+    private long mLastFrameTimeNanos;
+
+    public static InteractionJankMonitor getInstance() {
+        if (sInstance == null) {
+            sInstance = new InteractionJankMonitor();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts recording the frames of {@param interaction}, until {@link #end} is called for it.
+     */
+    public static void begin(int interaction) {
+        if (FeatureFlags.INTERACTION_JANK_MONITOR) {
+            getInstance().onBegin(interaction);
+        }
+    }
+
+    /**
+     * Stops recording the frames of {@param interaction}. Does nothing if it is not running.
+     */
+    public static void end(int interaction) {
+        if (FeatureFlags.INTERACTION_JANK_MONITOR) {
+            getInstance().onEnd(interaction);
+        }
+    }
+
+    private InteractionJankMonitor() {
+        for (int i = 0; i < NAMES.length; i++) {
+            mStats[i] = new Stats(NAMES[i]);
+        }
+    }
+
+    /**
+     * Sets the refresh rate of the display, used to count the dropped frames.
+     */
+    public void setRefreshRate(float refreshRate) {
+        if (refreshRate > 0) {
+            mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        }
+    }
+
+    private void onBegin(int interaction) {
+        int mask = 1 << interaction;
+        if ((mActiveInteractions & mask) != 0) {
+            return;
+        }
+        if (mActiveInteractions == 0) {
+            mLastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        mActiveInteractions |= mask;
+        mStats[interaction].interactionCount++;
+    }
+
+    private void onEnd(int interaction) {
+        mActiveInteractions &= ~(1 << interaction);
+        if (mActiveInteractions == 0) {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mActiveInteractions == 0) {
+            return;
+        }
+        if (mLastFrameTimeNanos != 0) {
+            long duration = frameTimeNanos - mLastFrameTimeNanos;
+            for (int i = 0; i < mStats.length; i++) {
+                if ((mActiveInteractions & (1 << i)) != 0) {
+                    mStats[i].addFrame(duration, mFrameIntervalNanos);
+                }
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Interaction jank:");
+        for (Stats stats : mStats) {
+            if (stats.interactionCount > 0) {
+                stats.dump(prefix + "\t", writer);
+            }
+        }
+    }
+
+    public LauncherDumpProto.JankStats toProto() {
+        LauncherDumpProto.JankStats proto = new LauncherDumpProto.JankStats();
+        proto.interactions = new LauncherDumpProto.InteractionJankStats[mStats.length];
+        for (int i = 0; i < mStats.length; i++) {
+            proto.interactions[i] = mStats[i].toProto();
+        }
+        return proto;
+    }
+
+    /**
+     * The frames recorded for one interaction.
+     */
+    @VisibleForTesting
+    static class Stats {
+
+        final String name;
+        // Frame durations in microseconds, the last one at (frameCount - 1) % BUFFER_SIZE.
+        private final int[] mFrameMicros = new int[BUFFER_SIZE];
+
+        int interactionCount;
+        int frameCount;
+        int droppedFrameCount;
+        int maxFrameMicros;
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void addFrame(long durationNanos, long frameIntervalNanos) {
+            int micros = (int) (durationNanos / 1000);
+            mFrameMicros[frameCount % BUFFER_SIZE] = micros;
+            frameCount++;
+            maxFrameMicros = Math.max(maxFrameMicros, micros);
+            // A frame which took n vsync intervals means that n - 1 frames were dropped.
+            long intervals = (durationNanos + frameIntervalNanos / 2) / frameIntervalNanos;
+            if (intervals > 1) {
+                droppedFrameCount += intervals - 1;
+            }
+        }
+
+        /**
+         * Returns the {@param percentile} of the durations of the frames in the buffer, in
+         * microseconds, or 0 if no frame was recorded.
+         */
+        int getPercentileMicros(int percentile) {
+            int count = Math.min(frameCount, BUFFER_SIZE);
+            if (count == 0) {
+                return 0;
+            }
+            int[] sorted = Arrays.copyOf(mFrameMicros, count);
+            Arrays.sort(sorted);
+            // Nearest-rank percentile, rounded up in integers.
+            int rank = (percentile * count + 99) / 100;
+            return sorted[Math.max(rank, 1) - 1];
+        }
+
+        void dump(String prefix, PrintWriter writer) {
+            writer.println(prefix + name + ": count=" + interactionCount
+                    + " frames=" + frameCount
+                    + " dropped=" + droppedFrameCount
+                    + " p50Ms=" + getPercentileMicros(50) / 1000f
+                    + " p90Ms=" + getPercentileMicros(90) / 1000f
+                    + " p99Ms=" + getPercentileMicros(99) / 1000f
+                    + " maxMs=" + maxFrameMicros / 1000f);
+        }
+
+        LauncherDumpProto.InteractionJankStats toProto() {
+            LauncherDumpProto.InteractionJankStats proto =
+                    new LauncherDumpProto.InteractionJankStats();
+            proto.name = name;
+            proto.count = interactionCount;
+            proto.frames = frameCount;
+            proto.droppedFrames = droppedFrameCount;
+            proto.p50FrameMicros = getPercentileMicros(50);
+            proto.p90FrameMicros = getPercentileMicros(90);
+            proto.p99FrameMicros = getPercentileMicros(99);
+            proto.maxFrameMicros = maxFrameMicros;
+            return proto;
+        }
+    }
+}
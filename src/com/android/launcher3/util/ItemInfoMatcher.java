@@ -36,6 +36,16 @@ public abstract class ItemInfoMatcher {
 
     public abstract boolean matches(ItemInfo info, ComponentName cn);
 
+    /**
+     * Returns the set of packages which every matching item targets, or null if the matcher is
+     * not restricted to a known set of packages. This is only a hint to narrow down the items
+     * which need to be checked, {@link #matches(ItemInfo, ComponentName)} is still applied to
+     * each of them.
+     */
+    public HashSet<PackageUserKey> getTargetPackages() {
+        return null;
+    }
+
     /**
      * Filters {@param infos} to those satisfying the {@link #matches(ItemInfo, ComponentName)}.
      */
@@ -90,6 +100,12 @@ public abstract class ItemInfoMatcher {
             public boolean matches(ItemInfo info, ComponentName cn) {
                 return that.matches(info, cn) && matcher.matches(info, cn);
             }
+
+            @Override
+            public HashSet<PackageUserKey> getTargetPackages() {
+                HashSet<PackageUserKey> packages = that.getTargetPackages();
+                return packages != null ? packages : matcher.getTargetPackages();
+            }
         };
     }
 
@@ -109,6 +125,15 @@ public abstract class ItemInfoMatcher {
             public boolean matches(ItemInfo info, ComponentName cn) {
                 return components.contains(cn) && info.user.equals(user);
             }
+
+            @Override
+            public HashSet<PackageUserKey> getTargetPackages() {
+                HashSet<PackageUserKey> packages = new HashSet<>();
+                for (ComponentName component : components) {
+                    packages.add(new PackageUserKey(component.getPackageName(), user));
+                }
+                return packages;
+            }
         };
     }
 
@@ -119,6 +144,15 @@ public abstract class ItemInfoMatcher {
             public boolean matches(ItemInfo info, ComponentName cn) {
                 return packageNames.contains(cn.getPackageName()) && info.user.equals(user);
             }
+
+            @Override
+            public HashSet<PackageUserKey> getTargetPackages() {
+                HashSet<PackageUserKey> packages = new HashSet<>();
+                for (String packageName : packageNames) {
+                    packages.add(new PackageUserKey(packageName, user));
+                }
+                return packages;
+            }
         };
     }
 
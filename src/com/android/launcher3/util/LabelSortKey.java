@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.os.UserHandle;
+
+import com.android.launcher3.ItemInfoWithIcon;
+import com.android.launcher3.compat.UserManagerCompat;
+
+import java.text.Collator;
+
+/**
+ * Sort key of the title of an item, ordering the titles like {@link LabelComparator}. The
+ * collation key of the title is computed once and kept in {@link ItemInfoWithIcon#sortKey}, so
+ * that sorting the items only compares bytes.
+ *
+ * The key is recomputed when the title or user of the item changes, or after the locale changed.
+ * It also caches the section name of the title, as computed by an alphabetic index.
+ */
+public class LabelSortKey {
+
+    // Incremented whenever the locale changes, to invalidate the existing keys.
+    private static volatile int sLocaleVersion;
+    private static Collator sCollator;
+
+    private final CharSequence mTitle;
+    private final UserHandle mUser;
+    private final int mLocaleVersion;
+
+    private final boolean mStartsWithLetterOrDigit;
+    private final byte[] mCollationKey;
+    public final long userSerial;
+
+    // The index which computed the section name, only accessed on the UI thread.
+    private Object mSectionIndex;
+    private String mSectionName;
+
+    private LabelSortKey(CharSequence title, UserHandle user, int localeVersion,
+            boolean startsWithLetterOrDigit, byte[] collationKey, long userSerial) {
+        mTitle = title;
+        mUser = user;
+        mLocaleVersion = localeVersion;
+        mStartsWithLetterOrDigit = startsWithLetterOrDigit;
+        mCollationKey = collationKey;
+        this.userSerial = userSerial;
+    }
+
+    /**
+     * Returns the sort key of {@param info}, computing it if it is missing or out of date.
+     */
+    public static LabelSortKey get(ItemInfoWithIcon info, UserManagerCompat userManager) {
+        LabelSortKey key = info.sortKey;
+        if (key == null || key.mTitle != info.title || key.mUser != info.user
+                || key.mLocaleVersion != sLocaleVersion) {
+            key = create(info.title, info.user, userManager);
+            info.sortKey = key;
+        }
+        return key;
+    }
+
+    private static LabelSortKey create(CharSequence title, UserHandle user,
+            UserManagerCompat userManager) {
+        String label = title == null ? "" : title.toString();
+        boolean startsWithLetterOrDigit = label.length() > 0
+                && Character.isLetterOrDigit(label.codePointAt(0));
+        long serial = user == null ? 0 : userManager.getSerialNumberForUser(user);
+
+        byte[] collationKey;
+        int localeVersion;
+        synchronized (LabelSortKey.class) {
+            if (sCollator == null) {
+                sCollator = Collator.getInstance();
+            }
+            // Collators are not thread safe.
+            collationKey = sCollator.getCollationKey(label).toByteArray();
+            localeVersion = sLocaleVersion;
+        }
+        return new LabelSortKey(title, user, localeVersion, startsWithLetterOrDigit,
+                collationKey, serial);
+    }
+
+    /**
+     * Invalidates all the keys, called when the locale changes.
+     */
+    public static synchronized void onLocaleChanged() {
+        sLocaleVersion++;
+        sCollator = null;
+    }
+
+    /**
+     * Returns the section name computed by {@param index}, or null if it was not cached.
+     */
+    public String getSectionName(Object index) {
+        return mSectionIndex == index ? mSectionName : null;
+    }
+
+    public void setSectionName(Object index, String sectionName) {
+        mSectionIndex = index;
+        mSectionName = sectionName;
+    }
+
+    /**
+     * Compares the titles of two items, in the same order as {@link LabelComparator}.
+     */
+    public int compareTitle(LabelSortKey other) {
+        // Ensure that we de-prioritize any titles that don't start with a
+        // linguistic letter or digit
+        if (mStartsWithLetterOrDigit != other.mStartsWithLetterOrDigit) {
+            return mStartsWithLetterOrDigit ? -1 : 1;
+        }
+
+        byte[] a = mCollationKey;
+        byte[] b = other.mCollationKey;
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int result = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -23,6 +23,7 @@ import android.view.ViewTreeObserver.OnDrawListener;
 
 import com.android.launcher3.Launcher;
 import com.android.launcher3.LauncherModel;
+import com.android.launcher3.logging.StartupTimeline;
 
 import java.util.ArrayList;
 import java.util.concurrent.Executor;
@@ -78,6 +79,7 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
 
     @Override
     public void onDraw() {
+        StartupTimeline.mark(StartupTimeline.PHASE_FIRST_DRAW);
         mFirstDrawCompleted = true;
         mAttachedView.post(this);
     }
@@ -100,6 +102,7 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
     public void run() {
         // Post the pending tasks after both onDraw and onLoadAnimationCompleted have been called.
         if (mLoadAnimationCompleted && mFirstDrawCompleted && !mCompleted) {
+            StartupTimeline.begin(StartupTimeline.PHASE_BIND_DEFERRED);
             mIsExecuting = true;
             for (final Runnable r : mTasks) {
                 mExecutor.execute(r);
@@ -43,6 +43,7 @@ import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
 import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+import com.android.launcher3.util.BindMetrics;
 import com.android.launcher3.util.MultiHashMap;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Thunk;
@@ -240,6 +241,7 @@ public class WidgetsContainerView extends BaseContainerView
      */
     public void setWidgets(MultiHashMap<PackageItemInfo, WidgetItem> model) {
         mAdapter.setWidgets(model);
+        mRecyclerView.preinflateRows(mLauncher.getDeviceProfile());
 
         View loader = getContentView().findViewById(R.id.loader);
         if (loader != null) {
@@ -247,6 +249,10 @@ public class WidgetsContainerView extends BaseContainerView
         }
     }
 
+    public BindMetrics getBindMetrics() {
+        return mAdapter.getBindMetrics();
+    }
+
     public boolean isEmpty() {
         return mAdapter.getItemCount() == 0;
     }
@@ -28,9 +28,11 @@ import android.view.ViewGroup;
 import com.android.launcher3.R;
 import com.android.launcher3.WidgetPreviewLoader;
 import com.android.launcher3.compat.AlphabeticIndexCompat;
+import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.model.WidgetItem;
-import com.android.launcher3.util.LabelComparator;
+import com.android.launcher3.util.BindMetrics;
+import com.android.launcher3.util.LabelSortKey;
 import com.android.launcher3.util.MultiHashMap;
 import com.android.launcher3.util.PackageUserKey;
 
@@ -63,6 +65,8 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
     private final int mIndent;
     private ArrayList<WidgetListRowEntry> mEntries = new ArrayList<>();
     private final WidgetsDiffReporter mDiffReporter;
+    private final UserManagerCompat mUserManager;
+    private final BindMetrics mBindMetrics = new BindMetrics("WidgetsListAdapter");
 
     public WidgetsListAdapter(Context context, LayoutInflater layoutInflater,
             WidgetPreviewLoader widgetPreviewLoader, AlphabeticIndexCompat indexCompat,
@@ -75,6 +79,7 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         mIconLongClickListener = iconLongClickListener;
         mIndent = context.getResources().getDimensionPixelSize(R.dimen.widget_section_indent);
         mDiffReporter = diffReporter;
+        mUserManager = UserManagerCompat.getInstance(context);
     }
 
     public void setNotifyListener() {
@@ -109,12 +114,15 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
 
         WidgetItemComparator widgetComparator = new WidgetItemComparator();
         for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : widgets.entrySet()) {
-            WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(), entry.getValue());
-            row.titleSectionName = mIndexer.computeSectionName(row.pkgItem.title);
+            // The lists are shared with the model, copy before sorting.
+            WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(),
+                    new ArrayList<>(entry.getValue()));
+            row.titleSectionName = mIndexer.computeSectionName(row.pkgItem);
             Collections.sort(row.widgets, widgetComparator);
             tempEntries.add(row);
         }
-        WidgetListRowEntryComparator rowComparator = new WidgetListRowEntryComparator();
+        WidgetListRowEntryComparator rowComparator =
+                new WidgetListRowEntryComparator(mUserManager);
         Collections.sort(tempEntries, rowComparator);
         mDiffReporter.process(mEntries, tempEntries, rowComparator);
     }
@@ -148,8 +156,18 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         return null;
     }
 
+    public BindMetrics getBindMetrics() {
+        return mBindMetrics;
+    }
+
     @Override
     public void onBindViewHolder(WidgetsRowViewHolder holder, int pos) {
+        long start = System.nanoTime();
+        bindRow(holder, pos);
+        mBindMetrics.recordBind(start);
+    }
+
+    private void bindRow(WidgetsRowViewHolder holder, int pos) {
         WidgetListRowEntry entry = mEntries.get(pos);
         List<WidgetItem> infoList = entry.widgets;
 
@@ -205,6 +223,7 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
 
     @Override
     public WidgetsRowViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        long start = System.nanoTime();
         if (DEBUG) {
             Log.v(TAG, "\nonCreateViewHolder");
         }
@@ -216,7 +235,9 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         // the end of the linear layout width + the start padding and doesn't allow scrolling.
         container.findViewById(R.id.widgets_cell_list).setPaddingRelative(mIndent, 0, 1, 0);
 
-        return new WidgetsRowViewHolder(container);
+        WidgetsRowViewHolder holder = new WidgetsRowViewHolder(container);
+        mBindMetrics.recordInflate(start);
+        return holder;
     }
 
     @Override
@@ -246,11 +267,16 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
      */
     public static class WidgetListRowEntryComparator implements Comparator<WidgetListRowEntry> {
 
-        private final LabelComparator mComparator = new LabelComparator();
+        private final UserManagerCompat mUserManager;
+
+        public WidgetListRowEntryComparator(UserManagerCompat userManager) {
+            mUserManager = userManager;
+        }
 
         @Override
         public int compare(WidgetListRowEntry a, WidgetListRowEntry b) {
-            return mComparator.compare(a.pkgItem.title.toString(), b.pkgItem.title.toString());
+            return LabelSortKey.get(a.pkgItem, mUserManager)
+                    .compareTitle(LabelSortKey.get(b.pkgItem, mUserManager));
         }
     }
 
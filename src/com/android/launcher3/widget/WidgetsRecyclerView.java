@@ -23,6 +23,8 @@ import android.util.AttributeSet;
 import android.view.View;
 
 import com.android.launcher3.BaseRecyclerView;
+import com.android.launcher3.DeviceProfile;
+import com.android.launcher3.R;
 
 /**
  * The widgets recycler view.
@@ -65,6 +67,20 @@ public class WidgetsRecyclerView extends BaseRecyclerView {
         mAdapter = (WidgetsListAdapter) adapter;
     }
 
+    /**
+     * Inflates enough rows for two screens of widgets while the UI thread is idle, so that
+     * opening the widgets tray for the first time does not inflate them.
+     */
+    public void preinflateRows(DeviceProfile grid) {
+        // Each row shows a section header above previews of about the size of a cell.
+        int rowHeight = getResources().getDimensionPixelSize(R.dimen.widget_section_height)
+                + grid.cellHeightPx;
+        int rowsPerScreen = (int) Math.ceil((float) grid.availableHeightPx / rowHeight);
+        getRecycledViewPool().setMaxRecycledViews(0, rowsPerScreen * 2);
+        mPrefetcher.setGridSize(1, rowsPerScreen);
+        mPrefetcher.preinflate(0, rowsPerScreen * 2);
+    }
+
     /**
      * Maps the touch (from 0..1) to the adapter position that should be visible.
      */
@@ -85,6 +101,7 @@ public class WidgetsRecyclerView extends BaseRecyclerView {
         layoutManager.scrollToPositionWithOffset(0, (int) -(availableScrollHeight * touchFraction));
 
         int posInt = (int) ((touchFraction == 1)? pos -1 : pos);
+        mPrefetcher.onFastScroll(posInt);
         return mAdapter.getSectionName(posInt);
     }
 
@@ -0,0 +1,86 @@
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Process;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+
+/**
+ * Compares the time to find items by id on a synthetic 15 screen workspace, by traversing every
+ * page and by looking them up in {@link WorkspaceViewRegistry}. This only measures the lookup,
+ * not the time spent updating the views that are found.
+ */
+public class WorkspaceViewRegistryBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "WorkspaceViewRegistryBenchmark";
+
+    private static final int NUM_SCREENS = 15;
+    private static final int ITEMS_PER_SCREEN = 20;
+    private static final int NUM_PACKAGES = 50;
+    private static final int NUM_LOOKUPS = 10000;
+
+    private long mNextId = 1;
+
+    public void testLookupById() {
+        WorkspaceViewRegistry registry = new WorkspaceViewRegistry(null);
+        ArrayList<FrameLayout> pages = new ArrayList<>();
+        ArrayList<Long> ids = new ArrayList<>();
+        for (int s = 0; s < NUM_SCREENS; s++) {
+            FrameLayout page = new FrameLayout(getContext());
+            for (int i = 0; i < ITEMS_PER_SCREEN; i++) {
+                View v = newItemView("com.example.p" + (ids.size() % NUM_PACKAGES));
+                page.addView(v);
+                registry.add(v, false);
+                ids.add(((ItemInfo) v.getTag()).id);
+            }
+            pages.add(page);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            findByTraversal(pages, ids.get(i % ids.size()));
+        }
+        long traversalNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < NUM_LOOKUPS; i++) {
+            registry.getView(ids.get(i % ids.size()), false);
+        }
+        long registryNanos = System.nanoTime() - start;
+
+        Log.d(TAG, NUM_LOOKUPS + " lookups: traversal=" + traversalNanos / 1000
+                + "us registry=" + registryNanos / 1000 + "us");
+    }
+
+    private static View findByTraversal(ArrayList<FrameLayout> pages, long id) {
+        for (FrameLayout page : pages) {
+            int count = page.getChildCount();
+            for (int i = 0; i < count; i++) {
+                View v = page.getChildAt(i);
+                if (((ItemInfo) v.getTag()).id == id) {
+                    return v;
+                }
+            }
+        }
+        return null;
+    }
+
+    private View newItemView(String packageName) {
+        ShortcutInfo info = new ShortcutInfo();
+        info.id = mNextId++;
+        info.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        info.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        info.user = Process.myUserHandle();
+        info.intent = new Intent(Intent.ACTION_MAIN)
+                .setComponent(new ComponentName(packageName, packageName + ".Main"));
+
+        View v = new View(getContext());
+        v.setTag(info);
+        return v;
+    }
+}
@@ -0,0 +1,72 @@
+package com.android.launcher3.allapps;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.util.LabelComparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares sorting the apps by comparing their titles and by their
+ * {@link com.android.launcher3.util.LabelSortKey}s.
+ */
+public class AppInfoComparatorBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "AppInfoComparatorBenchmark";
+
+    private static final int NUM_APPS = 1000;
+    private static final int NUM_RUNS = 10;
+
+    public void testSortThousandApps() {
+        Random random = new Random(42);
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < NUM_APPS; i++) {
+            StringBuilder title = new StringBuilder();
+            int length = 3 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                title.append((char) ((j == 0 ? 'A' : 'a') + random.nextInt(26)));
+            }
+            AppInfo info = new AppInfo();
+            info.title = title.toString();
+            info.componentName = new ComponentName("com.example", "com.example.Activity" + i);
+            info.user = Process.myUserHandle();
+            apps.add(info);
+        }
+
+        // Comparing the titles directly, like before the keys were introduced.
+        final LabelComparator labelComparator = new LabelComparator();
+        Comparator<AppInfo> titleComparator = new Comparator<AppInfo>() {
+            @Override
+            public int compare(AppInfo a, AppInfo b) {
+                int result = labelComparator.compare(a.title.toString(), b.title.toString());
+                return result != 0 ? result : a.componentName.compareTo(b.componentName);
+            }
+        };
+        AppInfoComparator keyComparator = new AppInfoComparator(getContext());
+
+        long titleMillis = 0;
+        long keyMillis = 0;
+        for (int i = 0; i < NUM_RUNS; i++) {
+            Collections.shuffle(apps, random);
+            long start = SystemClock.elapsedRealtime();
+            Collections.sort(apps, titleComparator);
+            titleMillis += SystemClock.elapsedRealtime() - start;
+
+            Collections.shuffle(apps, random);
+            start = SystemClock.elapsedRealtime();
+            Collections.sort(apps, keyComparator);
+            keyMillis += SystemClock.elapsedRealtime() - start;
+        }
+        Log.d(TAG, "Sorted " + NUM_APPS + " apps in " + titleMillis / NUM_RUNS
+                + "ms with titles, " + keyMillis / NUM_RUNS + "ms with sort keys");
+    }
+}
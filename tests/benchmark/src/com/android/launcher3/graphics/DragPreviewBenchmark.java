@@ -0,0 +1,93 @@
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.GradientDrawable;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.View;
+
+/**
+ * Reports the time spent generating the drag preview and outline at drag start, for an icon
+ * sized view and for a 4x4 widget sized view. The preview time includes drawing the view into
+ * the pooled bitmap, as done by {@link DragPreviewProvider#createDragBitmap(Canvas)}.
+ */
+public class DragPreviewBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "DragPreviewBenchmark";
+
+    private static final int NUM_DRAGS = 20;
+
+    private HolographicOutlineHelper mHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mHelper = HolographicOutlineHelper.getInstance(getContext());
+        mHelper.clearCaches();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHelper.clearCaches();
+        super.tearDown();
+    }
+
+    public void testDragStartLatency() {
+        measureDragStart("icon", dpToPx(48 + 4));
+        measureDragStart("4x4 widget", dpToPx(4 * 80));
+    }
+
+    private void measureDragStart(String name, int size) {
+        DragPreviewProvider provider = new DragPreviewProvider(createView(size));
+        Canvas canvas = new Canvas();
+        // Warm up the pools, as they would be after the first drag.
+        mHelper.releaseDragBitmap(provider.createDragBitmap(canvas));
+        provider.createDragOutline(canvas);
+
+        long previewNanos = 0;
+        long outlineNanos = 0;
+        for (int i = 0; i < NUM_DRAGS; i++) {
+            long start = System.nanoTime();
+            Bitmap preview = provider.createDragBitmap(canvas);
+            previewNanos += System.nanoTime() - start;
+            mHelper.releaseDragBitmap(preview);
+
+            // The view has no content stamp, so its outline is generated every time.
+            start = System.nanoTime();
+            provider.createDragOutline(canvas);
+            outlineNanos += System.nanoTime() - start;
+        }
+
+        Bitmap outline = provider.createDragOutline(canvas);
+        mHelper.cacheOutline(0, 1, outline);
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_DRAGS; i++) {
+            mHelper.getCachedOutline(0, outline.getWidth(), outline.getHeight(), 1);
+        }
+        long cacheNanos = System.nanoTime() - start;
+
+        Log.d(TAG, name + " (" + size + "px) drag start: preview="
+                + previewNanos / NUM_DRAGS / 1000 + "us outline="
+                + outlineNanos / NUM_DRAGS / 1000 + "us cached outline="
+                + cacheNanos / NUM_DRAGS / 1000 + "us");
+    }
+
+    private View createView(int size) {
+        GradientDrawable background = new GradientDrawable();
+        background.setColor(0xFF3F51B5);
+        background.setCornerRadius(size / 10);
+        View view = new View(getContext());
+        view.setBackground(background);
+        view.measure(View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, size, size);
+        return view;
+    }
+
+    private int dpToPx(int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp,
+                getContext().getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,124 @@
+package com.android.launcher3.graphics;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares scanning the borders of the installed app icons a word at a time, as done by
+ * {@link IconNormalizer#scanBorders}, against scanning them pixel by pixel.
+ */
+public class IconNormalizerBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "IconNormalizerBenchmark";
+
+    private static final int MAX_RECORDED_MASKS = 100;
+    // Not a multiple of 8, so that the end of the rows is masked.
+    private static final int MASK_SIZE = 189;
+    private static final int MIN_VISIBLE_ALPHA = 40;
+    private static final int SCAN_RUNS = 20;
+
+    public void testScanBorders() {
+        List<byte[]> masks = recordMasks();
+        int rowWords = (MASK_SIZE + 7) / 8;
+        List<long[]> wordMasks = new ArrayList<>();
+        for (byte[] mask : masks) {
+            long[] words = new long[rowWords * MASK_SIZE];
+            ByteBuffer.wrap(mask).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words);
+            wordMasks.add(words);
+        }
+
+        float[] left = new float[MASK_SIZE];
+        float[] right = new float[MASK_SIZE];
+        Rect bounds = new Rect();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int run = 0; run < SCAN_RUNS; run++) {
+            for (byte[] mask : masks) {
+                scanPixels(mask, rowWords * 8, left, right, bounds);
+            }
+        }
+        long pixelNanos = SystemClock.elapsedRealtimeNanos() - start;
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int run = 0; run < SCAN_RUNS; run++) {
+            for (long[] words : wordMasks) {
+                IconNormalizer.scanBorders(words, rowWords, MASK_SIZE, MASK_SIZE, left, right,
+                        bounds, true);
+            }
+        }
+        long wordNanos = SystemClock.elapsedRealtimeNanos() - start;
+        int scans = SCAN_RUNS * masks.size();
+        Log.d(TAG, "Scanned " + masks.size() + " masks: " + pixelNanos / scans
+                + "ns per mask pixel by pixel, " + wordNanos / scans + "ns per mask by words");
+    }
+
+    /**
+     * Records the alpha masks of the installed app icons.
+     */
+    private List<byte[]> recordMasks() {
+        PackageManager pm = getContext().getPackageManager();
+        int stride = (MASK_SIZE + 7) / 8 * 8;
+        List<byte[]> masks = new ArrayList<>();
+        for (ApplicationInfo info : pm.getInstalledApplications(0)) {
+            if (masks.size() >= MAX_RECORDED_MASKS) {
+                break;
+            }
+            Drawable icon = info.loadIcon(pm);
+            Bitmap bitmap = Bitmap.createBitmap(stride, MASK_SIZE, Bitmap.Config.ALPHA_8);
+            icon.setBounds(0, 0, MASK_SIZE, MASK_SIZE);
+            icon.draw(new Canvas(bitmap));
+            byte[] mask = new byte[bitmap.getRowBytes() * MASK_SIZE];
+            bitmap.copyPixelsToBuffer(ByteBuffer.wrap(mask));
+            bitmap.recycle();
+            masks.add(mask);
+        }
+        return masks;
+    }
+
+    /**
+     * Scans the pixels one by one, like before the masks were read a word at a time.
+     */
+    private static int scanPixels(byte[] mask, int stride, float[] outLeft, float[] outRight,
+            Rect outBounds) {
+        int count = 0;
+        int topY = -1;
+        int bottomY = -1;
+        int leftX = Integer.MAX_VALUE;
+        int rightX = -1;
+        for (int y = 0; y < MASK_SIZE; y++) {
+            int firstX = -1;
+            int lastX = -1;
+            for (int x = 0; x < MASK_SIZE; x++) {
+                if ((mask[y * stride + x] & 0xFF) > MIN_VISIBLE_ALPHA) {
+                    if (firstX == -1) {
+                        firstX = x;
+                    }
+                    lastX = x;
+                    count++;
+                }
+            }
+            outLeft[y] = firstX;
+            outRight[y] = lastX;
+            if (firstX != -1) {
+                bottomY = y;
+                if (topY == -1) {
+                    topY = y;
+                }
+                leftX = Math.min(leftX, firstX);
+                rightX = Math.max(rightX, lastX);
+            }
+        }
+        outBounds.set(topY == -1 ? -1 : leftX, topY, rightX, bottomY);
+        return count;
+    }
+}
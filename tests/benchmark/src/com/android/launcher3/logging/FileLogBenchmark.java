@@ -0,0 +1,55 @@
+package com.android.launcher3.logging;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Measures the time spent by the callers of {@link FileLog#print}, and to write the lines.
+ */
+public class FileLogBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "FileLogBenchmark";
+
+    private static final int NUM_LINES = 20000;
+
+    private File mTempDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        int count = 0;
+        do {
+            mTempDir = new File(getContext().getCacheDir(), "log-benchmark-" + (count++));
+        } while(!mTempDir.mkdir());
+
+        FileLog.setDir(mTempDir);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(mTempDir, "log-0").delete();
+        new File(mTempDir, "log-1").delete();
+        mTempDir.delete();
+        super.tearDown();
+    }
+
+    public void testThroughput() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < NUM_LINES; i++) {
+            FileLog.print("Testing", "line " + i);
+        }
+        long printNanos = SystemClock.elapsedRealtimeNanos() - start;
+        FileLog.flushAll(null);
+        long flushNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.d(TAG, "Printed " + NUM_LINES + " lines in " + printNanos / 1000000 + "ms, "
+                + printNanos / NUM_LINES + "ns per line, written in "
+                + flushNanos / 1000000 + "ms");
+    }
+}
@@ -0,0 +1,67 @@
+package com.android.launcher3.logging;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.android.launcher3.userevent.nano.LauncherLogProto.Action;
+import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
+import com.android.launcher3.userevent.nano.LauncherLogProto.LauncherEvent;
+import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+
+import java.io.File;
+
+import static com.android.launcher3.logging.LoggerUtils.newContainerTarget;
+import static com.android.launcher3.logging.LoggerUtils.newLauncherEvent;
+import static com.android.launcher3.logging.LoggerUtils.newTouchAction;
+
+/**
+ * Measures the time spent by the callers of {@link UserEventLog#log}.
+ */
+public class UserEventLogBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "UserEventLogBenchmark";
+
+    private static final int BLOCK_SIZE = 16 * 1024;
+    private static final int NUM_BLOCKS = 4;
+    private static final int NUM_EVENTS = 100000;
+
+    private File mTempDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        int count = 0;
+        do {
+            mTempDir = new File(getContext().getCacheDir(), "user-event-benchmark-" + (count++));
+        } while (!mTempDir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mTempDir.listFiles()) {
+            file.delete();
+        }
+        mTempDir.delete();
+        super.tearDown();
+    }
+
+    public void testThroughput() throws Exception {
+        UserEventLog log = new UserEventLog(mTempDir, BLOCK_SIZE, NUM_BLOCKS, null);
+        LauncherEvent event = newLauncherEvent(newTouchAction(Action.Touch.TAP),
+                newContainerTarget(ContainerType.WORKSPACE), new Target());
+        event.srcTarget[0].pageIndex = 3;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            log.log(event);
+        }
+        long logNanos = SystemClock.elapsedRealtimeNanos() - start;
+        log.flush();
+        log.waitForWrites();
+
+        Log.d(TAG, "Logged " + NUM_EVENTS + " events in " + logNanos / 1000000 + "ms, "
+                + logNanos / NUM_EVENTS + "ns per event, "
+                + log.getDroppedEvents() + " dropped");
+    }
+}
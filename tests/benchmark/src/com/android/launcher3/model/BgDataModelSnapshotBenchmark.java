@@ -0,0 +1,125 @@
+package com.android.launcher3.model;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.LauncherSettings;
+import com.android.launcher3.ShortcutInfo;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the workspace reads done under the model lock and from {@link BgDataModel.Snapshot},
+ * while package updates are replayed on the model.
+ */
+public class BgDataModelSnapshotBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "BgDataModelSnapshotBenchmark";
+
+    private static final long DURATION_MS = 1000;
+    private static final int NUM_READERS = 3;
+    private static final int NUM_ITEMS = 200;
+
+    private BgDataModel mModel;
+    private long mNextId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mModel = new BgDataModel();
+        mNextId = 1;
+        mModel.beginBatchUpdate();
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            mModel.addItem(getContext(), newShortcut(i), false);
+        }
+        mModel.endBatchUpdate();
+    }
+
+    public void testReadsWithConcurrentUpdates() throws Exception {
+        long lockedReads = runReadersAgainstUpdates(false);
+        long snapshotReads = runReadersAgainstUpdates(true);
+        Log.d(TAG, "Workspace reads in " + DURATION_MS + "ms: locked=" + lockedReads
+                + " snapshot=" + snapshotReads);
+    }
+
+    private long runReadersAgainstUpdates(final boolean useSnapshot) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger reads = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(NUM_READERS + 1);
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    // Simulate a package update which replaces a few items at once.
+                    synchronized (mModel) {
+                        ArrayList<ItemInfo> removed = new ArrayList<>();
+                        for (int i = 0; i < 5 && i < mModel.workspaceItems.size(); i++) {
+                            removed.add(mModel.workspaceItems.get(i));
+                        }
+                        mModel.beginBatchUpdate();
+                        mModel.removeItem(getContext(), removed);
+                        for (int i = 0; i < removed.size(); i++) {
+                            mModel.addItem(getContext(), newShortcut(i), false);
+                        }
+                        mModel.endBatchUpdate();
+                    }
+                }
+                done.countDown();
+            }
+        };
+
+        ArrayList<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < NUM_READERS; r++) {
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        if (useSnapshot) {
+                            countDesktopItems(mModel.getSnapshot().itemsIdMap);
+                        } else {
+                            synchronized (mModel) {
+                                countDesktopItems(mModel.itemsIdMap);
+                            }
+                        }
+                        reads.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread t : readers) {
+            t.start();
+        }
+        SystemClock.sleep(DURATION_MS);
+        running.set(false);
+        done.await();
+        return reads.get();
+    }
+
+    private static int countDesktopItems(Iterable<ItemInfo> items) {
+        int count = 0;
+        for (ItemInfo info : items) {
+            if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized ShortcutInfo newShortcut(int position) {
+        ShortcutInfo info = new ShortcutInfo();
+        info.id = mNextId++;
+        info.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        info.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        info.cellX = position;
+        return info;
+    }
+}
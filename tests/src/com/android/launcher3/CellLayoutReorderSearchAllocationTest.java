@@ -0,0 +1,94 @@
+package com.android.launcher3;
+
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+import android.view.View.MeasureSpec;
+
+import com.android.launcher3.ui.AbstractLauncherUiTest;
+import com.android.launcher3.util.AllocationCounter;
+import com.android.launcher3.util.rule.LauncherActivityRule;
+import com.android.launcher3.util.rule.ShellCommandRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that the cell searches run by {@link Workspace#onDragOver} on every drag move, and the
+ * reorder search run to accept a drop, do not allocate. The reorders started by the drag over
+ * alarm are not covered, as they start the item animations.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CellLayoutReorderSearchAllocationTest extends AbstractLauncherUiTest {
+
+    private static final int NUM_MOVES = 100;
+    private static final int GRID_SIZE = 4;
+    private static final int LAYOUT_SIZE = 800;
+
+    @Rule public LauncherActivityRule mActivityMonitor = new LauncherActivityRule();
+    @Rule public ShellCommandRule mDefaultLauncherRule = ShellCommandRule.setDefaultLauncher();
+
+    @Test
+    public void testReorderSearchDoesNotAllocate() throws Throwable {
+        mActivityMonitor.startLauncher();
+
+        int allocCount = getOnUiThread(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                // A layout which is not part of the workspace, so that its items are not affected
+                // by the state of the launcher.
+                final CellLayout layout = new CellLayout(mActivityMonitor.getActivity());
+                layout.setGridSize(GRID_SIZE, GRID_SIZE);
+                // Fill the first row, so that the drag moves over items which need reordering.
+                for (int i = 0; i < GRID_SIZE; i++) {
+                    layout.addViewToCellLayout(new View(layout.getContext()), -1, i + 1,
+                            new CellLayout.LayoutParams(i, 0, 1, 1), true);
+                }
+                int spec = MeasureSpec.makeMeasureSpec(LAYOUT_SIZE, MeasureSpec.EXACTLY);
+                layout.measure(spec, spec);
+                layout.layout(0, 0, LAYOUT_SIZE, LAYOUT_SIZE);
+
+                final int[] cell = new int[2];
+                final int[] span = new int[2];
+                // The first moves fill the caches.
+                dragOver(layout, cell, span);
+
+                return AllocationCounter.countThreadAllocations(new Runnable() {
+                    @Override
+                    public void run() {
+                        dragOver(layout, cell, span);
+                    }
+                });
+            }
+        });
+        assertEquals(0, allocCount);
+    }
+
+    /**
+     * Moves a 1x1 item back and forth over every cell of the {@param layout}, running the same
+     * searches as {@link Workspace#onDragOver} and {@link Workspace#acceptDrop}.
+     */
+    private static void dragOver(CellLayout layout, int[] cell, int[] span) {
+        int cellWidth = layout.getCellWidth();
+        int cellHeight = layout.getCellHeight();
+        for (int i = 0; i < NUM_MOVES; i++) {
+            int x = (i % GRID_SIZE) * cellWidth + cellWidth / 2;
+            int y = ((i / GRID_SIZE) % GRID_SIZE) * cellHeight + cellHeight / 2;
+
+            layout.findNearestArea(x, y, 1, 1, cell);
+            layout.getDistanceFromCell(x, y, cell);
+            if (layout.isNearestDropLocationOccupied(x, y, 1, 1, null, cell)) {
+                layout.performReorder(x, y, 1, 1, 1, 1, null, cell, span,
+                        CellLayout.MODE_ACCEPT_DROP);
+            }
+            layout.findNearestVacantArea(x, y, 1, 1, 1, 1, cell, span);
+        }
+        layout.revertTempState();
+    }
+}
@@ -0,0 +1,231 @@
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.PackageManager;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import com.android.launcher3.testcomponent.RequestPinItemActivity;
+import com.android.launcher3.testcomponent.WidgetConfigActivity;
+import com.android.launcher3.util.LooperExecutor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the icons shared by the components of a package in {@link IconCache}.
+ * Two activities of the test package using the same icon resource are loaded as the launcher
+ * activities of the package.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class IconCacheTest {
+
+    private Context mContext;
+    private InvariantDeviceProfile mIdp;
+    private LooperExecutor mWorkerExecutor;
+    private String mPackageName;
+    private UserHandle mUser;
+    private List<LauncherActivityInfo> mActivities;
+
+    @Before
+    public void setup() throws Exception {
+        mContext = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                "icon_cache_test.");
+        mContext.deleteDatabase(LauncherFiles.APP_ICONS_DB);
+        mIdp = LauncherAppState.getIDP(mContext);
+        mWorkerExecutor = new LooperExecutor(LauncherModel.getWorkerLooper());
+        mPackageName = InstrumentationRegistry.getContext().getPackageName();
+        mUser = Process.myUserHandle();
+        mActivities = Arrays.asList(
+                newActivityInfo(RequestPinItemActivity.class),
+                newActivityInfo(WidgetConfigActivity.class));
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(LauncherFiles.APP_ICONS_DB);
+    }
+
+    @Test
+    public void testComponentsShareIcon() throws Exception {
+        populateCache();
+        AppInfo[] apps = loadApps(new IconCache(mContext, mIdp), false);
+        assertFalse(apps[0].usingLowResIcon);
+        assertSame(apps[0].iconBitmap, apps[1].iconBitmap);
+    }
+
+    @Test
+    public void testLowResIconUpgradedToHighRes() throws Exception {
+        populateCache();
+        IconCache iconCache = new IconCache(mContext, mIdp);
+        AppInfo[] lowRes = loadApps(iconCache, true);
+        assertTrue(lowRes[0].usingLowResIcon);
+        assertTrue(lowRes[1].usingLowResIcon);
+        assertSame(lowRes[0].iconBitmap, lowRes[1].iconBitmap);
+
+        AppInfo[] highRes = loadApps(iconCache, false);
+        assertFalse(highRes[0].usingLowResIcon);
+        assertFalse(highRes[1].usingLowResIcon);
+        assertSame(highRes[0].iconBitmap, highRes[1].iconBitmap);
+        assertNotSame(lowRes[0].iconBitmap, highRes[0].iconBitmap);
+    }
+
+    @Test
+    public void testPackageRemovalClearsSharedIcon() throws Exception {
+        populateCache();
+        runOnWorker(new Callable<Void>() {
+            @Override
+            public Void call() {
+                new IconCache(mContext, mIdp).removeIconsForPkg(mPackageName, mUser);
+                return null;
+            }
+        });
+
+        IconCache iconCache = new IconCache(mContext, mIdp);
+        for (AppInfo app : loadApps(iconCache, false)) {
+            assertTrue(iconCache.isDefaultIcon(app.iconBitmap, mUser));
+        }
+    }
+
+    @Test
+    public void testPackageUpdateRewritesSharedIcon() throws Exception {
+        populateCache();
+        runOnWorker(new Callable<Void>() {
+            @Override
+            public Void call() {
+                new IconCache(mContext, mIdp).updateIconsForPkg(mPackageName, mUser,
+                        mActivities);
+                return null;
+            }
+        });
+
+        IconCache iconCache = new IconCache(mContext, mIdp);
+        AppInfo[] apps = loadApps(iconCache, false);
+        assertFalse(iconCache.isDefaultIcon(apps[0].iconBitmap, mUser));
+        assertSame(apps[0].iconBitmap, apps[1].iconBitmap);
+    }
+
+    @Test
+    public void testMissingSharedIconRegenerated() throws Exception {
+        populateCache();
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(LauncherFiles.APP_ICONS_DB).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        try {
+            assertEquals(1, db.delete("icons", "componentName LIKE ?",
+                    new String[] {mPackageName + "/#icon:%"}));
+        } finally {
+            db.close();
+        }
+
+        final IconCache iconCache = new IconCache(mContext, mIdp);
+        // Without the activity, the component row alone can't provide an icon.
+        final AppInfo missing = newAppInfo(mActivities.get(0).getComponentName());
+        // With the activity, the icon is generated again.
+        final AppInfo regenerated = newAppInfo(mActivities.get(1).getComponentName());
+        runOnWorker(new Callable<Void>() {
+            @Override
+            public Void call() {
+                iconCache.getTitleAndIcon(missing, (LauncherActivityInfo) null, false);
+                iconCache.getTitleAndIcon(regenerated, mActivities.get(1), false);
+                return null;
+            }
+        });
+        assertTrue(iconCache.isDefaultIcon(missing.iconBitmap, mUser));
+        assertFalse(iconCache.isDefaultIcon(regenerated.iconBitmap, mUser));
+    }
+
+    /**
+     * Writes the icons of the test package to the DB, as done when the package is updated.
+     */
+    private void populateCache() throws Exception {
+        runOnWorker(new Callable<Void>() {
+            @Override
+            public Void call() {
+                new IconCache(mContext, mIdp).updateIconsForPkg(mPackageName, mUser,
+                        mActivities);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Loads the icons of the test activities from {@param iconCache}, without the activities
+     * so that they can only come from the DB.
+     */
+    private AppInfo[] loadApps(final IconCache iconCache, final boolean lowRes)
+            throws Exception {
+        final AppInfo[] apps = new AppInfo[mActivities.size()];
+        for (int i = 0; i < apps.length; i++) {
+            apps[i] = newAppInfo(mActivities.get(i).getComponentName());
+        }
+        runOnWorker(new Callable<Void>() {
+            @Override
+            public Void call() {
+                for (AppInfo app : apps) {
+                    iconCache.getTitleAndIcon(app, (LauncherActivityInfo) null, lowRes);
+                }
+                return null;
+            }
+        });
+        return apps;
+    }
+
+    private LauncherActivityInfo newActivityInfo(Class<?> activity) throws Exception {
+        ComponentName cn = new ComponentName(mPackageName, activity.getName());
+        final PackageManager pm = InstrumentationRegistry.getContext().getPackageManager();
+        final ActivityInfo activityInfo = pm.getActivityInfo(cn, 0);
+
+        LauncherActivityInfo info = mock(LauncherActivityInfo.class);
+        when(info.getComponentName()).thenReturn(cn);
+        when(info.getUser()).thenReturn(mUser);
+        when(info.getLabel()).thenReturn(activityInfo.loadLabel(pm));
+        when(info.getApplicationInfo()).thenReturn(activityInfo.applicationInfo);
+        when(info.getIcon(anyInt())).thenAnswer(new Answer<Drawable>() {
+            @Override
+            public Drawable answer(InvocationOnMock invocation) {
+                return activityInfo.loadIcon(pm);
+            }
+        });
+        return info;
+    }
+
+    private AppInfo newAppInfo(ComponentName cn) {
+        AppInfo app = new AppInfo();
+        app.componentName = cn;
+        app.user = mUser;
+        app.intent = AppInfo.makeLaunchIntent(cn);
+        return app;
+    }
+
+    private <T> T runOnWorker(Callable<T> callable) throws Exception {
+        return mWorkerExecutor.submit(callable).get();
+    }
+}
@@ -0,0 +1,291 @@
+package com.android.launcher3;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewGroup.LayoutParams;
+import android.widget.FrameLayout;
+
+import com.android.launcher3.IconCache.ItemInfoUpdateReceiver;
+import com.android.launcher3.util.rule.LauncherActivityRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link IconUpgradeScheduler}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class IconUpgradeSchedulerTest {
+
+    private static final int NUM_REQUESTS = 20;
+    private static final long TIMEOUT_MS = 5000;
+    // Less than a batch of each, so that a batch could hold both.
+    private static final int NUM_VIEWS = IconUpgradeScheduler.BATCH_SIZE / 2;
+    private static final int VIEW_SIZE = 10;
+
+    @Rule public LauncherActivityRule mActivityMonitor = new LauncherActivityRule();
+
+    private HandlerThread mWorkerThread;
+    private IconCache mIconCache;
+    private IconUpgradeScheduler mScheduler;
+
+    @Before
+    public void setup() {
+        mWorkerThread = new HandlerThread("icon-upgrade-test");
+        mWorkerThread.start();
+        mIconCache = mock(IconCache.class);
+        mScheduler = new IconUpgradeScheduler(mIconCache, new Handler(mWorkerThread.getLooper()));
+    }
+
+    @After
+    public void tearDown() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.clear();
+            }
+        });
+        mWorkerThread.quitSafely();
+    }
+
+    @Test
+    public void testAllRequestsApplied() throws Exception {
+        final AtomicInteger loading = new AtomicInteger();
+        final AtomicInteger maxLoading = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                maxLoading.set(Math.max(maxLoading.get(), loading.incrementAndGet()));
+                return null;
+            }
+        }).when(mIconCache).updateToHighResIcon(any(ItemInfoWithIcon.class));
+
+        // The receivers are called on the UI thread, the results are checked on the test thread.
+        final List<String> mismatches = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch applied = new CountDownLatch(NUM_REQUESTS);
+        final ItemInfoUpdateReceiver[] receivers = new ItemInfoUpdateReceiver[NUM_REQUESTS];
+        final ItemInfoWithIcon[] infos = new ItemInfoWithIcon[NUM_REQUESTS];
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            final int index = i;
+            infos[i] = newLowResInfo();
+            receivers[i] = new ItemInfoUpdateReceiver() {
+                @Override
+                public void reapplyItemInfo(ItemInfoWithIcon info) {
+                    if (info != infos[index]) {
+                        mismatches.add("Receiver " + index + " got " + info);
+                    }
+                    // Only the icons of the current batch are loaded meanwhile.
+                    loading.set(0);
+                    applied.countDown();
+                }
+            };
+        }
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < NUM_REQUESTS; i++) {
+                    mScheduler.request(receivers[i], infos[i]);
+                }
+            }
+        });
+
+        assertTrue(applied.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+        for (int i = 0; i < NUM_REQUESTS; i++) {
+            verify(mIconCache).updateToHighResIcon(infos[i]);
+        }
+        assertTrue(maxLoading.get() <= IconUpgradeScheduler.BATCH_SIZE);
+    }
+
+    @Test
+    public void testCancelledRequestNotApplied() throws Exception {
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch loadAllowed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                loadStarted.countDown();
+                loadAllowed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                return null;
+            }
+        }).when(mIconCache).updateToHighResIcon(any(ItemInfoWithIcon.class));
+
+        final ItemInfoUpdateReceiver cancelled = mock(ItemInfoUpdateReceiver.class);
+        final ItemInfoUpdateReceiver applied = mock(ItemInfoUpdateReceiver.class);
+        final ItemInfoWithIcon cancelledInfo = newLowResInfo();
+        final ItemInfoWithIcon appliedInfo = newLowResInfo();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.request(cancelled, cancelledInfo);
+                mScheduler.request(applied, appliedInfo);
+            }
+        });
+
+        // Cancelled while its icon is being loaded.
+        assertTrue(loadStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.cancel(cancelled);
+            }
+        });
+        loadAllowed.countDown();
+
+        verify(applied, timeout(TIMEOUT_MS)).reapplyItemInfo(appliedInfo);
+        verify(cancelled, never()).reapplyItemInfo(any(ItemInfoWithIcon.class));
+    }
+
+    @Test
+    public void testDetachedViewDropped() {
+        final TestView view = new TestView(InstrumentationRegistry.getTargetContext());
+        final ItemInfoWithIcon info = newLowResInfo();
+        final int[] pendingCount = new int[1];
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.request(view, info);
+                mScheduler.dispatchBatch(true /* includeNotVisible */);
+                pendingCount[0] = mScheduler.getPendingCount();
+            }
+        });
+        assertEquals(0, pendingCount[0]);
+        verify(mIconCache, never()).updateToHighResIcon(any(ItemInfoWithIcon.class));
+    }
+
+    @Test
+    @MediumTest
+    public void testVisibleViewsUpgradedBeforeOffscreenViews() throws Exception {
+        final List<ItemInfoWithIcon> loaded = Collections.synchronizedList(
+                new ArrayList<ItemInfoWithIcon>());
+        final List<Long> loadTimes = Collections.synchronizedList(new ArrayList<Long>());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                loaded.add((ItemInfoWithIcon) invocation.getArguments()[0]);
+                loadTimes.add(SystemClock.uptimeMillis());
+                return null;
+            }
+        }).when(mIconCache).updateToHighResIcon(any(ItemInfoWithIcon.class));
+
+        mActivityMonitor.startLauncher();
+        final Launcher launcher = mActivityMonitor.getActivity();
+        final FrameLayout container = new FrameLayout(launcher);
+        final TestView[] offscreenViews = new TestView[NUM_VIEWS];
+        final TestView[] visibleViews = new TestView[NUM_VIEWS];
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < NUM_VIEWS; i++) {
+                    // Attached, but laid out outside of the container.
+                    FrameLayout.LayoutParams lp =
+                            new FrameLayout.LayoutParams(VIEW_SIZE, VIEW_SIZE);
+                    lp.leftMargin = -2 * VIEW_SIZE;
+                    offscreenViews[i] = new TestView(launcher);
+                    container.addView(offscreenViews[i], lp);
+
+                    lp = new FrameLayout.LayoutParams(VIEW_SIZE, VIEW_SIZE);
+                    lp.leftMargin = i * VIEW_SIZE;
+                    visibleViews[i] = new TestView(launcher);
+                    container.addView(visibleViews[i], lp);
+                }
+                ((ViewGroup) launcher.getWindow().getDecorView()).addView(container,
+                        new FrameLayout.LayoutParams(LayoutParams.MATCH_PARENT,
+                                LayoutParams.MATCH_PARENT));
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        try {
+            final ItemInfoWithIcon[] offscreenInfos = new ItemInfoWithIcon[NUM_VIEWS];
+            final ItemInfoWithIcon[] visibleInfos = new ItemInfoWithIcon[NUM_VIEWS];
+            final long[] scrollTime = new long[1];
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    // The offscreen views request their icon first.
+                    for (int i = 0; i < NUM_VIEWS; i++) {
+                        offscreenInfos[i] = newLowResInfo();
+                        mScheduler.request(offscreenViews[i], offscreenInfos[i]);
+                    }
+                    for (int i = 0; i < NUM_VIEWS; i++) {
+                        visibleInfos[i] = newLowResInfo();
+                        mScheduler.request(visibleViews[i], visibleInfos[i]);
+                    }
+                    scrollTime[0] = SystemClock.uptimeMillis();
+                    mScheduler.onScrollChanged();
+                }
+            });
+
+            for (ItemInfoWithIcon info : offscreenInfos) {
+                verify(mIconCache, timeout(TIMEOUT_MS)).updateToHighResIcon(info);
+            }
+            assertEquals(2 * NUM_VIEWS, loaded.size());
+            for (int i = 0; i < NUM_VIEWS; i++) {
+                assertSame(visibleInfos[i], loaded.get(i));
+                assertSame(offscreenInfos[i], loaded.get(NUM_VIEWS + i));
+                // Not before the launcher was idle since the scroll.
+                assertTrue(loadTimes.get(NUM_VIEWS + i) - scrollTime[0]
+                        >= IconUpgradeScheduler.IDLE_DELAY_MS);
+            }
+        } finally {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    ((ViewGroup) container.getParent()).removeView(container);
+                }
+            });
+        }
+    }
+
+    private static ItemInfoWithIcon newLowResInfo() {
+        AppInfo info = new AppInfo();
+        info.usingLowResIcon = true;
+        return info;
+    }
+
+    private static void runOnMainSync(Runnable r) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(r);
+    }
+
+    private static class TestView extends View implements ItemInfoUpdateReceiver {
+
+        TestView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void reapplyItemInfo(ItemInfoWithIcon info) { }
+    }
+}
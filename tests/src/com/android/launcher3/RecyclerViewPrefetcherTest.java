@@ -0,0 +1,148 @@
+package com.android.launcher3;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link RecyclerViewPrefetcher}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RecyclerViewPrefetcherTest {
+
+    private static final int VIEW_TYPE = 1;
+    private static final int POOL_SIZE = 8;
+
+    private RecyclerView mRv;
+    private CountingAdapter mAdapter;
+    private RecyclerViewPrefetcher mPrefetcher;
+
+    @Before
+    public void setup() {
+        mRv = new RecyclerView(InstrumentationRegistry.getTargetContext());
+        mRv.setLayoutManager(new LinearLayoutManager(mRv.getContext()));
+        mRv.getRecycledViewPool().setMaxRecycledViews(VIEW_TYPE, POOL_SIZE);
+        mAdapter = new CountingAdapter();
+        mRv.setAdapter(mAdapter);
+
+        mPrefetcher = new RecyclerViewPrefetcher(mRv);
+        mPrefetcher.onAdapterChanged(mAdapter);
+        mPrefetcher.setGridSize(2, 2);
+    }
+
+    @Test
+    public void testPreinflateFillsPoolWithoutBinding() {
+        preinflate();
+
+        assertEquals(POOL_SIZE, mAdapter.createCount);
+        assertEquals(0, mAdapter.bindCount);
+        assertEquals(POOL_SIZE, drainPool());
+    }
+
+    @Test
+    public void testFastScrollRefillsPoolWithoutBinding() {
+        preinflate();
+        // Some views were taken by the RecyclerView.
+        for (int i = 0; i < POOL_SIZE; i++) {
+            mRv.getRecycledViewPool().getRecycledView(VIEW_TYPE);
+        }
+
+        mPrefetcher.onFastScroll(0);
+        SystemClock.sleep(10);
+        mPrefetcher.onFastScroll(50);
+        mPrefetcher.run();
+
+        // A fast scroll needs at least one screen ahead, 2x2 items, up to the pool size.
+        int pooled = drainPool();
+        assertEquals(4, pooled);
+        assertEquals(POOL_SIZE + pooled, mAdapter.createCount);
+        assertEquals(0, mAdapter.bindCount);
+    }
+
+    @Test
+    public void testFastScrollKeepsPooledViews() {
+        preinflate();
+        mPrefetcher.onFastScroll(0);
+        SystemClock.sleep(10);
+        mPrefetcher.onFastScroll(50);
+        mPrefetcher.run();
+
+        // The pool already had enough views.
+        assertEquals(POOL_SIZE, mAdapter.createCount);
+        assertEquals(POOL_SIZE, drainPool());
+    }
+
+    @Test
+    public void testNothingInflatedAfterFastScrollCompleted() {
+        preinflate();
+        drainPool();
+        mPrefetcher.onFastScroll(0);
+        SystemClock.sleep(10);
+        mPrefetcher.onFastScroll(50);
+        mPrefetcher.onFastScrollCompleted();
+        mPrefetcher.run();
+
+        assertEquals(POOL_SIZE, mAdapter.createCount);
+        assertNull(mRv.getRecycledViewPool().getRecycledView(VIEW_TYPE));
+    }
+
+    private void preinflate() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPrefetcher.preinflate(VIEW_TYPE, POOL_SIZE);
+                // Run the idle slices until the pool is full.
+                while (mPrefetcher.queueIdle());
+            }
+        });
+    }
+
+    private int drainPool() {
+        int count = 0;
+        while (mRv.getRecycledViewPool().getRecycledView(VIEW_TYPE) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private static class CountingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        int createCount;
+        int bindCount;
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            createCount++;
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) { };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+            bindCount++;
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return VIEW_TYPE;
+        }
+
+        @Override
+        public int getItemCount() {
+            return 100;
+        }
+    }
+}
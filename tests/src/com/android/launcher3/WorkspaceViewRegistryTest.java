@@ -0,0 +1,120 @@
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Process;
+import android.os.UserHandle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.View;
+
+import com.android.launcher3.util.PackageUserKey;
+
+import java.util.HashSet;
+
+/**
+ * Tests for {@link WorkspaceViewRegistry}
+ */
+public class WorkspaceViewRegistryTest extends AndroidTestCase {
+
+    private UserHandle mUser;
+    private WorkspaceViewRegistry mRegistry;
+    private long mNextId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mUser = Process.myUserHandle();
+        mRegistry = new WorkspaceViewRegistry(null);
+        mNextId = 1;
+    }
+
+    @SmallTest
+    public void testLookupById() {
+        View v = newItemView("com.example.a");
+        mRegistry.add(v, false);
+        assertSame(v, mRegistry.getView(((ItemInfo) v.getTag()).id, false));
+
+        mRegistry.remove(v);
+        assertNull(mRegistry.getView(((ItemInfo) v.getTag()).id, true));
+        assertEquals(0, mRegistry.size());
+    }
+
+    @SmallTest
+    public void testFolderContentsExcludedFromTopLevelLookup() {
+        View v = newItemView("com.example.a");
+        mRegistry.add(v, true);
+        long id = ((ItemInfo) v.getTag()).id;
+        assertNull(mRegistry.getView(id, false));
+        assertSame(v, mRegistry.getView(id, true));
+        assertTrue(mRegistry.isInFolder(v));
+    }
+
+    @SmallTest
+    public void testLookupByPackage() {
+        View a1 = newItemView("com.example.a");
+        View a2 = newItemView("com.example.a");
+        View b = newItemView("com.example.b");
+        mRegistry.add(a1, false);
+        mRegistry.add(a2, true);
+        mRegistry.add(b, false);
+
+        HashSet<PackageUserKey> keysA = keys("com.example.a");
+        assertEquals(2, mRegistry.getViews(keysA).size());
+        assertTrue(mRegistry.getViews(keysA).contains(a2));
+        assertEquals(3, mRegistry.getViews(keys("com.example.a", "com.example.b")).size());
+
+        mRegistry.remove(a1);
+        mRegistry.remove(a2);
+        assertTrue(mRegistry.getViews(keysA).isEmpty());
+        assertEquals(1, mRegistry.getViews(keys("com.example.b")).size());
+    }
+
+    @SmallTest
+    public void testLookupByPackageAfterTargetChange() {
+        View v = newItemView("com.example.a");
+        mRegistry.add(v, false);
+
+        // The view is rebound to an item of another package, without being re-added.
+        v.setTag(newItemView("com.example.b").getTag());
+        assertTrue(mRegistry.getViews(keys("com.example.a")).isEmpty());
+        assertEquals(1, mRegistry.getViews(keys("com.example.b")).size());
+
+        // The target of the bound item itself changes.
+        ((ShortcutInfo) v.getTag()).intent.setComponent(
+                new ComponentName("com.example.c", "com.example.c.Main"));
+        assertTrue(mRegistry.getViews(keys("com.example.b")).isEmpty());
+        assertEquals(1, mRegistry.getViews(keys("com.example.c")).size());
+    }
+
+    @SmallTest
+    public void testReAddIsIdempotent() {
+        View v = newItemView("com.example.a");
+        mRegistry.add(v, false);
+        mRegistry.add(v, false);
+        assertEquals(1, mRegistry.size());
+        assertEquals(1, mRegistry.getViews(keys("com.example.a")).size());
+    }
+
+    private HashSet<PackageUserKey> keys(String... packageNames) {
+        HashSet<PackageUserKey> keys = new HashSet<>();
+        for (String packageName : packageNames) {
+            keys.add(new PackageUserKey(packageName, mUser));
+        }
+        return keys;
+    }
+
+    private View newItemView(String packageName) {
+        ShortcutInfo info = new ShortcutInfo();
+        info.id = mNextId++;
+        info.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        info.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        info.user = mUser;
+        info.intent = new Intent(Intent.ACTION_MAIN)
+                .setComponent(new ComponentName(packageName, packageName + ".Main"));
+
+        View v = new View(getContext());
+        v.setTag(info);
+        return v;
+    }
+}
@@ -0,0 +1,108 @@
+package com.android.launcher3.allapps;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AllAppsTransitionSnapshot}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AllAppsTransitionSnapshotTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 200;
+
+    private AllAppsTransitionSnapshot mSnapshot;
+
+    @Before
+    public void setup() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        AllAppsRecyclerView rv = new AllAppsRecyclerView(context) {
+            @Override
+            public int getCurrentScrollY() {
+                return 0;
+            }
+        };
+        rv.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        rv.layout(0, 0, WIDTH, HEIGHT);
+        mSnapshot = new AllAppsTransitionSnapshot(rv, new FrameLayout(context), new EmptyAdapter());
+    }
+
+    @Test
+    public void testShownDuringTransition() {
+        assertTrue(mSnapshot.show());
+        assertTrue(mSnapshot.isShowing());
+        assertTrue(mSnapshot.hasBitmap());
+
+        // Any change to the apps switches back to the live view. This schedules a capture on
+        // the looper of the calling thread.
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mSnapshot.invalidate();
+            }
+        });
+        assertFalse(mSnapshot.isShowing());
+    }
+
+    @Test
+    public void testReleasedWhenOpened() {
+        assertTrue(mSnapshot.show());
+        mSnapshot.onTransitionEnd(false /* closed */);
+        assertFalse(mSnapshot.isShowing());
+        assertFalse(mSnapshot.hasBitmap());
+    }
+
+    @Test
+    public void testReleaseDeferredUntilTransitionEnds() {
+        assertTrue(mSnapshot.show());
+        // A trim memory in the middle of a transition.
+        mSnapshot.release();
+        assertTrue(mSnapshot.hasBitmap());
+
+        mSnapshot.hide();
+        assertFalse(mSnapshot.hasBitmap());
+    }
+
+    @Test
+    public void testReleasedWhileClosed() {
+        assertTrue(mSnapshot.capture());
+        mSnapshot.release();
+        assertFalse(mSnapshot.hasBitmap());
+
+        // It is captured again for the next transition.
+        assertTrue(mSnapshot.show());
+        assertTrue(mSnapshot.hasBitmap());
+    }
+
+    private static class EmptyAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) { }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.android.launcher3.allapps;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.util.LabelComparator;
+import com.android.launcher3.util.LabelSortKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link AppInfoComparator} and {@link LabelSortKey}
+ */
+@SmallTest
+public class AppInfoComparatorTest extends AndroidTestCase {
+
+    public void testOrderMatchesLabelComparator() {
+        String[] titles = new String[] {"zebra", "Apple", "apple tv", "9gag", "#hashtag",
+                "Éclair", "eclipse", "", " space", "Banana", "_underscore", "123"};
+        List<AppInfo> apps = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < titles.length; i++) {
+            apps.add(newApp(titles[i], i));
+            expected.add(titles[i]);
+        }
+
+        Collections.sort(apps, new AppInfoComparator(getContext()));
+        Collections.sort(expected, new LabelComparator());
+        for (int i = 0; i < titles.length; i++) {
+            assertEquals(expected.get(i), apps.get(i).title);
+        }
+    }
+
+    public void testSameTitleOrderedByComponent() {
+        AppInfo a = newApp("Same", 1);
+        AppInfo b = newApp("Same", 2);
+        AppInfoComparator comparator = new AppInfoComparator(getContext());
+        assertTrue(comparator.compare(a, b) < 0);
+        assertTrue(comparator.compare(b, a) > 0);
+    }
+
+    public void testKeyUpdatedWithTitle() {
+        AppInfo a = newApp("Alpha", 1);
+        AppInfo b = newApp("Beta", 2);
+        AppInfoComparator comparator = new AppInfoComparator(getContext());
+        assertTrue(comparator.compare(a, b) < 0);
+
+        a.title = "Gamma";
+        assertTrue(comparator.compare(a, b) > 0);
+    }
+
+    public void testKeyInvalidatedOnLocaleChange() {
+        AppInfo a = newApp("Alpha", 1);
+        new AppInfoComparator(getContext()).compare(a, a);
+        LabelSortKey key = a.sortKey;
+        assertNotNull(key);
+
+        new AppInfoComparator(getContext()).compare(a, a);
+        assertSame(key, a.sortKey);
+
+        LabelSortKey.onLocaleChanged();
+        new AppInfoComparator(getContext()).compare(a, a);
+        assertNotSame(key, a.sortKey);
+    }
+
+    private static AppInfo newApp(String title, int id) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        info.componentName = new ComponentName("com.example", "com.example.Activity" + id);
+        info.user = Process.myUserHandle();
+        return info;
+    }
+}
@@ -0,0 +1,77 @@
+package com.android.launcher3.badge;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Process;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.graphics.IconPalette;
+import com.android.launcher3.util.AllocationCounter;
+import com.android.launcher3.util.PackageUserKey;
+
+/**
+ * Tests for {@link BadgeRenderer}
+ */
+@SmallTest
+public class BadgeRendererTest extends AndroidTestCase {
+
+    private static final int ICON_SIZE = 96;
+    private static final int NUM_FRAMES = 100;
+
+    private BadgeRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mIconBounds;
+    private Point mSpaceForOffset;
+    private BadgeInfo mBadgeInfo;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new BadgeRenderer(getContext(), ICON_SIZE);
+        mCanvas = new Canvas(Bitmap.createBitmap(ICON_SIZE * 2, ICON_SIZE * 2,
+                Bitmap.Config.ARGB_8888));
+        mIconBounds = new Rect(ICON_SIZE / 2, ICON_SIZE / 2, ICON_SIZE * 3 / 2, ICON_SIZE * 3 / 2);
+        mSpaceForOffset = new Point(ICON_SIZE / 2, ICON_SIZE / 2);
+        mBadgeInfo = new BadgeInfo(new PackageUserKey("com.example", Process.myUserHandle()));
+    }
+
+    public void testSteadyStateDrawDoesNotAllocate() {
+        final IconPalette palette = IconPalette.fromDominantColor(Color.RED, true);
+        // The first draw renders the badge into the atlas.
+        drawFrame(palette, 1f);
+
+        assertEquals(0, AllocationCounter.countThreadAllocations(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < NUM_FRAMES; i++) {
+                    drawFrame(palette, (float) i / NUM_FRAMES);
+                }
+            }
+        }));
+    }
+
+    public void testAtlasEntryPerPalette() {
+        drawFrame(IconPalette.fromDominantColor(Color.RED, true), 1f);
+        drawFrame(IconPalette.fromDominantColor(Color.RED, true), 1f);
+        assertEquals(1, mRenderer.getAtlasSize());
+
+        drawFrame(IconPalette.fromDominantColor(Color.RED, false), 1f);
+        drawFrame(IconPalette.fromDominantColor(Color.BLUE, true), 1f);
+        assertEquals(3, mRenderer.getAtlasSize());
+    }
+
+    public void testAtlasIsBounded() {
+        for (int i = 0; i < BadgeRenderer.MAX_ATLAS_ENTRIES * 2; i++) {
+            drawFrame(IconPalette.fromDominantColor(Color.rgb(i, 0, 0), false), 1f);
+        }
+        assertEquals(BadgeRenderer.MAX_ATLAS_ENTRIES, mRenderer.getAtlasSize());
+    }
+
+    private void drawFrame(IconPalette palette, float badgeScale) {
+        mRenderer.draw(mCanvas, palette, mBadgeInfo, mIconBounds, badgeScale, mSpaceForOffset);
+    }
+}
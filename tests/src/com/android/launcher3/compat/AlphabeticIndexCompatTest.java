@@ -0,0 +1,64 @@
+package com.android.launcher3.compat;
+
+import android.os.Process;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.AppInfo;
+
+/**
+ * Tests for {@link AlphabeticIndexCompat}
+ */
+@SmallTest
+public class AlphabeticIndexCompatTest extends AndroidTestCase {
+
+    private static final String[] TITLES = new String[] {"Apple", "banana", "  Cherry", "9gag",
+            "#hashtag", "", "Éclair", "中文", "日本", "한국어",
+            "Русский", "עברית"};
+
+    private AlphabeticIndexCompat mIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIndex = new AlphabeticIndexCompat(getContext());
+    }
+
+    public void testItemSectionMatchesTitleSection() {
+        for (String title : TITLES) {
+            AppInfo info = newApp(title);
+            String expected = mIndex.computeSectionName(title);
+            assertEquals(title, expected, mIndex.computeSectionName(info));
+            // Cached
+            assertEquals(title, expected, mIndex.computeSectionName(info));
+        }
+    }
+
+    public void testLatinSections() {
+        assertEquals("A", mIndex.computeSectionName("apple"));
+        assertEquals("B", mIndex.computeSectionName("  Banana"));
+        assertEquals("#", mIndex.computeSectionName("9gag"));
+    }
+
+    public void testSectionUpdatedWithTitle() {
+        AppInfo info = newApp("Apple");
+        assertEquals("A", mIndex.computeSectionName(info));
+
+        info.title = "Banana";
+        assertEquals("B", mIndex.computeSectionName(info));
+    }
+
+    public void testSectionNotSharedBetweenIndexes() {
+        AppInfo info = newApp("Apple");
+        mIndex.computeSectionName(info);
+        assertNull(info.sortKey.getSectionName(new AlphabeticIndexCompat(getContext())));
+        assertEquals("A", info.sortKey.getSectionName(mIndex));
+    }
+
+    private static AppInfo newApp(String title) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        info.user = Process.myUserHandle();
+        return info;
+    }
+}
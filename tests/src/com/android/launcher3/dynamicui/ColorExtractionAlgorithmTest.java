@@ -0,0 +1,34 @@
+package com.android.launcher3.dynamicui;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link ColorExtractionAlgorithm}
+ */
+@SmallTest
+public class ColorExtractionAlgorithmTest extends TestCase {
+
+    public void testHueGridMatchesSearch() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            float h = i < 1000 ? i / 1000f : random.nextFloat();
+            assertSame("hue " + h, paletteAt(ColorExtractionAlgorithm.searchTonalPalette(h)),
+                    ColorExtractionAlgorithm.findTonalPalette(h, 1f));
+        }
+    }
+
+    public void testDesaturatedColorUsesGreyPalette() {
+        ColorExtractionAlgorithm.TonalPalette grey =
+                ColorExtractionAlgorithm.findTonalPalette(0.5f, 0f);
+        assertNotSame(grey, ColorExtractionAlgorithm.findTonalPalette(0.5f, 1f));
+        assertSame(grey, ColorExtractionAlgorithm.findTonalPalette(0.1f, 0.01f));
+    }
+
+    private static ColorExtractionAlgorithm.TonalPalette paletteAt(int index) {
+        return index < 0 ? null : ColorExtractionAlgorithm.TONAL_PALETTES[index];
+    }
+}
@@ -0,0 +1,124 @@
+package com.android.launcher3.dynamicui;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.support.v7.graphics.Palette;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link WallpaperSampler}
+ */
+@SmallTest
+public class WallpaperSamplerTest extends AndroidTestCase {
+
+    private WallpaperSampler mSampler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSampler = new WallpaperSampler();
+    }
+
+    public void testSwatchesSortedByPopulation() {
+        int[] pixels = new int[100];
+        Arrays.fill(pixels, 0, 60, Color.RED);
+        Arrays.fill(pixels, 60, 90, Color.BLUE);
+        Arrays.fill(pixels, 90, 100, Color.GREEN);
+
+        List<Palette.Swatch> swatches = mSampler.quantize(pixels, pixels.length);
+        assertEquals(3, swatches.size());
+        assertEquals(Color.RED, swatches.get(0).getRgb());
+        assertEquals(60, swatches.get(0).getPopulation());
+        assertEquals(Color.BLUE, swatches.get(1).getRgb());
+        assertEquals(30, swatches.get(1).getPopulation());
+        assertEquals(Color.GREEN, swatches.get(2).getRgb());
+        assertEquals(10, swatches.get(2).getPopulation());
+    }
+
+    public void testCloseColorsAveraged() {
+        int[] pixels = new int[] {Color.rgb(200, 100, 50), Color.rgb(202, 102, 52),
+                Color.TRANSPARENT};
+
+        List<Palette.Swatch> swatches = mSampler.quantize(pixels, pixels.length);
+        assertEquals(1, swatches.size());
+        assertEquals(Color.rgb(201, 101, 51), swatches.get(0).getRgb());
+        assertEquals(2, swatches.get(0).getPopulation());
+    }
+
+    public void testColorsLimited() {
+        int colorCount = WallpaperSampler.MAX_COLORS + 4;
+        int[] pixels = new int[colorCount * (colorCount + 1) / 2];
+        int pos = 0;
+        for (int i = 0; i < colorCount; i++) {
+            // Distinct buckets, the last ones being the most populated.
+            int color = Color.rgb((i * 16) % 256, i < 16 ? 0 : 255, 0);
+            for (int j = 0; j <= i; j++) {
+                pixels[pos++] = color;
+            }
+        }
+
+        List<Palette.Swatch> swatches = mSampler.quantize(pixels, pixels.length);
+        assertEquals(WallpaperSampler.MAX_COLORS, swatches.size());
+        assertEquals(Color.rgb((colorCount - 1) * 16 % 256, 255, 0), swatches.get(0).getRgb());
+        assertEquals(colorCount, swatches.get(0).getPopulation());
+        for (int i = 1; i < swatches.size(); i++) {
+            assertEquals(swatches.get(i - 1).getPopulation() - 1, swatches.get(i).getPopulation());
+        }
+    }
+
+    public void testMainColorsIgnoreBlackAndWhite() {
+        int[] pixels = new int[100];
+        Arrays.fill(pixels, 0, 50, Color.BLACK);
+        Arrays.fill(pixels, 50, 60, Color.rgb(8, 8, 8));
+        Arrays.fill(pixels, 60, 90, Color.WHITE);
+        Arrays.fill(pixels, 90, 100, Color.BLUE);
+
+        List<Palette.Swatch> swatches =
+                new WallpaperSampler(true /* mainColors */).quantize(pixels, pixels.length);
+        assertEquals(1, swatches.size());
+        assertEquals(Color.BLUE, swatches.get(0).getRgb());
+        assertEquals(10, swatches.get(0).getPopulation());
+    }
+
+    public void testMainColorsMergeNeighbouringBuckets() {
+        // A dark grey gradient across three neighbouring buckets, and a few blue pixels.
+        int[] pixels = new int[100];
+        Arrays.fill(pixels, 0, 25, Color.rgb(40, 40, 40));
+        Arrays.fill(pixels, 25, 55, Color.rgb(56, 56, 56));
+        Arrays.fill(pixels, 55, 80, Color.rgb(72, 72, 72));
+        Arrays.fill(pixels, 80, 100, Color.BLUE);
+
+        // The raw buckets report each shade of grey before the blue.
+        List<Palette.Swatch> swatches = mSampler.quantize(pixels, pixels.length);
+        assertEquals(4, swatches.size());
+        assertEquals(Color.BLUE, swatches.get(3).getRgb());
+
+        swatches = new WallpaperSampler(true /* mainColors */).quantize(pixels, pixels.length);
+        assertEquals(2, swatches.size());
+        assertEquals(Color.rgb(56, 56, 56), swatches.get(0).getRgb());
+        assertEquals(80, swatches.get(0).getPopulation());
+        assertEquals(Color.BLUE, swatches.get(1).getRgb());
+        assertEquals(20, swatches.get(1).getPopulation());
+    }
+
+    public void testSampleSize() {
+        assertEquals(1, WallpaperSampler.getSampleSize(112, 112));
+        assertEquals(2, WallpaperSampler.getSampleSize(224, 224));
+        assertEquals(32, WallpaperSampler.getSampleSize(1440, 2560));
+    }
+
+    public void testRegionScaledDown() {
+        Bitmap bitmap = Bitmap.createBitmap(1000, 1000, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLUE);
+        List<Palette.Swatch> swatches =
+                mSampler.sampleRegion(bitmap, new Rect(0, 500, 1000, 1000));
+        assertEquals(1, swatches.size());
+        assertEquals(Color.BLUE, swatches.get(0).getRgb());
+        assertTrue(swatches.get(0).getPopulation() <= WallpaperSampler.MAX_SAMPLE_AREA);
+    }
+}
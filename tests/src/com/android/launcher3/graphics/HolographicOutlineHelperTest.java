@@ -0,0 +1,83 @@
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Tests for {@link HolographicOutlineHelper} and {@link BitmapPool}
+ */
+public class HolographicOutlineHelperTest extends AndroidTestCase {
+
+    private HolographicOutlineHelper mHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mHelper = HolographicOutlineHelper.getInstance(getContext());
+        mHelper.clearCaches();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHelper.clearCaches();
+        super.tearDown();
+    }
+
+    @SmallTest
+    public void testPoolReusesLargerBitmap() {
+        BitmapPool pool = new BitmapPool(2, 1024 * 1024);
+        Bitmap large = pool.acquire(100, 100, Bitmap.Config.ALPHA_8);
+        pool.release(large);
+
+        Bitmap small = pool.acquire(50, 40, Bitmap.Config.ALPHA_8);
+        assertSame(large, small);
+        assertEquals(50, small.getWidth());
+        assertEquals(40, small.getHeight());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @SmallTest
+    public void testPoolRespectsLimits() {
+        BitmapPool pool = new BitmapPool(2, 1024 * 1024);
+        pool.release(Bitmap.createBitmap(10, 10, Bitmap.Config.ALPHA_8));
+        pool.release(Bitmap.createBitmap(20, 20, Bitmap.Config.ALPHA_8));
+        pool.release(Bitmap.createBitmap(30, 30, Bitmap.Config.ALPHA_8));
+        assertEquals(20 * 20 + 30 * 30, pool.getPooledBytes());
+
+        // Bitmaps larger than the pool are never kept.
+        pool.release(Bitmap.createBitmap(1024, 1025, Bitmap.Config.ALPHA_8));
+        assertEquals(20 * 20 + 30 * 30, pool.getPooledBytes());
+    }
+
+    @SmallTest
+    public void testOutlineCachedPerItemAndContent() {
+        Bitmap outline = Bitmap.createBitmap(10, 10, Bitmap.Config.ALPHA_8);
+        mHelper.cacheOutline(1, 42, outline);
+        assertSame(outline, mHelper.getCachedOutline(1, 10, 10, 42));
+        assertNull(mHelper.getCachedOutline(1, 10, 10, 43));
+        assertNull(mHelper.getCachedOutline(2, 10, 10, 42));
+        assertNull(mHelper.getCachedOutline(1, 12, 10, 42));
+    }
+
+    @SmallTest
+    public void testOutlineKeepsShape() {
+        Bitmap outline = createShape(100, 100);
+        mHelper.applyExpensiveOutlineWithBlur(outline, new Canvas());
+        // The outline is drawn around the edge of the shape, and nothing is left in its center.
+        assertTrue(Color.alpha(outline.getPixel(10, 50)) > 0);
+        assertEquals(0, Color.alpha(outline.getPixel(50, 50)));
+    }
+
+    private static Bitmap createShape(int width, int height) {
+        Bitmap b = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.BLACK);
+        new Canvas(b).drawRoundRect(width / 10, height / 10, width * 9 / 10, height * 9 / 10,
+                width / 10, height / 10, paint);
+        return b;
+    }
+}
@@ -0,0 +1,336 @@
+package com.android.launcher3.graphics;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Drawable.ConstantState;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for {@link IconNormalizer} and {@link ShadowGenerator}
+ */
+public class IconNormalizerTest extends AndroidTestCase {
+
+    private static final String TAG = "IconNormalizerTest";
+
+    private static final int NUM_ICONS = 200;
+    private static final int NUM_SHAPES = 8;
+    private static final int MAX_RECORDED_MASKS = 100;
+    // Not a multiple of 8, so that the end of the rows is masked.
+    private static final int MASK_SIZE = 189;
+    private static final int MIN_VISIBLE_ALPHA = 40;
+
+    private Bitmap[] mSources;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSources = new Bitmap[NUM_SHAPES];
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.BLUE);
+        for (int i = 0; i < NUM_SHAPES; i++) {
+            mSources[i] = Bitmap.createBitmap(192, 192, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(mSources[i]);
+            // From a circle to a full square.
+            float radius = 96 - i * 12;
+            canvas.drawRoundRect(new RectF(8 * i, 8 * i, 192 - 8 * i, 192 - 8 * i),
+                    radius, radius, paint);
+        }
+    }
+
+    @SmallTest
+    public void testInstancesPooled() throws Exception {
+        IconNormalizer normalizer = IconNormalizer.obtain(getContext());
+        IconNormalizer other = IconNormalizer.obtain(getContext());
+        assertNotSame(normalizer, other);
+        other.recycle();
+        normalizer.recycle();
+        // Recycled instances are reused, on any thread.
+        IconNormalizer reused = Executors.newSingleThreadExecutor().submit(
+                new Callable<IconNormalizer>() {
+                    @Override
+                    public IconNormalizer call() {
+                        return IconNormalizer.obtain(getContext());
+                    }
+                }).get();
+        assertTrue(reused == normalizer || reused == other);
+        reused.recycle();
+
+        ShadowGenerator generator = ShadowGenerator.obtain(getContext());
+        ShadowGenerator otherGenerator = ShadowGenerator.obtain(getContext());
+        assertNotSame(generator, otherGenerator);
+        otherGenerator.recycle();
+        generator.recycle();
+        ShadowGenerator reusedGenerator = ShadowGenerator.obtain(getContext());
+        assertTrue(reusedGenerator == generator || reusedGenerator == otherGenerator);
+        reusedGenerator.recycle();
+    }
+
+    @SmallTest
+    public void testScaleCachedPerConstantState() {
+        Resources res = getContext().getResources();
+        IconNormalizer normalizer = IconNormalizer.obtain(getContext());
+
+        CountingState state = new CountingState(mSources[2]);
+        RectF bounds = new RectF();
+        float scale = normalizer.getScale(state.newDrawable(res), bounds, null, null);
+        assertEquals(1, state.drawCount);
+
+        // Same constant state, as for drawables loaded from the same resource: the icon is not
+        // drawn again to compute the scale.
+        RectF copyBounds = new RectF();
+        assertEquals(scale, normalizer.getScale(state.newDrawable(res), copyBounds, null, null));
+        assertEquals(bounds, copyBounds);
+        assertEquals(1, state.drawCount);
+
+        // Same pixels in a new constant state, computed again.
+        CountingState otherState = new CountingState(mSources[2]);
+        assertEquals(scale, normalizer.getScale(otherState.newDrawable(res), null, null, null));
+        assertEquals(1, otherState.drawCount);
+        normalizer.recycle();
+    }
+
+    @LargeTest
+    public void testParallelIconGeneration() throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        float[] expected = new float[NUM_ICONS];
+        // Warm up, so that neither run pays for the first allocations.
+        generateIcons(threads, expected);
+        long singleMillis = generateIcons(1, expected);
+        float[] actual = new float[NUM_ICONS];
+        long parallelMillis = generateIcons(threads, actual);
+
+        Log.d(TAG, "Generated " + NUM_ICONS + " icons in " + singleMillis + "ms on 1 thread, "
+                + parallelMillis + "ms on " + threads + " threads");
+        for (int i = 0; i < NUM_ICONS; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+
+    /**
+     * Normalizes and adds a shadow to {@link #NUM_ICONS} new drawables on {@param threads}
+     * threads, and returns the time it took.
+     */
+    private long generateIcons(int threads, final float[] outScales) throws Exception {
+        final Resources res = getContext().getResources();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < NUM_ICONS; i++) {
+                final int index = i;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        // A new drawable every time, so that the scale is not cached.
+                        Drawable icon = new BitmapDrawable(res, mSources[index % NUM_SHAPES]);
+                        IconNormalizer normalizer = IconNormalizer.obtain(getContext());
+                        try {
+                            outScales[index] = normalizer.getScale(icon, null, null, null);
+                        } finally {
+                            normalizer.recycle();
+                        }
+                        Bitmap bitmap = LauncherIcons.createIconBitmap(
+                                icon, getContext(), outScales[index]);
+                        ShadowGenerator.addShadow(bitmap, getContext());
+                        return null;
+                    }
+                });
+            }
+            long start = SystemClock.elapsedRealtime();
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+            return SystemClock.elapsedRealtime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @MediumTest
+    public void testScanBordersMatchesPixelScan() {
+        List<byte[]> masks = recordMasks();
+        int rowWords = (MASK_SIZE + 7) / 8;
+        List<long[]> wordMasks = new ArrayList<>();
+        for (byte[] mask : masks) {
+            wordMasks.add(toWords(mask, rowWords));
+        }
+
+        float[] left = new float[MASK_SIZE];
+        float[] right = new float[MASK_SIZE];
+        float[] expectedLeft = new float[MASK_SIZE];
+        float[] expectedRight = new float[MASK_SIZE];
+        Rect bounds = new Rect();
+        Rect expectedBounds = new Rect();
+        for (int i = 0; i < masks.size(); i++) {
+            int count = IconNormalizer.scanBorders(wordMasks.get(i), rowWords, MASK_SIZE,
+                    MASK_SIZE, left, right, bounds, true);
+            int expectedCount = scanPixels(masks.get(i), rowWords * 8, expectedLeft,
+                    expectedRight, expectedBounds);
+            assertEquals(expectedCount, count);
+            assertEquals(expectedBounds, bounds);
+            assertTrue(Arrays.equals(expectedLeft, left));
+            assertTrue(Arrays.equals(expectedRight, right));
+        }
+    }
+
+    /**
+     * Records the alpha masks of the installed app icons, and of the test shapes.
+     */
+    private List<byte[]> recordMasks() {
+        List<Drawable> icons = new ArrayList<>();
+        for (Bitmap source : mSources) {
+            icons.add(new BitmapDrawable(getContext().getResources(), source));
+        }
+        PackageManager pm = getContext().getPackageManager();
+        for (ApplicationInfo info : pm.getInstalledApplications(0)) {
+            if (icons.size() >= MAX_RECORDED_MASKS) {
+                break;
+            }
+            icons.add(info.loadIcon(pm));
+        }
+
+        int stride = (MASK_SIZE + 7) / 8 * 8;
+        List<byte[]> masks = new ArrayList<>();
+        for (Drawable icon : icons) {
+            Bitmap bitmap = Bitmap.createBitmap(stride, MASK_SIZE, Bitmap.Config.ALPHA_8);
+            icon.setBounds(0, 0, MASK_SIZE, MASK_SIZE);
+            icon.draw(new Canvas(bitmap));
+            byte[] mask = new byte[bitmap.getRowBytes() * MASK_SIZE];
+            assertEquals(stride, bitmap.getRowBytes());
+            bitmap.copyPixelsToBuffer(ByteBuffer.wrap(mask));
+            bitmap.recycle();
+            masks.add(mask);
+        }
+        return masks;
+    }
+
+    private static long[] toWords(byte[] mask, int rowWords) {
+        long[] words = new long[rowWords * MASK_SIZE];
+        ByteBuffer.wrap(mask).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words);
+        return words;
+    }
+
+    /**
+     * Reference implementation, going through the pixels one by one.
+     */
+    private static int scanPixels(byte[] mask, int stride, float[] outLeft, float[] outRight,
+            Rect outBounds) {
+        int count = 0;
+        int topY = -1;
+        int bottomY = -1;
+        int leftX = Integer.MAX_VALUE;
+        int rightX = -1;
+        for (int y = 0; y < MASK_SIZE; y++) {
+            int firstX = -1;
+            int lastX = -1;
+            for (int x = 0; x < MASK_SIZE; x++) {
+                if ((mask[y * stride + x] & 0xFF) > MIN_VISIBLE_ALPHA) {
+                    if (firstX == -1) {
+                        firstX = x;
+                    }
+                    lastX = x;
+                    count++;
+                }
+            }
+            outLeft[y] = firstX;
+            outRight[y] = lastX;
+            if (firstX != -1) {
+                bottomY = y;
+                if (topY == -1) {
+                    topY = y;
+                }
+                leftX = Math.min(leftX, firstX);
+                rightX = Math.max(rightX, lastX);
+            }
+        }
+        outBounds.set(topY == -1 ? -1 : leftX, topY, rightX, bottomY);
+        return count;
+    }
+
+    /**
+     * Draws a bitmap, and counts how many times the drawables sharing this state were drawn.
+     */
+    private static class CountingState extends ConstantState {
+        final Bitmap bitmap;
+        int drawCount;
+
+        CountingState(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new CountingDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+
+    private static class CountingDrawable extends Drawable {
+        private final CountingState mState;
+
+        CountingDrawable(CountingState state) {
+            mState = state;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            mState.drawCount++;
+            canvas.drawBitmap(mState.bitmap, null, getBounds(), null);
+        }
+
+        @Override
+        public ConstantState getConstantState() {
+            return mState;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return mState.bitmap.getWidth();
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return mState.bitmap.getHeight();
+        }
+
+        @Override
+        public void setAlpha(int alpha) { }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) { }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+    }
+}
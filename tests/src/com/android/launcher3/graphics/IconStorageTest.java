@@ -0,0 +1,80 @@
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.Utilities;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Tests for {@link IconStorage}
+ */
+@SmallTest
+public class IconStorageTest extends AndroidTestCase {
+
+    private static final int ICON_SIZE = 48;
+
+    private Bitmap mIcon;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIcon = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+        mIcon.eraseColor(Color.RED);
+    }
+
+    public void testSoftwareBitmapUnchanged() {
+        assertSame(mIcon, IconStorage.toSoftware(mIcon));
+        assertFalse(IconStorage.isHardware(mIcon));
+        if (!IconStorage.USE_HARDWARE_BITMAPS) {
+            assertSame(mIcon, IconStorage.toStorage(mIcon));
+        }
+    }
+
+    public void testHardwareBitmapReadable() {
+        if (!Utilities.ATLEAST_OREO) {
+            return;
+        }
+        Bitmap hardwareIcon = mIcon.copy(Bitmap.Config.HARDWARE, false);
+        assertTrue(IconStorage.isHardware(hardwareIcon));
+
+        Bitmap softwareIcon = IconStorage.toSoftware(hardwareIcon);
+        assertFalse(IconStorage.isHardware(softwareIcon));
+        assertEquals(Color.RED, softwareIcon.getPixel(ICON_SIZE / 2, ICON_SIZE / 2));
+        assertEquals(Utilities.findDominantColorByHue(mIcon, 20),
+                Utilities.findDominantColorByHue(hardwareIcon, 20));
+    }
+
+    public void testHardwareBitmapDrawnOnSoftwareCanvas() {
+        if (!Utilities.ATLEAST_OREO) {
+            return;
+        }
+        FastBitmapDrawable drawable =
+                new FastBitmapDrawable(mIcon.copy(Bitmap.Config.HARDWARE, false));
+        drawable.setBounds(0, 0, ICON_SIZE, ICON_SIZE);
+
+        // As when creating a drag preview.
+        Bitmap preview = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+        drawable.draw(new Canvas(preview));
+        assertEquals(Color.RED, preview.getPixel(ICON_SIZE / 2, ICON_SIZE / 2));
+    }
+
+    public void testUsageCountsSharedIconsOnce() {
+        IconStorage.Usage usage = new IconStorage.Usage();
+        usage.add(mIcon);
+        usage.add(mIcon);
+        usage.add(null);
+
+        StringWriter out = new StringWriter();
+        usage.dump("", new PrintWriter(out, true));
+        assertTrue(out.toString().contains(
+                "heap: icons=1 bytes=" + mIcon.getAllocationByteCount()));
+        assertTrue(out.toString().contains("hardware: icons=0 bytes=0"));
+    }
+}
@@ -6,6 +6,7 @@ import android.test.suitebuilder.annotation.SmallTest;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Calendar;
 
 /**
@@ -14,6 +15,8 @@ import java.util.Calendar;
 @SmallTest
 public class FileLogTest extends AndroidTestCase {
 
+    private static final int NUM_LINES = 20000;
+
     private File mTempDir;
 
     @Override
@@ -80,4 +83,55 @@ public class FileLogTest extends AndroidTestCase {
         // Old logs have been truncated
         assertFalse(writer.toString().contains("hoolalala"));
     }
+
+    public void testFullLogDropsOldestLines() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        // Write one and a half log files worth of lines.
+        char[] padding = new char[500];
+        Arrays.fill(padding, '.');
+        String suffix = new String(padding);
+        int lineCount = FileLog.MAX_LOG_FILE_SIZE * 3 / 2 / (suffix.length() + 32);
+        for (int i = 0; i < lineCount; i++) {
+            FileLog.print("Testing", "line " + i + " " + suffix);
+            if (i % 1000 == 0) {
+                // Don't let the writer fall behind.
+                FileLog.flushAll(null);
+            }
+        }
+
+        StringWriter writer = new StringWriter();
+        FileLog.flushAll(new PrintWriter(writer));
+        String logs = writer.toString();
+        assertFalse(logs.contains("Testing line 0 "));
+        // Only the oldest lines are dropped when the file starts over.
+        assertTrue(logs.contains("Testing line " + (lineCount * 3 / 4) + " "));
+        assertTrue(logs.contains("Testing line " + (lineCount - 1) + " "));
+        assertTrue(logs.indexOf("Testing line " + (lineCount * 3 / 4) + " ")
+                < logs.indexOf("Testing line " + (lineCount - 1) + " "));
+    }
+
+    public void testChangeDirWhileWriting() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        for (int i = 0; i < NUM_LINES; i++) {
+            FileLog.print("Testing", "line " + i);
+        }
+        File newDir = new File(mTempDir, "new-dir");
+        assertTrue(newDir.mkdir());
+        try {
+            FileLog.setDir(newDir);
+            FileLog.print("Testing", "hoolalala");
+            StringWriter writer = new StringWriter();
+            FileLog.flushAll(new PrintWriter(writer));
+            assertTrue(writer.toString().contains("hoolalala"));
+        } finally {
+            FileLog.setDir(mTempDir);
+            new File(newDir, "log-0").delete();
+            new File(newDir, "log-1").delete();
+            newDir.delete();
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package com.android.launcher3.logging;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.model.nano.LauncherDumpProto.StartupRecord;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link StartupTimeline}
+ */
+@SmallTest
+public class StartupTimelineTest extends TestCase {
+
+    private static final long ORIGIN_NANOS = 5000000000L;
+    private static final long MILLIS = 1000000;
+
+    public void testPhasesRelativeToOrigin() {
+        StartupTimeline timeline = new StartupTimeline(ORIGIN_NANOS, 1234);
+        timeline.beginAt(StartupTimeline.PHASE_LOAD_WORKSPACE, ORIGIN_NANOS + 10 * MILLIS);
+        timeline.endAt(StartupTimeline.PHASE_LOAD_WORKSPACE, ORIGIN_NANOS + 30 * MILLIS);
+
+        StartupRecord record = timeline.toRecord();
+        assertEquals(1234, record.timeMillis);
+        assertEquals(10000, record.phaseStartMicros[StartupTimeline.PHASE_LOAD_WORKSPACE]);
+        assertEquals(30000, record.phaseEndMicros[StartupTimeline.PHASE_LOAD_WORKSPACE]);
+        assertEquals(-1, record.phaseStartMicros[StartupTimeline.PHASE_LOAD_ALL_APPS]);
+        assertEquals(-1, record.phaseEndMicros[StartupTimeline.PHASE_LOAD_ALL_APPS]);
+    }
+
+    public void testOnlyFirstOccurrenceRecorded() {
+        StartupTimeline timeline = new StartupTimeline(ORIGIN_NANOS, 0);
+        // An end without a start is ignored.
+        timeline.endAt(StartupTimeline.PHASE_BIND_DEFERRED, ORIGIN_NANOS + 5 * MILLIS);
+        timeline.beginAt(StartupTimeline.PHASE_BIND_DEFERRED, ORIGIN_NANOS + 10 * MILLIS);
+        timeline.endAt(StartupTimeline.PHASE_BIND_DEFERRED, ORIGIN_NANOS + 20 * MILLIS);
+        timeline.beginAt(StartupTimeline.PHASE_BIND_DEFERRED, ORIGIN_NANOS + 40 * MILLIS);
+        timeline.endAt(StartupTimeline.PHASE_BIND_DEFERRED, ORIGIN_NANOS + 50 * MILLIS);
+
+        StartupRecord record = timeline.toRecord();
+        assertEquals(10000, record.phaseStartMicros[StartupTimeline.PHASE_BIND_DEFERRED]);
+        assertEquals(20000, record.phaseEndMicros[StartupTimeline.PHASE_BIND_DEFERRED]);
+    }
+
+    public void testCounters() {
+        StartupTimeline timeline = new StartupTimeline(ORIGIN_NANOS, 0);
+        timeline.add(StartupTimeline.COUNTER_BYTES_DECODED, 100);
+        timeline.add(StartupTimeline.COUNTER_BYTES_DECODED, 50);
+        timeline.add(StartupTimeline.COUNTER_ICONS_FROM_DB, 1);
+
+        StartupRecord record = timeline.toRecord();
+        assertEquals(150, record.counters[StartupTimeline.COUNTER_BYTES_DECODED]);
+        assertEquals(1, record.counters[StartupTimeline.COUNTER_ICONS_FROM_DB]);
+        assertEquals(0, record.counters[StartupTimeline.COUNTER_ICONS_GENERATED]);
+    }
+
+    public void testAppendLaunchKeepsMostRecent() {
+        StartupRecord[] launches = new StartupRecord[0];
+        for (int i = 0; i < StartupTimeline.MAX_LAUNCHES + 3; i++) {
+            StartupRecord record = new StartupRecord();
+            record.timeMillis = i;
+            launches = StartupTimeline.appendLaunch(launches, record);
+        }
+        assertEquals(StartupTimeline.MAX_LAUNCHES, launches.length);
+        for (int i = 0; i < launches.length; i++) {
+            assertEquals(StartupTimeline.MAX_LAUNCHES + 2 - i, launches[i].timeMillis);
+        }
+    }
+}
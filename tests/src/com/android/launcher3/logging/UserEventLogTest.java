@@ -0,0 +1,128 @@
+package com.android.launcher3.logging;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.android.launcher3.userevent.nano.LauncherLogProto.Action;
+import com.android.launcher3.userevent.nano.LauncherLogProto.ContainerType;
+import com.android.launcher3.userevent.nano.LauncherLogProto.LauncherEvent;
+import com.android.launcher3.userevent.nano.LauncherLogProto.Target;
+import com.android.launcher3.util.AllocationCounter;
+
+import java.io.File;
+import java.util.List;
+
+import static com.android.launcher3.logging.LoggerUtils.newContainerTarget;
+import static com.android.launcher3.logging.LoggerUtils.newLauncherEvent;
+import static com.android.launcher3.logging.LoggerUtils.newTouchAction;
+
+/**
+ * Tests for {@link UserEventLog}
+ */
+@MediumTest
+public class UserEventLogTest extends AndroidTestCase {
+
+    private static final int BLOCK_SIZE = 4 * 1024;
+    private static final int NUM_BLOCKS = 4;
+
+    private File mTempDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        int count = 0;
+        do {
+            mTempDir = new File(getContext().getCacheDir(), "user-event-test-" + (count++));
+        } while (!mTempDir.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mTempDir.listFiles()) {
+            file.delete();
+        }
+        mTempDir.delete();
+        super.tearDown();
+    }
+
+    public void testEventsReadBack() throws Exception {
+        UserEventLog log = new UserEventLog(mTempDir, BLOCK_SIZE, NUM_BLOCKS, null);
+        // More than a block worth of events.
+        int count = 300;
+        for (int i = 0; i < count; i++) {
+            log.log(newEvent(i));
+        }
+        log.flush();
+        log.waitForWrites();
+
+        List<LauncherEvent> events = UserEventLog.readEvents(mTempDir);
+        assertEquals(count, events.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, events.get(i).srcTarget[0].pageIndex);
+            assertEquals(Action.Touch.TAP, events.get(i).action.touch);
+        }
+        assertEquals(0, log.getDroppedEvents());
+    }
+
+    public void testUnflushedEventsNotWritten() throws Exception {
+        UserEventLog log = new UserEventLog(mTempDir, BLOCK_SIZE, NUM_BLOCKS, null);
+        log.log(newEvent(1));
+        log.waitForWrites();
+        assertTrue(UserEventLog.readEvents(mTempDir).isEmpty());
+
+        log.flush();
+        log.waitForWrites();
+        assertEquals(1, UserEventLog.readEvents(mTempDir).size());
+    }
+
+    public void testRotation() throws Exception {
+        UserEventLog log = new UserEventLog(mTempDir, BLOCK_SIZE, NUM_BLOCKS, null);
+        int minEventSize = newEvent(0).getSerializedSize() + 1;
+        int maxEventSize = newEvent(1 << 20).getSerializedSize() + 1;
+        // Enough events to rotate the file twice.
+        int count = (int) (UserEventLog.MAX_FILE_SIZE * 5 / 2 / minEventSize);
+        for (int i = 0; i < count; i++) {
+            log.log(newEvent(i));
+            if (i % 100 == 0) {
+                // Let the writer catch up, so that no event is dropped.
+                log.waitForWrites();
+            }
+        }
+        log.flush();
+        log.waitForWrites();
+        assertEquals(0, log.getDroppedEvents());
+
+        List<LauncherEvent> events = UserEventLog.readEvents(mTempDir);
+        assertTrue(events.size() < count);
+        assertTrue(events.size() * maxEventSize >= UserEventLog.MAX_FILE_SIZE);
+        // The most recent events are kept, in order.
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(count - events.size() + i, events.get(i).srcTarget[0].pageIndex);
+        }
+    }
+
+    public void testLogDoesNotAllocate() throws Exception {
+        final UserEventLog log = new UserEventLog(mTempDir, BLOCK_SIZE, NUM_BLOCKS, null);
+        final LauncherEvent event = newEvent(1);
+        log.log(event);
+
+        assertEquals(0, AllocationCounter.countThreadAllocations(new Runnable() {
+            @Override
+            public void run() {
+                // Less than a block, the hand over to the writer thread is not measured.
+                for (int i = 0; i < 100; i++) {
+                    log.log(event);
+                }
+            }
+        }));
+    }
+
+    private static LauncherEvent newEvent(int pageIndex) {
+        LauncherEvent event = newLauncherEvent(newTouchAction(Action.Touch.TAP),
+                newContainerTarget(ContainerType.WORKSPACE), new Target());
+        event.srcTarget[0].pageIndex = pageIndex;
+        event.elapsedContainerMillis = 1000;
+        event.elapsedSessionMillis = 5000;
+        return event;
+    }
+}
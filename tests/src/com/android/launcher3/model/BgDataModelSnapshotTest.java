@@ -0,0 +1,236 @@
+package com.android.launcher3.model;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.FolderInfo;
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.LauncherSettings;
+import com.android.launcher3.ShortcutInfo;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link BgDataModel.Snapshot}
+ */
+public class BgDataModelSnapshotTest extends AndroidTestCase {
+
+    private static final long DURATION_MS = 1000;
+    private static final int NUM_READERS = 3;
+
+    private BgDataModel mModel;
+    private long mNextId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mModel = new BgDataModel();
+        mNextId = 1;
+    }
+
+    @SmallTest
+    public void testSnapshotPublishedOnChange() {
+        BgDataModel.Snapshot initial = mModel.getSnapshot();
+        ShortcutInfo info = newShortcut(0);
+        mModel.addItem(getContext(), info, false);
+
+        BgDataModel.Snapshot snapshot = mModel.getSnapshot();
+        assertTrue(snapshot.version > initial.version);
+        assertSame(info, snapshot.itemsIdMap.get(info.id));
+        assertTrue(snapshot.workspaceItems.contains(info));
+
+        // Older snapshots are not affected by later changes
+        mModel.removeItem(getContext(), info);
+        assertSame(info, snapshot.itemsIdMap.get(info.id));
+        assertNull(mModel.getSnapshot().itemsIdMap.get(info.id));
+        assertEquals(0, initial.itemsIdMap.size());
+    }
+
+    @SmallTest
+    public void testBatchUpdatePublishesOnce() {
+        long version = mModel.getSnapshot().version;
+        mModel.beginBatchUpdate();
+        for (int i = 0; i < 10; i++) {
+            mModel.addItem(getContext(), newShortcut(i), false);
+        }
+        assertEquals(version, mModel.getSnapshot().version);
+
+        mModel.endBatchUpdate();
+        assertEquals(version + 1, mModel.getSnapshot().version);
+        assertEquals(10, mModel.getSnapshot().itemsIdMap.size());
+    }
+
+    @SmallTest
+    public void testDirectChangesNeedPublish() {
+        synchronized (mModel) {
+            mModel.workspaceScreens.add(5L);
+        }
+        assertTrue(mModel.getSnapshot().workspaceScreens.isEmpty());
+        mModel.publishSnapshot();
+        assertEquals(1, mModel.getSnapshot().workspaceScreens.size());
+    }
+
+    @SmallTest
+    public void testSnapshotPublishedOncePerChange() {
+        long version = mModel.getSnapshot().version;
+        mModel.addItem(getContext(), newShortcut(0), false);
+        BgDataModel.Snapshot snapshot = mModel.getSnapshot();
+        assertEquals(version + 1, snapshot.version);
+        // Reads without changes return the same snapshot.
+        assertSame(snapshot, mModel.getSnapshot());
+    }
+
+    @SmallTest
+    public void testSnapshotReadWithoutLock() throws Exception {
+        mModel.addItem(getContext(), newShortcut(0), false);
+        final AtomicReference<BgDataModel.Snapshot> read = new AtomicReference<>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                read.set(mModel.getSnapshot());
+            }
+        };
+        synchronized (mModel) {
+            reader.start();
+            reader.join(DURATION_MS);
+            assertFalse(reader.isAlive());
+        }
+        assertEquals(1, read.get().itemsIdMap.size());
+    }
+
+    @SmallTest
+    public void testFolderContentsCopied() {
+        FolderInfo folder = new FolderInfo();
+        folder.id = mNextId++;
+        folder.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        folder.contents.add(newShortcut(0));
+        mModel.addItem(getContext(), folder, false);
+
+        BgDataModel.Snapshot snapshot = mModel.getSnapshot();
+        folder.contents.clear();
+        assertEquals(1, snapshot.folderContents.get(folder.id).size());
+    }
+
+    @SmallTest
+    public void testDumpItemMovedToUnknownScreen() {
+        synchronized (mModel) {
+            mModel.workspaceScreens.add(1L);
+            mModel.publishSnapshot();
+        }
+        ShortcutInfo info = newShortcut(0);
+        info.screenId = 1;
+        mModel.addItem(getContext(), info, false);
+        int dumpedLines = dumpDebugProto().length;
+
+        // Moved after the snapshot was taken, it is left out of the dump instead of failing.
+        info.screenId = 2;
+        assertEquals(dumpedLines - 1, dumpDebugProto().length);
+    }
+
+    /**
+     * Replays package updates, which remove and re-add items under the model lock, against
+     * concurrent snapshot reads, which must always see the complete workspace.
+     */
+    @LargeTest
+    public void testSnapshotsConsistentWithConcurrentUpdates() throws Exception {
+        final int numItems = 200;
+        mModel.beginBatchUpdate();
+        for (int i = 0; i < numItems; i++) {
+            mModel.addItem(getContext(), newShortcut(i), false);
+        }
+        mModel.endBatchUpdate();
+
+        assertTrue(runReadersAgainstUpdates(numItems) > 0);
+    }
+
+    private long runReadersAgainstUpdates(final int numItems) throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicBoolean inconsistent = new AtomicBoolean(false);
+        final CountDownLatch done = new CountDownLatch(NUM_READERS + 1);
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    // Simulate a package update which replaces a few items at once.
+                    synchronized (mModel) {
+                        ArrayList<ItemInfo> removed = new ArrayList<>();
+                        for (int i = 0; i < 5 && i < mModel.workspaceItems.size(); i++) {
+                            removed.add(mModel.workspaceItems.get(i));
+                        }
+                        mModel.beginBatchUpdate();
+                        mModel.removeItem(getContext(), removed);
+                        for (int i = 0; i < removed.size(); i++) {
+                            mModel.addItem(getContext(), newShortcut(i), false);
+                        }
+                        mModel.endBatchUpdate();
+                    }
+                }
+                done.countDown();
+            }
+        };
+
+        ArrayList<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < NUM_READERS; r++) {
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        BgDataModel.Snapshot snapshot = mModel.getSnapshot();
+                        if (countDesktopItems(snapshot.itemsIdMap) != numItems
+                                || snapshot.workspaceItems.size() != numItems) {
+                            inconsistent.set(true);
+                        }
+                        reads.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread t : readers) {
+            t.start();
+        }
+        SystemClock.sleep(DURATION_MS);
+        running.set(false);
+        done.await();
+
+        assertFalse(inconsistent.get());
+        return reads.get();
+    }
+
+    private String[] dumpDebugProto() {
+        StringWriter out = new StringWriter();
+        mModel.dump("", null, new PrintWriter(out), new String[] {"--proto", "--debug"});
+        return out.toString().split("\n");
+    }
+
+    private static int countDesktopItems(Iterable<ItemInfo> items) {
+        int count = 0;
+        for (ItemInfo info : items) {
+            if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private synchronized ShortcutInfo newShortcut(int position) {
+        ShortcutInfo info = new ShortcutInfo();
+        info.id = mNextId++;
+        info.itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
+        info.container = LauncherSettings.Favorites.CONTAINER_DESKTOP;
+        info.cellX = position;
+        return info;
+    }
+}
@@ -0,0 +1,147 @@
+package com.android.launcher3.model;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.android.launcher3.AutoInstallsLayout;
+import com.android.launcher3.DefaultLayoutParser;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherProvider.DatabaseHelper;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.R;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link CompiledLayout}
+ */
+@MediumTest
+public class CompiledLayoutTest extends AndroidTestCase {
+
+    private Context mTargetContext;
+    private InvariantDeviceProfile mIdp;
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTargetContext = InstrumentationRegistry.getTargetContext();
+        mIdp = new InvariantDeviceProfile();
+        mIdp.numRows = 4;
+        mIdp.numColumns = 4;
+        mIdp.numHotseatIcons = 5;
+        mIdp.iconBitmapSize = 96;
+        mIdp.fillResIconDpi = 320;
+        mFile = new File(getContext().getCacheDir(), "compiled_layout_test.db");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testReplayMatchesParse() {
+        MyDatabaseHelper parsedHelper = new MyDatabaseHelper();
+        ArrayList<Long> parsedScreens = new ArrayList<>();
+        int parsedCount = parseAndWrite(parsedHelper, parsedScreens);
+
+        CompiledLayout compiled = CompiledLayout.loadIfValid(mTargetContext, mFile, mIdp,
+                newLoader(new MyDatabaseHelper(), R.xml.default_workspace_4x4));
+        assertNotNull(compiled);
+
+        SQLiteDatabase replayedDb = new MyDatabaseHelper().getWritableDatabase();
+        ArrayList<Long> replayedScreens = new ArrayList<>();
+        assertEquals(parsedCount, compiled.replay(mTargetContext, replayedDb,
+                null /* widgetHost */, replayedScreens));
+        assertEquals(parsedScreens, replayedScreens);
+
+        try (Cursor expected = queryAll(parsedHelper.getWritableDatabase());
+             Cursor actual = queryAll(replayedDb)) {
+            assertEquals(expected.getCount(), actual.getCount());
+            while (expected.moveToNext()) {
+                assertTrue(actual.moveToNext());
+                for (int i = 0; i < ModelSnapshot.COLUMNS.length; i++) {
+                    String column = ModelSnapshot.COLUMNS[i];
+                    assertEquals(column, expected.isNull(i), actual.isNull(i));
+                    if (column.equals(Favorites.ICON)) {
+                        assertTrue(Arrays.equals(expected.getBlob(i), actual.getBlob(i)));
+                    } else if (!expected.isNull(i)) {
+                        assertEquals(column, expected.getString(i), actual.getString(i));
+                    }
+                }
+            }
+        }
+        // Replayed rows are marked as modified, which the model snapshot fingerprint relies on.
+        assertEquals(0, DatabaseUtils.queryNumEntries(replayedDb, Favorites.TABLE_NAME,
+                Favorites.MODIFIED + "=0"));
+    }
+
+    public void testLayoutChangeInvalidates() {
+        parseAndWrite(new MyDatabaseHelper(), new ArrayList<Long>());
+        assertNull(CompiledLayout.loadIfValid(mTargetContext, mFile, mIdp,
+                newLoader(new MyDatabaseHelper(), R.xml.default_workspace_5x5)));
+    }
+
+    public void testGridChangeInvalidates() {
+        parseAndWrite(new MyDatabaseHelper(), new ArrayList<Long>());
+        mIdp.numRows++;
+        assertNull(loadCompiled());
+    }
+
+    public void testIconSizeChangeInvalidates() {
+        parseAndWrite(new MyDatabaseHelper(), new ArrayList<Long>());
+        assertNotNull(loadCompiled());
+
+        mIdp.iconBitmapSize *= 2;
+        assertNull(loadCompiled());
+    }
+
+    public void testIconDensityChangeInvalidates() {
+        parseAndWrite(new MyDatabaseHelper(), new ArrayList<Long>());
+        mIdp.fillResIconDpi = 480;
+        assertNull(loadCompiled());
+    }
+
+    private int parseAndWrite(MyDatabaseHelper helper, ArrayList<Long> screenIds) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        AutoInstallsLayout loader = newLoader(helper, R.xml.default_workspace_4x4);
+        int count = loader.loadLayout(db, screenIds);
+        CompiledLayout.write(mTargetContext, mFile, mIdp, db, loader, count, screenIds);
+        assertTrue(mFile.exists());
+        return count;
+    }
+
+    private CompiledLayout loadCompiled() {
+        return CompiledLayout.loadIfValid(mTargetContext, mFile, mIdp,
+                newLoader(new MyDatabaseHelper(), R.xml.default_workspace_4x4));
+    }
+
+    private AutoInstallsLayout newLoader(MyDatabaseHelper helper, int layoutId) {
+        return new DefaultLayoutParser(mTargetContext, null /* appWidgetHost */, helper,
+                mTargetContext.getResources(), layoutId);
+    }
+
+    private static Cursor queryAll(SQLiteDatabase db) {
+        return db.query(Favorites.TABLE_NAME, ModelSnapshot.COLUMNS, null, null, null, null,
+                Favorites._ID);
+    }
+
+    private class MyDatabaseHelper extends DatabaseHelper {
+
+        MyDatabaseHelper() {
+            super(getContext(), null, null);
+        }
+
+        @Override
+        protected void onEmptyDbCreated() { }
+    }
+}
@@ -0,0 +1,172 @@
+package com.android.launcher3.model;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.test.ProviderTestCase2;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.LauncherSettings.Settings;
+import com.android.launcher3.LauncherSettings.WorkspaceScreens;
+import com.android.launcher3.util.TestLauncherProvider;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link ModelSnapshot}
+ */
+@MediumTest
+public class ModelSnapshotTest extends ProviderTestCase2<TestLauncherProvider> {
+
+    private static final String VALID_INTENT = new Intent(Intent.ACTION_MAIN)
+            .setPackage("com.android.launcher3.validpackage").toUri(0);
+
+    private ContentResolver mResolver;
+    private InvariantDeviceProfile mIdp;
+    private File mFile;
+
+    public ModelSnapshotTest() {
+        super(TestLauncherProvider.class, LauncherProvider.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+        mIdp = new InvariantDeviceProfile();
+        mIdp.numRows = 5;
+        mIdp.numColumns = 4;
+        mIdp.numHotseatIcons = 5;
+        mFile = new File(getContext().getCacheDir(), "model_snapshot_test.db");
+        mFile.delete();
+
+        Settings.call(mResolver, Settings.METHOD_CREATE_EMPTY_DB);
+        addScreen(1, 0);
+        addScreen(2, 1);
+        addItem(1, 0, 0, "App", new byte[] {1, 2, 3});
+        addItem(1, 1, 0, null, null);
+        addItem(2, 2, 3, "Other", null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testLoadMatchesDb() {
+        writeSnapshot();
+        ModelSnapshot snapshot = loadSnapshot();
+        assertNotNull(snapshot);
+
+        assertEquals(Arrays.asList(1L, 2L), snapshot.getWorkspaceScreens());
+        try (Cursor expected = mResolver.query(Favorites.CONTENT_URI, ModelSnapshot.COLUMNS,
+                null, null, Favorites._ID);
+             Cursor actual = snapshot.newFavoritesCursor()) {
+            assertEquals(3, expected.getCount());
+            assertEquals(expected.getCount(), actual.getCount());
+            while (expected.moveToNext()) {
+                assertTrue(actual.moveToNext());
+                for (int i = 0; i < ModelSnapshot.COLUMNS.length; i++) {
+                    String column = ModelSnapshot.COLUMNS[i];
+                    assertEquals(column, expected.isNull(i), actual.isNull(i));
+                    if (column.equals(Favorites.ICON)) {
+                        assertTrue(Arrays.equals(expected.getBlob(i), actual.getBlob(i)));
+                    } else if (!expected.isNull(i)) {
+                        assertEquals(column, expected.getString(i), actual.getString(i));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testMissingSnapshot() {
+        assertNull(loadSnapshot());
+    }
+
+    public void testItemUpdateInvalidates() {
+        writeSnapshot();
+        long id = addItem(1, 2, 2, "App", null);
+        assertNull(loadSnapshot());
+
+        writeSnapshot();
+        ContentValues values = new ContentValues();
+        values.put(Favorites.CELLX, 3);
+        mResolver.update(Favorites.getContentUri(id), values, null, null);
+        assertNull(loadSnapshot());
+
+        writeSnapshot();
+        mResolver.delete(Favorites.getContentUri(id), null, null);
+        assertNull(loadSnapshot());
+    }
+
+    public void testScreenUpdateInvalidates() {
+        writeSnapshot();
+        ContentValues values = new ContentValues();
+        values.put(WorkspaceScreens.SCREEN_RANK, 2);
+        mResolver.update(WorkspaceScreens.CONTENT_URI, values,
+                WorkspaceScreens._ID + "=1", null);
+        assertNull(loadSnapshot());
+    }
+
+    public void testGridChangeInvalidates() {
+        writeSnapshot();
+        mIdp.numColumns++;
+        assertNull(loadSnapshot());
+    }
+
+    public void testUpToDateUntilDbChanges() {
+        BgDataModel dataModel = new BgDataModel();
+        writeSnapshot(dataModel);
+        ModelSnapshot snapshot = loadSnapshot();
+        assertTrue(snapshot.isUpToDate(getMockContext(), dataModel));
+
+        addItem(2, 0, 0, "App", null);
+        assertFalse(snapshot.isUpToDate(getMockContext(), dataModel));
+    }
+
+    private void writeSnapshot() {
+        writeSnapshot(new BgDataModel());
+    }
+
+    private void writeSnapshot(BgDataModel dataModel) {
+        ModelSnapshot.write(getMockContext(), mFile, mIdp, dataModel);
+        assertTrue(mFile.exists());
+    }
+
+    private ModelSnapshot loadSnapshot() {
+        return ModelSnapshot.loadIfValid(mFile, mIdp, ModelSnapshot.readDbFingerprint(mResolver));
+    }
+
+    private void addScreen(long screenId, int rank) {
+        ContentValues values = new ContentValues();
+        values.put(WorkspaceScreens._ID, screenId);
+        values.put(WorkspaceScreens.SCREEN_RANK, rank);
+        mResolver.insert(WorkspaceScreens.CONTENT_URI, values);
+    }
+
+    private long addItem(long screen, int x, int y, String title, byte[] icon) {
+        long id = Settings.call(mResolver, Settings.METHOD_NEW_ITEM_ID)
+                .getLong(Settings.EXTRA_VALUE);
+        ContentValues values = new ContentValues();
+        values.put(Favorites._ID, id);
+        values.put(Favorites.CONTAINER, Favorites.CONTAINER_DESKTOP);
+        values.put(Favorites.SCREEN, screen);
+        values.put(Favorites.CELLX, x);
+        values.put(Favorites.CELLY, y);
+        values.put(Favorites.SPANX, 1);
+        values.put(Favorites.SPANY, 1);
+        values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_APPLICATION);
+        values.put(Favorites.INTENT, VALID_INTENT);
+        values.put(Favorites.TITLE, title);
+        values.put(Favorites.ICON, icon);
+        mResolver.insert(Favorites.CONTENT_URI, values);
+        return id;
+    }
+}
@@ -0,0 +1,140 @@
+package com.android.launcher3.popup;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.notification.NotificationInfo;
+import com.android.launcher3.notification.NotificationKeyData;
+import com.android.launcher3.shortcuts.ShortcutInfoCompat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PopupPrefetcher}, with the loading of the popup data replaced by a stub.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PopupPrefetcherTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private HandlerThread mWorkerThread;
+    private AtomicInteger mLoadCount;
+    private PopupPrefetcher mPrefetcher;
+
+    private ItemInfo mInfo;
+    private List<String> mShortcutIds;
+    private List<NotificationKeyData> mNotificationKeys;
+
+    @Before
+    public void setup() {
+        mWorkerThread = new HandlerThread("popup-prefetcher-test");
+        mWorkerThread.start();
+        mLoadCount = new AtomicInteger();
+        mPrefetcher = new PopupPrefetcher(null, mWorkerThread.getLooper()) {
+            @Override
+            Result load(ItemInfo info, List<String> shortcutIds,
+                    List<NotificationKeyData> notificationKeys, PrefetchTask task) {
+                mLoadCount.incrementAndGet();
+                return new Result(info, shortcutIds,
+                        NotificationKeyData.extractKeysOnly(notificationKeys),
+                        Collections.<ShortcutInfoCompat>emptyList(),
+                        Collections.<ShortcutInfo>emptyList(),
+                        Collections.<NotificationInfo>emptyList());
+            }
+        };
+
+        mInfo = new ItemInfo();
+        mShortcutIds = Arrays.asList("shortcut1", "shortcut2");
+        mNotificationKeys = Collections.emptyList();
+    }
+
+    @After
+    public void tearDown() {
+        mWorkerThread.quitSafely();
+    }
+
+    @Test
+    public void testPrefetchedResultReused() throws Exception {
+        mPrefetcher.startPrefetch(mInfo, mShortcutIds, mNotificationKeys);
+        waitForWorker();
+
+        PopupPrefetcher.Result result =
+                mPrefetcher.consume(mInfo, mShortcutIds, mNotificationKeys);
+        assertEquals(1, mLoadCount.get());
+        assertSame(mInfo, result.itemInfo);
+        assertEquals(mShortcutIds, result.shortcutIds);
+
+        // The result is only used by the popup it was loaded for.
+        assertNull(mPrefetcher.consume(mInfo, mShortcutIds, mNotificationKeys));
+    }
+
+    @Test
+    public void testResultForOtherShortcutsNotUsed() throws Exception {
+        mPrefetcher.startPrefetch(mInfo, mShortcutIds, mNotificationKeys);
+        waitForWorker();
+
+        assertNull(mPrefetcher.consume(mInfo, Arrays.asList("shortcut1"), mNotificationKeys));
+    }
+
+    @Test
+    public void testCancelledTouchDiscardsResult() throws Exception {
+        mPrefetcher.startPrefetch(mInfo, mShortcutIds, mNotificationKeys);
+        waitForWorker();
+        assertEquals(1, mLoadCount.get());
+
+        mPrefetcher.cancel();
+        assertNull(mPrefetcher.consume(mInfo, mShortcutIds, mNotificationKeys));
+    }
+
+    @Test
+    public void testCancelledTouchSkipsPendingLoad() throws Exception {
+        // Keep the worker busy, so that the prefetch is still pending when the touch ends.
+        final CountDownLatch workerBlocked = new CountDownLatch(1);
+        new Handler(mWorkerThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    workerBlocked.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) { }
+            }
+        });
+        mPrefetcher.startPrefetch(mInfo, mShortcutIds, mNotificationKeys);
+        mPrefetcher.cancel();
+        workerBlocked.countDown();
+        waitForWorker();
+
+        assertEquals(0, mLoadCount.get());
+        assertNull(mPrefetcher.consume(mInfo, mShortcutIds, mNotificationKeys));
+    }
+
+    private void waitForWorker() throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        new Handler(mWorkerThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        });
+        assertTrue(idle.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+}
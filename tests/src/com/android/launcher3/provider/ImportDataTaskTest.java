@@ -0,0 +1,153 @@
+package com.android.launcher3.provider;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+import android.test.ProviderTestCase2;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import com.android.launcher3.LauncherProvider;
+import com.android.launcher3.LauncherSettings.Favorites;
+import com.android.launcher3.LauncherSettings.Settings;
+import com.android.launcher3.LauncherSettings.WorkspaceScreens;
+import com.android.launcher3.compat.UserManagerCompat;
+import com.android.launcher3.util.TestLauncherProvider;
+
+import java.util.HashSet;
+
+/**
+ * Tests for {@link ImportDataTask}
+ */
+@MediumTest
+public class ImportDataTaskTest extends ProviderTestCase2<TestLauncherProvider> {
+
+    private static final String SOURCE_AUTHORITY = "com.android.launcher3.test.import";
+
+    private SQLiteDatabase mSourceDb;
+    private long mProfileId;
+    private String mIntent;
+    private long mNextId;
+
+    public ImportDataTaskTest() {
+        super(TestLauncherProvider.class, LauncherProvider.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestLauncherProvider source = new TestLauncherProvider();
+        source.attachInfo(getMockContext(), null);
+        getMockContentResolver().addProvider(SOURCE_AUTHORITY, source);
+        mSourceDb = source.getHelper().getWritableDatabase();
+
+        mProfileId = UserManagerCompat.getInstance(getContext())
+                .getSerialNumberForUser(Process.myUserHandle());
+        mIntent = new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER)
+                .setComponent(new ComponentName(getContext().getPackageName(), "DummyActivity"))
+                .toUri(0);
+        mNextId = 1;
+    }
+
+    public void testImportWritesAllItems() {
+        addSourceScreen(5, 0);
+        addSourceScreen(9, 1);
+        HashSet<Long> ids = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            ids.add(addSourceItem(Favorites.CONTAINER_DESKTOP, 9, i, 1));
+            ids.add(addSourceItem(Favorites.CONTAINER_HOTSEAT, i, i, 0));
+        }
+        long folderId = addSourceFolder(5, 0, 2);
+        ids.add(folderId);
+        ids.add(addSourceItem(folderId, 0, 0, 0));
+        // Items on a screen which doesn't exist are dropped.
+        long droppedId = addSourceItem(Favorites.CONTAINER_DESKTOP, 12, 0, 1);
+        // Items of packages which are not installed are kept, like restored items.
+        ContentValues missingApp = newSourceItem(Favorites.CONTAINER_DESKTOP, 9, 0, 2);
+        missingApp.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_APPLICATION);
+        missingApp.put(Favorites.INTENT, new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER)
+                .setComponent(new ComponentName("com.android.launcher3.missing", "Activity"))
+                .toUri(0));
+        mSourceDb.insert(Favorites.TABLE_NAME, null, missingApp);
+        ids.add(missingApp.getAsLong(Favorites._ID));
+
+        Bundle result = importData();
+        assertNotNull(result);
+        assertTrue(result.getBoolean(Settings.EXTRA_VALUE));
+
+        assertEquals(2, getCount(WorkspaceScreens.CONTENT_URI, null));
+        for (long id : ids) {
+            assertEquals(1, getCount(Favorites.CONTENT_URI, Favorites._ID + "=" + id));
+        }
+        assertEquals(0, getCount(Favorites.CONTENT_URI, Favorites._ID + "=" + droppedId));
+        // Screens are re-indexed by rank.
+        assertEquals(5, getCount(Favorites.CONTENT_URI, Favorites.CONTAINER + "="
+                + Favorites.CONTAINER_DESKTOP + " AND " + Favorites.SCREEN + "=1"));
+    }
+
+    public void testFailedImportWritesNothing() {
+        addSourceScreen(0, 0);
+        addSourceScreen(1, 1);
+        // Fewer items than needed for the import to succeed.
+        for (int i = 0; i < 3; i++) {
+            addSourceItem(Favorites.CONTAINER_DESKTOP, 1, i, 1);
+        }
+
+        assertNull(importData());
+        assertEquals(0, getCount(WorkspaceScreens.CONTENT_URI, null));
+        assertEquals(0, getCount(Favorites.CONTENT_URI, null));
+    }
+
+    private Bundle importData() {
+        return getMockContentResolver().call(Settings.CONTENT_URI, Settings.METHOD_IMPORT_DATA,
+                SOURCE_AUTHORITY, null);
+    }
+
+    private int getCount(Uri uri, String selection) {
+        try (Cursor c = getMockContentResolver().query(uri, null, selection, null, null)) {
+            return c.getCount();
+        }
+    }
+
+    private void addSourceScreen(long screenId, int rank) {
+        ContentValues values = new ContentValues();
+        values.put(WorkspaceScreens._ID, screenId);
+        values.put(WorkspaceScreens.SCREEN_RANK, rank);
+        mSourceDb.insert(WorkspaceScreens.TABLE_NAME, null, values);
+    }
+
+    private long addSourceItem(long container, long screen, int x, int y) {
+        ContentValues values = newSourceItem(container, screen, x, y);
+        values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_APPLICATION);
+        values.put(Favorites.INTENT, mIntent);
+        mSourceDb.insert(Favorites.TABLE_NAME, null, values);
+        return values.getAsLong(Favorites._ID);
+    }
+
+    private long addSourceFolder(long screen, int x, int y) {
+        ContentValues values = newSourceItem(Favorites.CONTAINER_DESKTOP, screen, x, y);
+        values.put(Favorites.ITEM_TYPE, Favorites.ITEM_TYPE_FOLDER);
+        mSourceDb.insert(Favorites.TABLE_NAME, null, values);
+        return values.getAsLong(Favorites._ID);
+    }
+
+    private ContentValues newSourceItem(long container, long screen, int x, int y) {
+        ContentValues values = new ContentValues();
+        values.put(Favorites._ID, mNextId++);
+        values.put(Favorites.CONTAINER, container);
+        values.put(Favorites.SCREEN, screen);
+        values.put(Favorites.CELLX, x);
+        values.put(Favorites.CELLY, y);
+        values.put(Favorites.SPANX, 1);
+        values.put(Favorites.SPANY, 1);
+        values.put(Favorites.PROFILE_ID, mProfileId);
+        values.put(Favorites.TITLE, "item " + values.getAsLong(Favorites._ID));
+        return values;
+    }
+}
@@ -0,0 +1,28 @@
+package com.android.launcher3.util;
+
+import android.os.Debug;
+
+/**
+ * A utility class to check that code on a hot path, like drawing or a touch move, does not
+ * allocate.
+ */
+public class AllocationCounter {
+
+    /**
+     * Returns the number of objects allocated by the calling thread while running
+     * {@param runnable}.
+     */
+    @SuppressWarnings("deprecation")
+    public static int countThreadAllocations(Runnable runnable) {
+        // The alloc counting APIs are deprecated, but unlike the runtime stats they count the
+        // objects of the calling thread only, so allocations of other threads are not measured.
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocCount();
+            runnable.run();
+            return Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.android.launcher3.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.launcher3.model.nano.LauncherDumpProto;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link InteractionJankMonitor}
+ */
+@SmallTest
+public class InteractionJankMonitorTest extends TestCase {
+
+    private static final long FRAME_INTERVAL_NANOS = 16666667;
+    private static final long MICROS = 1000;
+
+    public void testPercentiles() {
+        InteractionJankMonitor.Stats stats = new InteractionJankMonitor.Stats("test");
+        assertEquals(0, stats.getPercentileMicros(50));
+
+        // Frames of 1 to 100 ms, added in reverse order.
+        for (int i = 100; i > 0; i--) {
+            stats.addFrame(i * 1000 * MICROS, FRAME_INTERVAL_NANOS);
+        }
+        assertEquals(50000, stats.getPercentileMicros(50));
+        assertEquals(90000, stats.getPercentileMicros(90));
+        assertEquals(99000, stats.getPercentileMicros(99));
+        assertEquals(100000, stats.maxFrameMicros);
+        assertEquals(100, stats.frameCount);
+    }
+
+    public void testDroppedFrames() {
+        InteractionJankMonitor.Stats stats = new InteractionJankMonitor.Stats("test");
+        stats.addFrame(FRAME_INTERVAL_NANOS, FRAME_INTERVAL_NANOS);
+        // Late by less than half a frame.
+        stats.addFrame(FRAME_INTERVAL_NANOS * 5 / 4, FRAME_INTERVAL_NANOS);
+        assertEquals(0, stats.droppedFrameCount);
+
+        stats.addFrame(FRAME_INTERVAL_NANOS * 2, FRAME_INTERVAL_NANOS);
+        stats.addFrame(FRAME_INTERVAL_NANOS * 4, FRAME_INTERVAL_NANOS);
+        assertEquals(4, stats.droppedFrameCount);
+    }
+
+    public void testBufferKeepsLatestFrames() {
+        InteractionJankMonitor.Stats stats = new InteractionJankMonitor.Stats("test");
+        for (int i = 0; i < InteractionJankMonitor.BUFFER_SIZE; i++) {
+            stats.addFrame(100 * 1000 * MICROS, FRAME_INTERVAL_NANOS);
+        }
+        for (int i = 0; i < InteractionJankMonitor.BUFFER_SIZE; i++) {
+            stats.addFrame(10 * 1000 * MICROS, FRAME_INTERVAL_NANOS);
+        }
+        assertEquals(10000, stats.getPercentileMicros(99));
+        assertEquals(100000, stats.maxFrameMicros);
+        assertEquals(InteractionJankMonitor.BUFFER_SIZE * 2, stats.frameCount);
+    }
+
+    public void testToProto() {
+        InteractionJankMonitor.Stats stats = new InteractionJankMonitor.Stats("test");
+        stats.interactionCount = 2;
+        stats.addFrame(FRAME_INTERVAL_NANOS, FRAME_INTERVAL_NANOS);
+        stats.addFrame(FRAME_INTERVAL_NANOS * 3, FRAME_INTERVAL_NANOS);
+
+        LauncherDumpProto.InteractionJankStats proto = stats.toProto();
+        assertEquals("test", proto.name);
+        assertEquals(2, proto.count);
+        assertEquals(2, proto.frames);
+        assertEquals(2, proto.droppedFrames);
+        assertEquals(FRAME_INTERVAL_NANOS * 3 / MICROS, proto.p99FrameMicros);
+    }
+}